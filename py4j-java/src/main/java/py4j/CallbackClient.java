@@ -36,9 +36,16 @@ import java.net.SocketTimeoutException;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
@@ -55,6 +62,22 @@ import py4j.reflection.ReflectionUtil;
  * a certain time.
  * </p>
  *
+ * <p>
+ * The pool keeps at least {@link #getMinIdleConnections()} channels open, even
+ * when they are not used, and it opens them in the background as soon as
+ * possible. Unused channels beyond the peak number of channels used at the
+ * same time during the last cleanup period are closed progressively: half of
+ * the excess is closed at each period, so periodic bursts of callbacks do not
+ * reopen channels.
+ * </p>
+ *
+ * <p>
+ * Sending a command does not take a global lock: the idle channels are spread
+ * over several stripes, each with its own lock. A thread gives back its
+ * channel to its own stripe and takes its next channel from the same stripe
+ * first, so it usually reuses the channel it used last.
+ * </p>
+ *
  * @author Barthelemy Dagenais
  *
  */
@@ -67,13 +90,26 @@ public class CallbackClient implements Py4JPythonClient {
 
 	protected final SocketFactory socketFactory;
 
+	// Idle channels of the subclasses that manage their own channels (e.g.,
+	// PythonClient). The idle channels of a CallbackClient are kept in
+	// stripes.
 	protected final Deque<Py4JClientConnection> connections = new ArrayDeque<Py4JClientConnection>();
 
+	// Serializes the cleanup and the shutdown. Sending a command does not
+	// take this lock.
 	protected final Lock lock = new ReentrantLock(true);
 
 	private final Logger logger = Logger.getLogger(CallbackClient.class.getName());
 
-	private boolean isShutdown = false;
+	private final static int MAX_STRIPES = 64;
+
+	private final Stripe[] stripes;
+
+	private final int stripeMask;
+
+	private final AtomicInteger idleConnections = new AtomicInteger();
+
+	private volatile boolean isShutdown = false;
 
 	private boolean isShuttingDown = false;
 
@@ -83,6 +119,14 @@ public class CallbackClient implements Py4JPythonClient {
 
 	private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
 
+	private final static AtomicInteger asyncThreadCounter = new AtomicInteger();
+
+	// Sends the asynchronous commands. Created on the first asynchronous
+	// command and guarded by asyncExecutorLock.
+	private ExecutorService asyncExecutor;
+
+	private final Object asyncExecutorLock = new Object();
+
 	protected final long minConnectionTime;
 
 	protected final TimeUnit minConnectionTimeUnit;
@@ -93,6 +137,30 @@ public class CallbackClient implements Py4JPythonClient {
 
 	protected final String authToken;
 
+	private volatile int minIdleConnections = 0;
+
+	// Number of channels currently sending a command.
+	private final AtomicInteger activeConnections = new AtomicInteger();
+
+	// Maximum number of active channels since the last cleanup.
+	private final AtomicInteger peakActiveConnections = new AtomicInteger();
+
+	private final AtomicLong createdConnectionCount = new AtomicLong();
+
+	private final AtomicLong reusedConnectionCount = new AtomicLong();
+
+	private final AtomicLong closedConnectionCount = new AtomicLong();
+
+	private final AtomicBoolean warmUpScheduled = new AtomicBoolean();
+
+	private final Runnable warmUpTask = new Runnable() {
+		@Override
+		public void run() {
+			warmUpScheduled.set(false);
+			warmUp();
+		}
+	};
+
 	public CallbackClient(int port) {
 		this(port, GatewayServer.defaultAddress(), DEFAULT_MIN_CONNECTION_TIME, DEFAULT_MIN_CONNECTION_TIME_UNIT,
 				SocketFactory.getDefault(), true);
@@ -217,9 +285,75 @@ public class CallbackClient implements Py4JPythonClient {
 		this.enableMemoryManagement = enableMemoryManagement;
 		this.readTimeout = readTimeout;
 		this.authToken = StringUtil.escape(authToken);
+		int stripeCount = getStripeCount();
+		this.stripes = new Stripe[stripeCount];
+		for (int i = 0; i < stripeCount; i++) {
+			stripes[i] = new Stripe();
+		}
+		this.stripeMask = stripeCount - 1;
 		setupCleaner();
 	}
 
+	/**
+	 *
+	 * @return The smallest power of two greater or equal to the number of
+	 *         processors, up to {@link #MAX_STRIPES}.
+	 */
+	private static int getStripeCount() {
+		int processors = Runtime.getRuntime().availableProcessors();
+		int count = 1;
+		while (count < processors && count < MAX_STRIPES) {
+			count <<= 1;
+		}
+		return count;
+	}
+
+	private int getStripeIndex() {
+		return (int) Thread.currentThread().getId() & stripeMask;
+	}
+
+	/**
+	 *
+	 * @return An idle channel, preferably from the stripe of the current
+	 *         thread, or null if there is no idle channel.
+	 */
+	private Py4JClientConnection pollIdleConnection() {
+		if (idleConnections.get() == 0) {
+			return null;
+		}
+		int index = getStripeIndex();
+		for (int i = 0; i <= stripeMask; i++) {
+			Stripe stripe = stripes[(index + i) & stripeMask];
+			synchronized (stripe) {
+				Py4JClientConnection connection = stripe.idle.pollLast();
+				if (connection != null) {
+					idleConnections.decrementAndGet();
+					return connection;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * <p>
+	 * Adds an idle channel to a stripe or closes it if the client is shut
+	 * down.
+	 * </p>
+	 */
+	private void offerIdleConnection(Py4JClientConnection connection, int index) {
+		Stripe stripe = stripes[index & stripeMask];
+		synchronized (stripe) {
+			// The shutdown flag is set before the stripes are emptied.
+			if (!isShutdown) {
+				stripe.idle.addLast(connection);
+				idleConnections.incrementAndGet();
+				return;
+			}
+		}
+		connection.shutdown();
+	}
+
 	public InetAddress getAddress() {
 		return address;
 	}
@@ -232,22 +366,43 @@ public class CallbackClient implements Py4JPythonClient {
 	protected Py4JClientConnection getConnection() throws IOException {
 		Py4JClientConnection connection = null;
 
-		connection = connections.pollLast();
+		connection = pollIdleConnection();
 		if (connection == null) {
-			connection = new CallbackConnection(port, address, socketFactory, readTimeout, authToken);
-			connection.start();
+			connection = createConnection();
+			createdConnectionCount.incrementAndGet();
+			// The other side is listening: fill the pool if it was not
+			// warmed up yet.
+			scheduleWarmUp();
+		} else {
+			reusedConnectionCount.incrementAndGet();
 		}
 
 		return connection;
 	}
 
+	/**
+	 *
+	 * @return A new started channel.
+	 * @throws IOException
+	 */
+	protected Py4JClientConnection createConnection() throws IOException {
+		Py4JClientConnection connection = new CallbackConnection(port, address, socketFactory, readTimeout,
+				authToken);
+		connection.start();
+		return connection;
+	}
+
 	protected Py4JClientConnection getConnectionLock() {
 		Py4JClientConnection cc = null;
 		try {
 			logger.log(Level.INFO, "Getting CB Connection");
-			lock.lock();
 			if (!isShutdown) {
 				cc = getConnection();
+				int active = activeConnections.incrementAndGet();
+				int peak = peakActiveConnections.get();
+				while (active > peak && !peakActiveConnections.compareAndSet(peak, active)) {
+					peak = peakActiveConnections.get();
+				}
 				logger.log(Level.INFO, "Acquired CB Connection");
 			} else {
 				logger.log(Level.INFO, "Shutting down, no connection can be created.");
@@ -255,13 +410,70 @@ public class CallbackClient implements Py4JPythonClient {
 		} catch (Exception e) {
 			logger.log(Level.SEVERE, "Critical error while sending a command", e);
 			throw new Py4JException("Error while obtaining a new communication channel", e);
-		} finally {
-			lock.unlock();
 		}
 
 		return cc;
 	}
 
+	/**
+	 * <p>
+	 * Called when a channel obtained with {@link #getConnectionLock()} is
+	 * given back or closed.
+	 * </p>
+	 */
+	private void releaseConnection() {
+		activeConnections.decrementAndGet();
+	}
+
+	/**
+	 *
+	 * @return The number of channels currently sending a command.
+	 */
+	public int getActiveConnectionCount() {
+		return activeConnections.get();
+	}
+
+	/**
+	 *
+	 * @return The number of channels created since this client was created.
+	 */
+	public long getCreatedConnectionCount() {
+		return createdConnectionCount.get();
+	}
+
+	/**
+	 *
+	 * @return The number of unused channels closed by the periodic cleanup.
+	 */
+	public long getClosedConnectionCount() {
+		return closedConnectionCount.get();
+	}
+
+	/**
+	 *
+	 * @return The number of open channels that are not currently used.
+	 */
+	public int getIdleConnectionCount() {
+		return idleConnections.get();
+	}
+
+	/**
+	 *
+	 * @return The minimum number of channels kept open.
+	 */
+	public int getMinIdleConnections() {
+		return minIdleConnections;
+	}
+
+	/**
+	 *
+	 * @return The maximum number of channels used at the same time since the
+	 *         last periodic cleanup.
+	 */
+	public int getPeakActiveConnectionCount() {
+		return peakActiveConnections.get();
+	}
+
 	public int getPort() {
 		return port;
 	}
@@ -270,6 +482,69 @@ public class CallbackClient implements Py4JPythonClient {
 		return readTimeout;
 	}
 
+	/**
+	 *
+	 * @return The number of commands that were sent through a channel of
+	 *         the pool instead of a new channel.
+	 */
+	public long getReusedConnectionCount() {
+		return reusedConnectionCount.get();
+	}
+
+	/**
+	 * <p>
+	 * Sets the minimum number of channels kept open, even when they are not
+	 * used. The channels are opened in the background.
+	 * </p>
+	 *
+	 * @param minIdleConnections
+	 */
+	public void setMinIdleConnections(int minIdleConnections) {
+		if (minIdleConnections < 0) {
+			throw new IllegalArgumentException("The minimum number of connections must not be negative.");
+		}
+		this.minIdleConnections = minIdleConnections;
+		scheduleWarmUp();
+	}
+
+	private void scheduleWarmUp() {
+		if (minIdleConnections > 0 && warmUpScheduled.compareAndSet(false, true)) {
+			try {
+				executor.execute(warmUpTask);
+			} catch (RejectedExecutionException e) {
+				// The client is shutting down.
+				warmUpScheduled.set(false);
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Opens channels until at least {@link #getMinIdleConnections()}
+	 * channels are open. If a channel cannot be opened (e.g., the Python side
+	 * is not listening yet), the pool is filled later.
+	 * </p>
+	 *
+	 * <p>
+	 * Clients do not need to call this method: it is called in the background
+	 * when the minimum is set, when a new channel is needed, and after each
+	 * periodic cleanup.
+	 * </p>
+	 */
+	public void warmUp() {
+		while (!isShutdown && idleConnections.get() + activeConnections.get() < minIdleConnections) {
+			Py4JClientConnection cc;
+			try {
+				cc = createConnection();
+			} catch (Exception e) {
+				logger.log(Level.FINE, "Could not open a callback connection in advance.", e);
+				return;
+			}
+			// Spreads the channels over the stripes.
+			offerIdleConnection(cc, (int) createdConnectionCount.incrementAndGet());
+		}
+	}
+
 	/**
 	 * <p>
 	 * Creates a callback client which connects to the given address and port,
@@ -288,29 +563,24 @@ public class CallbackClient implements Py4JPythonClient {
 	 */
 	@Override
 	public Py4JPythonClient copyWith(InetAddress pythonAddress, int pythonPort) {
-		return new CallbackClient(pythonPort, pythonAddress, authToken, minConnectionTime, minConnectionTimeUnit,
-				socketFactory, enableMemoryManagement, readTimeout);
+		CallbackClient client = new CallbackClient(pythonPort, pythonAddress, authToken, minConnectionTime,
+				minConnectionTimeUnit, socketFactory, enableMemoryManagement, readTimeout);
+		client.setMinIdleConnections(minIdleConnections);
+		return client;
 	}
 
 	protected void giveBackConnection(Py4JClientConnection cc) {
-		try {
-			lock.lock();
-			if (cc != null) {
-				if (!isShutdown) {
-					connections.addLast(cc);
-				} else {
-					cc.shutdown();
-				}
-			}
-		} finally {
-			lock.unlock();
+		if (cc != null) {
+			offerIdleConnection(cc, getStripeIndex());
 		}
 	}
 
 	/**
 	 * <p>
 	 * Closes communication channels that have not been used for a time
-	 * specified at the creation of the callback client.
+	 * specified at the creation of the callback client. At most half of the
+	 * channels exceeding the minimum number of channels and the peak number of
+	 * channels used at the same time during the last period are closed.
 	 * </p>
 	 *
 	 * <p>
@@ -320,24 +590,42 @@ public class CallbackClient implements Py4JPythonClient {
 	 *
 	 */
 	public void periodicCleanup() {
+		List<Py4JClientConnection> unusedConnections = new ArrayList<Py4JClientConnection>();
 		try {
 			lock.lock();
 			if (!isShutdown) {
-				int size = connections.size();
-				for (int i = 0; i < size; i++) {
-					Py4JClientConnection cc = connections.pollLast();
-					if (cc.wasUsed()) {
-						cc.setUsed(false);
-						connections.addFirst(cc);
-					} else {
-						cc.shutdown();
+				int target = Math.max(minIdleConnections, peakActiveConnections.get());
+				int excess = idleConnections.get() + activeConnections.get() - target;
+				int toClose = excess > 0 ? (excess + 1) / 2 : 0;
+				for (Stripe stripe : stripes) {
+					synchronized (stripe) {
+						int size = stripe.idle.size();
+						for (int i = 0; i < size; i++) {
+							Py4JClientConnection cc = stripe.idle.pollLast();
+							if (cc.wasUsed()) {
+								cc.setUsed(false);
+								stripe.idle.addFirst(cc);
+							} else if (toClose > 0) {
+								toClose--;
+								idleConnections.decrementAndGet();
+								unusedConnections.add(cc);
+							} else {
+								stripe.idle.addFirst(cc);
+							}
+						}
 					}
 				}
-
+				peakActiveConnections.set(activeConnections.get());
 			}
 		} finally {
 			lock.unlock();
 		}
+		for (Py4JClientConnection cc : unusedConnections) {
+			closedConnectionCount.incrementAndGet();
+			cc.shutdown();
+		}
+		// Replaces the channels that were closed by the other side.
+		warmUp();
 	}
 
 	/**
@@ -389,6 +677,7 @@ public class CallbackClient implements Py4JPythonClient {
 				reset = true;
 			}
 			cc.shutdown(reset);
+			releaseConnection();
 			if (shouldRetrySendCommand(cc, pe)) {
 				// Retry in case the channel was dead.
 				returnCommand = sendCommand(command, blocking);
@@ -399,10 +688,12 @@ public class CallbackClient implements Py4JPythonClient {
 		} catch (Exception e) {
 			logger.log(Level.SEVERE, "Critical error while sending a command", e);
 			cc.shutdown();
+			releaseConnection();
 			throw new Py4JException("Error while sending a command.");
 		}
 
 		try {
+			releaseConnection();
 			giveBackConnection(cc);
 		} catch (Exception e) {
 			logger.log(Level.SEVERE, "Critical error while giving back connection.", e);
@@ -412,6 +703,54 @@ public class CallbackClient implements Py4JPythonClient {
 		return returnCommand;
 	}
 
+	/**
+	 * <p>
+	 * Sends the command from a separate thread: the channels of this client
+	 * wait for their response, so a thread is still blocked while the Python
+	 * side executes the command, but it is not the calling thread. Use a
+	 * {@link MultiplexedCallbackClient} to not block any thread.
+	 * </p>
+	 */
+	@Override
+	public CallbackFuture sendCommandAsync(final String command) {
+		final CallbackFuture future = new CallbackFuture();
+		try {
+			getAsyncExecutor().execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						future.complete(sendCommand(command, true));
+					} catch (Exception e) {
+						future.fail(e);
+					}
+				}
+			});
+		} catch (Exception e) {
+			future.fail(e);
+		}
+		return future;
+	}
+
+	private ExecutorService getAsyncExecutor() {
+		synchronized (asyncExecutorLock) {
+			if (isShutdown) {
+				throw new Py4JException("Cannot obtain a new communication channel");
+			}
+			if (asyncExecutor == null) {
+				asyncExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable,
+								"py4j-callback-async-" + asyncThreadCounter.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+			}
+			return asyncExecutor;
+		}
+	}
+
 	@Override
 	public Object getPythonServerEntryPoint(Gateway gateway,
 			@SuppressWarnings("rawtypes") Class[] interfacesToImplement) {
@@ -455,14 +794,37 @@ public class CallbackClient implements Py4JPythonClient {
 			isShutdown = true;
 			isShuttingDown = true;
 			ArrayList<Py4JClientConnection> tempConnections = new ArrayList<Py4JClientConnection>(connections);
+			for (Stripe stripe : stripes) {
+				synchronized (stripe) {
+					tempConnections.addAll(stripe.idle);
+					idleConnections.addAndGet(-stripe.idle.size());
+					stripe.idle.clear();
+				}
+			}
 			for (Py4JClientConnection cc : tempConnections) {
 				cc.shutdown();
 			}
 			executor.shutdownNow();
+			synchronized (asyncExecutorLock) {
+				if (asyncExecutor != null) {
+					// The commands being sent complete on their own.
+					asyncExecutor.shutdown();
+				}
+			}
 			connections.clear();
 		} finally {
 			isShuttingDown = false;
 			lock.unlock();
 		}
 	}
+
+	/**
+	 * <p>
+	 * Idle channels of a stripe. The stripe is also the lock that protects
+	 * them.
+	 * </p>
+	 */
+	private static class Stripe {
+		private final Deque<Py4JClientConnection> idle = new ArrayDeque<Py4JClientConnection>();
+	}
 }
@@ -32,11 +32,8 @@ package py4j;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.net.InetAddress;
 import java.net.Socket;
-import java.nio.charset.Charset;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -225,8 +222,8 @@ public class CallbackConnection implements Py4JClientConnection {
 		logger.info("Starting Communication Channel on " + address + " at " + port);
 		socket = socketFactory.createSocket(address, port);
 		socket.setSoTimeout(blockingReadTimeout);
-		reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), Charset.forName("UTF-8")));
-		writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), Charset.forName("UTF-8")));
+		reader = new ProtocolReader(socket.getInputStream());
+		writer = new ProtocolWriter(socket.getOutputStream());
 
 		if (authToken != null) {
 			try {
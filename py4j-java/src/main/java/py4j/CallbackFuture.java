@@ -0,0 +1,213 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>
+ * The response to a command sent asynchronously to the Python side (see
+ * {@link Py4JPythonClient#sendCommandAsync(String)}).
+ * </p>
+ *
+ * <p>
+ * Listeners are notified by the thread that completes the future, or by the
+ * thread that adds them if the future is already completed: they must not
+ * block.
+ * </p>
+ *
+ * @author Barthelemy Dagenais
+ *
+ */
+public class CallbackFuture implements Future<String> {
+
+	/**
+	 * <p>
+	 * Notified when a {@link CallbackFuture} is completed.
+	 * </p>
+	 */
+	public interface Listener {
+
+		/**
+		 *
+		 * @param response
+		 *            The response, or null if the command failed.
+		 * @param error
+		 *            Why the command failed, or null if it succeeded.
+		 */
+		void completed(String response, Throwable error);
+	}
+
+	private final Logger logger = Logger.getLogger(CallbackFuture.class.getName());
+
+	private final CountDownLatch latch = new CountDownLatch(1);
+
+	// Guarded by this.
+	private List<Listener> listeners = new ArrayList<Listener>();
+
+	private volatile boolean done;
+
+	private volatile String response;
+
+	private volatile Throwable error;
+
+	public static CallbackFuture completedFuture(String response) {
+		CallbackFuture future = new CallbackFuture();
+		future.complete(response);
+		return future;
+	}
+
+	public static CallbackFuture failedFuture(Throwable error) {
+		CallbackFuture future = new CallbackFuture();
+		future.fail(error);
+		return future;
+	}
+
+	public void addListener(Listener listener) {
+		synchronized (this) {
+			if (!done) {
+				listeners.add(listener);
+				return;
+			}
+		}
+		notifyListener(listener);
+	}
+
+	/**
+	 * <p>
+	 * The command cannot be cancelled once it was sent: the future is only
+	 * marked as cancelled and the response will be ignored.
+	 * </p>
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return finish(null, new CancellationException("The command was cancelled."));
+	}
+
+	/**
+	 *
+	 * @param response
+	 * @return True if this call completed the future.
+	 */
+	public boolean complete(String response) {
+		return finish(response, null);
+	}
+
+	/**
+	 *
+	 * @param error
+	 * @return True if this call completed the future.
+	 */
+	public boolean fail(Throwable error) {
+		if (error == null) {
+			throw new IllegalArgumentException("The error cannot be null.");
+		}
+		return finish(null, error);
+	}
+
+	private boolean finish(String response, Throwable error) {
+		List<Listener> toNotify;
+		synchronized (this) {
+			if (done) {
+				return false;
+			}
+			this.response = response;
+			this.error = error;
+			this.done = true;
+			toNotify = listeners;
+			listeners = null;
+		}
+		latch.countDown();
+		for (Listener listener : toNotify) {
+			notifyListener(listener);
+		}
+		return true;
+	}
+
+	@Override
+	public String get() throws InterruptedException, ExecutionException {
+		latch.await();
+		return getResponse();
+	}
+
+	@Override
+	public String get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+			TimeoutException {
+		if (!latch.await(timeout, unit)) {
+			throw new TimeoutException();
+		}
+		return getResponse();
+	}
+
+	/**
+	 *
+	 * @return Why the command failed or null if the future is not completed
+	 *         or if the command succeeded.
+	 */
+	public Throwable getError() {
+		return error;
+	}
+
+	private String getResponse() throws ExecutionException {
+		if (error instanceof CancellationException) {
+			throw (CancellationException) error;
+		} else if (error != null) {
+			throw new ExecutionException(error);
+		}
+		return response;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return error instanceof CancellationException;
+	}
+
+	@Override
+	public boolean isDone() {
+		return done;
+	}
+
+	private void notifyListener(Listener listener) {
+		try {
+			listener.completed(response, error);
+		} catch (Exception e) {
+			logger.log(Level.WARNING, "Error while notifying a callback listener.", e);
+		}
+	}
+}
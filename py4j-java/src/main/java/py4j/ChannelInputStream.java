@@ -0,0 +1,145 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * <p>
+ * A blocking input stream over a non-blocking channel. When no byte is
+ * available, the stream waits with its own selector, up to the timeout.
+ * </p>
+ *
+ * <p>
+ * This class is not intended to be directly accessed by users.
+ * </p>
+ *
+ * @author Barthelemy Dagenais
+ *
+ */
+public class ChannelInputStream extends InputStream {
+
+	private final SocketChannel channel;
+
+	private volatile int timeout;
+
+	private final ByteBuffer single = ByteBuffer.allocate(1);
+
+	// Byte read by available() and not consumed yet, or -1.
+	private int peeked = -1;
+
+	private ByteBuffer wrapped;
+
+	private volatile Selector selector;
+
+	/**
+	 *
+	 * @param channel
+	 *            A non-blocking channel.
+	 * @param timeout
+	 *            The maximum time (in milliseconds) to wait for a byte. 0
+	 *            means no timeout.
+	 */
+	public ChannelInputStream(SocketChannel channel, int timeout) {
+		this.channel = channel;
+		this.timeout = timeout;
+	}
+
+	@Override
+	public int available() throws IOException {
+		if (peeked < 0) {
+			single.clear();
+			if (channel.read(single) == 1) {
+				peeked = single.get(0) & 0xff;
+			}
+		}
+		return peeked < 0 ? 0 : 1;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			channel.close();
+		} finally {
+			NetworkUtil.quietlyClose(selector);
+		}
+	}
+
+	public int getTimeout() {
+		return timeout;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || off + len > b.length) {
+			throw new IndexOutOfBoundsException();
+		} else if (len == 0) {
+			return 0;
+		}
+
+		if (peeked >= 0) {
+			b[off] = (byte) peeked;
+			peeked = -1;
+			int count = len > 1 ? channel.read(wrap(b, off + 1, len - 1)) : 0;
+			return count > 0 ? count + 1 : 1;
+		}
+
+		ByteBuffer buffer = wrap(b, off, len);
+		int count;
+		while ((count = channel.read(buffer)) == 0) {
+			selector = NetworkUtil.awaitChannel(channel, selector, SelectionKey.OP_READ, timeout);
+		}
+		return count;
+	}
+
+	public void setTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+
+	private ByteBuffer wrap(byte[] b, int off, int len) {
+		if (wrapped == null || wrapped.array() != b) {
+			wrapped = ByteBuffer.wrap(b);
+		}
+		wrapped.limit(off + len);
+		wrapped.position(off);
+		return wrapped;
+	}
+}
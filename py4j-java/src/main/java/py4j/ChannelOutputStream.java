@@ -0,0 +1,114 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * <p>
+ * A blocking output stream over a non-blocking channel. When the channel
+ * cannot accept more bytes, the stream waits with its own selector, up to the
+ * timeout.
+ * </p>
+ *
+ * <p>
+ * This class is not intended to be directly accessed by users.
+ * </p>
+ *
+ * @author Barthelemy Dagenais
+ *
+ */
+public class ChannelOutputStream extends OutputStream {
+
+	private final SocketChannel channel;
+
+	private volatile int timeout;
+
+	private ByteBuffer wrapped;
+
+	private volatile Selector selector;
+
+	/**
+	 *
+	 * @param channel
+	 *            A non-blocking channel.
+	 * @param timeout
+	 *            The maximum time (in milliseconds) to wait until the channel
+	 *            can accept more bytes. 0 means no timeout.
+	 */
+	public ChannelOutputStream(SocketChannel channel, int timeout) {
+		this.channel = channel;
+		this.timeout = timeout;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			channel.close();
+		} finally {
+			NetworkUtil.quietlyClose(selector);
+		}
+	}
+
+	public int getTimeout() {
+		return timeout;
+	}
+
+	public void setTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || off + len > b.length) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (wrapped == null || wrapped.array() != b) {
+			wrapped = ByteBuffer.wrap(b);
+		}
+		wrapped.limit(off + len);
+		wrapped.position(off);
+		while (wrapped.hasRemaining()) {
+			if (channel.write(wrapped) == 0) {
+				selector = NetworkUtil.awaitChannel(channel, selector, SelectionKey.OP_WRITE, timeout);
+			}
+		}
+	}
+}
@@ -72,6 +72,8 @@ public class ClientServer {
 
 	protected final String authToken;
 
+	protected final boolean virtualThreads;
+
 	protected final Logger logger = Logger.getLogger(ClientServer.class.getName());
 
 	/**
@@ -122,12 +124,13 @@ public class ClientServer {
 			int connectTimeout, int readTimeout, ServerSocketFactory sSocketFactory, SocketFactory socketFactory,
 			Object entryPoint, boolean autoStartJavaServer, boolean enableMemoryManagement) {
 		this(javaPort, javaAddress, pythonPort, pythonAddress, connectTimeout, readTimeout, sSocketFactory,
-				socketFactory, entryPoint, autoStartJavaServer, enableMemoryManagement, null);
+				socketFactory, entryPoint, autoStartJavaServer, enableMemoryManagement, null, false);
 	}
 
 	private ClientServer(int javaPort, InetAddress javaAddress, int pythonPort, InetAddress pythonAddress,
 			int connectTimeout, int readTimeout, ServerSocketFactory sSocketFactory, SocketFactory socketFactory,
-			Object entryPoint, boolean autoStartJavaServer, boolean enableMemoryManagement, String authToken) {
+			Object entryPoint, boolean autoStartJavaServer, boolean enableMemoryManagement, String authToken,
+			boolean virtualThreads) {
 		this.javaPort = javaPort;
 		this.javaAddress = javaAddress;
 		this.pythonPort = pythonPort;
@@ -138,6 +141,7 @@ public class ClientServer {
 		this.socketFactory = socketFactory;
 		this.enableMemoryManagement = enableMemoryManagement;
 		this.authToken = authToken;
+		this.virtualThreads = virtualThreads;
 		this.pythonClient = createPythonClient();
 		this.javaServer = createJavaServer(entryPoint, pythonClient);
 
@@ -159,7 +163,10 @@ public class ClientServer {
 	}
 
 	protected Py4JJavaServer createJavaServer(Object entryPoint, Py4JPythonClientPerThread pythonClient) {
-		return new JavaServer(entryPoint, javaPort, connectTimeout, readTimeout, null, pythonClient, authToken);
+		JavaServer server = new JavaServer(entryPoint, javaPort, javaAddress, connectTimeout, readTimeout, null,
+				pythonClient, sSocketFactory, authToken);
+		server.setVirtualThreads(virtualThreads);
+		return server;
 	}
 
 	public Py4JJavaServer getJavaServer() {
@@ -240,6 +247,7 @@ public class ClientServer {
 		private boolean autoStartJavaServer;
 		private boolean enableMemoryManagement;
 		private String authToken;
+		private boolean useVirtualThreads;
 
 		public ClientServerBuilder() {
 			this(null);
@@ -262,7 +270,7 @@ public class ClientServer {
 		public ClientServer build() {
 			return new ClientServer(javaPort, javaAddress, pythonPort, pythonAddress, connectTimeout, readTimeout,
 					serverSocketFactory, socketFactory, entryPoint, autoStartJavaServer, enableMemoryManagement,
-					authToken);
+					authToken, useVirtualThreads);
 		}
 
 		public ClientServerBuilder javaPort(int javaPort) {
@@ -305,6 +313,36 @@ public class ClientServer {
 			return this;
 		}
 
+		/**
+		 * <p>
+		 * Listens for Python connections on a Unix domain socket instead of
+		 * the java port (requires Java 16+).
+		 * </p>
+		 *
+		 * @param path
+		 *            The path of the socket file.
+		 * @return
+		 */
+		public ClientServerBuilder javaUnixDomainSocket(String path) {
+			this.serverSocketFactory = new UnixDomainServerSocketFactory(path);
+			return this;
+		}
+
+		/**
+		 * <p>
+		 * Connects to the Python server through a Unix domain socket instead
+		 * of the python port (requires Java 16+).
+		 * </p>
+		 *
+		 * @param path
+		 *            The path of the socket file.
+		 * @return
+		 */
+		public ClientServerBuilder pythonUnixDomainSocket(String path) {
+			this.socketFactory = new UnixDomainSocketFactory(path);
+			return this;
+		}
+
 		public ClientServerBuilder entryPoint(Object entryPoint) {
 			this.entryPoint = entryPoint;
 			return this;
@@ -324,5 +362,19 @@ public class ClientServer {
 			this.authToken = StringUtil.escape(authToken);
 			return this;
 		}
+
+		/**
+		 * <p>
+		 * If true, each connection from Python runs in a virtual thread when
+		 * the JVM supports them (Java 21+) and in a platform thread otherwise.
+		 * </p>
+		 *
+		 * @param useVirtualThreads
+		 * @return
+		 */
+		public ClientServerBuilder useVirtualThreads(boolean useVirtualThreads) {
+			this.useVirtualThreads = useVirtualThreads;
+			return this;
+		}
 	}
 }
@@ -32,11 +32,8 @@ package py4j;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
-import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -53,6 +50,9 @@ public class ClientServerConnection implements Py4JServerConnection, Py4JClientC
 	protected Socket socket;
 	protected BufferedWriter writer;
 	protected BufferedReader reader;
+	protected final CommandRegistry commandRegistry;
+	// Commands specific to this connection. Stateless commands are shared
+	// through the registry.
 	protected final Map<String, Command> commands;
 	protected final Logger logger = Logger.getLogger(ClientServerConnection.class.getName());
 	protected final Py4JJavaServer javaServer;
@@ -63,6 +63,7 @@ public class ClientServerConnection implements Py4JServerConnection, Py4JClientC
 	protected final AuthCommand authCommand;
 	// Used to terminate the JVM process on command cancellation.
 	protected Thread jvmThread;
+	protected CommandPermits commandPermits;
 
 	public ClientServerConnection(Gateway gateway, Socket socket, List<Class<? extends Command>> customCommands,
 			Py4JPythonClientPerThread pythonClient, Py4JJavaServer javaServer, int readTimeout) throws IOException {
@@ -72,15 +73,29 @@ public class ClientServerConnection implements Py4JServerConnection, Py4JClientC
 	public ClientServerConnection(Gateway gateway, Socket socket, List<Class<? extends Command>> customCommands,
 			Py4JPythonClientPerThread pythonClient, Py4JJavaServer javaServer, int readTimeout, String authToken)
 					throws IOException {
+		this(new CommandRegistry(gateway, customCommands), socket, pythonClient, javaServer, readTimeout, authToken);
+	}
+
+	/**
+	 *
+	 * @param commandRegistry
+	 *            The commands shared by the connections of the server.
+	 * @param socket
+	 * @param pythonClient
+	 * @param javaServer
+	 * @param readTimeout
+	 * @param authToken
+	 * @throws IOException
+	 */
+	public ClientServerConnection(CommandRegistry commandRegistry, Socket socket,
+			Py4JPythonClientPerThread pythonClient, Py4JJavaServer javaServer, int readTimeout, String authToken)
+					throws IOException {
 		super();
 		this.socket = socket;
-		this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), Charset.forName("UTF-8")));
-		this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), Charset.forName("UTF-8")));
+		this.reader = new ProtocolReader(socket.getInputStream());
+		this.writer = new ProtocolWriter(socket.getOutputStream());
+		this.commandRegistry = commandRegistry;
 		this.commands = new HashMap<String, Command>();
-		initCommands(gateway, GatewayConnection.getBaseCommands());
-		if (customCommands != null) {
-			initCommands(gateway, customCommands);
-		}
 		this.javaServer = javaServer;
 		this.pythonClient = pythonClient;
 		this.blockingReadTimeout = readTimeout;
@@ -92,14 +107,25 @@ public class ClientServerConnection implements Py4JServerConnection, Py4JClientC
 		this.authToken = authToken;
 		if (authToken != null) {
 			this.authCommand = new AuthCommand(authToken);
-			initCommand(gateway, authCommand);
+			initCommand(commandRegistry.getGateway(), authCommand);
 		} else {
 			this.authCommand = null;
 		}
 	}
 
 	public void startServerConnection() throws IOException {
-		jvmThread = new Thread(this);
+		startServerConnection(false);
+	}
+
+	/**
+	 *
+	 * @param virtualThread
+	 *            If true, the connection runs in a virtual thread when the
+	 *            JVM supports them.
+	 * @throws IOException
+	 */
+	public void startServerConnection(boolean virtualThread) throws IOException {
+		jvmThread = ThreadUtil.newThread(this, virtualThread);
 		jvmThread.start();
 	}
 
@@ -110,7 +136,10 @@ public class ClientServerConnection implements Py4JServerConnection, Py4JClientC
 
 	/**
 	 * <p>
-	 * Override this method to initialize custom commands.
+	 * Creates commands specific to this connection. Custom commands are
+	 * usually provided by the {@link CommandRegistry} instead: the commands
+	 * initialized by this method do not hide the stateless commands of the
+	 * registry.
 	 * </p>
 	 *
 	 * @param gateway
@@ -136,6 +165,38 @@ public class ClientServerConnection implements Py4JServerConnection, Py4JClientC
 		commands.put(cmd.getCommandName(), cmd);
 	}
 
+	/**
+	 *
+	 * @param commandName
+	 * @return The command registered with this name on this connection or
+	 *         null if there is no such command. Commands specific to a
+	 *         connection are created the first time they are requested.
+	 */
+	public Command getCommand(String commandName) {
+		Command command = commandRegistry.getSharedCommand(commandName);
+		if (command == null) {
+			command = commands.get(commandName);
+			if (command == null) {
+				command = commandRegistry.newConnectionCommand(commandName, this);
+				if (command != null) {
+					commands.put(commandName, command);
+				}
+			}
+		}
+		return command;
+	}
+
+	protected void fireCommandRejected(String commandName) {
+		logger.warning("Command Rejected: " + commandName);
+		for (GatewayServerListener listener : javaServer.getListeners()) {
+			try {
+				listener.commandRejected(this, commandName);
+			} catch (Exception e) {
+				logger.log(Level.SEVERE, "A listener crashed.", e);
+			}
+		}
+	}
+
 	protected void fireConnectionStopped() {
 		logger.info("Connection Stopped");
 
@@ -164,6 +225,19 @@ public class ClientServerConnection implements Py4JServerConnection, Py4JClientC
 		return socket;
 	}
 
+	/**
+	 * <p>
+	 * Sets the permits shared by the connections of a server to limit the
+	 * number of commands executed at the same time. Must be called before the
+	 * connection is started. If null, the number of commands is not limited.
+	 * </p>
+	 *
+	 * @param commandPermits
+	 */
+	public void setCommandPermits(CommandPermits commandPermits) {
+		this.commandPermits = commandPermits;
+	}
+
 	public void waitForCommands() {
 		boolean reset = false;
 		boolean executing = false;
@@ -175,13 +249,24 @@ public class ClientServerConnection implements Py4JServerConnection, Py4JClientC
 				commandLine = reader.readLine();
 				executing = true;
 				logger.fine("Received command: " + commandLine);
-				Command command = commands.get(commandLine);
+				Command command = getCommand(commandLine);
 
 				if (command != null) {
 					if (authCommand != null && !authCommand.isAuthenticated()) {
 						authCommand.execute(commandLine, reader, writer);
+					} else if (commandPermits != null && !commandPermits.tryAcquire()) {
+						fireCommandRejected(commandLine);
+						GatewayConnection.skipCommand(command, reader, commandRegistry.getGateway());
+						writer.write(commandPermits.getRejectedCommandError());
+						writer.flush();
 					} else {
-						command.execute(commandLine, reader, writer);
+						try {
+							command.execute(commandLine, reader, writer);
+						} finally {
+							if (commandPermits != null) {
+								commandPermits.release();
+							}
+						}
 					}
 					executing = false;
 				} else {
@@ -241,7 +326,7 @@ public class ClientServerConnection implements Py4JServerConnection, Py4JClientC
 					logger.log(Level.INFO, "Returning CB command: " + returnCommand);
 					return returnCommand;
 				} else {
-					Command commandObj = commands.get(returnCommand);
+					Command commandObj = getCommand(returnCommand);
 					if (commandObj != null) {
 						commandObj.execute(returnCommand, reader, writer);
 					} else {
@@ -274,6 +359,7 @@ public class ClientServerConnection implements Py4JServerConnection, Py4JClientC
 		socket = null;
 		writer = null;
 		reader = null;
+		commandRegistry.getGateway().closeConnection(this);
 		if (!initiatedFromClient) {
 			// Only fires this event when the connection is created by the JavaServer to respect the protocol.
 			fireConnectionStopped();
@@ -0,0 +1,121 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Limits the number of commands that the connections of a server can execute
+ * at the same time. A command that cannot get a permit is rejected right away
+ * instead of waiting for another command to complete: a command may be
+ * waiting for a callback that itself needs a permit. A rejected command is
+ * skipped and answered with an error, and the connection stays open.
+ * </p>
+ *
+ * @author Barthelemy Dagenais
+ *
+ */
+public class CommandPermits {
+
+	private final int maxCommands;
+
+	private final Semaphore semaphore;
+
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	/**
+	 *
+	 * @param maxCommands
+	 *            The maximum number of commands executed at the same time.
+	 *            Must be positive.
+	 */
+	public CommandPermits(int maxCommands) {
+		if (maxCommands <= 0) {
+			throw new IllegalArgumentException("The maximum number of commands must be positive: " + maxCommands);
+		}
+		this.maxCommands = maxCommands;
+		this.semaphore = new Semaphore(maxCommands);
+	}
+
+	/**
+	 *
+	 * @return The number of commands currently executed.
+	 */
+	public int getCommandsInFlight() {
+		return maxCommands - semaphore.availablePermits();
+	}
+
+	public int getMaxCommands() {
+		return maxCommands;
+	}
+
+	/**
+	 *
+	 * @return The error response sent instead of the response of a rejected
+	 *         command. The connection stays open.
+	 */
+	public String getRejectedCommandError() {
+		return Protocol.getOutputErrorCommand(
+				"Too many commands in flight: the command was rejected. Maximum: " + maxCommands);
+	}
+
+	/**
+	 *
+	 * @return The number of commands that were rejected since the permits were
+	 *         created.
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	/**
+	 * <p>
+	 * Must be called once for each successful call to {@link #tryAcquire()}.
+	 * </p>
+	 */
+	public void release() {
+		semaphore.release();
+	}
+
+	/**
+	 *
+	 * @return True if the command can be executed. False if the command must be
+	 *         rejected, in which case the rejection is counted.
+	 */
+	public boolean tryAcquire() {
+		if (semaphore.tryAcquire()) {
+			return true;
+		}
+		rejectedCount.incrementAndGet();
+		return false;
+	}
+}
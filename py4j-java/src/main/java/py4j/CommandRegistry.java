@@ -0,0 +1,152 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import py4j.commands.Command;
+import py4j.commands.StatelessCommand;
+
+/**
+ * <p>
+ * Immutable set of the commands available to the connections of a server.
+ * </p>
+ *
+ * <p>
+ * The {@link StatelessCommand stateless commands} are instantiated once when
+ * the registry is created and are shared by all the connections. The other
+ * commands are instantiated by a connection the first time it uses them (see
+ * {@link #newConnectionCommand(String, Py4JServerConnection)}), so opening a
+ * connection does not instantiate any command.
+ * </p>
+ *
+ * @author Barthelemy Dagenais
+ *
+ */
+public class CommandRegistry {
+
+	private final Logger logger = Logger.getLogger(CommandRegistry.class.getName());
+
+	private final Gateway gateway;
+
+	private final Map<String, Command> sharedCommands;
+
+	private final Map<String, Class<? extends Command>> connectionCommands;
+
+	/**
+	 *
+	 * @param gateway
+	 * @param customCommands
+	 *            Commands added to the base commands (see
+	 *            {@link GatewayConnection#getBaseCommands()}). Can hide a base
+	 *            command with the same name. Can be null.
+	 */
+	public CommandRegistry(Gateway gateway, List<Class<? extends Command>> customCommands) {
+		this.gateway = gateway;
+		Map<String, Command> shared = new HashMap<String, Command>();
+		Map<String, Class<? extends Command>> perConnection = new HashMap<String, Class<? extends Command>>();
+		registerCommands(GatewayConnection.getBaseCommands(), shared, perConnection);
+		if (customCommands != null) {
+			registerCommands(customCommands, shared, perConnection);
+		}
+		this.sharedCommands = Collections.unmodifiableMap(shared);
+		this.connectionCommands = Collections.unmodifiableMap(perConnection);
+	}
+
+	private void registerCommands(List<Class<? extends Command>> commandsClazz, Map<String, Command> shared,
+			Map<String, Class<? extends Command>> perConnection) {
+		for (Class<? extends Command> clazz : commandsClazz) {
+			try {
+				Command cmd = clazz.newInstance();
+				String name = cmd.getCommandName();
+				if (cmd instanceof StatelessCommand) {
+					cmd.init(gateway, null);
+					shared.put(name, cmd);
+					perConnection.remove(name);
+				} else {
+					// The instance is only used to get the command name.
+					perConnection.put(name, clazz);
+					shared.remove(name);
+				}
+			} catch (Exception e) {
+				String name = "null";
+				if (clazz != null) {
+					name = clazz.getName();
+				}
+				logger.log(Level.SEVERE, "Could not initialize command " + name, e);
+			}
+		}
+	}
+
+	public Gateway getGateway() {
+		return gateway;
+	}
+
+	/**
+	 *
+	 * @param commandName
+	 * @return The stateless command registered with this name or null if
+	 *         there is no such command.
+	 */
+	public Command getSharedCommand(String commandName) {
+		return sharedCommands.get(commandName);
+	}
+
+	/**
+	 * <p>
+	 * Creates the instance of a command that is specific to a connection.
+	 * </p>
+	 *
+	 * @param commandName
+	 * @param connection
+	 *            The connection that will execute the command.
+	 * @return The initialized command or null if there is no command
+	 *         specific to a connection with this name.
+	 */
+	public Command newConnectionCommand(String commandName, Py4JServerConnection connection) {
+		Class<? extends Command> clazz = connectionCommands.get(commandName);
+		if (clazz == null) {
+			return null;
+		}
+		try {
+			Command cmd = clazz.newInstance();
+			cmd.init(gateway, connection);
+			return cmd;
+		} catch (Exception e) {
+			logger.log(Level.SEVERE, "Could not initialize command " + clazz.getName(), e);
+			return null;
+		}
+	}
+}
@@ -29,6 +29,8 @@
  *****************************************************************************/
 package py4j;
 
+import java.net.Socket;
+
 /**
  * <p>
  * This class implements a default {@link py4j.GatewayServerListener
@@ -42,10 +44,18 @@ package py4j;
  */
 public class DefaultGatewayServerListener implements GatewayServerListener {
 
+	@Override
+	public void commandRejected(Py4JServerConnection gatewayConnection, String commandName) {
+	}
+
 	@Override
 	public void connectionError(Exception e) {
 	}
 
+	@Override
+	public void connectionRejected(Socket socket) {
+	}
+
 	@Override
 	public void connectionStarted(Py4JServerConnection gatewayConnection) {
 	}
@@ -30,11 +30,12 @@
 package py4j;
 
 import java.lang.reflect.Array;
+import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.math.BigDecimal;
-import java.math.BigInteger;
 import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -66,7 +67,7 @@ public class Gateway {
 	private final Map<String, Object> bindings = new ConcurrentHashMap<String, Object>();
 	private final AtomicInteger objCounter = new AtomicInteger();
 	private final AtomicInteger argCounter = new AtomicInteger();
-	private final static String OBJECT_NAME_PREFIX = "o";
+	private final static String OBJECT_NAME_PREFIX = Protocol.OBJECT_ID_PREFIX;
 	private final Object entryPoint;
 	private final ReflectionEngine rEngine = new ReflectionEngine();
 	private Py4JPythonClient cbClient;
@@ -76,6 +77,16 @@ public class Gateway {
 
 	private boolean isStarted = false;
 
+	private final Set<Py4JServerConnection> callbackDoubleBitsConnections = Collections
+			.newSetFromMap(new ConcurrentHashMap<Py4JServerConnection, Boolean>());
+
+	private final Set<Class<?>> oneWayInterfaces = Collections
+			.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
+
+	private final Set<Method> oneWayMethods = Collections.newSetFromMap(new ConcurrentHashMap<Method, Boolean>());
+
+	private volatile OneWayCallbackListener oneWayCallbackListener;
+
 	public Gateway(Object entryPoint) {
 		this(entryPoint, null);
 	}
@@ -121,6 +132,46 @@ public class Gateway {
 		logger.info("Cleaning Connection");
 	}
 
+	/**
+	 * <p>
+	 * Called when a connection is closed. Forgets the features that this
+	 * connection negotiated for the callbacks.
+	 * </p>
+	 *
+	 * @param connection
+	 */
+	public void closeConnection(Py4JServerConnection connection) {
+		callbackDoubleBitsConnections.remove(connection);
+	}
+
+	/**
+	 * <p>
+	 * Calls the void methods of this interface, implemented by Python objects,
+	 * as one-way callbacks, as if the interface was annotated with
+	 * {@link OneWay}.
+	 * </p>
+	 *
+	 * @param interfaceClass
+	 */
+	public void addOneWayInterface(Class<?> interfaceClass) {
+		oneWayInterfaces.add(interfaceClass);
+	}
+
+	/**
+	 * <p>
+	 * Calls this void method, implemented by Python objects, as a one-way
+	 * callback, as if it was annotated with {@link OneWay}.
+	 * </p>
+	 *
+	 * @param method
+	 */
+	public void addOneWayMethod(Method method) {
+		if (!method.getReturnType().equals(Void.TYPE)) {
+			throw new IllegalArgumentException("Only void methods can be one-way: " + method);
+		}
+		oneWayMethods.add(method);
+	}
+
 	public void deleteObject(String objectId) {
 		bindings.remove(objectId);
 	}
@@ -142,6 +193,15 @@ public class Gateway {
 		return cbClient;
 	}
 
+	/**
+	 *
+	 * @return The listener notified when a one-way callback fails or null if
+	 *         the failures are only logged.
+	 */
+	public OneWayCallbackListener getOneWayCallbackListener() {
+		return oneWayCallbackListener;
+	}
+
 	public JVMView getDefaultJVMView() {
 		return this.defaultJVMView;
 	}
@@ -229,10 +289,26 @@ public class Gateway {
 		if (args == null) {
 			args = new ArrayList<Object>();
 		}
+		return invokeConstructor(fqn, args.toArray());
+	}
+
+	/**
+	 * <p>
+	 * Invokes a constructor and returned the constructed object.
+	 * </p>
+	 *
+	 * @param fqn
+	 *            The fully qualified name of the class.
+	 * @param parameters
+	 * @return
+	 */
+	public ReturnObject invokeConstructor(String fqn, Object[] parameters) {
+		if (parameters == null) {
+			parameters = new Object[0];
+		}
 		ReturnObject returnObject = null;
 		try {
 			logger.finer("Calling constructor: " + fqn);
-			Object[] parameters = args.toArray();
 
 			MethodInvoker method = rEngine.getConstructor(fqn, parameters);
 			Object object = rEngine.invoke(null, method, parameters);
@@ -263,11 +339,27 @@ public class Gateway {
 		if (args == null) {
 			args = new ArrayList<Object>();
 		}
+		return invokeMethod(methodName, targetObjectId, args.toArray());
+	}
+
+	/**
+	 * <p>
+	 * Invokes a method.
+	 * </p>
+	 *
+	 * @param methodName
+	 * @param targetObjectId
+	 * @param parameters
+	 * @return
+	 */
+	public ReturnObject invokeMethod(String methodName, String targetObjectId, Object[] parameters) {
+		if (parameters == null) {
+			parameters = new Object[0];
+		}
 		ReturnObject returnObject = null;
 		try {
 			Object targetObject = getObjectFromId(targetObjectId);
 			logger.finer("Calling: " + methodName);
-			Object[] parameters = args.toArray();
 
 			MethodInvoker method = null;
 			if (targetObject != null) {
@@ -315,7 +407,7 @@ public class Gateway {
 
 	protected boolean isPrimitiveObject(Object object) {
 		return object instanceof Boolean || object instanceof String
-				|| (object instanceof Number && !(object instanceof BigDecimal || object instanceof BigInteger))
+				|| (object instanceof Number && !(object instanceof BigDecimal))
 				|| object instanceof Character || object instanceof byte[];
 	}
 
@@ -323,6 +415,32 @@ public class Gateway {
 		return object instanceof Set;
 	}
 
+	/**
+	 *
+	 * @return True if doubles and floats are sent as their IEEE-754 bits in
+	 *         the arguments of callbacks, i.e., if an open connection
+	 *         negotiated the {@link Protocol#DOUBLE_BITS_FEATURE}.
+	 */
+	public boolean isCallbackDoubleBits() {
+		return !callbackDoubleBitsConnections.isEmpty();
+	}
+
+	/**
+	 *
+	 * @param method
+	 *            A method of an interface implemented by a Python object.
+	 * @return True if the method is called without waiting for the Python
+	 *         side.
+	 */
+	public boolean isOneWay(Method method) {
+		if (!method.getReturnType().equals(Void.TYPE)) {
+			return false;
+		}
+		Class<?> declaringClass = method.getDeclaringClass();
+		return method.isAnnotationPresent(OneWay.class) || declaringClass.isAnnotationPresent(OneWay.class)
+				|| oneWayMethods.contains(method) || oneWayInterfaces.contains(declaringClass);
+	}
+
 	public boolean isStarted() {
 		return isStarted;
 	}
@@ -347,6 +465,38 @@ public class Gateway {
 		return bindings.put(id, object);
 	}
 
+	/**
+	 * <p>
+	 * Enables or disables sending doubles and floats as their IEEE-754 bits
+	 * in the arguments of callbacks. This is enabled when a client negotiates
+	 * the {@link Protocol#DOUBLE_BITS_FEATURE}, which means that the Python
+	 * side of the callback connections can decode them, and it stays enabled
+	 * until all the connections that negotiated it are closed (see
+	 * {@link #closeConnection(Py4JServerConnection)}).
+	 * </p>
+	 *
+	 * @param connection
+	 *            The connection that negotiated the feature.
+	 * @param isCallbackDoubleBits
+	 */
+	public void setCallbackDoubleBits(Py4JServerConnection connection, boolean isCallbackDoubleBits) {
+		if (isCallbackDoubleBits) {
+			callbackDoubleBitsConnections.add(connection);
+		} else {
+			callbackDoubleBitsConnections.remove(connection);
+		}
+	}
+
+	/**
+	 *
+	 * @param oneWayCallbackListener
+	 *            The listener notified when a one-way callback fails. If
+	 *            null, the failures are only logged.
+	 */
+	public void setOneWayCallbackListener(OneWayCallbackListener oneWayCallbackListener) {
+		this.oneWayCallbackListener = oneWayCallbackListener;
+	}
+
 	public void setStarted(boolean isStarted) {
 		this.isStarted = isStarted;
 	}
@@ -32,11 +32,8 @@ package py4j;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
-import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -46,6 +43,7 @@ import java.util.logging.Logger;
 
 import py4j.commands.ArrayCommand;
 import py4j.commands.AuthCommand;
+import py4j.commands.BatchCommand;
 import py4j.commands.CallCommand;
 import py4j.commands.CancelCommand;
 import py4j.commands.Command;
@@ -57,6 +55,8 @@ import py4j.commands.HelpPageCommand;
 import py4j.commands.JVMViewCommand;
 import py4j.commands.ListCommand;
 import py4j.commands.MemoryCommand;
+import py4j.commands.MultiplexCommand;
+import py4j.commands.NegotiateCommand;
 import py4j.commands.ReflectionCommand;
 import py4j.commands.ShutdownGatewayServerCommand;
 import py4j.commands.StreamCommand;
@@ -74,6 +74,13 @@ import py4j.commands.StreamCommand;
  * </p>
  *
  * <p>
+ * Commands are processed in the order they are received. If a client
+ * pipelines its commands (i.e., sends several commands without waiting for
+ * the responses), the responses are coalesced and sent together once there
+ * is no more command to read.
+ * </p>
+ *
+ * <p>
  * This class is not intended to be directly accessed by users.
  * </p>
  *
@@ -89,9 +96,13 @@ public class GatewayConnection implements Runnable, Py4JServerConnection {
 	protected final AuthCommand authCommand;
 	protected final BufferedWriter writer;
 	protected final BufferedReader reader;
+	protected final CommandRegistry commandRegistry;
+	// Commands specific to this connection. Stateless commands are shared
+	// through the registry.
 	protected final Map<String, Command> commands;
 	protected final Logger logger = Logger.getLogger(GatewayConnection.class.getName());
 	protected final List<GatewayServerListener> listeners;
+	protected CommandPermits commandPermits;
 
 	static {
 		baseCommands = new ArrayList<Class<? extends Command>>();
@@ -109,6 +120,9 @@ public class GatewayConnection implements Runnable, Py4JServerConnection {
 		baseCommands.add(ExceptionCommand.class);
 		baseCommands.add(DirCommand.class);
 		baseCommands.add(StreamCommand.class);
+		baseCommands.add(NegotiateCommand.class);
+		baseCommands.add(BatchCommand.class);
+		baseCommands.add(MultiplexCommand.class);
 	}
 
 	/**
@@ -133,24 +147,46 @@ public class GatewayConnection implements Runnable, Py4JServerConnection {
 
 	public GatewayConnection(Gateway gateway, Socket socket, String authToken,
 			List<Class<? extends Command>> customCommands, List<GatewayServerListener> listeners) throws IOException {
+		this(new CommandRegistry(gateway, customCommands), socket, authToken, listeners);
+	}
+
+	/**
+	 *
+	 * @param commandRegistry
+	 *            The commands of the server, shared by all its connections.
+	 * @param socket
+	 * @param authToken
+	 * @param listeners
+	 * @throws IOException
+	 */
+	public GatewayConnection(CommandRegistry commandRegistry, Socket socket, String authToken,
+			List<GatewayServerListener> listeners) throws IOException {
+		this(commandRegistry, socket, new ProtocolReader(socket.getInputStream()),
+				new ProtocolWriter(socket.getOutputStream()), authToken, listeners);
+	}
+
+	/**
+	 * <p>
+	 * Creates a connection that reads its commands from the provided reader
+	 * and writes its responses to the provided writer instead of using the
+	 * streams of the socket (e.g., when the socket is non-blocking).
+	 * </p>
+	 */
+	protected GatewayConnection(CommandRegistry commandRegistry, Socket socket, BufferedReader reader,
+			BufferedWriter writer, String authToken, List<GatewayServerListener> listeners) {
 		super();
 		this.socket = socket;
 		this.authToken = authToken;
+		this.reader = reader;
+		this.writer = writer;
+		this.commandRegistry = commandRegistry;
+		this.commands = new HashMap<String, Command>();
 		if (authToken != null) {
 			this.authCommand = new AuthCommand(authToken);
+			initCommand(commandRegistry.getGateway(), authCommand);
 		} else {
 			this.authCommand = null;
 		}
-		this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), Charset.forName("UTF-8")));
-		this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), Charset.forName("UTF-8")));
-		this.commands = new HashMap<String, Command>();
-		initCommands(gateway, baseCommands);
-		if (customCommands != null) {
-			initCommands(gateway, customCommands);
-		}
-		if (authCommand != null) {
-			initCommand(gateway, authCommand);
-		}
 		this.listeners = listeners;
 	}
 
@@ -158,10 +194,32 @@ public class GatewayConnection implements Runnable, Py4JServerConnection {
 	 * <p>Wraps the GatewayConnection in a thread and start the thread.</p>
 	 */
 	public void startConnection() {
-		Thread t = new Thread(this);
+		startConnection(false);
+	}
+
+	/**
+	 * <p>Wraps the GatewayConnection in a thread and start the thread.</p>
+	 *
+	 * @param virtualThread
+	 *            If true, the connection runs in a virtual thread when the
+	 *            JVM supports them.
+	 */
+	public void startConnection(boolean virtualThread) {
+		Thread t = ThreadUtil.newThread(this, virtualThread);
 		t.start();
 	}
 
+	protected void fireCommandRejected(String commandName) {
+		logger.warning("Command Rejected: " + commandName);
+		for (GatewayServerListener listener : listeners) {
+			try {
+				listener.commandRejected(this, commandName);
+			} catch (Exception e) {
+				logger.log(Level.SEVERE, "A listener crashed.", e);
+			}
+		}
+	}
+
 	protected void fireConnectionStopped() {
 		logger.info("Connection Stopped");
 
@@ -174,6 +232,30 @@ public class GatewayConnection implements Runnable, Py4JServerConnection {
 		}
 	}
 
+	/**
+	 *
+	 * @param commandName
+	 * @return The command registered with this name on this connection or
+	 *         null if there is no such command. Commands specific to a
+	 *         connection are created the first time they are requested.
+	 */
+	public Command getCommand(String commandName) {
+		Command command = commandRegistry.getSharedCommand(commandName);
+		if (command == null) {
+			// Multiplexed commands are looked up by worker threads.
+			synchronized (commands) {
+				command = commands.get(commandName);
+				if (command == null) {
+					command = commandRegistry.newConnectionCommand(commandName, this);
+					if (command != null) {
+						commands.put(commandName, command);
+					}
+				}
+			}
+		}
+		return command;
+	}
+
 	/**
 	 *
 	 * @return The socket used by this gateway connection.
@@ -184,7 +266,23 @@ public class GatewayConnection implements Runnable, Py4JServerConnection {
 
 	/**
 	 * <p>
-	 * Override this method to initialize custom commands.
+	 * Sets the permits shared by the connections of a server to limit the
+	 * number of commands executed at the same time. Must be called before the
+	 * connection is started. If null, the number of commands is not limited.
+	 * </p>
+	 *
+	 * @param commandPermits
+	 */
+	public void setCommandPermits(CommandPermits commandPermits) {
+		this.commandPermits = commandPermits;
+	}
+
+	/**
+	 * <p>
+	 * Creates commands specific to this connection. Custom commands are
+	 * usually provided by the {@link CommandRegistry} instead: the commands
+	 * initialized by this method do not hide the stateless commands of the
+	 * registry.
 	 * </p>
 	 *
 	 * @param gateway
@@ -206,15 +304,93 @@ public class GatewayConnection implements Runnable, Py4JServerConnection {
 
 	private void initCommand(Gateway gateway, Command cmd) {
 		cmd.init(gateway, this);
-		commands.put(cmd.getCommandName(), cmd);
+		synchronized (commands) {
+			commands.put(cmd.getCommandName(), cmd);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Called before each command. If more input was already received, the
+	 * response of this command is deferred until
+	 * {@link #flushResponses()} so that the responses of pipelined commands
+	 * are sent together, the first one included.
+	 * </p>
+	 *
+	 * @throws IOException
+	 */
+	protected void deferResponses() throws IOException {
+		if (writer instanceof ProtocolWriter) {
+			synchronized (writer) {
+				if (reader.ready()) {
+					((ProtocolWriter) writer).setFlushDeferred(true);
+				}
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Called after each command. If the next command was already received,
+	 * its response is deferred so that it can be coalesced with the responses
+	 * of the following pipelined commands. Otherwise, the deferred responses
+	 * are sent.
+	 * </p>
+	 *
+	 * @throws IOException
+	 */
+	protected void flushResponses() throws IOException {
+		if (writer instanceof ProtocolWriter) {
+			// Multiplexed responses are written concurrently by workers.
+			synchronized (writer) {
+				if (reader.ready()) {
+					((ProtocolWriter) writer).setFlushDeferred(true);
+				} else {
+					sendDeferredResponses();
+				}
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Sends the deferred responses right away and stops deferring the
+	 * responses.
+	 * </p>
+	 *
+	 * @throws IOException
+	 */
+	protected void sendDeferredResponses() throws IOException {
+		if (writer instanceof ProtocolWriter) {
+			synchronized (writer) {
+				((ProtocolWriter) writer).setFlushDeferred(false);
+				writer.flush();
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @param command
+	 * @return True if the command writes directly to the socket instead of
+	 *         the writer, in which case the deferred responses must be sent
+	 *         before the command is executed.
+	 */
+	protected boolean writesToSocket(Command command) {
+		return command instanceof StreamCommand;
 	}
 
 	protected void quietSendFatalError(BufferedWriter writer, Throwable exception) {
 		try {
 			String returnCommand = Protocol.getOutputFatalErrorCommand(exception);
 			logger.fine("Trying to return error: " + returnCommand);
-			writer.write(returnCommand);
-			writer.flush();
+			synchronized (writer) {
+				if (writer instanceof ProtocolWriter) {
+					((ProtocolWriter) writer).setFlushDeferred(false);
+				}
+				writer.write(returnCommand);
+				writer.flush();
+			}
 		} catch (Exception e) {
 			logger.log(Level.FINEST, "Error in quiet send.", e);
 		}
@@ -222,29 +398,50 @@ public class GatewayConnection implements Runnable, Py4JServerConnection {
 
 	@Override
 	public void run() {
+		logger.info("Gateway Connection ready to receive messages");
+		processCommands(false);
+	}
+
+	/**
+	 * <p>
+	 * Reads and executes commands. The connection is shut down when the
+	 * client sends the quit command, when the stream is closed, or when an
+	 * error occurs.
+	 * </p>
+	 *
+	 * @param untilIdle
+	 *            If true, returns as soon as all the commands that were
+	 *            received have been executed instead of waiting for the next
+	 *            command.
+	 * @return True if the connection is still open.
+	 */
+	protected boolean processCommands(boolean untilIdle) {
 		boolean executing = false;
 		boolean reset = false;
+		boolean idle = false;
 		Throwable error = null;
 		try {
-			logger.info("Gateway Connection ready to receive messages");
 			String commandLine = null;
 			do {
 				commandLine = reader.readLine();
 				executing = true;
 				logger.fine("Received command: " + commandLine);
-				Command command = commands.get(commandLine);
+				Command command = getCommand(commandLine);
 				if (command != null) {
+					deferResponses();
 					if (authCommand != null && !authCommand.isAuthenticated()) {
 						authCommand.execute(commandLine, reader, writer);
 					} else {
-						command.execute(commandLine, reader, writer);
+						executeCommand(command, commandLine);
 					}
 					executing = false;
+					flushResponses();
 				} else {
 					reset = true;
 					throw new Py4JException("Unknown command received: " + commandLine);
 				}
-			} while (commandLine != null && !commandLine.equals("q"));
+				idle = untilIdle && !commandLine.equals("q") && !reader.ready();
+			} while (!idle && commandLine != null && !commandLine.equals("q"));
 		} catch (SocketTimeoutException ste) {
 			logger.log(Level.WARNING, "Timeout occurred while waiting for a command.", ste);
 			error = ste;
@@ -261,8 +458,91 @@ public class GatewayConnection implements Runnable, Py4JServerConnection {
 			if (error != null && executing && writer != null) {
 				quietSendFatalError(writer, error);
 			}
-			shutdown(reset);
+			if (!idle) {
+				shutdown(reset);
+			}
 		}
+		return idle;
+	}
+
+	private void executeCommand(Command command, String commandLine) throws Py4JException, IOException {
+		// Multiplexed commands take a permit when a worker executes them.
+		boolean limited = !(command instanceof MultiplexCommand);
+		if (limited && !acquireCommandPermit(commandLine)) {
+			skipCommand(command, reader, commandRegistry.getGateway());
+			writer.write(commandPermits.getRejectedCommandError());
+			writer.flush();
+			return;
+		}
+		try {
+			if (writesToSocket(command)) {
+				sendDeferredResponses();
+			}
+			command.execute(commandLine, reader, writer);
+		} finally {
+			if (limited) {
+				releaseCommandPermit();
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Takes a permit to execute a command if the server limits the number of
+	 * commands executed at the same time (see {@link CommandPermits}).
+	 * </p>
+	 *
+	 * @param commandName
+	 * @return True if the command can be executed, in which case
+	 *         {@link #releaseCommandPermit()} must be called once it is done.
+	 *         False if the command was rejected: it must be answered with
+	 *         {@link CommandPermits#getRejectedCommandError()}.
+	 */
+	public boolean acquireCommandPermit(String commandName) {
+		if (commandPermits == null || commandPermits.tryAcquire()) {
+			return true;
+		}
+		fireCommandRejected(commandName);
+		return false;
+	}
+
+	public void releaseCommandPermit() {
+		if (commandPermits != null) {
+			commandPermits.release();
+		}
+	}
+
+	/**
+	 *
+	 * @return The permits shared by the connections of the server or null if
+	 *         the number of commands is not limited.
+	 */
+	public CommandPermits getCommandPermits() {
+		return commandPermits;
+	}
+
+	/**
+	 * <p>
+	 * Consumes the rest of a command that is not executed so that the next
+	 * command can be read.
+	 * </p>
+	 */
+	static void skipCommand(Command command, BufferedReader reader, Gateway gateway) throws IOException {
+		// A batch contains one end of command part per call, then its own.
+		boolean batch = command instanceof BatchCommand;
+		int parts;
+		do {
+			if (reader instanceof ProtocolReader) {
+				parts = ((ProtocolReader) reader).skipCommandParts(gateway);
+			} else {
+				parts = 0;
+				String line = reader.readLine();
+				while (!Protocol.isEmpty(line) && !Protocol.isEnd(line)) {
+					parts++;
+					line = reader.readLine();
+				}
+			}
+		} while (batch && parts > 0);
 	}
 
 	@Override
@@ -289,6 +569,14 @@ public class GatewayConnection implements Runnable, Py4JServerConnection {
 		NetworkUtil.quietlyClose(socket);
 		NetworkUtil.quietlyClose(reader);
 		NetworkUtil.quietlyClose(writer);
+		Command multiplexCommand;
+		synchronized (commands) {
+			multiplexCommand = commands.get(MultiplexCommand.MULTIPLEX_COMMAND_NAME);
+		}
+		if (multiplexCommand instanceof MultiplexCommand) {
+			((MultiplexCommand) multiplexCommand).shutdown();
+		}
+		commandRegistry.getGateway().closeConnection(this);
 		fireConnectionStopped();
 	}
 }
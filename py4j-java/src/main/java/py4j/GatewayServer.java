@@ -37,12 +37,15 @@ import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.Charset;
 import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
@@ -163,6 +166,18 @@ public class GatewayServer extends DefaultGatewayServerListener implements Py4JJ
 
 	private boolean isShuttingDown = false;
 
+	private volatile boolean virtualThreads = false;
+
+	private volatile int maxConnections = 0;
+
+	private volatile int acceptQueueSize = 0;
+
+	private volatile CommandPermits commandPermits;
+
+	private volatile CommandRegistry commandRegistry;
+
+	private final AtomicLong rejectedConnectionCount = new AtomicLong();
+
 	private final Lock lock = new ReentrantLock(true);
 
 	static {
@@ -451,7 +466,7 @@ public class GatewayServer extends DefaultGatewayServerListener implements Py4JJ
 		this(gateway, port, address, connectTimeout, readTimeout, customCommands, sSocketFactory, null);
 	}
 
-	private GatewayServer(Gateway gateway, int port, InetAddress address, int connectTimeout, int readTimeout,
+	GatewayServer(Gateway gateway, int port, InetAddress address, int connectTimeout, int readTimeout,
 			List<Class<? extends Command>> customCommands, ServerSocketFactory sSocketFactory, String authToken) {
 		super();
 		this.port = port;
@@ -499,8 +514,9 @@ public class GatewayServer extends DefaultGatewayServerListener implements Py4JJ
 	 * @throws IOException
 	 */
 	protected Py4JServerConnection createConnection(Gateway gateway, Socket socket) throws IOException {
-		GatewayConnection connection = new GatewayConnection(gateway, socket, authToken, customCommands, listeners);
-		connection.startConnection();
+		GatewayConnection connection = new GatewayConnection(getCommandRegistry(), socket, authToken, listeners);
+		connection.setCommandPermits(commandPermits);
+		connection.startConnection(virtualThreads);
 		return connection;
 	}
 
@@ -515,6 +531,17 @@ public class GatewayServer extends DefaultGatewayServerListener implements Py4JJ
 		}
 	}
 
+	protected void fireConnectionRejected(Socket socket) {
+		logger.warning("Connection Rejected");
+		for (GatewayServerListener listener : listeners) {
+			try {
+				listener.connectionRejected(socket);
+			} catch (Exception e) {
+				logger.log(Level.SEVERE, "A listener crashed.", e);
+			}
+		}
+	}
+
 	protected void fireConnectionStarted(Py4JServerConnection gatewayConnection) {
 		logger.info("Connection Started");
 		for (GatewayServerListener listener : listeners) {
@@ -591,6 +618,16 @@ public class GatewayServer extends DefaultGatewayServerListener implements Py4JJ
 		}
 	}
 
+	/**
+	 *
+	 * @return The maximum number of pending connections that the operating
+	 *         system queues before they are accepted. 0 means the default of
+	 *         the platform.
+	 */
+	public int getAcceptQueueSize() {
+		return acceptQueueSize;
+	}
+
 	@Override
 	public InetAddress getAddress() {
 		return address;
@@ -600,6 +637,28 @@ public class GatewayServer extends DefaultGatewayServerListener implements Py4JJ
 		return gateway.getCallbackClient();
 	}
 
+	/**
+	 *
+	 * @return The permits limiting the number of commands executed at the
+	 *         same time, or null if the number of commands is not limited.
+	 */
+	public CommandPermits getCommandPermits() {
+		return commandPermits;
+	}
+
+	/**
+	 *
+	 * @return The number of connections currently opened.
+	 */
+	public int getConnectionCount() {
+		try {
+			lock.lock();
+			return connections.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
 	public int getConnectTimeout() {
 		return connectTimeout;
 	}
@@ -628,6 +687,16 @@ public class GatewayServer extends DefaultGatewayServerListener implements Py4JJ
 		return port;
 	}
 
+	/**
+	 *
+	 * @return The maximum number of connections that can be opened at the
+	 *         same time. 0 means that the number of connections is not
+	 *         limited.
+	 */
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
 	/**
 	 *
 	 * @return The port specified when the gateway server is initialized. This
@@ -652,22 +721,172 @@ public class GatewayServer extends DefaultGatewayServerListener implements Py4JJ
 		return readTimeout;
 	}
 
+	/**
+	 *
+	 * @return The number of connections that were rejected because the
+	 *         server already had the maximum number of connections.
+	 */
+	public long getRejectedConnectionCount() {
+		return rejectedConnectionCount.get();
+	}
+
+	/**
+	 *
+	 * @return True if the connections run in virtual threads when the JVM
+	 *         supports them.
+	 */
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	/**
+	 * <p>
+	 * Sets the backlog of the server socket. Must be called before the server
+	 * is started. 0 means the default of the platform.
+	 * </p>
+	 *
+	 * @param acceptQueueSize
+	 */
+	public void setAcceptQueueSize(int acceptQueueSize) {
+		this.acceptQueueSize = acceptQueueSize;
+	}
+
+	/**
+	 * <p>
+	 * Limits the number of commands that all connections can execute at the
+	 * same time. Excess commands are skipped and answered with an error, and
+	 * their connection stays open (see {@link CommandPermits}). Only affects
+	 * the connections started after this call. 0 means no limit.
+	 * </p>
+	 *
+	 * @param maxCommands
+	 */
+	public void setMaxCommands(int maxCommands) {
+		this.commandPermits = maxCommands > 0 ? new CommandPermits(maxCommands) : null;
+	}
+
+	/**
+	 * <p>
+	 * Limits the number of connections that can be opened at the same time.
+	 * Excess connections are answered with an error and closed right after
+	 * they are accepted. 0 means no limit.
+	 * </p>
+	 *
+	 * @param maxConnections
+	 */
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	/**
+	 * <p>
+	 * If true, each new connection runs in a virtual thread when the JVM
+	 * supports them (Java 21+) and in a platform thread otherwise. Connections
+	 * that were already started are not affected. With a
+	 * {@link SelectorGatewayServer}, this applies to the new workers.
+	 * </p>
+	 *
+	 * @param virtualThreads
+	 */
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+
+	/**
+	 * <p>
+	 * Accepts connections until the server is shut down. Each connection is
+	 * processed by {@link #processSocket(Socket)}.
+	 * </p>
+	 *
+	 * @throws IOException
+	 */
+	protected void acceptConnections() throws IOException {
+		while (!isShutdown) {
+			Socket socket = sSocket.accept();
+			processSocket(socket);
+		}
+	}
+
 	protected void processSocket(Socket socket) {
+		boolean accepted = false;
 		try {
 			lock.lock();
-			if (!isShutdown) {
-				socket.setSoTimeout(readTimeout);
-				Py4JServerConnection gatewayConnection = createConnection(gateway, socket);
-				connections.add(gatewayConnection);
-				fireConnectionStarted(gatewayConnection);
+			if (!isShutdown && maxConnections > 0 && connections.size() >= maxConnections) {
+				rejectSocket(socket);
+			} else {
+				accepted = !isShutdown;
 			}
+		} finally {
+			lock.unlock();
+		}
+		if (!accepted) {
+			return;
+		}
+
+		// The connection is created without holding the lock: connections
+		// that stop and the shutdown of the server are not blocked by the
+		// setup of a new connection.
+		Py4JServerConnection gatewayConnection;
+		try {
+			socket.setSoTimeout(readTimeout);
+			gatewayConnection = createConnection(gateway, socket);
 		} catch (Exception e) {
 			// Error while processing a connection should not be prevent the
 			// gateway server from accepting new connections.
 			fireConnectionError(e);
+			return;
+		}
+
+		boolean added = false;
+		boolean stopped = false;
+		try {
+			lock.lock();
+			if (isShutdown) {
+				stopped = true;
+			} else if (!socket.isClosed()) {
+				// Otherwise, the connection already stopped: the socket is
+				// closed before the connection is removed.
+				connections.add(gatewayConnection);
+				added = true;
+			}
 		} finally {
 			lock.unlock();
 		}
+		if (added) {
+			fireConnectionStarted(gatewayConnection);
+		} else if (stopped) {
+			gatewayConnection.shutdown();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Sends an error to a socket that exceeds the maximum number of
+	 * connections and closes it. The error is the response to the first
+	 * command sent by the other side.
+	 * </p>
+	 *
+	 * @param socket
+	 */
+	protected void rejectSocket(Socket socket) {
+		rejectedConnectionCount.incrementAndGet();
+		try {
+			byte[] error = Protocol.getOutputFatalErrorCommand(new Py4JException(
+					"Too many connections: the connection was rejected. Maximum: " + maxConnections))
+					.getBytes(Charset.forName("UTF-8"));
+			SocketChannel channel = socket.getChannel();
+			if (channel != null && !channel.isBlocking()) {
+				// The error is small enough to fit in the socket buffer.
+				channel.write(ByteBuffer.wrap(error));
+			} else {
+				socket.getOutputStream().write(error);
+				socket.getOutputStream().flush();
+			}
+		} catch (Exception e) {
+			logger.log(Level.FINE, "Could not send rejection error.", e);
+		}
+		NetworkUtil.quietlyClose(socket);
+		fireConnectionRejected(socket);
 	}
 
 	@Override
@@ -681,10 +900,7 @@ public class GatewayServer extends DefaultGatewayServerListener implements Py4JJ
 			gateway.startup();
 			fireServerStarted();
 			addListener(this);
-			while (!isShutdown) {
-				Socket socket = sSocket.accept();
-				processSocket(socket);
-			}
+			acceptConnections();
 		} catch (Exception e) {
 			fireServerError(e);
 		}
@@ -799,7 +1015,7 @@ public class GatewayServer extends DefaultGatewayServerListener implements Py4JJ
 			sSocket = sSocketFactory.createServerSocket();
 			sSocket.setSoTimeout(connectTimeout);
 			sSocket.setReuseAddress(true);
-			sSocket.bind(new InetSocketAddress(address, port), -1);
+			sSocket.bind(new InetSocketAddress(address, port), acceptQueueSize > 0 ? acceptQueueSize : -1);
 		} catch (IOException e) {
 			throw new Py4JNetworkException("Failed to bind to " + address + ":" + port, e);
 		}
@@ -894,6 +1110,25 @@ public class GatewayServer extends DefaultGatewayServerListener implements Py4JJ
 		return Collections.unmodifiableList(customCommands);
 	}
 
+	/**
+	 *
+	 * @return The commands shared by all the connections of this server.
+	 *         Created the first time a connection is created.
+	 */
+	public CommandRegistry getCommandRegistry() {
+		CommandRegistry registry = commandRegistry;
+		if (registry == null) {
+			synchronized (this) {
+				registry = commandRegistry;
+				if (registry == null) {
+					registry = new CommandRegistry(gateway, customCommands);
+					commandRegistry = registry;
+				}
+			}
+		}
+		return registry;
+	}
+
 	/**
 	 *
 	 * @return An unmodifiable list of listeners
@@ -917,6 +1152,13 @@ public class GatewayServer extends DefaultGatewayServerListener implements Py4JJ
 		private Py4JPythonClient callbackClient;
 		private List<Class<? extends Command>> customCommands;
 		private String authToken;
+		private boolean useSelector;
+		private boolean useVirtualThreads;
+		private int maxConnections;
+		private int maxCommands;
+		private int acceptQueueSize;
+		private String sharedMemoryDirectory;
+		private int callbackClientMinIdleConnections;
 
 		public GatewayServerBuilder() {
 			this(null);
@@ -940,12 +1182,43 @@ public class GatewayServer extends DefaultGatewayServerListener implements Py4JJ
 		 * @return
 		 */
 		public GatewayServer build() {
+			GatewayServer server = createServer();
+			server.setVirtualThreads(useVirtualThreads);
+			server.setMaxConnections(maxConnections);
+			server.setMaxCommands(maxCommands);
+			server.setAcceptQueueSize(acceptQueueSize);
+			if (callbackClientMinIdleConnections > 0 && server.getCallbackClient() instanceof CallbackClient) {
+				((CallbackClient) server.getCallbackClient()).setMinIdleConnections(callbackClientMinIdleConnections);
+			}
+			return server;
+		}
+
+		private GatewayServer createServer() {
+			if (useSelector && serverSocketFactory != ServerSocketFactory.getDefault()) {
+				throw new IllegalStateException("A custom server socket factory cannot be used with a selector.");
+			} else if (useSelector && sharedMemoryDirectory != null) {
+				throw new IllegalStateException("Shared memory cannot be used with a selector.");
+			}
 			if (gateway == null) {
 				if (callbackClient == null) {
 					callbackClient = new CallbackClient(GatewayServer.DEFAULT_PYTHON_PORT);
 				}
+				if (sharedMemoryDirectory != null) {
+					return new SharedMemoryGatewayServer(entryPoint, javaPort, javaAddress, connectTimeout,
+							readTimeout, customCommands, callbackClient, serverSocketFactory, authToken,
+							sharedMemoryDirectory);
+				} else if (useSelector) {
+					return new SelectorGatewayServer(entryPoint, javaPort, javaAddress, connectTimeout, readTimeout,
+							customCommands, callbackClient, authToken);
+				}
 				return new GatewayServer(entryPoint, javaPort, javaAddress, connectTimeout, readTimeout, customCommands,
 						callbackClient, serverSocketFactory, authToken);
+			} else if (sharedMemoryDirectory != null) {
+				return new SharedMemoryGatewayServer(gateway, javaPort, javaAddress, connectTimeout, readTimeout,
+						customCommands, serverSocketFactory, authToken, sharedMemoryDirectory);
+			} else if (useSelector) {
+				return new SelectorGatewayServer(gateway, javaPort, javaAddress, connectTimeout, readTimeout,
+						customCommands, authToken);
 			} else {
 				return new GatewayServer(gateway, javaPort, javaAddress, connectTimeout, readTimeout, customCommands,
 						serverSocketFactory, authToken);
@@ -987,6 +1260,34 @@ public class GatewayServer extends DefaultGatewayServerListener implements Py4JJ
 			return this;
 		}
 
+		/**
+		 * Set up the callback client to talk to the callback server listening on the given Unix
+		 * domain socket, authenticating with the given token (requires Java 16+). If the token is
+		 * null, no authentication will be attempted.
+		 */
+		public GatewayServerBuilder callbackClientUnixDomainSocket(String path, String authToken) {
+			callbackClient = new CallbackClient(GatewayServer.DEFAULT_PYTHON_PORT, GatewayServer.defaultAddress(),
+					authToken, CallbackClient.DEFAULT_MIN_CONNECTION_TIME, CallbackClient.DEFAULT_MIN_CONNECTION_TIME_UNIT,
+					new UnixDomainSocketFactory(path), true, GatewayServer.DEFAULT_READ_TIMEOUT);
+			return this;
+		}
+
+		/**
+		 * <p>
+		 * Listens for Python connections on a Unix domain socket instead of
+		 * the java port (requires Java 16+). Access to the socket can be
+		 * restricted with the permissions of its directory.
+		 * </p>
+		 *
+		 * @param path
+		 *            The path of the socket file.
+		 * @return
+		 */
+		public GatewayServerBuilder javaUnixDomainSocket(String path) {
+			this.serverSocketFactory = new UnixDomainServerSocketFactory(path);
+			return this;
+		}
+
 		public GatewayServerBuilder connectTimeout(int connectTimeout) {
 			this.connectTimeout = connectTimeout;
 			return this;
@@ -997,6 +1298,114 @@ public class GatewayServer extends DefaultGatewayServerListener implements Py4JJ
 			return this;
 		}
 
+		/**
+		 * <p>
+		 * If true, the server watches all its connections with a single
+		 * selector and only assigns a thread to a connection while it executes
+		 * commands (see {@link SelectorGatewayServer}). Cannot be combined
+		 * with a custom server socket factory.
+		 * </p>
+		 *
+		 * @param useSelector
+		 * @return
+		 */
+		public GatewayServerBuilder useSelector(boolean useSelector) {
+			this.useSelector = useSelector;
+			return this;
+		}
+
+		/**
+		 * <p>
+		 * If not null, the connections send their commands and responses
+		 * through shared memory files created by the Python side in this
+		 * directory (e.g., {@link SharedMemoryTransport#DEFAULT_DIRECTORY})
+		 * instead of the socket (see {@link SharedMemoryGatewayServer}). The
+		 * Python side must be configured to use shared memory too.
+		 * </p>
+		 *
+		 * @param sharedMemoryDirectory
+		 * @return
+		 */
+		public GatewayServerBuilder sharedMemoryDirectory(String sharedMemoryDirectory) {
+			this.sharedMemoryDirectory = sharedMemoryDirectory;
+			return this;
+		}
+
+		/**
+		 * <p>
+		 * Maximum number of connections opened at the same time. Excess
+		 * connections are answered with an error and closed. 0 (the default)
+		 * means no limit.
+		 * </p>
+		 *
+		 * @param maxConnections
+		 * @return
+		 */
+		public GatewayServerBuilder maxConnections(int maxConnections) {
+			this.maxConnections = maxConnections;
+			return this;
+		}
+
+		/**
+		 * <p>
+		 * Maximum number of commands executed at the same time by all the
+		 * connections. Excess commands are skipped and answered with an error,
+		 * and their connection stays open. 0 (the default) means no limit.
+		 * </p>
+		 *
+		 * @param maxCommands
+		 * @return
+		 */
+		public GatewayServerBuilder maxCommands(int maxCommands) {
+			this.maxCommands = maxCommands;
+			return this;
+		}
+
+		/**
+		 * <p>
+		 * Maximum number of pending connections queued by the operating system
+		 * before they are accepted. 0 (the default) means the default of the
+		 * platform.
+		 * </p>
+		 *
+		 * @param acceptQueueSize
+		 * @return
+		 */
+		public GatewayServerBuilder acceptQueueSize(int acceptQueueSize) {
+			this.acceptQueueSize = acceptQueueSize;
+			return this;
+		}
+
+		/**
+		 * <p>
+		 * Minimum number of callback connections that the callback client
+		 * keeps open, even when they are not used. The connections are
+		 * opened in the background as soon as the Python side listens.
+		 * </p>
+		 *
+		 * @param minIdleConnections
+		 * @return
+		 */
+		public GatewayServerBuilder callbackClientMinIdleConnections(int minIdleConnections) {
+			this.callbackClientMinIdleConnections = minIdleConnections;
+			return this;
+		}
+
+		/**
+		 * <p>
+		 * If true, each connection (or each worker if
+		 * {@link #useSelector(boolean)} is true) runs in a virtual thread when
+		 * the JVM supports them (Java 21+) and in a platform thread otherwise.
+		 * </p>
+		 *
+		 * @param useVirtualThreads
+		 * @return
+		 */
+		public GatewayServerBuilder useVirtualThreads(boolean useVirtualThreads) {
+			this.useVirtualThreads = useVirtualThreads;
+			return this;
+		}
+
 		public GatewayServerBuilder serverSocketFactory(ServerSocketFactory serverSocketFactory) {
 			this.serverSocketFactory = serverSocketFactory;
 			return this;
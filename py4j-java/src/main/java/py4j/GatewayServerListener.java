@@ -29,6 +29,8 @@
  *****************************************************************************/
 package py4j;
 
+import java.net.Socket;
+
 /**
  * <p>
  * A client can implement this listener to be notified of Gateway events.
@@ -41,6 +43,23 @@ public interface GatewayServerListener {
 
 	void connectionError(Exception e);
 
+	/**
+	 * <p>
+	 * Called when a command is rejected because the server already executes
+	 * the maximum number of commands. The command is skipped, an error is
+	 * sent to the other side, and the connection stays open.
+	 * </p>
+	 */
+	void commandRejected(Py4JServerConnection gatewayConnection, String commandName);
+
+	/**
+	 * <p>
+	 * Called when a connection is rejected because the server already has
+	 * the maximum number of connections. The socket is already closed.
+	 * </p>
+	 */
+	void connectionRejected(Socket socket);
+
 	void connectionStarted(Py4JServerConnection gatewayConnection);
 
 	void connectionStopped(Py4JServerConnection gatewayConnection);
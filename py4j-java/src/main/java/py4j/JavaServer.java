@@ -30,6 +30,7 @@
 package py4j;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.Socket;
 import java.util.List;
 
@@ -105,15 +106,46 @@ public class JavaServer extends GatewayServer {
 	 */
 	public JavaServer(Object entryPoint, int port, int connectTimeout, int readTimeout,
 			List<Class<? extends Command>> customCommands, Py4JPythonClientPerThread pythonClient, String authToken) {
-		super(entryPoint, port, defaultAddress(), connectTimeout, readTimeout, customCommands, pythonClient,
+		this(entryPoint, port, defaultAddress(), connectTimeout, readTimeout, customCommands, pythonClient,
 				ServerSocketFactory.getDefault(), authToken);
 	}
 
+	/**
+	 *
+	 * @param entryPoint
+	 *            The entry point of this Gateway. Can be null.
+	 * @param port
+	 *            The port the GatewayServer is listening to.
+	 * @param address
+	 *            The address the GatewayServer is listening to.
+	 * @param connectTimeout
+	 *            Time in milliseconds (0 = infinite).
+	 * @param readTimeout
+	 *            Time in milliseconds (0 = infinite).
+	 * @param customCommands
+	 *            A list of custom Command classes to augment the Server
+	 *            features. Can be null.
+	 * @param pythonClient
+	 *            The Py4JPythonClientPerThread used to call Python.
+	 * @param sSocketFactory
+	 *            The factory creating the server socket (e.g., a
+	 *            {@link UnixDomainServerSocketFactory}).
+	 * @param authToken
+	 *            Token for authenticating with the callback server.
+	 */
+	public JavaServer(Object entryPoint, int port, InetAddress address, int connectTimeout, int readTimeout,
+			List<Class<? extends Command>> customCommands, Py4JPythonClientPerThread pythonClient,
+			ServerSocketFactory sSocketFactory, String authToken) {
+		super(entryPoint, port, address, connectTimeout, readTimeout, customCommands, pythonClient, sSocketFactory,
+				authToken);
+	}
+
 	@Override
 	protected Py4JServerConnection createConnection(Gateway gateway, Socket socket) throws IOException {
-		ClientServerConnection connection = new ClientServerConnection(gateway, socket, getCustomCommands(),
+		ClientServerConnection connection = new ClientServerConnection(getCommandRegistry(), socket,
 				(Py4JPythonClientPerThread) getCallbackClient(), this, getReadTimeout(), authToken);
-		connection.startServerConnection();
+		connection.setCommandPermits(getCommandPermits());
+		connection.startServerConnection(isVirtualThreads());
 		return connection;
 	}
 }
@@ -0,0 +1,294 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.SocketFactory;
+
+/**
+ * <p>
+ * A callback client that shares a few {@link MultiplexedCallbackConnection}
+ * between all the threads instead of using one channel per concurrent
+ * callback. Many callbacks can thus be in flight on a single socket, and the
+ * Python callback server does not need one thread per channel.
+ * </p>
+ *
+ * <p>
+ * The Python callback server must support multiplexed commands. The channels
+ * are opened on demand, up to {@link #getConnectionCount()}, and are then used
+ * in turn. A channel is closed when it was not used during a cleanup period.
+ * </p>
+ *
+ * @author Barthelemy Dagenais
+ *
+ */
+public class MultiplexedCallbackClient extends CallbackClient {
+
+	public final static int DEFAULT_CONNECTION_COUNT = 2;
+
+	private final Logger logger = Logger.getLogger(MultiplexedCallbackClient.class.getName());
+
+	private final int connectionCount;
+
+	// Guarded by sharedConnections.
+	private final List<MultiplexedCallbackConnection> sharedConnections = new ArrayList<MultiplexedCallbackConnection>();
+
+	// Guarded by sharedConnections.
+	private int nextConnection = 0;
+
+	// Guarded by sharedConnections.
+	private boolean isClosed = false;
+
+	public MultiplexedCallbackClient(int port, InetAddress address, String authToken) {
+		this(port, address, authToken, DEFAULT_MIN_CONNECTION_TIME, DEFAULT_MIN_CONNECTION_TIME_UNIT,
+				SocketFactory.getDefault(), true, GatewayServer.DEFAULT_READ_TIMEOUT, DEFAULT_CONNECTION_COUNT);
+	}
+
+	/**
+	 *
+	 * @param port
+	 *            The port used by channels to connect to the Python side.
+	 * @param address
+	 *            The addressed used by channels to connect to the Python side.
+	 * @param authToken
+	 *            Token for authenticating with the callback server.
+	 * @param minConnectionTime
+	 *            The minimum connection time: channels not used during this
+	 *            time are closed.
+	 * @param minConnectionTimeUnit
+	 *            The minimum connection time unit.
+	 * @param socketFactory
+	 *            The non-{@code null} factory to make {@link java.net.Socket}s.
+	 * @param enableMemoryManagement
+	 *            If false, the Java side does not tell the Python side when a
+	 *            Python proxy is garbage collected.
+	 * @param readTimeout
+	 *            Time in milliseconds (0 = infinite) to wait for the response
+	 *            to a callback.
+	 * @param connectionCount
+	 *            The maximum number of channels shared by the threads.
+	 */
+	public MultiplexedCallbackClient(int port, InetAddress address, String authToken, long minConnectionTime,
+			TimeUnit minConnectionTimeUnit, SocketFactory socketFactory, boolean enableMemoryManagement,
+			int readTimeout, int connectionCount) {
+		super(port, address, authToken, minConnectionTime, minConnectionTimeUnit, socketFactory,
+				enableMemoryManagement, readTimeout);
+		if (connectionCount < 1) {
+			throw new IllegalArgumentException("Connection count < 1");
+		}
+		this.connectionCount = connectionCount;
+	}
+
+	@Override
+	public Py4JPythonClient copyWith(InetAddress pythonAddress, int pythonPort) {
+		return new MultiplexedCallbackClient(pythonPort, pythonAddress, authToken, minConnectionTime,
+				minConnectionTimeUnit, socketFactory, enableMemoryManagement, readTimeout, connectionCount);
+	}
+
+	@Override
+	protected Py4JClientConnection createConnection() throws IOException {
+		MultiplexedCallbackConnection connection = new MultiplexedCallbackConnection(port, address, socketFactory,
+				readTimeout, authToken);
+		connection.start();
+		return connection;
+	}
+
+	/**
+	 *
+	 * @return The maximum number of channels shared by the threads.
+	 */
+	public int getConnectionCount() {
+		return connectionCount;
+	}
+
+	/**
+	 *
+	 * @return The number of channels currently open.
+	 */
+	public int getOpenConnectionCount() {
+		synchronized (sharedConnections) {
+			int count = 0;
+			for (MultiplexedCallbackConnection connection : sharedConnections) {
+				if (!connection.isClosed()) {
+					count++;
+				}
+			}
+			return count;
+		}
+	}
+
+	/**
+	 *
+	 * @return A shared channel or null if the client is shut down.
+	 * @throws IOException
+	 */
+	private MultiplexedCallbackConnection getSharedConnection() throws IOException {
+		synchronized (sharedConnections) {
+			if (isClosed) {
+				return null;
+			}
+			Iterator<MultiplexedCallbackConnection> iterator = sharedConnections.iterator();
+			while (iterator.hasNext()) {
+				if (iterator.next().isClosed()) {
+					iterator.remove();
+				}
+			}
+			if (sharedConnections.size() < connectionCount) {
+				MultiplexedCallbackConnection connection = (MultiplexedCallbackConnection) createConnection();
+				sharedConnections.add(connection);
+				return connection;
+			}
+			nextConnection = (nextConnection + 1) % sharedConnections.size();
+			return sharedConnections.get(nextConnection);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Closes the channels that were not used since the last cleanup and that
+	 * are not waiting for a response.
+	 * </p>
+	 */
+	@Override
+	public void periodicCleanup() {
+		List<MultiplexedCallbackConnection> unusedConnections = new ArrayList<MultiplexedCallbackConnection>();
+		synchronized (sharedConnections) {
+			Iterator<MultiplexedCallbackConnection> iterator = sharedConnections.iterator();
+			while (iterator.hasNext()) {
+				MultiplexedCallbackConnection connection = iterator.next();
+				if (connection.wasUsed() || connection.getPendingCommandCount() > 0) {
+					connection.setUsed(false);
+				} else {
+					iterator.remove();
+					unusedConnections.add(connection);
+				}
+			}
+		}
+		for (MultiplexedCallbackConnection connection : unusedConnections) {
+			connection.shutdown();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Sends a command on one of the shared channels. If the response is not
+	 * received in time, the channel is kept open for the other commands.
+	 * </p>
+	 */
+	@Override
+	public String sendCommand(String command, boolean blocking) {
+		MultiplexedCallbackConnection connection;
+		try {
+			connection = getSharedConnection();
+		} catch (Exception e) {
+			logger.log(Level.SEVERE, "Critical error while sending a command", e);
+			throw new Py4JException("Error while obtaining a new communication channel", e);
+		}
+
+		if (connection == null) {
+			throw new Py4JException("Cannot obtain a new communication channel");
+		}
+
+		try {
+			return connection.sendCommand(command, blocking);
+		} catch (Py4JNetworkException pe) {
+			logger.log(Level.WARNING, "Error while sending a command", pe);
+			if (shouldRetrySendCommand(connection, pe)) {
+				// Retry in case the channel was dead.
+				return sendCommand(command, blocking);
+			} else {
+				logger.log(Level.SEVERE, "Error while sending a command.", pe);
+				throw new Py4JException("Error while sending a command.", pe);
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Sends a command on one of the shared channels. No thread waits for the
+	 * response: the future is completed by the thread reading the responses
+	 * of the channel, so its listeners must not block.
+	 * </p>
+	 */
+	@Override
+	public CallbackFuture sendCommandAsync(String command) {
+		MultiplexedCallbackConnection connection;
+		try {
+			connection = getSharedConnection();
+		} catch (Exception e) {
+			logger.log(Level.SEVERE, "Critical error while sending a command", e);
+			return CallbackFuture.failedFuture(
+					new Py4JException("Error while obtaining a new communication channel", e));
+		}
+
+		if (connection == null) {
+			return CallbackFuture.failedFuture(new Py4JException("Cannot obtain a new communication channel"));
+		}
+
+		try {
+			return connection.sendCommandAsync(command);
+		} catch (Py4JNetworkException pe) {
+			logger.log(Level.WARNING, "Error while sending a command", pe);
+			if (shouldRetrySendCommand(connection, pe)) {
+				// Retry in case the channel was dead.
+				return sendCommandAsync(command);
+			} else {
+				return CallbackFuture.failedFuture(new Py4JException("Error while sending a command.", pe));
+			}
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		List<MultiplexedCallbackConnection> connections;
+		synchronized (sharedConnections) {
+			isClosed = true;
+			connections = new ArrayList<MultiplexedCallbackConnection>(sharedConnections);
+			sharedConnections.clear();
+		}
+		for (MultiplexedCallbackConnection connection : connections) {
+			connection.shutdown();
+		}
+		super.shutdown();
+	}
+
+	@Override
+	public void warmUp() {
+		// Do nothing, channels are shared and opened on demand.
+	}
+}
@@ -0,0 +1,355 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j;
+
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.SocketFactory;
+
+/**
+ * <p>
+ * A callback channel that can be used by several threads at the same time.
+ * Each command is sent as a multiplexed command (see {@link Protocol}) with a
+ * correlation id, and a dedicated thread reads the responses, which can be
+ * received in any order, and hands them to the waiting threads.
+ * </p>
+ *
+ * <p>
+ * Commands can also be sent asynchronously: the reader thread completes the
+ * future of the command, so no thread waits for the response.
+ * </p>
+ *
+ * <p>
+ * The Python callback server executes the multiplexed commands concurrently,
+ * so a slow callback does not hold up the callbacks sent after it on the same
+ * channel.
+ * </p>
+ *
+ * @author Barthelemy Dagenais
+ *
+ */
+public class MultiplexedCallbackConnection implements Py4JClientConnection {
+
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	private final static AtomicInteger readerCounter = new AtomicInteger();
+
+	private final Logger logger = Logger.getLogger(MultiplexedCallbackConnection.class.getName());
+
+	private final int port;
+
+	private final InetAddress address;
+
+	private final SocketFactory socketFactory;
+
+	private final int blockingReadTimeout;
+
+	private final int nonBlockingReadTimeout;
+
+	private final String authToken;
+
+	private final AtomicLong nextId = new AtomicLong();
+
+	private final ConcurrentMap<Long, CallbackFuture> pendingResponses = new ConcurrentHashMap<Long, CallbackFuture>();
+
+	private volatile boolean used;
+
+	private volatile boolean closed;
+
+	// Why the channel was closed, if it was not closed by shutdown().
+	private volatile Exception error;
+
+	private Socket socket;
+
+	private ProtocolReader reader;
+
+	private OutputStream output;
+
+	/**
+	 *
+	 * @param port The port used to connect to the Python side.
+	 * @param address The address used to connect to the Python side.
+	 * @param socketFactory The socket factory used to create a socket (connection) to the Python side.
+	 * @param readTimeout
+	 *            Time in milliseconds (0 = infinite) to wait for the response to a command. Contrary to
+	 *            {@link CallbackConnection}, the channel is not closed when a response is not received in time:
+	 *            the other commands sent on the channel are not affected. If readTimeout = 0, a default
+	 *            readTimeout of 1000 is used for operations that must absolutely be non-blocking.
+	 * @param authToken Token for authenticating with the callback server.
+	 */
+	public MultiplexedCallbackConnection(int port, InetAddress address, SocketFactory socketFactory, int readTimeout,
+			String authToken) {
+		super();
+		this.port = port;
+		this.address = address;
+		this.socketFactory = socketFactory;
+		this.blockingReadTimeout = readTimeout;
+		if (readTimeout > 0) {
+			this.nonBlockingReadTimeout = readTimeout;
+		} else {
+			this.nonBlockingReadTimeout = CallbackConnection.DEFAULT_NONBLOCKING_SO_TIMEOUT;
+		}
+		this.authToken = authToken;
+	}
+
+	/**
+	 *
+	 * @return The number of commands waiting for a response.
+	 */
+	public int getPendingCommandCount() {
+		return pendingResponses.size();
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	private void readResponses() {
+		Exception exception = null;
+		try {
+			while (true) {
+				String header = reader.readLine();
+				if (header == null) {
+					throw new EOFException("The callback server closed the channel.");
+				}
+				int separator = header.indexOf(Protocol.MULTIPLEXED_LENGTH_SEPARATOR);
+				if (separator < 2 || header.charAt(0) != Protocol.MULTIPLEXED_RETURN_MESSAGE) {
+					throw new IOException("Unexpected response from the callback server: " + header);
+				}
+				long id = Long.parseLong(header.substring(1, separator));
+				int length = Integer.parseInt(header.substring(separator + 1));
+				String response = new String(reader.readRawBytes(length), UTF8);
+				CallbackFuture pending = pendingResponses.remove(id);
+				if (pending != null) {
+					pending.complete(toReturnCommand(response));
+				} else {
+					// The sender timed out.
+					logger.log(Level.FINE, "Dropping the late response to multiplexed command " + id);
+				}
+			}
+		} catch (Exception e) {
+			if (!closed) {
+				logger.log(Level.INFO, "Multiplexed callback channel stopped.", e);
+				exception = e;
+			}
+		}
+		close(exception, false);
+	}
+
+	public String sendCommand(String command) {
+		return this.sendCommand(command, true);
+	}
+
+	public String sendCommand(String command, boolean blocking) {
+		logger.log(Level.INFO, "Sending multiplexed CB command: " + command);
+		Long id = nextId.incrementAndGet();
+		CallbackFuture pending = send(id, command);
+
+		String returnCommand;
+		try {
+			int timeout = blocking ? blockingReadTimeout : nonBlockingReadTimeout;
+			if (timeout > 0) {
+				returnCommand = pending.get(timeout, TimeUnit.MILLISECONDS);
+			} else {
+				returnCommand = pending.get();
+			}
+		} catch (TimeoutException e) {
+			pendingResponses.remove(id);
+			throw new Py4JNetworkException("Error while sending a command: " + command,
+					new SocketTimeoutException("No response received in time."),
+					Py4JNetworkException.ErrorTime.ERROR_ON_RECEIVE);
+		} catch (ExecutionException e) {
+			throw new Py4JNetworkException("Error while sending a command: " + command, e.getCause(),
+					Py4JNetworkException.ErrorTime.ERROR_ON_RECEIVE);
+		} catch (InterruptedException e) {
+			pendingResponses.remove(id);
+			Thread.currentThread().interrupt();
+			throw new Py4JException("Interrupted while waiting for the response to: " + command, e);
+		}
+
+		logger.log(Level.INFO, "Returning multiplexed CB command: " + returnCommand);
+		return returnCommand;
+	}
+
+	/**
+	 * <p>
+	 * Sends a command without waiting for its response. The read timeout does
+	 * not apply: the future is only completed exceptionally if the channel is
+	 * closed before the response is received.
+	 * </p>
+	 *
+	 * @param command
+	 * @return A future completed with the response.
+	 * @throws Py4JNetworkException
+	 *             If the command could not be sent.
+	 */
+	public CallbackFuture sendCommandAsync(String command) {
+		logger.log(Level.INFO, "Sending multiplexed async CB command: " + command);
+		return send(nextId.incrementAndGet(), command);
+	}
+
+	private CallbackFuture send(Long id, String command) {
+		this.used = true;
+		CallbackFuture pending = new CallbackFuture();
+		pendingResponses.put(id, pending);
+		// Checked after registering the command: close() completes all the
+		// commands registered before it was called.
+		if (closed) {
+			pendingResponses.remove(id);
+			throw new Py4JNetworkException("Error while sending a command: channel is closed: " + command, error,
+					Py4JNetworkException.ErrorTime.ERROR_ON_SEND);
+		}
+
+		byte[] payload = command.getBytes(UTF8);
+		String header = Protocol.MULTIPLEX_COMMAND_NAME + "\n" + id + Protocol.MULTIPLEXED_LENGTH_SEPARATOR
+				+ payload.length + "\n";
+		try {
+			synchronized (output) {
+				output.write(header.getBytes(UTF8));
+				output.write(payload);
+				output.flush();
+			}
+		} catch (Exception e) {
+			pendingResponses.remove(id);
+			// A partially written command would corrupt the channel.
+			close(e, true);
+			throw new Py4JNetworkException("Error while sending a command: " + command, e,
+					Py4JNetworkException.ErrorTime.ERROR_ON_SEND);
+		}
+		return pending;
+	}
+
+	private String toReturnCommand(String response) {
+		String returnCommand = response;
+		if (returnCommand.endsWith("\n")) {
+			returnCommand = returnCommand.substring(0, returnCommand.length() - 1);
+		}
+		if (Protocol.isReturnMessage(returnCommand)) {
+			returnCommand = returnCommand.substring(1);
+		}
+		return returnCommand;
+	}
+
+	public void setUsed(boolean used) {
+		this.used = used;
+	}
+
+	@Override
+	public void shutdown() {
+		shutdown(false);
+	}
+
+	/**
+	 * <p>
+	 * Shuts down the channel. The commands waiting for a response fail with a
+	 * {@link Py4JNetworkException}.
+	 * </p>
+	 */
+	@Override
+	public void shutdown(boolean reset) {
+		close(null, reset);
+	}
+
+	private void close(Exception exception, boolean reset) {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			error = exception;
+			closed = true;
+		}
+		if (reset) {
+			NetworkUtil.quietlySetLinger(socket);
+		}
+		NetworkUtil.quietlyClose(socket);
+		NetworkUtil.quietlyClose(reader);
+		NetworkUtil.quietlyClose(output);
+
+		List<CallbackFuture> pendings = new ArrayList<CallbackFuture>(pendingResponses.values());
+		pendingResponses.clear();
+		Exception cause = exception != null ? exception : new IOException("The channel was closed.");
+		for (CallbackFuture pending : pendings) {
+			pending.fail(cause);
+		}
+	}
+
+	public void start() throws IOException {
+		logger.info("Starting multiplexed Communication Channel on " + address + " at " + port);
+		socket = socketFactory.createSocket(address, port);
+		socket.setSoTimeout(blockingReadTimeout);
+		reader = new ProtocolReader(socket.getInputStream());
+		output = new BufferedOutputStream(socket.getOutputStream());
+
+		if (authToken != null) {
+			try {
+				ProtocolWriter writer = new ProtocolWriter(output);
+				NetworkUtil.authToServer(reader, writer, authToken);
+			} catch (IOException ioe) {
+				shutdown(true);
+				throw ioe;
+			}
+		}
+
+		// The reader waits for responses even when no command is pending: the
+		// read timeout is applied to each command instead.
+		socket.setSoTimeout(0);
+		Thread readerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				readResponses();
+			}
+		}, "py4j-multiplexed-callback-reader-" + readerCounter.incrementAndGet());
+		readerThread.setDaemon(true);
+		readerThread.start();
+	}
+
+	public boolean wasUsed() {
+		return used;
+	}
+
+}
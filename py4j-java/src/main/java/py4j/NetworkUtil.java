@@ -36,6 +36,11 @@ import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -83,6 +88,56 @@ public class NetworkUtil {
 		return safeReadLine(reader, true);
 	}
 
+	/**
+	 * <p>
+	 * Waits until a non-blocking channel is ready for the operation. A
+	 * selector is opened the first time the caller needs to wait and must be
+	 * reused (and eventually closed) by the caller.
+	 * </p>
+	 *
+	 * @param channel
+	 * @param selector
+	 *            The selector returned by the previous call, or null.
+	 * @param operation
+	 *            One of the operations of {@link SelectionKey}.
+	 * @param timeout
+	 *            The maximum time to wait in milliseconds. 0 means no
+	 *            timeout.
+	 * @return The selector used to wait.
+	 * @throws SocketTimeoutException
+	 *             If the channel is not ready before the timeout.
+	 * @throws ClosedChannelException
+	 *             If the channel is closed while waiting.
+	 * @throws IOException
+	 */
+	public static Selector awaitChannel(SelectableChannel channel, Selector selector, int operation, int timeout)
+			throws IOException {
+		if (selector == null) {
+			selector = Selector.open();
+			channel.register(selector, operation);
+		}
+
+		try {
+			long start = System.currentTimeMillis();
+			long remaining = timeout;
+			while (selector.select(remaining) == 0) {
+				if (!channel.isOpen()) {
+					throw new ClosedChannelException();
+				} else if (timeout > 0) {
+					remaining = timeout - (System.currentTimeMillis() - start);
+					if (remaining <= 0) {
+						throw new SocketTimeoutException("Timeout while waiting for the channel.");
+					}
+				}
+			}
+			selector.selectedKeys().clear();
+		} catch (ClosedSelectorException e) {
+			// The stream was closed while waiting.
+			throw new ClosedChannelException();
+		}
+		return selector;
+	}
+
 	public static void quietlyClose(Closeable closeable) {
 		try {
 			if (closeable != null) {
@@ -103,6 +158,16 @@ public class NetworkUtil {
 		}
 	}
 
+	public static void quietlyClose(Selector closeable) {
+		try {
+			if (closeable != null) {
+				closeable.close();
+			}
+		} catch (Exception e) {
+			logger.log(Level.FINE, "Selector cannot be closed.", e);
+		}
+	}
+
 	public static void quietlyClose(Socket closeable) {
 		try {
 			if (closeable != null) {
@@ -29,10 +29,18 @@
  *****************************************************************************/
 package py4j;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.lang.reflect.InvocationTargetException;
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 
 import py4j.reflection.ReflectionUtil;
 
@@ -75,6 +83,85 @@ import py4j.reflection.ReflectionUtil;
  * </ul>
  *
  * <p>
+ * Optionally, a client can negotiate the binary protocol with the negotiate
+ * command (N) right after opening the connection. Once it is negotiated,
+ * every message (a command or a response) is sent as one or more frames
+ * prefixed by a 4-byte big-endian header holding the length of the frame. If
+ * the most significant bit of the header is set, more frames follow. Command
+ * parts can then be sent as fixed-width binary values: a single control byte
+ * (e.g., {@link #BINARY_INTEGER_TYPE}) followed by the value, without a
+ * trailing \n. Text command parts are still accepted in binary mode.
+ * </p>
+ *
+ * <p>
+ * Byte arrays can be sent without Base64 encoding as a raw bytes command part:
+ * J followed by the number of bytes and \n, then the bytes themselves without
+ * a trailing \n. Raw bytes are accepted in typed arguments (see
+ * {@link ProtocolReader#readObject(Gateway)}) and they are only sent back if the
+ * client negotiated the {@link #RAW_BYTES_FEATURE}.
+ * </p>
+ *
+ * <p>
+ * Large strings and byte arrays can be sent as a compressed command part: Z,
+ * the type of the compressed value (s or j), the number of compressed bytes, a
+ * colon, the number of uncompressed bytes and \n, then the deflated bytes
+ * without a trailing \n. The uncompressed value is the UTF-8 encoded (and
+ * unescaped) string or the raw bytes. Compressed command parts are accepted
+ * in typed arguments and they are only sent back if the client negotiated the
+ * {@link #COMPRESSION_FEATURE}. This is a server-side feature: the Python
+ * client does not negotiate it and never sends compressed command parts.
+ * </p>
+ *
+ * <p>
+ * Doubles and floats can be sent as their raw IEEE-754 bits in hexadecimal,
+ * without leading zeros: q followed by up to 16 digits for a double, Q
+ * followed by up to 8 digits for a float. These command parts are always
+ * accepted, and doubles and floats are only sent this way (in return values
+ * and in callback arguments) if the client negotiated the
+ * {@link #DOUBLE_BITS_FEATURE}.
+ * </p>
+ *
+ * <p>
+ * Floats, shorts, bytes, chars and BigIntegers can be sent with their exact
+ * type: F, S, Y, C (escaped like a string) and B followed by the value. These
+ * command parts are always accepted, and return values are only sent this
+ * way if the client negotiated the {@link #EXACT_TYPES_FEATURE}. Otherwise,
+ * floats are sent as doubles, shorts and bytes as integers, chars as strings
+ * and BigIntegers as longs (which Python decodes with arbitrary precision).
+ * </p>
+ *
+ * <p>
+ * Lists, sets and maps can be passed by value as collection literals: U, the
+ * collection type (l, h or a), then each element (for maps, each key followed
+ * by its value) as its length in UTF-16 code units, a colon and the element
+ * command part. Elements can be nested collection literals, but not raw bytes
+ * or compressed command parts. Collection literals are decoded into a new
+ * ArrayList, HashSet or HashMap.
+ * </p>
+ *
+ * <p>
+ * If the client negotiated the {@link #STRING_DICTIONARY_FEATURE}, strings
+ * that are sent repeatedly (target ids, method names and string arguments)
+ * can be replaced by a small integer id. @, the id, a colon and the escaped
+ * string defines (or redefines) the string and uses it. @ followed by the id
+ * alone uses a string that was previously defined. Ids are scoped to the
+ * connection and range from 0 to {@link #MAX_DICTIONARY_SIZE} (excluded).
+ * Multiplexed commands are refused once this feature is negotiated. The
+ * Python client does not negotiate this feature.
+ * </p>
+ *
+ * <p>
+ * Several threads can share a connection with multiplexed commands: #, then a
+ * correlation id, a colon, the number of bytes of the wrapped command and \n,
+ * then the wrapped command itself. Multiplexed commands are executed
+ * concurrently and each response is sent as soon as it is ready: #, the
+ * correlation id, a colon, the number of bytes of the response and \n, then
+ * the response.
+ * The Python callback server accepts multiplexed callbacks in the same format
+ * (see {@link MultiplexedCallbackClient}).
+ * </p>
+ *
+ * <p>
  * This class should be used only if the user creates new commands.
  * </p>
  *
@@ -85,11 +172,21 @@ public class Protocol {
 
 	// TYPES
 	public final static char BYTES_TYPE = 'j';
+	public final static char RAW_BYTES_TYPE = 'J';
+	public final static char COMPRESSED_TYPE = 'Z';
 	public final static char INTEGER_TYPE = 'i';
 	public final static char LONG_TYPE = 'L';
 	public final static char BOOLEAN_TYPE = 'b';
 	public final static char DOUBLE_TYPE = 'd';
 	public final static char DECIMAL_TYPE = 'D';
+	public final static char BIG_INTEGER_TYPE = 'B';
+	public final static char FLOAT_TYPE = 'F';
+	public final static char SHORT_TYPE = 'S';
+	public final static char BYTE_TYPE = 'Y';
+	public final static char CHAR_TYPE = 'C';
+	// IEEE-754 bits in hexadecimal (only sent when hexfloat is negotiated)
+	public final static char DOUBLE_BITS_TYPE = 'q';
+	public final static char FLOAT_BITS_TYPE = 'Q';
 	public final static char STRING_TYPE = 's';
 	public final static char REFERENCE_TYPE = 'r';
 	public final static char LIST_TYPE = 'l';
@@ -99,6 +196,9 @@ public class Protocol {
 	public final static char ITERATOR_TYPE = 'g';
 	public final static char NULL_TYPE = 'n';
 	public final static char PYTHON_PROXY_TYPE = 'f';
+	// Followed by the collection type (l, h or a) and the elements
+	public final static char COLLECTION_LITERAL_TYPE = 'U';
+	public final static char LITERAL_LENGTH_SEPARATOR = ':';
 
 	public final static char PACKAGE_TYPE = 'p';
 	public final static char CLASS_TYPE = 'c';
@@ -107,6 +207,9 @@ public class Protocol {
 	public final static char VOID = 'v';
 
 	public final static char RETURN_MESSAGE = '!';
+	// Prefix of the responses to multiplexed commands: #<id>:<length>\n
+	public final static char MULTIPLEXED_RETURN_MESSAGE = '#';
+	public final static char MULTIPLEXED_LENGTH_SEPARATOR = ':';
 
 	// END OF COMMAND MARKER
 	public final static char END = 'e';
@@ -117,8 +220,44 @@ public class Protocol {
 	public final static char FATAL_ERROR = 'z';
 	public final static char SUCCESS = 'y';
 
+	// BINARY TYPES (only used when the binary protocol is negotiated)
+	public final static byte BINARY_INTEGER_TYPE = 1;
+	public final static byte BINARY_LONG_TYPE = 2;
+	public final static byte BINARY_DOUBLE_TYPE = 3;
+	public final static byte BINARY_BOOLEAN_TYPE = 4;
+	public final static byte BINARY_STRING_TYPE = 5;
+	public final static byte BINARY_REFERENCE_TYPE = 6;
+
+	// FRAME HEADER
+	public final static int FRAME_CONTINUATION = 0x80000000;
+	public final static int FRAME_LENGTH_MASK = 0x7fffffff;
+
 	// COMMON COMMAND NAME
 	public final static String AUTH_COMMAND_NAME = "A";
+	public final static String NEGOTIATE_COMMAND_NAME = "N";
+	public final static String MULTIPLEX_COMMAND_NAME = "#";
+
+	// PROTOCOL FEATURES
+	public final static String BINARY_FEATURE = "binary";
+	public final static String RAW_BYTES_FEATURE = "bytes";
+	// Can be followed by a colon and the compression threshold in bytes.
+	public final static String COMPRESSION_FEATURE = "deflate";
+	public final static char FEATURE_PARAMETER_SEPARATOR = ':';
+	public final static String DOUBLE_BITS_FEATURE = "hexfloat";
+	public final static String STRING_DICTIONARY_FEATURE = "strings";
+	public final static String EXACT_TYPES_FEATURE = "exact";
+
+	// STRING DICTIONARY (only used when the strings feature is negotiated)
+	public final static char DICTIONARY_STRING = '@';
+	public final static char DICTIONARY_SEPARATOR = ':';
+	public final static int MAX_DICTIONARY_SIZE = 4096;
+
+	// COMPRESSION
+	public final static int DEFAULT_COMPRESSION_THRESHOLD = 64 * 1024;
+	public final static char COMPRESSED_LENGTH_SEPARATOR = ':';
+	// A deflate stream cannot expand more than 1032 times: longer declared
+	// lengths are rejected before the buffer is allocated.
+	public final static int MAX_COMPRESSION_RATIO = 1032;
 
 	// SHORTCUT
 	public final static String ERROR_COMMAND = "" + RETURN_MESSAGE + ERROR + END_OUTPUT;
@@ -128,6 +267,9 @@ public class Protocol {
 	// ENTRY POINT
 	public final static String ENTRY_POINT_OBJECT_ID = "t";
 
+	// OBJECT IDS GENERATED BY THE GATEWAY
+	public final static String OBJECT_ID_PREFIX = "o";
+
 	// DEFAULT JVM VIEW
 	public final static String DEFAULT_JVM_OBJECT_ID = "j";
 
@@ -154,6 +296,18 @@ public class Protocol {
 		return Base64.encodeToString(bytes, false);
 	}
 
+	/**
+	 * <p>
+	 * Assumes that commandPart is <b>not</b> empty.
+	 * </p>
+	 *
+	 * @param commandPart
+	 * @return The big integer value corresponding to this command part.
+	 */
+	public final static BigInteger getBigInteger(String commandPart) {
+		return new BigInteger(commandPart.substring(1, commandPart.length()));
+	}
+
 	/**
 	 * <p>
 	 * Assumes that commandPart is <b>not</b> empty.
@@ -166,6 +320,18 @@ public class Protocol {
 		return Boolean.parseBoolean(commandPart.substring(1, commandPart.length()));
 	}
 
+	/**
+	 * <p>
+	 * Assumes that commandPart is <b>not</b> empty.
+	 * </p>
+	 *
+	 * @param commandPart
+	 * @return The byte value corresponding to this command part.
+	 */
+	public final static byte getByte(String commandPart) {
+		return Byte.parseByte(commandPart.substring(1, commandPart.length()));
+	}
+
 	/**
 	 * <p>
 	 * Assumes that commandPart is <b>not</b> empty.
@@ -178,6 +344,38 @@ public class Protocol {
 		return Base64.decode(commandPart.substring(1));
 	}
 
+	/**
+	 * <p>
+	 * Assumes that commandPart is <b>not</b> empty.
+	 * </p>
+	 *
+	 * @param commandPart
+	 * @return The number of bytes that follow this raw bytes command part.
+	 */
+	public final static int getRawBytesLength(String commandPart) {
+		int length = Integer.parseInt(commandPart.substring(1, commandPart.length()));
+		if (length < 0) {
+			throw new Py4JException("Invalid raw bytes length: " + length);
+		}
+		return length;
+	}
+
+	/**
+	 * <p>
+	 * Assumes that commandPart is <b>not</b> empty.
+	 * </p>
+	 *
+	 * @param commandPart
+	 * @return The char value corresponding to this command part.
+	 */
+	public final static char getChar(String commandPart) {
+		String value = StringUtil.unescape(commandPart.substring(1, commandPart.length()));
+		if (value.length() != 1) {
+			throw new Py4JException("Command Part is not a char: " + commandPart);
+		}
+		return value.charAt(0);
+	}
+
 	/**
 	 * <p>
 	 * Assumes that commandPart is <b>not</b> empty.
@@ -199,7 +397,89 @@ public class Protocol {
 	 * @return The double value corresponding to this command part.
 	 */
 	public final static double getDouble(String commandPart) {
-		String doubleValue = commandPart.substring(1, commandPart.length());
+		return parseDouble(commandPart.substring(1, commandPart.length()));
+	}
+
+	/**
+	 * <p>
+	 * Assumes that commandPart is <b>not</b> empty.
+	 * </p>
+	 *
+	 * @param commandPart
+	 *            A double command part encoded as its IEEE-754 bits (see
+	 *            {@link #encodeDoubleBits(double)}).
+	 * @return The double value corresponding to this command part.
+	 */
+	public final static double getDoubleBits(String commandPart) {
+		return Double.longBitsToDouble(parseHexBits(commandPart, 16));
+	}
+
+	/**
+	 * <p>
+	 * Assumes that commandPart is <b>not</b> empty.
+	 * </p>
+	 *
+	 * @param commandPart
+	 *            A float command part encoded as its IEEE-754 bits (see
+	 *            {@link #encodeFloatBits(float)}).
+	 * @return The float value corresponding to this command part.
+	 */
+	public final static float getFloatBits(String commandPart) {
+		return Float.intBitsToFloat((int) parseHexBits(commandPart, 8));
+	}
+
+	/**
+	 * <p>
+	 * Encodes a double as its raw IEEE-754 bits in hexadecimal, without
+	 * leading zeros. Unlike the decimal representation, this is exact for
+	 * every value (including the payload of NaNs) and does not require
+	 * parsing.
+	 * </p>
+	 *
+	 * @param value
+	 * @return The hexadecimal bits of the double, without the type prefix.
+	 */
+	public final static String encodeDoubleBits(double value) {
+		return Long.toHexString(Double.doubleToRawLongBits(value));
+	}
+
+	/**
+	 *
+	 * @param value
+	 * @return The hexadecimal IEEE-754 bits of the float, without the type
+	 *         prefix.
+	 */
+	public final static String encodeFloatBits(float value) {
+		return Integer.toHexString(Float.floatToRawIntBits(value));
+	}
+
+	private static long parseHexBits(String commandPart, int maxDigits) {
+		int length = commandPart.length();
+		if (length < 2 || length > maxDigits + 1) {
+			throw new NumberFormatException("Invalid IEEE-754 bits: " + commandPart);
+		}
+		long bits = 0;
+		for (int i = 1; i < length; i++) {
+			int digit = Character.digit(commandPart.charAt(i), 16);
+			if (digit < 0) {
+				throw new NumberFormatException("Invalid IEEE-754 bits: " + commandPart);
+			}
+			bits = (bits << 4) | digit;
+		}
+		return bits;
+	}
+
+	/**
+	 * <p>
+	 * Parses a double value, accepting the Python representations of NaN and
+	 * infinity.
+	 * </p>
+	 *
+	 * @param doubleValue
+	 *            The double value, without the type prefix.
+	 * @return The double value.
+	 */
+	public final static double parseDouble(String doubleValue) {
 		try {
 			return Double.parseDouble(doubleValue);
 		} catch (NumberFormatException e) {
@@ -215,6 +495,88 @@ public class Protocol {
 		}
 	}
 
+	/**
+	 * <p>
+	 * Decodes a collection literal into a new ArrayList, HashSet or HashMap.
+	 * Each element is a command part prefixed by its length and a colon, and
+	 * the elements of a map alternate between keys and values. Elements can
+	 * be collection literals themselves.
+	 * </p>
+	 *
+	 * @param commandPart
+	 * @param gateway
+	 * @return The collection (or map) corresponding to this command part.
+	 */
+	public final static Object getCollectionLiteral(String commandPart, Gateway gateway) {
+		char collectionType = commandPart.length() > 1 ? commandPart.charAt(1) : NULL_TYPE;
+		Collection<Object> collection = null;
+		Map<Object, Object> map = null;
+		if (collectionType == LIST_TYPE) {
+			collection = new ArrayList<Object>();
+		} else if (collectionType == SET_TYPE) {
+			collection = new HashSet<Object>();
+		} else if (collectionType == MAP_TYPE) {
+			map = new HashMap<Object, Object>();
+		} else {
+			throw new Py4JException("Unknown collection literal type: " + collectionType);
+		}
+
+		int length = commandPart.length();
+		int index = 2;
+		Object key = null;
+		boolean hasKey = false;
+		while (index < length) {
+			int elementLength = 0;
+			char c;
+			while (index < length && (c = commandPart.charAt(index)) != LITERAL_LENGTH_SEPARATOR) {
+				if (c < '0' || c > '9' || elementLength > (length - index) / 10) {
+					throw new Py4JException("Invalid collection literal element length at index " + index);
+				}
+				elementLength = elementLength * 10 + (c - '0');
+				index++;
+			}
+			int start = index + 1;
+			if (start > length || elementLength == 0 || elementLength > length - start) {
+				throw new Py4JException("Invalid collection literal element length at index " + index);
+			}
+
+			index = start + elementLength;
+			Object element = getObject(commandPart.substring(start, index), gateway);
+			if (collection != null) {
+				collection.add(element);
+			} else if (hasKey) {
+				map.put(key, element);
+				hasKey = false;
+			} else {
+				key = element;
+				hasKey = true;
+			}
+		}
+
+		if (hasKey) {
+			throw new Py4JException("Map literal has a key without a value.");
+		}
+		return collection != null ? collection : map;
+	}
+
+	/**
+	 * <p>
+	 * Assumes that commandPart is <b>not</b> empty.
+	 * </p>
+	 *
+	 * @param commandPart
+	 * @return The float value corresponding to this command part.
+	 */
+	public final static float getFloat(String commandPart) {
+		String floatValue = commandPart.substring(1, commandPart.length());
+		try {
+			return Float.parseFloat(floatValue);
+		} catch (NumberFormatException e) {
+			// NaN and infinity sent by Python.
+			return (float) parseDouble(floatValue);
+		}
+	}
+
 	/**
 	 * <p>
 	 * Assumes that commandPart is <b>not</b> empty.
@@ -287,6 +649,10 @@ public class Protocol {
 				return getBoolean(commandPart);
 			case DOUBLE_TYPE:
 				return getDouble(commandPart);
+			case DOUBLE_BITS_TYPE:
+				return getDoubleBits(commandPart);
+			case FLOAT_BITS_TYPE:
+				return getFloatBits(commandPart);
 			case LONG_TYPE:
 				return getLong(commandPart);
 			case INTEGER_TYPE:
@@ -307,8 +673,20 @@ public class Protocol {
 				return getString(commandPart);
 			case DECIMAL_TYPE:
 				return getDecimal(commandPart);
+			case BIG_INTEGER_TYPE:
+				return getBigInteger(commandPart);
+			case FLOAT_TYPE:
+				return getFloat(commandPart);
+			case SHORT_TYPE:
+				return getShort(commandPart);
+			case BYTE_TYPE:
+				return getByte(commandPart);
+			case CHAR_TYPE:
+				return getChar(commandPart);
 			case PYTHON_PROXY_TYPE:
 				return getPythonProxy(commandPart, gateway);
+			case COLLECTION_LITERAL_TYPE:
+				return getCollectionLiteral(commandPart, gateway);
 			default:
 				throw new Py4JException("Command Part is unknown: " + commandPart);
 			}
@@ -333,6 +711,30 @@ public class Protocol {
 		return builder.toString();
 	}
 
+	/**
+	 * <p>
+	 * Writes the output command corresponding to the return object. If the
+	 * writer is a {@link ProtocolWriter} using the binary protocol, the value
+	 * may be written in binary.
+	 * </p>
+	 *
+	 * @param rObject
+	 * @param writer
+	 * @throws IOException
+	 */
+	public final static void writeOutputCommand(ReturnObject rObject, BufferedWriter writer) throws IOException {
+		if (writer instanceof ProtocolWriter) {
+			((ProtocolWriter) writer).writeOutputCommand(rObject);
+		} else {
+			writer.write(RETURN_MESSAGE);
+			if (!rObject.isError()) {
+				writer.write(SUCCESS);
+			}
+			writer.write(rObject.getCommandPart());
+			writer.write(END_OUTPUT);
+		}
+	}
+
 	public final static String getOutputErrorCommand() {
 		return ERROR_COMMAND;
 	}
@@ -383,12 +785,35 @@ public class Protocol {
 		return builder.toString();
 	}
 
+	/**
+	 *
+	 * @param primitiveObject
+	 * @return The type of the primitive object if the client negotiated the
+	 *         {@link #EXACT_TYPES_FEATURE}: floats, shorts, bytes, chars and
+	 *         BigIntegers keep their own type.
+	 */
+	public static char getExactPrimitiveType(Object primitiveObject) {
+		if (primitiveObject instanceof Character) {
+			return CHAR_TYPE;
+		} else if (primitiveObject instanceof Float) {
+			return FLOAT_TYPE;
+		} else if (primitiveObject instanceof Short) {
+			return SHORT_TYPE;
+		} else if (primitiveObject instanceof Byte) {
+			return BYTE_TYPE;
+		} else if (primitiveObject instanceof BigInteger) {
+			return BIG_INTEGER_TYPE;
+		} else {
+			return getPrimitiveType(primitiveObject);
+		}
+	}
+
 	public static char getPrimitiveType(Object primitiveObject) {
 		char c = INTEGER_TYPE;
 
 		if (primitiveObject instanceof String || primitiveObject instanceof Character) {
 			c = STRING_TYPE;
-		} else if (primitiveObject instanceof Long) {
+		} else if (primitiveObject instanceof Long || primitiveObject instanceof BigInteger) {
 			c = LONG_TYPE;
 		} else if (primitiveObject instanceof Double || primitiveObject instanceof Float) {
 			c = DOUBLE_TYPE;
@@ -498,6 +923,18 @@ public class Protocol {
 		}
 	}
 
+	/**
+	 * <p>
+	 * Assumes that commandPart is <b>not</b> empty.
+	 * </p>
+	 *
+	 * @param commandPart
+	 * @return The short value corresponding to this command part.
+	 */
+	public final static short getShort(String commandPart) {
+		return Short.parseShort(commandPart.substring(1, commandPart.length()));
+	}
+
 	/**
 	 * <p>
 	 * Assumes that commandPart is <b>not</b> empty.
@@ -514,6 +951,32 @@ public class Protocol {
 		return toReturn;
 	}
 
+	/**
+	 * <p>
+	 * Returns the number of an object id generated by the {@link Gateway}
+	 * (e.g., 12 for o12).
+	 * </p>
+	 *
+	 * @param objectId
+	 * @return The number of the object id, or -1 if the object id was not
+	 *         generated by the Gateway.
+	 */
+	public final static int getObjectIdNumber(String objectId) {
+		int length = objectId.length();
+		if (length < 2 || length > 10 || !objectId.startsWith(OBJECT_ID_PREFIX)) {
+			return -1;
+		}
+		int number = 0;
+		for (int i = OBJECT_ID_PREFIX.length(); i < length; i++) {
+			char c = objectId.charAt(i);
+			if (c < '0' || c > '9' || (number == 0 && c == '0' && length > 2)) {
+				return -1;
+			}
+			number = number * 10 + (c - '0');
+		}
+		return number;
+	}
+
 	public final static String getThrowableAsString(Throwable throwable) {
 		Throwable root = getRootThrowable(throwable, false);
 		StringWriter stringWriter = new StringWriter();
@@ -555,6 +1018,30 @@ public class Protocol {
 		return commandPart.charAt(0) == BYTES_TYPE;
 	}
 
+	/**
+	 * <p>
+	 * Assumes that commandPart is <b>not</b> empty.
+	 * </p>
+	 *
+	 * @param commandPart
+	 * @return True if the command part is followed by compressed bytes
+	 */
+	public final static boolean isCompressed(String commandPart) {
+		return commandPart.charAt(0) == COMPRESSED_TYPE;
+	}
+
+	/**
+	 * <p>
+	 * Assumes that commandPart is <b>not</b> empty.
+	 * </p>
+	 *
+	 * @param commandPart
+	 * @return True if the command part is followed by raw bytes
+	 */
+	public final static boolean isRawBytes(String commandPart) {
+		return commandPart.charAt(0) == RAW_BYTES_TYPE;
+	}
+
 	/**
 	 * <p>
 	 * Assumes that commandPart is <b>not</b> empty.
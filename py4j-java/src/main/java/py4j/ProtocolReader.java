@@ -0,0 +1,1221 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * <p>
+ * A ProtocolReader reads Py4J commands directly from the bytes of a socket
+ * input stream. It is a drop-in replacement for the
+ * <code>BufferedReader(InputStreamReader(stream, "UTF-8"))</code> that
+ * connections used to create: commands can still call
+ * {@link #readLine()}, but they can also read typed arguments with
+ * {@link #readObject(Gateway)}.
+ * </p>
+ *
+ * <p>
+ * When the binary protocol is negotiated (see {@link #setFramed(boolean)}),
+ * the stream is made of length-prefixed frames and command parts can be
+ * encoded as fixed-width binary values. Binary parts are transparently
+ * converted to their text equivalent when they are read with
+ * {@link #readLine()} so existing commands keep working.
+ * </p>
+ *
+ * <p>
+ * A ProtocolReader is not thread-safe: it is meant to be used by the single
+ * thread that serves a connection.
+ * </p>
+ *
+ * @author Barthelemy Dagenais
+ *
+ */
+public class ProtocolReader extends BufferedReader {
+
+	/**
+	 * <p>
+	 * Returned by {@link #readObject(Gateway)} when the end of command part
+	 * (or an empty line) is read.
+	 * </p>
+	 */
+	public final static Object END_OF_COMMAND = new Object();
+
+	public final static int DEFAULT_BUFFER_SIZE = 8192;
+
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	private final static Object NOT_DECODED = new Object();
+
+	// Sentinel returned by parseLong. Long.MIN_VALUE itself is recognized
+	// with isMinLong.
+	private final static long NOT_A_LONG = Long.MIN_VALUE;
+
+	private final static byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes(UTF8);
+
+	// Larger buffers are released once a large command part was read.
+	private final static int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+	private final static byte[] EMPTY_BUFFER = new byte[0];
+
+	// Raw bytes longer than this are read in growing chunks: their length is
+	// sent by the client and is only trusted once the bytes are received.
+	private final static int RAW_BYTES_CHUNK_SIZE = 64 * 1024;
+
+	// Argument arrays are cached for up to this number of arguments.
+	private final static int MAX_CACHED_ARGUMENTS = 8;
+
+	private final static char REPLACEMENT_CHAR = '\uFFFD';
+
+	// BufferedReader requires a reader, but all its methods are overridden
+	// so it is never used.
+	private final static Reader NO_READER = new StringReader("");
+
+	private final InputStream in;
+
+	private final int initialSize;
+
+	// Allocated on the first read.
+	private byte[] buffer = EMPTY_BUFFER;
+
+	// Next byte to read.
+	private int position;
+
+	// End of the bytes that can be read (frame headers are excluded).
+	private int limit;
+
+	// End of the bytes read from the stream. In framed mode, the bytes
+	// between limit and rawLimit are an incomplete frame header.
+	private int rawLimit;
+
+	private boolean framed;
+
+	private int frameRemaining;
+
+	private byte[] lineBuffer;
+
+	private boolean skipLF;
+
+	private char pendingLowSurrogate;
+
+	// Reused for all the messages of the connection.
+	private Inflater inflater;
+
+	private boolean stringDictionary;
+
+	// Strings defined by the client, indexed by their id (see
+	// Protocol#STRING_DICTIONARY_FEATURE).
+	private String[] dictionary;
+
+	private Object[] argumentBuffer = new Object[MAX_CACHED_ARGUMENTS];
+
+	private final Object[][] argumentArrays = new Object[MAX_CACHED_ARGUMENTS + 1][];
+
+	public ProtocolReader(InputStream in) {
+		this(in, DEFAULT_BUFFER_SIZE);
+	}
+
+	public ProtocolReader(InputStream in, int size) {
+		super(NO_READER, 1);
+		if (size <= 0) {
+			throw new IllegalArgumentException("Buffer size <= 0");
+		}
+		this.in = in;
+		this.initialSize = size;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (inflater != null) {
+			inflater.end();
+			inflater = null;
+		}
+		in.close();
+	}
+
+	/**
+	 *
+	 * @return True if the binary protocol was negotiated on this reader.
+	 */
+	public boolean isFramed() {
+		return framed;
+	}
+
+	/**
+	 *
+	 * @return True if command parts can refer to the string dictionary of
+	 *         the connection.
+	 */
+	public boolean isStringDictionary() {
+		return stringDictionary;
+	}
+
+	/**
+	 * <p>
+	 * Enables or disables the string dictionary. Should only be enabled if
+	 * the client negotiated the {@link Protocol#STRING_DICTIONARY_FEATURE}.
+	 * Disabling the dictionary discards its strings.
+	 * </p>
+	 *
+	 * @param stringDictionary
+	 */
+	public void setStringDictionary(boolean stringDictionary) {
+		this.stringDictionary = stringDictionary;
+		if (!stringDictionary) {
+			dictionary = null;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Switches between the text protocol and the binary (framed) protocol.
+	 * Must be called between two commands: bytes that were already buffered
+	 * are interpreted according to the new mode.
+	 * </p>
+	 *
+	 * @param framed
+	 */
+	public void setFramed(boolean framed) {
+		if (this.framed == framed) {
+			return;
+		}
+		this.framed = framed;
+		if (framed) {
+			limit = position;
+			frameRemaining = 0;
+			deframe();
+		} else {
+			limit = rawLimit;
+			frameRemaining = 0;
+		}
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public void mark(int readAheadLimit) throws IOException {
+		throw new IOException("mark() not supported");
+	}
+
+	@Override
+	public void reset() throws IOException {
+		throw new IOException("reset() not supported");
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (pendingLowSurrogate != 0) {
+			char c = pendingLowSurrogate;
+			pendingLowSurrogate = 0;
+			return c;
+		}
+		if (!skipNewLine() || !ensure(1)) {
+			return -1;
+		}
+		return readChar();
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || off + len > cbuf.length) {
+			throw new IndexOutOfBoundsException();
+		} else if (len == 0) {
+			return 0;
+		}
+
+		int count = 0;
+		if (pendingLowSurrogate != 0) {
+			cbuf[off + count++] = pendingLowSurrogate;
+			pendingLowSurrogate = 0;
+		} else if (!skipNewLine() || !ensure(1)) {
+			return -1;
+		} else {
+			cbuf[off + count++] = readChar();
+		}
+
+		// Only return what can be read without blocking.
+		while (count < len) {
+			if (pendingLowSurrogate != 0) {
+				cbuf[off + count++] = pendingLowSurrogate;
+				pendingLowSurrogate = 0;
+			} else if (position < limit && (buffer[position] >= 0 || limit - position >= 4)) {
+				cbuf[off + count++] = readChar();
+			} else {
+				break;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * <p>
+	 * Reads a line of text. A line is considered to be terminated by a line
+	 * feed ('\n'), a carriage return ('\r'), or a carriage return followed
+	 * immediately by a line feed.
+	 * </p>
+	 *
+	 * <p>
+	 * In framed mode, a binary command part is returned as its text protocol
+	 * equivalent (e.g., a binary integer is returned as "i123").
+	 * </p>
+	 *
+	 * @return The line, or null if the end of the stream has been reached.
+	 */
+	@Override
+	public String readLine() throws IOException {
+		if (!skipNewLine()) {
+			return null;
+		}
+
+		if (framed && ensure(1) && isBinaryPart(buffer[position])) {
+			return readBinaryPartAsString();
+		}
+
+		int lineLength = 0;
+		while (true) {
+			if (position >= limit && !ensure(1)) {
+				if (lineLength == 0) {
+					return null;
+				} else {
+					return newString(lineBuffer, 0, lineLength);
+				}
+			}
+
+			int start = position;
+			int end = limit;
+			for (int i = start; i < end; i++) {
+				byte b = buffer[i];
+				if (b == '\n' || b == '\r') {
+					position = i + 1;
+					skipLF = b == '\r';
+					if (lineLength == 0) {
+						return newString(buffer, start, i - start);
+					} else {
+						lineLength = appendToLine(lineLength, start, i - start);
+						return newString(lineBuffer, 0, lineLength);
+					}
+				}
+			}
+
+			lineLength = appendToLine(lineLength, start, end - start);
+			position = end;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Reads a line that can refer to the string dictionary, such as a target
+	 * id or a method name. A string that was already defined is returned
+	 * without being decoded again. If the string dictionary is disabled, this
+	 * is equivalent to {@link #readLine()}.
+	 * </p>
+	 *
+	 * @return The line, or null if the end of the stream has been reached.
+	 * @throws IOException
+	 */
+	public String readInternedLine() throws IOException {
+		if (!stringDictionary || !skipNewLine() || !ensure(1) || buffer[position] != Protocol.DICTIONARY_STRING) {
+			return readLine();
+		}
+
+		int length = bufferLine();
+		if (length >= 0) {
+			byte terminator = buffer[position + length];
+			String value = getDictionaryString(position, position + length);
+			if (value != null) {
+				position += length + 1;
+				skipLF = terminator == '\r';
+				trimBuffer();
+				return value;
+			}
+		}
+
+		String line = readLine();
+		trimBuffer();
+		return line != null ? getDictionaryString(line) : null;
+	}
+
+	/**
+	 * <p>
+	 * Reads the next command part and converts it to a Java object (see
+	 * {@link Protocol#getObject(String, Gateway)}).
+	 * </p>
+	 *
+	 * <p>
+	 * Raw bytes command parts (see {@link Protocol#RAW_BYTES_TYPE}) are read
+	 * directly into the returned byte array. Compressed command parts (see
+	 * {@link Protocol#COMPRESSED_TYPE}) are inflated.
+	 * </p>
+	 *
+	 * @param gateway
+	 * @return The decoded object or {@link #END_OF_COMMAND} if the end of
+	 *         command part or an empty line was read.
+	 * @throws IOException
+	 */
+	public Object readObject(Gateway gateway) throws IOException {
+		if (!skipNewLine() || !ensure(1)) {
+			return END_OF_COMMAND;
+		}
+
+		if (framed && isBinaryPart(buffer[position])) {
+			byte type = buffer[position++];
+			Object value = readBinaryValue(type);
+			if (type == Protocol.BINARY_REFERENCE_TYPE) {
+				return gateway.getObject((String) value);
+			}
+			return value;
+		}
+
+		// Decode the most common command parts directly from the buffer
+		// without creating intermediate strings.
+		int length = bufferLine();
+		if (length >= 0) {
+			byte terminator = buffer[position + length];
+			Object value;
+			try {
+				value = decodeLine(position, length, gateway);
+			} catch (RuntimeException e) {
+				// Consume the invalid command part so the next one can be read.
+				position += length + 1;
+				skipLF = terminator == '\r';
+				trimBuffer();
+				throw e;
+			}
+			if (value != NOT_DECODED) {
+				position += length + 1;
+				skipLF = terminator == '\r';
+				trimBuffer();
+				return value;
+			}
+		}
+
+		String line = readLine();
+		trimBuffer();
+		if (Protocol.isEmpty(line) || Protocol.isEnd(line)) {
+			return END_OF_COMMAND;
+		} else if (Protocol.isRawBytes(line)) {
+			return readRawBytes(Protocol.getRawBytesLength(line));
+		} else if (Protocol.isCompressed(line)) {
+			return readCompressed(line);
+		} else if (stringDictionary && line.charAt(0) == Protocol.DICTIONARY_STRING) {
+			return getDictionaryString(line);
+		}
+		return Protocol.getObject(line, gateway);
+	}
+
+	/**
+	 * <p>
+	 * Reads the remaining arguments of a command until the end of command
+	 * part. The arguments are stored in an array owned by this reader: the
+	 * array is reused by the next call with the same number of arguments and
+	 * it must be released with {@link #releaseArguments(Object[])} once the
+	 * arguments are no longer needed.
+	 * </p>
+	 *
+	 * @param gateway
+	 * @return An array containing the arguments.
+	 * @throws IOException
+	 */
+	public Object[] readArguments(Gateway gateway) throws IOException {
+		int size = 0;
+		Object argument = readObject(gateway);
+		while (argument != END_OF_COMMAND) {
+			if (size == argumentBuffer.length) {
+				Object[] newBuffer = new Object[size * 2];
+				System.arraycopy(argumentBuffer, 0, newBuffer, 0, size);
+				argumentBuffer = newBuffer;
+			}
+			argumentBuffer[size++] = argument;
+			argument = readObject(gateway);
+		}
+
+		Object[] arguments;
+		if (size < argumentArrays.length) {
+			arguments = argumentArrays[size];
+			if (arguments == null) {
+				arguments = new Object[size];
+				argumentArrays[size] = arguments;
+			}
+		} else {
+			arguments = new Object[size];
+		}
+		System.arraycopy(argumentBuffer, 0, arguments, 0, size);
+		Arrays.fill(argumentBuffer, 0, size, null);
+		return arguments;
+	}
+
+	/**
+	 * <p>
+	 * Consumes the remaining command parts of a command that is not executed,
+	 * up to and including the end of command part. Raw bytes, compressed and
+	 * binary command parts are skipped as a whole and invalid command parts
+	 * are ignored.
+	 * </p>
+	 *
+	 * @param gateway
+	 * @return The number of command parts that were skipped.
+	 * @throws IOException
+	 */
+	public int skipCommandParts(Gateway gateway) throws IOException {
+		int parts = 0;
+		while (true) {
+			try {
+				if (readObject(gateway) == END_OF_COMMAND) {
+					return parts;
+				}
+			} catch (RuntimeException e) {
+				// The invalid command part was consumed.
+			}
+			parts++;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Clears an array returned by {@link #readArguments(Gateway)} so that it
+	 * does not keep the arguments alive.
+	 * </p>
+	 *
+	 * @param arguments
+	 */
+	public void releaseArguments(Object[] arguments) {
+		Arrays.fill(arguments, null);
+	}
+
+	@Override
+	public boolean ready() throws IOException {
+		return pendingLowSurrogate != 0 || position < limit || in.available() > 0;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		if (n < 0L) {
+			throw new IllegalArgumentException("skip value is negative");
+		}
+		long skipped = 0;
+		while (skipped < n && read() != -1) {
+			skipped++;
+		}
+		return skipped;
+	}
+
+	private int appendToLine(int lineLength, int start, int length) {
+		int newLength = lineLength + length;
+		if (lineBuffer == null || lineBuffer.length < newLength) {
+			int newCapacity = Math.max(newLength, lineBuffer == null ? 128 : lineBuffer.length * 2);
+			byte[] newBuffer = new byte[newCapacity];
+			if (lineLength > 0) {
+				System.arraycopy(lineBuffer, 0, newBuffer, 0, lineLength);
+			}
+			lineBuffer = newBuffer;
+		}
+		System.arraycopy(buffer, start, lineBuffer, lineLength, length);
+		return newLength;
+	}
+
+	/**
+	 * <p>
+	 * Strips the frame headers from the bytes between limit and rawLimit.
+	 * </p>
+	 */
+	private void deframe() {
+		while (limit < rawLimit) {
+			if (frameRemaining == 0) {
+				if (rawLimit - limit < 4) {
+					// Incomplete header
+					break;
+				}
+				int header = ((buffer[limit] & 0xff) << 24) | ((buffer[limit + 1] & 0xff) << 16)
+						| ((buffer[limit + 2] & 0xff) << 8) | (buffer[limit + 3] & 0xff);
+				frameRemaining = header & Protocol.FRAME_LENGTH_MASK;
+				System.arraycopy(buffer, limit + 4, buffer, limit, rawLimit - limit - 4);
+				rawLimit -= 4;
+			} else {
+				int length = Math.min(frameRemaining, rawLimit - limit);
+				limit += length;
+				frameRemaining -= length;
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Makes sure that at least <code>length</code> bytes can be read from the
+	 * buffer.
+	 * </p>
+	 *
+	 * @param length
+	 * @return False if the end of the stream was reached before.
+	 * @throws IOException
+	 */
+	private boolean ensure(int length) throws IOException {
+		while (limit - position < length) {
+			if (!fill(length)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean fill(int length) throws IOException {
+		if (position > 0) {
+			System.arraycopy(buffer, position, buffer, 0, rawLimit - position);
+			limit -= position;
+			rawLimit -= position;
+			position = 0;
+		}
+
+		if (buffer == EMPTY_BUFFER) {
+			buffer = new byte[Math.max(initialSize, length + 4)];
+		} else if (rawLimit == buffer.length || length > buffer.length) {
+			byte[] newBuffer = new byte[Math.max(buffer.length * 2, length + 4)];
+			System.arraycopy(buffer, 0, newBuffer, 0, rawLimit);
+			buffer = newBuffer;
+		}
+
+		int read = in.read(buffer, rawLimit, buffer.length - rawLimit);
+		if (read < 0) {
+			return false;
+		}
+		rawLimit += read;
+		if (framed) {
+			deframe();
+		} else {
+			limit = rawLimit;
+		}
+		return true;
+	}
+
+	/**
+	 * <p>
+	 * Reads exactly <code>length</code> bytes. Large reads bypass the buffer
+	 * and go straight to the input stream.
+	 * </p>
+	 *
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @throws IOException
+	 */
+	protected void readFully(byte[] bytes, int offset, int length) throws IOException {
+		int buffered = Math.min(limit - position, length);
+		System.arraycopy(buffer, position, bytes, offset, buffered);
+		position += buffered;
+		offset += buffered;
+		length -= buffered;
+
+		while (length > 0) {
+			int read;
+			if (rawLimit != limit) {
+				// Incomplete frame header: go through the buffer.
+				read = 0;
+				if (!fill(1)) {
+					throw new EOFException();
+				}
+			} else if (!framed) {
+				read = in.read(bytes, offset, length);
+			} else if (frameRemaining > 0) {
+				read = in.read(bytes, offset, Math.min(length, frameRemaining));
+				if (read > 0) {
+					frameRemaining -= read;
+				}
+			} else {
+				// Read the next frame header.
+				read = 0;
+				if (!fill(1)) {
+					throw new EOFException();
+				}
+			}
+
+			if (read < 0) {
+				throw new EOFException();
+			} else if (read == 0 && position < limit) {
+				read = Math.min(limit - position, length);
+				System.arraycopy(buffer, position, bytes, offset, read);
+				position += read;
+			}
+			offset += read;
+			length -= read;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Reads and inflates the bytes following a compressed command part.
+	 * </p>
+	 *
+	 * @param commandPart
+	 *            The compressed command part, e.g., Zs123:456.
+	 * @return The uncompressed string or byte array.
+	 * @throws IOException
+	 */
+	public Object readCompressed(String commandPart) throws IOException {
+		int separator = commandPart.indexOf(Protocol.COMPRESSED_LENGTH_SEPARATOR);
+		if (commandPart.length() < 3 || separator < 0) {
+			throw new Py4JException("Invalid compressed command part: " + commandPart);
+		}
+		char type = commandPart.charAt(1);
+		int compressedLength = Integer.parseInt(commandPart.substring(2, separator));
+		int length = Integer.parseInt(commandPart.substring(separator + 1));
+		if (compressedLength < 0 || length < 0
+				|| length > (long) compressedLength * Protocol.MAX_COMPRESSION_RATIO) {
+			throw new Py4JException("Invalid compressed command part: " + commandPart);
+		}
+
+		byte[] compressed = readRawBytes(compressedLength);
+		byte[] bytes = new byte[length];
+		if (inflater == null) {
+			inflater = new Inflater();
+		}
+		try {
+			inflater.setInput(compressed);
+			int inflated = 0;
+			while (inflated < length) {
+				int read = inflater.inflate(bytes, inflated, length - inflated);
+				if (read == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				inflated += read;
+			}
+			// The stream must end exactly after length bytes.
+			if (inflated == length && !inflater.finished()
+					&& inflater.inflate(new byte[1]) > 0) {
+				inflated++;
+			}
+			if (inflated != length || !inflater.finished()) {
+				throw new Py4JException("Compressed command part does not match its length: " + commandPart);
+			}
+		} catch (DataFormatException e) {
+			throw new Py4JException("Invalid compressed data", e);
+		} finally {
+			inflater.reset();
+		}
+
+		if (type == Protocol.STRING_TYPE) {
+			return newString(bytes, 0, bytes.length);
+		} else if (type == Protocol.BYTES_TYPE) {
+			return bytes;
+		} else {
+			throw new Py4JException("Unknown compressed type: " + type);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Reads the bytes following a raw bytes command part.
+	 * </p>
+	 *
+	 * @param length
+	 * @return A new byte array containing the next <code>length</code> bytes.
+	 * @throws IOException
+	 */
+	public byte[] readRawBytes(int length) throws IOException {
+		skipNewLine();
+		byte[] bytes = new byte[Math.min(length, RAW_BYTES_CHUNK_SIZE)];
+		int offset = 0;
+		while (offset < length) {
+			if (offset == bytes.length) {
+				bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * bytes.length));
+			}
+			int read = bytes.length - offset;
+			readFully(bytes, offset, read);
+			offset += read;
+		}
+		return bytes;
+	}
+
+	/**
+	 * <p>
+	 * Makes sure that the next line, including its terminator, is in the
+	 * buffer.
+	 * </p>
+	 *
+	 * @return The length of the line (excluding its terminator) or -1 if the
+	 *         end of the stream was reached before the end of the line.
+	 * @throws IOException
+	 */
+	private int bufferLine() throws IOException {
+		int scanned = 0;
+		while (true) {
+			for (int i = position + scanned; i < limit; i++) {
+				byte b = buffer[i];
+				if (b == '\n' || b == '\r') {
+					return i - position;
+				}
+			}
+			scanned = limit - position;
+			if (!fill(scanned + 1)) {
+				return -1;
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Decodes the command part in the buffer. Only the common command parts
+	 * that can be decoded without creating intermediate strings are handled.
+	 * </p>
+	 *
+	 * @return The decoded object or {@link #NOT_DECODED} if the command part
+	 *         must be decoded by {@link Protocol#getObject(String, Gateway)}.
+	 */
+	private Object decodeLine(int start, int length, Gateway gateway) {
+		if (length == 0) {
+			return END_OF_COMMAND;
+		}
+
+		int end = start + length;
+		switch (buffer[start]) {
+		case Protocol.END:
+			return length == 1 ? END_OF_COMMAND : NOT_DECODED;
+		case Protocol.INTEGER_TYPE: {
+			long value = parseLong(start + 1, end);
+			if (value == NOT_A_LONG && !isMinLong(start + 1, end)) {
+				return NOT_DECODED;
+			} else if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+				return (int) value;
+			} else {
+				return value;
+			}
+		}
+		case Protocol.LONG_TYPE: {
+			long value = parseLong(start + 1, end);
+			if (value == NOT_A_LONG && !isMinLong(start + 1, end)) {
+				return NOT_DECODED;
+			}
+			return value;
+		}
+		case Protocol.SHORT_TYPE: {
+			long value = parseLong(start + 1, end);
+			if (value < Short.MIN_VALUE || value > Short.MAX_VALUE) {
+				return NOT_DECODED;
+			}
+			return (short) value;
+		}
+		case Protocol.BYTE_TYPE: {
+			long value = parseLong(start + 1, end);
+			if (value < Byte.MIN_VALUE || value > Byte.MAX_VALUE) {
+				return NOT_DECODED;
+			}
+			return (byte) value;
+		}
+		case Protocol.BOOLEAN_TYPE:
+			return length == 5 && (buffer[start + 1] | 0x20) == 't' && (buffer[start + 2] | 0x20) == 'r'
+					&& (buffer[start + 3] | 0x20) == 'u' && (buffer[start + 4] | 0x20) == 'e';
+		case Protocol.DOUBLE_TYPE:
+			return Protocol.parseDouble(newString(buffer, start + 1, length - 1));
+		case Protocol.DOUBLE_BITS_TYPE:
+			if (length < 2 || length > 17 || !isHex(start + 1, end)) {
+				return NOT_DECODED;
+			}
+			return Double.longBitsToDouble(parseHex(start + 1, end));
+		case Protocol.FLOAT_BITS_TYPE:
+			if (length < 2 || length > 9 || !isHex(start + 1, end)) {
+				return NOT_DECODED;
+			}
+			return Float.intBitsToFloat((int) parseHex(start + 1, end));
+		case Protocol.STRING_TYPE:
+			return newString(buffer, start + 1, unescape(start + 1, end) - start - 1);
+		case Protocol.BYTES_TYPE:
+			return Base64.decode(buffer, start + 1, length - 1);
+		case Protocol.DICTIONARY_STRING: {
+			String value = stringDictionary ? getDictionaryString(start, end) : null;
+			return value != null ? value : NOT_DECODED;
+		}
+		case Protocol.NULL_TYPE:
+		case Protocol.VOID:
+			return null;
+		case Protocol.REFERENCE_TYPE:
+			if (length == 1 || buffer[start + 1] == ' ') {
+				return NOT_DECODED;
+			}
+			return gateway.getObject(newString(buffer, start + 1, length - 1));
+		default:
+			return NOT_DECODED;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Unescapes the bytes of a string command part in place. Escape sequences
+	 * only contain ASCII characters, so they cannot be part of a multi-byte
+	 * UTF-8 sequence.
+	 * </p>
+	 *
+	 * @return The new end of the string command part.
+	 */
+	private int unescape(int start, int end) {
+		int i = start;
+		while (i < end && buffer[i] != StringUtil.ESCAPE_CHAR) {
+			i++;
+		}
+
+		int j = i;
+		for (; i < end; i++) {
+			byte b = buffer[i];
+			if (b != StringUtil.ESCAPE_CHAR) {
+				buffer[j++] = b;
+			} else if (++i < end) {
+				b = buffer[i];
+				if (b == 'n') {
+					buffer[j++] = '\n';
+				} else if (b == 'r') {
+					buffer[j++] = '\r';
+				} else {
+					buffer[j++] = b;
+				}
+			}
+		}
+		return j;
+	}
+
+	/**
+	 * <p>
+	 * Looks up a reference to the string dictionary (@ followed by an id) in
+	 * the buffer.
+	 * </p>
+	 *
+	 * @return The string or null if the command part is not a reference to a
+	 *         defined string.
+	 */
+	private String getDictionaryString(int start, int end) {
+		if (dictionary == null || end - start < 2) {
+			return null;
+		}
+		long id = parseLong(start + 1, end);
+		if (id < 0 || id >= dictionary.length) {
+			return null;
+		}
+		return dictionary[(int) id];
+	}
+
+	/**
+	 * <p>
+	 * Defines a string (@id:string) or looks up a string (@id) in the
+	 * dictionary.
+	 * </p>
+	 *
+	 * @param line
+	 * @return The string.
+	 */
+	private String getDictionaryString(String line) {
+		int separator = line.indexOf(Protocol.DICTIONARY_SEPARATOR);
+		int id;
+		try {
+			id = Integer.parseInt(separator < 0 ? line.substring(1) : line.substring(1, separator));
+		} catch (NumberFormatException e) {
+			throw new Py4JException("Invalid string dictionary id: " + line);
+		}
+		if (id < 0 || id >= Protocol.MAX_DICTIONARY_SIZE) {
+			throw new Py4JException("Invalid string dictionary id: " + id);
+		}
+
+		if (separator < 0) {
+			String value = dictionary != null && id < dictionary.length ? dictionary[id] : null;
+			if (value == null) {
+				throw new Py4JException("Unknown string dictionary id: " + id);
+			}
+			return value;
+		}
+
+		if (dictionary == null || id >= dictionary.length) {
+			int size = dictionary == null ? 16 : dictionary.length * 2;
+			String[] newDictionary = new String[Math.min(Math.max(size, id + 1), Protocol.MAX_DICTIONARY_SIZE)];
+			if (dictionary != null) {
+				System.arraycopy(dictionary, 0, newDictionary, 0, dictionary.length);
+			}
+			dictionary = newDictionary;
+		}
+		String value = StringUtil.unescape(line.substring(separator + 1));
+		dictionary[id] = value;
+		return value;
+	}
+
+	/**
+	 * <p>
+	 * Creates a string from UTF-8 bytes. Most command parts (command names,
+	 * ids, numbers and type tags) are pure ASCII: their bytes are copied
+	 * without going through the charset decoder.
+	 * </p>
+	 */
+	@SuppressWarnings("deprecation")
+	private static String newString(byte[] bytes, int offset, int length) {
+		int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			if (bytes[i] < 0) {
+				return new String(bytes, offset, length, UTF8);
+			}
+		}
+		return new String(bytes, 0, offset, length);
+	}
+
+	private boolean isHex(int start, int end) {
+		for (int i = start; i < end; i++) {
+			byte b = buffer[i];
+			if (!((b >= '0' && b <= '9') || (b >= 'a' && b <= 'f') || (b >= 'A' && b <= 'F'))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * <p>
+	 * Parses hexadecimal digits that were checked by
+	 * {@link #isHex(int, int)}.
+	 * </p>
+	 */
+	private long parseHex(int start, int end) {
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			int b = buffer[i];
+			value = (value << 4) | (b <= '9' ? b - '0' : (b | 0x20) - 'a' + 10);
+		}
+		return value;
+	}
+
+	private boolean isMinLong(int start, int end) {
+		byte[] minLong = MIN_LONG;
+		if (end - start != minLong.length) {
+			return false;
+		}
+		for (int i = 0; i < minLong.length; i++) {
+			if (buffer[start + i] != minLong[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * <p>
+	 * Parses a decimal long. Only an optional minus sign followed by digits
+	 * is accepted.
+	 * </p>
+	 *
+	 * @return The value or {@link #NOT_A_LONG} if the bytes are not a valid
+	 *         long.
+	 */
+	private long parseLong(int start, int end) {
+		boolean negative = start < end && buffer[start] == '-';
+		int i = negative ? start + 1 : start;
+		if (i == end || end - i > 19) {
+			return NOT_A_LONG;
+		}
+
+		// Accumulate negatively to handle Long.MIN_VALUE.
+		long value = 0;
+		for (; i < end; i++) {
+			int digit = buffer[i] - '0';
+			if (digit < 0 || digit > 9) {
+				return NOT_A_LONG;
+			}
+			if (value < Long.MIN_VALUE / 10 || (value == Long.MIN_VALUE / 10 && digit > (negative ? 8 : 7))) {
+				return NOT_A_LONG;
+			}
+			value = value * 10 - digit;
+		}
+		return negative ? value : -value;
+	}
+
+	/**
+	 * <p>
+	 * Releases the memory used to read a large command part (e.g., a large
+	 * string) once it has been consumed.
+	 * </p>
+	 */
+	private void trimBuffer() {
+		if (buffer.length > MAX_RETAINED_BUFFER_SIZE && rawLimit - position <= initialSize) {
+			byte[] newBuffer = new byte[initialSize];
+			System.arraycopy(buffer, position, newBuffer, 0, rawLimit - position);
+			limit -= position;
+			rawLimit -= position;
+			position = 0;
+			buffer = newBuffer;
+		}
+		if (lineBuffer != null && lineBuffer.length > MAX_RETAINED_BUFFER_SIZE) {
+			lineBuffer = null;
+		}
+	}
+
+	private boolean isBinaryPart(byte b) {
+		return b >= 0 && b < 0x20 && b != '\n' && b != '\r';
+	}
+
+	private int readBinaryInt() throws IOException {
+		if (!ensure(4)) {
+			throw new EOFException();
+		}
+		int value = ((buffer[position] & 0xff) << 24) | ((buffer[position + 1] & 0xff) << 16)
+				| ((buffer[position + 2] & 0xff) << 8) | (buffer[position + 3] & 0xff);
+		position += 4;
+		return value;
+	}
+
+	private long readBinaryLong() throws IOException {
+		long high = readBinaryInt() & 0xffffffffL;
+		long low = readBinaryInt() & 0xffffffffL;
+		return (high << 32) | low;
+	}
+
+	private String readBinaryString() throws IOException {
+		int length = readBinaryInt();
+		if (length < 0) {
+			throw new Py4JException("Invalid binary string length: " + length);
+		} else if (length <= buffer.length) {
+			if (!ensure(length)) {
+				throw new EOFException();
+			}
+			String value = newString(buffer, position, length);
+			position += length;
+			return value;
+		} else {
+			byte[] bytes = new byte[length];
+			readFully(bytes, 0, length);
+			return newString(bytes, 0, bytes.length);
+		}
+	}
+
+	private Object readBinaryValue(byte type) throws IOException {
+		switch (type) {
+		case Protocol.BINARY_INTEGER_TYPE:
+			return readBinaryInt();
+		case Protocol.BINARY_LONG_TYPE:
+			return readBinaryLong();
+		case Protocol.BINARY_DOUBLE_TYPE:
+			return Double.longBitsToDouble(readBinaryLong());
+		case Protocol.BINARY_BOOLEAN_TYPE:
+			if (!ensure(1)) {
+				throw new EOFException();
+			}
+			return buffer[position++] != 0;
+		case Protocol.BINARY_STRING_TYPE:
+			return readBinaryString();
+		case Protocol.BINARY_REFERENCE_TYPE:
+			return Protocol.OBJECT_ID_PREFIX + readBinaryInt();
+		default:
+			throw new Py4JException("Unknown binary command part: " + type);
+		}
+	}
+
+	private String readBinaryPartAsString() throws IOException {
+		byte type = buffer[position++];
+		Object value = readBinaryValue(type);
+		switch (type) {
+		case Protocol.BINARY_INTEGER_TYPE:
+			return Protocol.INTEGER_TYPE + value.toString();
+		case Protocol.BINARY_LONG_TYPE:
+			return Protocol.LONG_TYPE + value.toString();
+		case Protocol.BINARY_DOUBLE_TYPE:
+			return Protocol.DOUBLE_TYPE + value.toString();
+		case Protocol.BINARY_BOOLEAN_TYPE:
+			return Protocol.BOOLEAN_TYPE + value.toString();
+		case Protocol.BINARY_STRING_TYPE:
+			return Protocol.STRING_TYPE + StringUtil.escape((String) value);
+		default:
+			return Protocol.REFERENCE_TYPE + value.toString();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Decodes one UTF-8 encoded character. Assumes that at least one byte is
+	 * available.
+	 * </p>
+	 */
+	private char readChar() throws IOException {
+		int b = buffer[position++];
+		if (b >= 0) {
+			return (char) b;
+		}
+
+		int length;
+		int codePoint;
+		if ((b & 0xe0) == 0xc0) {
+			length = 1;
+			codePoint = b & 0x1f;
+		} else if ((b & 0xf0) == 0xe0) {
+			length = 2;
+			codePoint = b & 0x0f;
+		} else if ((b & 0xf8) == 0xf0) {
+			length = 3;
+			codePoint = b & 0x07;
+		} else {
+			return REPLACEMENT_CHAR;
+		}
+
+		for (int i = 0; i < length; i++) {
+			if (!ensure(1) || (buffer[position] & 0xc0) != 0x80) {
+				return REPLACEMENT_CHAR;
+			}
+			codePoint = (codePoint << 6) | (buffer[position++] & 0x3f);
+		}
+
+		if (Character.isSupplementaryCodePoint(codePoint)) {
+			char[] chars = Character.toChars(codePoint);
+			pendingLowSurrogate = chars[1];
+			return chars[0];
+		}
+		return (char) codePoint;
+	}
+
+	/**
+	 * <p>
+	 * Skips the line feed following a carriage return that terminated the
+	 * previous line.
+	 * </p>
+	 *
+	 * @return False if the end of the stream was reached.
+	 */
+	private boolean skipNewLine() throws IOException {
+		if (skipLF) {
+			skipLF = false;
+			if (!ensure(1)) {
+				return false;
+			}
+			if (buffer[position] == '\n') {
+				position++;
+			}
+		}
+		return true;
+	}
+}
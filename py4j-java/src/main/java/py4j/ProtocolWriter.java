@@ -0,0 +1,885 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.zip.Deflater;
+
+/**
+ * <p>
+ * A ProtocolWriter encodes Py4J commands and responses in UTF-8 directly into
+ * a byte buffer that is written to a socket output stream. It is a drop-in
+ * replacement for the
+ * <code>BufferedWriter(OutputStreamWriter(stream, "UTF-8"))</code> that
+ * connections used to create.
+ * </p>
+ *
+ * <p>
+ * When the binary protocol is negotiated (see {@link #setFramed(boolean)}),
+ * each message (i.e., everything written between two calls to
+ * {@link #flush()}) is sent as one or more length-prefixed frames and return
+ * values can be written as fixed-width binary values.
+ * </p>
+ *
+ * <p>
+ * When flushes are deferred (see {@link #setFlushDeferred(boolean)}), the
+ * responses to pipelined commands accumulate in the buffer and are sent
+ * together once the deferral is lifted.
+ * </p>
+ *
+ * <p>
+ * A ProtocolWriter is not thread-safe: it is meant to be used by the single
+ * thread that serves a connection.
+ * </p>
+ *
+ * @author Barthelemy Dagenais
+ *
+ */
+public class ProtocolWriter extends BufferedWriter {
+
+	public final static int DEFAULT_BUFFER_SIZE = 8192;
+
+	private final static int FRAME_HEADER_SIZE = 4;
+
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	// Compression buffers larger than this are not kept between messages.
+	private final static int MAX_RETAINED_COMPRESSION_BUFFER_SIZE = 1024 * 1024;
+
+	private final static byte[] HEX_DIGITS = "0123456789abcdef".getBytes(UTF8);
+
+	private final static String LINE_SEPARATOR = System.getProperty("line.separator");
+
+	// BufferedWriter requires a writer, but all its methods are overridden
+	// so it is never used.
+	private final static Writer NO_WRITER = new StringWriter(0);
+
+	private final static byte[] EMPTY_BUFFER = new byte[0];
+
+	private final OutputStream out;
+
+	private final int size;
+
+	// Allocated on the first write.
+	private byte[] buffer = EMPTY_BUFFER;
+
+	private int count;
+
+	private boolean framed;
+
+	private boolean rawBytes;
+
+	private boolean doubleBits;
+
+	private boolean exactTypes;
+
+	// Strings and byte arrays of at least this size are compressed. 0 means
+	// that compression is disabled.
+	private int compressionThreshold;
+
+	// Reused for all the messages of the connection.
+	private Deflater deflater;
+
+	private byte[] compressionBuffer;
+
+	// True if a frame with the continuation flag was sent and the message
+	// was not terminated yet.
+	private boolean messageStarted;
+
+	// Offset of the header of the frame being written. Completed frames that
+	// were not sent yet precede it in the buffer.
+	private int frameStart;
+
+	private boolean flushDeferred;
+
+	private char pendingHighSurrogate;
+
+	public ProtocolWriter(OutputStream out) {
+		this(out, DEFAULT_BUFFER_SIZE);
+	}
+
+	public ProtocolWriter(OutputStream out, int size) {
+		super(NO_WRITER, 1);
+		if (size <= FRAME_HEADER_SIZE + 8) {
+			throw new IllegalArgumentException("Buffer size too small");
+		}
+		this.out = out;
+		this.size = size;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flushDeferred = false;
+			flush();
+		} finally {
+			if (deflater != null) {
+				deflater.end();
+				deflater = null;
+			}
+			out.close();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Terminates the current message and sends the buffered output. If
+	 * flushes are deferred, the message is terminated but it stays in the
+	 * buffer until the buffer is full or until the deferral is lifted.
+	 * </p>
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (flushDeferred) {
+			if (framed && (count > frameStart + FRAME_HEADER_SIZE || messageStarted)) {
+				endFrame();
+			}
+			return;
+		}
+		if (framed) {
+			if (count > frameStart + FRAME_HEADER_SIZE || messageStarted) {
+				sendFrame(true);
+			} else {
+				sendCompletedFrames();
+			}
+		} else if (count > 0) {
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+		out.flush();
+	}
+
+	/**
+	 *
+	 * @return True if the binary protocol was negotiated on this writer.
+	 */
+	public boolean isFramed() {
+		return framed;
+	}
+
+	/**
+	 *
+	 * @return True if calls to {@link #flush()} only terminate the current
+	 *         message without sending it.
+	 */
+	public boolean isFlushDeferred() {
+		return flushDeferred;
+	}
+
+	/**
+	 *
+	 * @return The size in bytes from which strings and byte arrays are
+	 *         compressed, or 0 if compression is disabled.
+	 */
+	public int getCompressionThreshold() {
+		return compressionThreshold;
+	}
+
+	/**
+	 *
+	 * @return True if byte arrays are sent as raw bytes instead of Base64.
+	 */
+	public boolean isRawBytes() {
+		return rawBytes;
+	}
+
+	/**
+	 *
+	 * @return True if doubles and floats are sent as their IEEE-754 bits
+	 *         instead of their decimal representation.
+	 */
+	public boolean isDoubleBits() {
+		return doubleBits;
+	}
+
+	/**
+	 *
+	 * @return True if floats, shorts, bytes, chars and BigIntegers are sent
+	 *         with their exact type.
+	 */
+	public boolean isExactTypes() {
+		return exactTypes;
+	}
+
+	@Override
+	public void newLine() throws IOException {
+		write(LINE_SEPARATOR);
+	}
+
+	/**
+	 * <p>
+	 * Switches between the text protocol and the binary (framed) protocol.
+	 * Pending output is flushed first.
+	 * </p>
+	 *
+	 * @param framed
+	 * @throws IOException
+	 */
+	public void setFramed(boolean framed) throws IOException {
+		if (this.framed == framed) {
+			return;
+		}
+		boolean deferred = flushDeferred;
+		flushDeferred = false;
+		flush();
+		flushDeferred = deferred;
+		this.framed = framed;
+		if (buffer == EMPTY_BUFFER) {
+			buffer = new byte[size];
+		}
+		this.count = framed ? FRAME_HEADER_SIZE : 0;
+	}
+
+	/**
+	 * <p>
+	 * Defers or resumes the sending of flushed messages. This is used to
+	 * coalesce the responses of pipelined commands: while flushes are
+	 * deferred, {@link #flush()} only terminates the current message. Lifting
+	 * the deferral does not send anything: {@link #flush()} must be called
+	 * afterward.
+	 * </p>
+	 *
+	 * @param flushDeferred
+	 */
+	public void setFlushDeferred(boolean flushDeferred) {
+		this.flushDeferred = flushDeferred;
+	}
+
+	/**
+	 * <p>
+	 * Enables or disables sending byte arrays as raw bytes command parts.
+	 * Should only be enabled if the client negotiated the
+	 * {@link Protocol#RAW_BYTES_FEATURE}.
+	 * </p>
+	 *
+	 * @param rawBytes
+	 */
+	public void setRawBytes(boolean rawBytes) {
+		this.rawBytes = rawBytes;
+	}
+
+	/**
+	 * <p>
+	 * Enables or disables sending doubles and floats as their IEEE-754 bits.
+	 * Should only be enabled if the client negotiated the
+	 * {@link Protocol#DOUBLE_BITS_FEATURE}.
+	 * </p>
+	 *
+	 * @param doubleBits
+	 */
+	public void setDoubleBits(boolean doubleBits) {
+		this.doubleBits = doubleBits;
+	}
+
+	/**
+	 * <p>
+	 * Enables or disables sending floats, shorts, bytes, chars and
+	 * BigIntegers with their exact type. Should only be enabled if the client
+	 * negotiated the {@link Protocol#EXACT_TYPES_FEATURE}.
+	 * </p>
+	 *
+	 * @param exactTypes
+	 */
+	public void setExactTypes(boolean exactTypes) {
+		this.exactTypes = exactTypes;
+	}
+
+	/**
+	 * <p>
+	 * Enables compression of return values: strings and byte arrays of at
+	 * least <code>compressionThreshold</code> bytes are sent as compressed
+	 * command parts. Should only be enabled if the client negotiated the
+	 * {@link Protocol#COMPRESSION_FEATURE}.
+	 * </p>
+	 *
+	 * @param compressionThreshold
+	 *            The threshold in bytes, or 0 to disable compression.
+	 */
+	public void setCompressionThreshold(int compressionThreshold) {
+		if (compressionThreshold < 0) {
+			throw new IllegalArgumentException("Compression threshold < 0");
+		}
+		this.compressionThreshold = compressionThreshold;
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		writeChar((char) c);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || off + len > cbuf.length) {
+			throw new IndexOutOfBoundsException();
+		}
+		for (int i = off; i < off + len; i++) {
+			char c = cbuf[i];
+			if (c < 0x80 && pendingHighSurrogate == 0) {
+				if (count == buffer.length) {
+					drain();
+				}
+				buffer[count++] = (byte) c;
+			} else {
+				writeChar(c);
+			}
+		}
+	}
+
+	@Override
+	public void write(String s, int off, int len) throws IOException {
+		for (int i = off; i < off + len; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80 && pendingHighSurrogate == 0) {
+				if (count == buffer.length) {
+					drain();
+				}
+				buffer[count++] = (byte) c;
+			} else {
+				writeChar(c);
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Writes a binary boolean command part. Can only be used in framed mode.
+	 * </p>
+	 *
+	 * @param value
+	 * @throws IOException
+	 */
+	public void writeBinaryBoolean(boolean value) throws IOException {
+		ensureBinary(2);
+		buffer[count++] = Protocol.BINARY_BOOLEAN_TYPE;
+		buffer[count++] = (byte) (value ? 1 : 0);
+	}
+
+	/**
+	 * <p>
+	 * Writes a binary double command part. Can only be used in framed mode.
+	 * </p>
+	 *
+	 * @param value
+	 * @throws IOException
+	 */
+	public void writeBinaryDouble(double value) throws IOException {
+		ensureBinary(9);
+		buffer[count++] = Protocol.BINARY_DOUBLE_TYPE;
+		putLong(Double.doubleToRawLongBits(value));
+	}
+
+	/**
+	 * <p>
+	 * Writes a binary integer command part. Can only be used in framed mode.
+	 * </p>
+	 *
+	 * @param value
+	 * @throws IOException
+	 */
+	public void writeBinaryInteger(int value) throws IOException {
+		ensureBinary(5);
+		buffer[count++] = Protocol.BINARY_INTEGER_TYPE;
+		putInt(value);
+	}
+
+	/**
+	 * <p>
+	 * Writes a binary long command part. Can only be used in framed mode.
+	 * </p>
+	 *
+	 * @param value
+	 * @throws IOException
+	 */
+	public void writeBinaryLong(long value) throws IOException {
+		ensureBinary(9);
+		buffer[count++] = Protocol.BINARY_LONG_TYPE;
+		putLong(value);
+	}
+
+	/**
+	 * <p>
+	 * Writes a binary reference command part. Only object ids generated by
+	 * the {@link Gateway} (o followed by a number) can be written in binary.
+	 * Can only be used in framed mode.
+	 * </p>
+	 *
+	 * @param objectId
+	 * @return False if the object id cannot be encoded in binary. Nothing is
+	 *         written in this case.
+	 * @throws IOException
+	 */
+	public boolean writeBinaryReference(String objectId) throws IOException {
+		int id = Protocol.getObjectIdNumber(objectId);
+		if (id < 0) {
+			return false;
+		}
+		ensureBinary(5);
+		buffer[count++] = Protocol.BINARY_REFERENCE_TYPE;
+		putInt(id);
+		return true;
+	}
+
+	/**
+	 * <p>
+	 * Writes a binary string command part: the string is not escaped, but it
+	 * is prefixed by its length in bytes. Can only be used in framed mode.
+	 * </p>
+	 *
+	 * @param value
+	 * @throws IOException
+	 */
+	public void writeBinaryString(String value) throws IOException {
+		// Unpaired surrogates must be replaced within the length of their
+		// string.
+		writePendingSurrogate();
+		ensureBinary(5);
+		buffer[count++] = Protocol.BINARY_STRING_TYPE;
+		putInt(getUTF8Length(value));
+		write(value, 0, value.length());
+		writePendingSurrogate();
+	}
+
+	/**
+	 * <p>
+	 * Writes a compressed command part (see {@link Protocol#COMPRESSED_TYPE}).
+	 * </p>
+	 *
+	 * @param type
+	 *            The type of the compressed value, i.e., s for a UTF-8 encoded
+	 *            string or j for a byte array.
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @throws IOException
+	 */
+	public void writeCompressed(char type, byte[] bytes, int offset, int length) throws IOException {
+		if (deflater == null) {
+			deflater = new Deflater();
+		}
+		if (compressionBuffer == null || compressionBuffer.length < length / 2 + 64) {
+			compressionBuffer = new byte[Math.max(length / 2 + 64, DEFAULT_BUFFER_SIZE)];
+		}
+
+		int compressedLength = 0;
+		try {
+			deflater.setInput(bytes, offset, length);
+			deflater.finish();
+			while (!deflater.finished()) {
+				if (compressedLength == compressionBuffer.length) {
+					byte[] newBuffer = new byte[compressionBuffer.length * 2];
+					System.arraycopy(compressionBuffer, 0, newBuffer, 0, compressedLength);
+					compressionBuffer = newBuffer;
+				}
+				compressedLength += deflater.deflate(compressionBuffer, compressedLength,
+						compressionBuffer.length - compressedLength);
+			}
+		} finally {
+			deflater.reset();
+		}
+
+		write(Protocol.COMPRESSED_TYPE);
+		write(type);
+		write(Integer.toString(compressedLength));
+		write(Protocol.COMPRESSED_LENGTH_SEPARATOR);
+		write(Integer.toString(length));
+		write(Protocol.END_OUTPUT);
+		writeBytes(compressionBuffer, 0, compressedLength);
+
+		if (compressionBuffer.length > MAX_RETAINED_COMPRESSION_BUFFER_SIZE) {
+			compressionBuffer = null;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Writes a raw bytes command part: J, the number of bytes, \n and the
+	 * bytes. Large arrays are written straight to the output stream.
+	 * </p>
+	 *
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @throws IOException
+	 */
+	public void writeRawBytes(byte[] bytes, int offset, int length) throws IOException {
+		if (offset < 0 || length < 0 || offset + length > bytes.length) {
+			throw new IndexOutOfBoundsException();
+		}
+		write(Protocol.RAW_BYTES_TYPE);
+		write(Integer.toString(length));
+		write(Protocol.END_OUTPUT);
+		writeBytes(bytes, offset, length);
+	}
+
+	/**
+	 * <p>
+	 * Writes bytes that are already encoded in UTF-8 (e.g., the output of
+	 * another ProtocolWriter) as is.
+	 * </p>
+	 *
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @throws IOException
+	 */
+	public void writeEncoded(byte[] bytes, int offset, int length) throws IOException {
+		if (offset < 0 || length < 0 || offset + length > bytes.length) {
+			throw new IndexOutOfBoundsException();
+		}
+		writeBytes(bytes, offset, length);
+	}
+
+	/**
+	 * <p>
+	 * Writes the output command corresponding to the return object. In framed
+	 * mode, primitive values and references are written as binary command
+	 * parts. If raw bytes are enabled, byte arrays are written as raw bytes
+	 * command parts. Strings are escaped while they are written, without
+	 * building the intermediate command part.
+	 * </p>
+	 *
+	 * @param rObject
+	 * @throws IOException
+	 */
+	public void writeOutputCommand(ReturnObject rObject) throws IOException {
+		if (compressionThreshold > 0 && !rObject.isError()) {
+			Object primitive = rObject.getPrimitiveObject();
+			if (primitive instanceof byte[] && ((byte[]) primitive).length >= compressionThreshold) {
+				byte[] bytes = (byte[]) primitive;
+				writeSuccess();
+				writeCompressed(Protocol.BYTES_TYPE, bytes, 0, bytes.length);
+				return;
+			} else if (primitive instanceof String && ((String) primitive).length() >= compressionThreshold) {
+				// The length in chars is a lower bound of the length in bytes.
+				byte[] bytes = ((String) primitive).getBytes(UTF8);
+				writeSuccess();
+				writeCompressed(Protocol.STRING_TYPE, bytes, 0, bytes.length);
+				return;
+			}
+		}
+
+		if (rawBytes && !rObject.isError() && rObject.getPrimitiveObject() instanceof byte[]) {
+			byte[] bytes = (byte[]) rObject.getPrimitiveObject();
+			writeSuccess();
+			writeRawBytes(bytes, 0, bytes.length);
+			return;
+		}
+
+		if (framed && !rObject.isError()) {
+			Object primitive = rObject.getPrimitiveObject();
+			if (primitive instanceof Integer || primitive instanceof Short || primitive instanceof Byte) {
+				writeSuccess();
+				writeBinaryInteger(((Number) primitive).intValue());
+				return;
+			} else if (primitive instanceof Long) {
+				writeSuccess();
+				writeBinaryLong((Long) primitive);
+				return;
+			} else if (primitive instanceof Double) {
+				writeSuccess();
+				writeBinaryDouble((Double) primitive);
+				return;
+			} else if (primitive instanceof Boolean) {
+				writeSuccess();
+				writeBinaryBoolean((Boolean) primitive);
+				return;
+			} else if (primitive instanceof String) {
+				writeSuccess();
+				writeBinaryString((String) primitive);
+				return;
+			} else if (rObject.isReference() && Protocol.getObjectIdNumber(rObject.getName()) >= 0) {
+				writeSuccess();
+				writeBinaryReference(rObject.getName());
+				return;
+			}
+		}
+
+		write(Protocol.RETURN_MESSAGE);
+		if (rObject.isError()) {
+			write(rObject.getCommandPart());
+		} else {
+			write(Protocol.SUCCESS);
+			Object primitive = rObject.getPrimitiveObject();
+			if (!rObject.isCommandPartEncoded() && primitive instanceof String) {
+				// Escape the string while it is copied to the buffer.
+				write(Protocol.STRING_TYPE);
+				writeEscaped(primitive.toString());
+			} else if (doubleBits && primitive instanceof Double) {
+				write(Protocol.DOUBLE_BITS_TYPE);
+				writeHex(Double.doubleToRawLongBits((Double) primitive));
+			} else if (doubleBits && primitive instanceof Float) {
+				write(Protocol.FLOAT_BITS_TYPE);
+				writeHex(Float.floatToRawIntBits((Float) primitive) & 0xffffffffL);
+			} else if (exactTypes && primitive instanceof Character) {
+				write(Protocol.CHAR_TYPE);
+				writeEscaped(primitive.toString());
+			} else if (exactTypes && (primitive instanceof Float || primitive instanceof Short
+					|| primitive instanceof Byte || primitive instanceof BigInteger)) {
+				write(Protocol.getExactPrimitiveType(primitive));
+				write(primitive.toString());
+			} else {
+				write(rObject.getCommandPart());
+			}
+		}
+		write(Protocol.END_OUTPUT);
+	}
+
+	/**
+	 * <p>
+	 * Writes a string, escaping the characters that cannot appear in a text
+	 * command part (see {@link StringUtil#escape(String)}).
+	 * </p>
+	 *
+	 * @param value
+	 * @throws IOException
+	 */
+	public void writeEscaped(String value) throws IOException {
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80 && pendingHighSurrogate == 0) {
+				if (buffer.length - count < 2) {
+					drain();
+				}
+				if (c == StringUtil.ESCAPE_CHAR) {
+					buffer[count++] = StringUtil.ESCAPE_CHAR;
+					buffer[count++] = StringUtil.ESCAPE_CHAR;
+				} else if (c == '\n') {
+					buffer[count++] = StringUtil.ESCAPE_CHAR;
+					buffer[count++] = 'n';
+				} else if (c == '\r') {
+					buffer[count++] = StringUtil.ESCAPE_CHAR;
+					buffer[count++] = 'r';
+				} else {
+					buffer[count++] = (byte) c;
+				}
+			} else {
+				writeChar(c);
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Writes the unsigned hexadecimal representation of a value, without
+	 * leading zeros (see {@link Protocol#encodeDoubleBits(double)}).
+	 * </p>
+	 */
+	private void writeHex(long value) throws IOException {
+		if (buffer.length - count < 16) {
+			drain();
+		}
+		int digits = value == 0 ? 1 : (67 - Long.numberOfLeadingZeros(value)) / 4;
+		for (int i = digits - 1; i >= 0; i--) {
+			buffer[count++] = HEX_DIGITS[(int) (value >>> (i * 4)) & 0xf];
+		}
+	}
+
+	private void drain() throws IOException {
+		if (buffer == EMPTY_BUFFER) {
+			buffer = new byte[size];
+		} else if (framed) {
+			if (count > frameStart + FRAME_HEADER_SIZE) {
+				sendFrame(false);
+			} else {
+				sendCompletedFrames();
+			}
+		} else {
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+
+	private void ensureBinary(int length) throws IOException {
+		if (!framed) {
+			throw new Py4JException("Binary command parts can only be written when the binary protocol is used.");
+		}
+		if (buffer.length - count < length) {
+			drain();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Must match the encoding of {@link #writeChar(char)}: unpaired
+	 * surrogates are replaced by '?'.
+	 * </p>
+	 */
+	private int getUTF8Length(String value) {
+		int length = value.length();
+		int utf8Length = length;
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c >= 0x80) {
+				if (c < 0x800) {
+					utf8Length += 1;
+				} else if (Character.isHighSurrogate(c)) {
+					if (i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+						// 4 bytes for two chars
+						utf8Length += 2;
+						i++;
+					}
+				} else if (!Character.isLowSurrogate(c)) {
+					utf8Length += 2;
+				}
+			}
+		}
+		return utf8Length;
+	}
+
+	private void putInt(int value) {
+		buffer[count++] = (byte) (value >>> 24);
+		buffer[count++] = (byte) (value >>> 16);
+		buffer[count++] = (byte) (value >>> 8);
+		buffer[count++] = (byte) value;
+	}
+
+	private void putLong(long value) {
+		putInt((int) (value >>> 32));
+		putInt((int) value);
+	}
+
+	private void endFrame() throws IOException {
+		putFrameHeader(frameStart, count - frameStart - FRAME_HEADER_SIZE);
+		messageStarted = false;
+		if (buffer.length - count <= FRAME_HEADER_SIZE) {
+			out.write(buffer, 0, count);
+			count = FRAME_HEADER_SIZE;
+			frameStart = 0;
+		} else {
+			frameStart = count;
+			count += FRAME_HEADER_SIZE;
+		}
+	}
+
+	private void putFrameHeader(int offset, int header) {
+		buffer[offset] = (byte) (header >>> 24);
+		buffer[offset + 1] = (byte) (header >>> 16);
+		buffer[offset + 2] = (byte) (header >>> 8);
+		buffer[offset + 3] = (byte) header;
+	}
+
+	private void sendCompletedFrames() throws IOException {
+		if (frameStart > 0) {
+			out.write(buffer, 0, frameStart);
+			count = FRAME_HEADER_SIZE;
+			frameStart = 0;
+		}
+	}
+
+	private void sendFrame(boolean endOfMessage) throws IOException {
+		int length = count - frameStart - FRAME_HEADER_SIZE;
+		putFrameHeader(frameStart, endOfMessage ? length : length | Protocol.FRAME_CONTINUATION);
+		out.write(buffer, 0, count);
+		count = FRAME_HEADER_SIZE;
+		frameStart = 0;
+		messageStarted = !endOfMessage;
+	}
+
+	private void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+		if (length <= buffer.length - count) {
+			System.arraycopy(bytes, offset, buffer, count, length);
+			count += length;
+		} else if (framed) {
+			if (count > frameStart + FRAME_HEADER_SIZE) {
+				sendFrame(false);
+			} else {
+				sendCompletedFrames();
+			}
+			// The bytes are sent in their own frame, without going through
+			// the buffer.
+			putFrameHeader(0, length | Protocol.FRAME_CONTINUATION);
+			out.write(buffer, 0, FRAME_HEADER_SIZE);
+			out.write(bytes, offset, length);
+			messageStarted = true;
+		} else {
+			drain();
+			out.write(bytes, offset, length);
+		}
+	}
+
+	private void writeChar(char c) throws IOException {
+		if (buffer.length - count < 4) {
+			drain();
+		}
+
+		if (pendingHighSurrogate != 0) {
+			char high = pendingHighSurrogate;
+			pendingHighSurrogate = 0;
+			if (Character.isLowSurrogate(c)) {
+				int codePoint = Character.toCodePoint(high, c);
+				buffer[count++] = (byte) (0xf0 | (codePoint >> 18));
+				buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+				buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+				buffer[count++] = (byte) (0x80 | (codePoint & 0x3f));
+				return;
+			} else {
+				// Unpaired surrogate, same replacement as the UTF-8 encoder.
+				buffer[count++] = '?';
+				if (buffer.length - count < 4) {
+					drain();
+				}
+			}
+		}
+
+		if (c < 0x80) {
+			buffer[count++] = (byte) c;
+		} else if (c < 0x800) {
+			buffer[count++] = (byte) (0xc0 | (c >> 6));
+			buffer[count++] = (byte) (0x80 | (c & 0x3f));
+		} else if (Character.isHighSurrogate(c)) {
+			pendingHighSurrogate = c;
+		} else if (Character.isLowSurrogate(c)) {
+			buffer[count++] = '?';
+		} else {
+			buffer[count++] = (byte) (0xe0 | (c >> 12));
+			buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+			buffer[count++] = (byte) (0x80 | (c & 0x3f));
+		}
+	}
+
+	private void writePendingSurrogate() throws IOException {
+		if (pendingHighSurrogate != 0) {
+			pendingHighSurrogate = 0;
+			writeChar('?');
+		}
+	}
+
+	private void writeSuccess() throws IOException {
+		write(Protocol.RETURN_MESSAGE);
+		write(Protocol.SUCCESS);
+	}
+}
@@ -69,6 +69,19 @@ public interface Py4JPythonClient {
 	 */
 	String sendCommand(String command, boolean blocking);
 
+	/**
+	 * <p>
+	 * Sends a command to the Python side without waiting for the response.
+	 * Errors, including network errors, complete the future exceptionally
+	 * instead of being thrown.
+	 * </p>
+	 *
+	 * @param command
+	 *            The command to send.
+	 * @return A future completed with the response.
+	 */
+	CallbackFuture sendCommandAsync(String command);
+
 	/**
 	 * <p>
 	 * Closes all active channels, stops the periodic cleanup of channels and
@@ -61,6 +61,8 @@ public class PythonClient extends CallbackClient implements Py4JPythonClientPerT
 
 	protected final int readTimeout;
 
+	private CommandRegistry commandRegistry;
+
 	/**
 	 *
 	 * @param gateway The gateway used to pool Java instances created on the Python side.
@@ -160,6 +162,17 @@ public class PythonClient extends CallbackClient implements Py4JPythonClientPerT
 		threadConnection.set(new WeakReference<ClientServerConnection>(clientServerConnection));
 	}
 
+	/**
+	 *
+	 * @return The commands shared by the connections created by this client.
+	 */
+	protected synchronized CommandRegistry getCommandRegistry() {
+		if (commandRegistry == null || commandRegistry.getGateway() != gateway) {
+			commandRegistry = new CommandRegistry(gateway, customCommands);
+		}
+		return commandRegistry;
+	}
+
 	public Gateway getGateway() {
 		return gateway;
 	}
@@ -187,6 +200,12 @@ public class PythonClient extends CallbackClient implements Py4JPythonClientPerT
 		// Do nothing, we don't need a cleaner.
 	}
 
+	@Override
+	public void warmUp() {
+		// Do nothing, connections are bound to threads and cannot be opened
+		// in advance.
+	}
+
 	protected Socket startClientSocket() throws IOException {
 		logger.info("Starting Python Client connection on " + address + " at " + port);
 		Socket socket = socketFactory.createSocket(address, port);
@@ -211,7 +230,7 @@ public class PythonClient extends CallbackClient implements Py4JPythonClientPerT
 
 		if (connection == null || connection.getSocket() == null) {
 			Socket socket = startClientSocket();
-			connection = new ClientServerConnection(gateway, socket, customCommands, this, javaServer, readTimeout,
+			connection = new ClientServerConnection(getCommandRegistry(), socket, this, javaServer, readTimeout,
 					authToken);
 			connection.setInitiatedFromClient(true);
 			connection.start();
@@ -254,6 +273,16 @@ public class PythonClient extends CallbackClient implements Py4JPythonClientPerT
 
 	}
 
+	@Override
+	public void connectionRejected(Socket socket) {
+
+	}
+
+	@Override
+	public void commandRejected(Py4JServerConnection gatewayConnection, String commandName) {
+
+	}
+
 	@Override
 	public void connectionStarted(Py4JServerConnection gatewayConnection) {
 
@@ -107,6 +107,17 @@ public class ReturnObject {
 		return rObject;
 	}
 
+	public static ReturnObject getErrorReturnObject(String errorMessage) {
+		ReturnObject rObject = new ReturnObject();
+		rObject.isError = true;
+		StringBuilder builder = new StringBuilder();
+		builder.append(Protocol.ERROR);
+		builder.append(Protocol.STRING_TYPE);
+		builder.append(StringUtil.escape(errorMessage));
+		rObject.commandPart = builder.toString();
+		return rObject;
+	}
+
 	public static ReturnObject getIteratorReturnObject(String name) {
 		ReturnObject rObject = new ReturnObject();
 		rObject.name = name;
@@ -133,6 +144,12 @@ public class ReturnObject {
 		return rObject;
 	}
 
+	public static ReturnObject getNoMemberReturnObject() {
+		ReturnObject rObject = new ReturnObject();
+		rObject.commandPart = String.valueOf(Protocol.NO_MEMBER);
+		return rObject;
+	}
+
 	public static ReturnObject getNullReturnObject() {
 		ReturnObject rObject = new ReturnObject();
 		rObject.isNull = true;
@@ -144,10 +161,12 @@ public class ReturnObject {
 		ReturnObject rObject = new ReturnObject();
 		rObject.primitiveObject = primitive;
 		char primitiveType = Protocol.getPrimitiveType(primitive);
-		if (primitiveType == Protocol.STRING_TYPE) {
-			rObject.commandPart = primitiveType + StringUtil.escape(primitive.toString());
-		} else if (primitiveType == Protocol.BYTES_TYPE) {
-			rObject.commandPart = primitiveType + Protocol.encodeBytes((byte[]) primitive);
+		if (primitiveType == Protocol.STRING_TYPE || primitiveType == Protocol.BYTES_TYPE
+				|| primitiveType == Protocol.DOUBLE_TYPE) {
+			// Encoded lazily: these values are usually written directly to the
+			// connection (see ProtocolWriter#writeOutputCommand) and doubles
+			// may be sent as IEEE-754 bits instead.
+			rObject.commandPart = null;
 		} else {
 			rObject.commandPart = primitiveType + primitive.toString();
 		}
@@ -209,9 +228,45 @@ public class ReturnObject {
 	}
 
 	public String getCommandPart() {
+		if (commandPart == null && primitiveObject != null) {
+			char primitiveType = Protocol.getPrimitiveType(primitiveObject);
+			if (primitiveType == Protocol.STRING_TYPE) {
+				commandPart = primitiveType + StringUtil.escape(primitiveObject.toString());
+			} else if (primitiveType == Protocol.BYTES_TYPE) {
+				commandPart = primitiveType + Protocol.encodeBytes((byte[]) primitiveObject);
+			} else {
+				commandPart = primitiveType + primitiveObject.toString();
+			}
+		}
 		return commandPart;
 	}
 
+	/**
+	 *
+	 * @param doubleBits
+	 *            True if doubles and floats must be encoded as their IEEE-754
+	 *            bits (see {@link Protocol#DOUBLE_BITS_FEATURE}).
+	 * @return The command part corresponding to this return object.
+	 */
+	public String getCommandPart(boolean doubleBits) {
+		if (doubleBits && primitiveObject instanceof Double) {
+			return Protocol.DOUBLE_BITS_TYPE + Protocol.encodeDoubleBits((Double) primitiveObject);
+		} else if (doubleBits && primitiveObject instanceof Float) {
+			return Protocol.FLOAT_BITS_TYPE + Protocol.encodeFloatBits((Float) primitiveObject);
+		}
+		return getCommandPart();
+	}
+
+	/**
+	 *
+	 * @return True if the command part was already computed. String, byte
+	 *         array, double and float command parts are only computed when
+	 *         they are requested.
+	 */
+	boolean isCommandPartEncoded() {
+		return commandPart != null;
+	}
+
 	public String getName() {
 		return name;
 	}
@@ -0,0 +1,151 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+
+/**
+ * <p>
+ * A connection managed by a {@link SelectorGatewayServer}. The connection
+ * does not have its own thread: when the channel becomes readable, the server
+ * runs the connection in a worker thread, which executes the commands that
+ * were received and then gives the connection back to the selector.
+ * </p>
+ *
+ * <p>
+ * The commands are the same as the ones of a {@link GatewayConnection}: they
+ * read from and write to the non-blocking channel through blocking streams.
+ * If a command is only partially received, the worker waits for the rest of
+ * the command (up to the read timeout).
+ * </p>
+ *
+ * <p>
+ * This class is not intended to be directly accessed by users.
+ * </p>
+ *
+ * @author Barthelemy Dagenais
+ *
+ */
+public class SelectorGatewayConnection extends GatewayConnection {
+
+	private final SocketChannel channel;
+
+	private final SelectorGatewayServer server;
+
+	private SelectionKey selectionKey;
+
+	private volatile long lastActivityTime;
+
+	public SelectorGatewayConnection(CommandRegistry commandRegistry, SocketChannel channel,
+			SelectorGatewayServer server, String authToken, List<GatewayServerListener> listeners) {
+		super(commandRegistry, channel.socket(),
+				new ProtocolReader(new ChannelInputStream(channel, server.getReadTimeout())),
+				new ProtocolWriter(new ChannelOutputStream(channel, server.getReadTimeout())), authToken,
+				listeners);
+		this.channel = channel;
+		this.server = server;
+		this.lastActivityTime = System.currentTimeMillis();
+	}
+
+	/**
+	 *
+	 * @return The non-blocking channel of this connection.
+	 */
+	public SocketChannel getChannel() {
+		return channel;
+	}
+
+	/**
+	 *
+	 * @return The time (in milliseconds) when the connection last finished
+	 *         executing commands.
+	 */
+	public long getLastActivityTime() {
+		return lastActivityTime;
+	}
+
+	SelectionKey getSelectionKey() {
+		return selectionKey;
+	}
+
+	/**
+	 * <p>
+	 * Registers the channel with the selector of the server. Must be called
+	 * by the selector thread.
+	 * </p>
+	 *
+	 * @param selector
+	 * @throws IOException
+	 */
+	void register(Selector selector) throws IOException {
+		selectionKey = channel.register(selector, SelectionKey.OP_READ, this);
+	}
+
+	/**
+	 * <p>
+	 * Executes the commands that were received and gives the connection back
+	 * to the selector. Called by a worker thread when the channel is
+	 * readable.
+	 * </p>
+	 */
+	@Override
+	public void run() {
+		if (processCommands(true)) {
+			lastActivityTime = System.currentTimeMillis();
+			server.resumeReading(this);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Selector connections are run by the workers of the server.
+	 * </p>
+	 */
+	@Override
+	public void startConnection() {
+	}
+
+	/**
+	 * <p>
+	 * The socket of a channel registered with a selector is only released
+	 * once the selector wakes up, so the selector is woken up after closing
+	 * the connection.
+	 * </p>
+	 */
+	@Override
+	public void shutdown(boolean reset) {
+		super.shutdown(reset);
+		server.wakeup();
+	}
+}
@@ -0,0 +1,329 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.ServerSocketFactory;
+
+import py4j.commands.Command;
+
+/**
+ * <p>
+ * A GatewayServer that watches all its connections with a single
+ * {@link Selector} instead of dedicating a thread to each connection. A
+ * connection is only assigned a worker thread when it receives a command, and
+ * the worker is released once all the received commands have been executed,
+ * so idle connections (e.g., the connections of idle Python workers) do not
+ * consume any thread.
+ * </p>
+ *
+ * <p>
+ * The connections execute the same commands as the ones of a regular
+ * GatewayServer (see {@link SelectorGatewayConnection}). Workers are created
+ * on demand and stop after being idle for
+ * {@link #WORKER_KEEP_ALIVE_SECONDS} seconds. The number of workers is not
+ * bounded because a command can wait for a callback that sends a command on
+ * another connection. Workers are virtual threads if
+ * {@link #setVirtualThreads(boolean)} is enabled and the JVM supports them.
+ * </p>
+ *
+ * <p>
+ * A worker keeps its connection until the connection has no more buffered
+ * bytes. A connection that sent only part of a command therefore holds a
+ * worker until the rest of the command arrives or until the read timeout
+ * expires. Set a read timeout (or use virtual threads) if clients can stall
+ * in the middle of a command.
+ * </p>
+ *
+ * <p>
+ * The server socket is always a plain TCP socket: a custom
+ * {@link ServerSocketFactory} cannot be used. Use
+ * {@link GatewayServer.GatewayServerBuilder#useSelector(boolean)} to create a
+ * SelectorGatewayServer.
+ * </p>
+ *
+ * @author Barthelemy Dagenais
+ *
+ */
+public class SelectorGatewayServer extends GatewayServer {
+
+	public final static long WORKER_KEEP_ALIVE_SECONDS = 60;
+
+	private final Logger logger = Logger.getLogger(SelectorGatewayServer.class.getName());
+
+	private final AtomicInteger workerCounter = new AtomicInteger();
+
+	private final Queue<SelectorGatewayConnection> resumedConnections = new ConcurrentLinkedQueue<SelectorGatewayConnection>();
+
+	private final ThreadPoolExecutor workers;
+
+	private ServerSocketChannel serverChannel;
+
+	private Selector selector;
+
+	private volatile boolean stopped = false;
+
+	/**
+	 * @see GatewayServer#GatewayServer(Object, int, InetAddress, int, int,
+	 *      List, Py4JPythonClient, ServerSocketFactory)
+	 */
+	public SelectorGatewayServer(Object entryPoint, int port, InetAddress address, int connectTimeout,
+			int readTimeout, List<Class<? extends Command>> customCommands, Py4JPythonClient cbClient,
+			String authToken) {
+		super(entryPoint, port, address, connectTimeout, readTimeout, customCommands, cbClient,
+				ServerSocketFactory.getDefault(), authToken);
+		this.workers = createWorkers();
+	}
+
+	/**
+	 * @see GatewayServer#GatewayServer(Gateway, int, InetAddress, int, int,
+	 *      List, ServerSocketFactory)
+	 */
+	public SelectorGatewayServer(Gateway gateway, int port, InetAddress address, int connectTimeout,
+			int readTimeout, List<Class<? extends Command>> customCommands, String authToken) {
+		super(gateway, port, address, connectTimeout, readTimeout, customCommands, ServerSocketFactory.getDefault(),
+				authToken);
+		this.workers = createWorkers();
+	}
+
+	private ThreadPoolExecutor createWorkers() {
+		return new ThreadPoolExecutor(0, Integer.MAX_VALUE, WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = ThreadUtil.newThread(runnable, isVirtualThreads());
+						thread.setName("py4j-selector-worker-" + workerCounter.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * <p>
+	 * Selects the connections that received commands and dispatches them to
+	 * the workers until the server is shut down.
+	 * </p>
+	 */
+	@Override
+	protected void acceptConnections() throws IOException {
+		long lastAcceptTime = System.currentTimeMillis();
+		long lastTimeoutCheck = lastAcceptTime;
+		int connectTimeout = getConnectTimeout();
+		int readTimeout = getReadTimeout();
+		try {
+			while (!stopped) {
+				selector.select(getSelectTimeout(connectTimeout, readTimeout));
+				if (stopped) {
+					break;
+				}
+				resumeConnections();
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) {
+						continue;
+					} else if (key.isAcceptable()) {
+						SocketChannel channel = serverChannel.accept();
+						if (channel != null) {
+							lastAcceptTime = System.currentTimeMillis();
+							channel.configureBlocking(false);
+							processSocket(channel.socket());
+						}
+					} else if (key.isReadable()) {
+						// The worker gives the connection back once the
+						// commands have been executed.
+						key.interestOps(0);
+						dispatch((SelectorGatewayConnection) key.attachment());
+					}
+				}
+
+				long now = System.currentTimeMillis();
+				if (connectTimeout > 0 && serverChannel.isOpen() && now - lastAcceptTime >= connectTimeout) {
+					// Same behavior as the accept timeout of a server socket,
+					// but existing connections are still served.
+					NetworkUtil.quietlyClose(serverChannel);
+					fireServerError(new SocketTimeoutException("Accept timed out"));
+				}
+				if (readTimeout > 0 && now - lastTimeoutCheck >= readTimeout / 2) {
+					lastTimeoutCheck = now;
+					closeIdleConnections(now, readTimeout);
+				}
+			}
+		} finally {
+			NetworkUtil.quietlyClose(serverChannel);
+			NetworkUtil.quietlyClose(selector);
+		}
+	}
+
+	private void closeIdleConnections(long now, int readTimeout) {
+		for (SelectionKey key : selector.keys()) {
+			if (key.isValid() && key.attachment() instanceof SelectorGatewayConnection
+					&& key.interestOps() == SelectionKey.OP_READ) {
+				SelectorGatewayConnection connection = (SelectorGatewayConnection) key.attachment();
+				if (now - connection.getLastActivityTime() >= readTimeout) {
+					logger.log(Level.WARNING, "Timeout occurred while waiting for a command.");
+					connection.shutdown(true);
+				}
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Creates a connection that is registered with the selector. Must be
+	 * called by the selector thread.
+	 * </p>
+	 */
+	@Override
+	protected Py4JServerConnection createConnection(Gateway gateway, Socket socket) throws IOException {
+		SocketChannel channel = socket.getChannel();
+		if (channel == null || channel.isBlocking()) {
+			return super.createConnection(gateway, socket);
+		}
+		SelectorGatewayConnection connection = new SelectorGatewayConnection(getCommandRegistry(), channel, this,
+				authToken, getListeners());
+		connection.setCommandPermits(getCommandPermits());
+		connection.register(selector);
+		return connection;
+	}
+
+	private void dispatch(SelectorGatewayConnection connection) {
+		try {
+			workers.execute(connection);
+		} catch (RejectedExecutionException e) {
+			// The server is shutting down.
+			connection.shutdown();
+		}
+	}
+
+	@Override
+	public int getListeningPort() {
+		int port = -1;
+		try {
+			if (serverChannel.socket().isBound()) {
+				port = serverChannel.socket().getLocalPort();
+			}
+		} catch (Exception e) {
+			// do nothing
+		}
+		return port;
+	}
+
+	private long getSelectTimeout(int connectTimeout, int readTimeout) {
+		long timeout = 0;
+		if (connectTimeout > 0 && serverChannel.isOpen()) {
+			timeout = connectTimeout;
+		}
+		if (readTimeout > 0 && (timeout == 0 || readTimeout / 2 < timeout)) {
+			timeout = Math.max(1, readTimeout / 2);
+		}
+		return timeout;
+	}
+
+	private void resumeConnections() {
+		SelectorGatewayConnection connection;
+		while ((connection = resumedConnections.poll()) != null) {
+			SelectionKey key = connection.getSelectionKey();
+			if (key != null && key.isValid()) {
+				key.interestOps(SelectionKey.OP_READ);
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Gives a connection back to the selector once its commands have been
+	 * executed. The selection key is updated by the selector thread.
+	 * </p>
+	 *
+	 * @param connection
+	 */
+	void resumeReading(SelectorGatewayConnection connection) {
+		resumedConnections.add(connection);
+		wakeup();
+	}
+
+	void wakeup() {
+		Selector currentSelector = selector;
+		if (currentSelector != null) {
+			currentSelector.wakeup();
+		}
+	}
+
+	@Override
+	public void shutdown(boolean shutdownCallbackClient) {
+		stopped = true;
+		NetworkUtil.quietlyClose(serverChannel);
+		wakeup();
+		super.shutdown(shutdownCallbackClient);
+		workers.shutdown();
+	}
+
+	@Override
+	protected void startSocket() throws Py4JNetworkException {
+		try {
+			selector = Selector.open();
+			serverChannel = ServerSocketChannel.open();
+			serverChannel.socket().setReuseAddress(true);
+			int backlog = getAcceptQueueSize() > 0 ? getAcceptQueueSize() : -1;
+			serverChannel.socket().bind(new InetSocketAddress(getAddress(), getPort()), backlog);
+			serverChannel.configureBlocking(false);
+			serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			NetworkUtil.quietlyClose(serverChannel);
+			NetworkUtil.quietlyClose(selector);
+			throw new Py4JNetworkException("Failed to bind to " + getAddress() + ":" + getPort(), e);
+		}
+	}
+}
@@ -0,0 +1,73 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j;
+
+import java.net.Socket;
+import java.util.List;
+
+/**
+ * <p>
+ * A gateway connection whose commands and responses go through a
+ * {@link SharedMemoryTransport} instead of the socket. The commands read from
+ * and write to the rings through the same reader and writer as a regular
+ * connection, so all commands are supported.
+ * </p>
+ *
+ * <p>
+ * The socket is only kept to detect that the Python side died.
+ * </p>
+ *
+ * @author Barthelemy Dagenais
+ *
+ */
+public class SharedMemoryGatewayConnection extends GatewayConnection {
+
+	private final SharedMemoryTransport transport;
+
+	public SharedMemoryGatewayConnection(CommandRegistry commandRegistry, Socket socket,
+			SharedMemoryTransport transport, int readTimeout, String authToken,
+			List<GatewayServerListener> listeners) {
+		super(commandRegistry, socket,
+				new ProtocolReader(transport.getRequests().getInputStream(socket, readTimeout)),
+				new ProtocolWriter(transport.getResponses().getOutputStream(socket, readTimeout)), authToken,
+				listeners);
+		this.transport = transport;
+	}
+
+	public SharedMemoryTransport getTransport() {
+		return transport;
+	}
+
+	@Override
+	public void shutdown(boolean reset) {
+		transport.close();
+		super.shutdown(reset);
+	}
+}
@@ -0,0 +1,146 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import javax.net.ServerSocketFactory;
+
+import py4j.commands.Command;
+
+/**
+ * <p>
+ * A GatewayServer whose connections send commands and responses through
+ * shared memory (see {@link SharedMemoryTransport}). The Python side still
+ * connects to the server socket, sends the path of the shared memory file it
+ * created on a single line, and waits for a void response. The commands are
+ * then exchanged through the shared memory.
+ * </p>
+ *
+ * <p>
+ * The handshake is executed by the thread accepting the connections, for at
+ * most {@link #HANDSHAKE_TIMEOUT} milliseconds. Only the commands sent by
+ * Python go through the shared memory: callbacks still use the callback
+ * client. Use
+ * {@link GatewayServer.GatewayServerBuilder#sharedMemoryDirectory(String)}
+ * to create a SharedMemoryGatewayServer.
+ * </p>
+ *
+ * @author Barthelemy Dagenais
+ *
+ */
+public class SharedMemoryGatewayServer extends GatewayServer {
+
+	public final static int HANDSHAKE_TIMEOUT = 5000;
+
+	public final static int MAX_PATH_LENGTH = 4096;
+
+	private final String directory;
+
+	public SharedMemoryGatewayServer(Object entryPoint, int port, InetAddress address, int connectTimeout,
+			int readTimeout, List<Class<? extends Command>> customCommands, Py4JPythonClient cbClient,
+			ServerSocketFactory sSocketFactory, String authToken, String directory) {
+		super(entryPoint, port, address, connectTimeout, readTimeout, customCommands, cbClient, sSocketFactory,
+				authToken);
+		this.directory = directory;
+	}
+
+	public SharedMemoryGatewayServer(Gateway gateway, int port, InetAddress address, int connectTimeout,
+			int readTimeout, List<Class<? extends Command>> customCommands, ServerSocketFactory sSocketFactory,
+			String authToken, String directory) {
+		super(gateway, port, address, connectTimeout, readTimeout, customCommands, sSocketFactory, authToken);
+		this.directory = directory;
+	}
+
+	@Override
+	protected Py4JServerConnection createConnection(Gateway gateway, Socket socket) throws IOException {
+		SharedMemoryTransport transport = handshake(socket);
+		SharedMemoryGatewayConnection connection = new SharedMemoryGatewayConnection(getCommandRegistry(), socket,
+				transport, getReadTimeout(), authToken, getListeners());
+		connection.setCommandPermits(getCommandPermits());
+		connection.startConnection(isVirtualThreads());
+		return connection;
+	}
+
+	/**
+	 *
+	 * @return The directory where the shared memory files must be located.
+	 */
+	public String getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * <p>
+	 * Reads the path of the shared memory file and maps it. On failure, an
+	 * error is sent to the other side and the socket is closed.
+	 * </p>
+	 */
+	private SharedMemoryTransport handshake(Socket socket) throws IOException {
+		OutputStream output = socket.getOutputStream();
+		try {
+			socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+			SharedMemoryTransport transport = SharedMemoryTransport.open(readPath(socket.getInputStream()),
+					directory);
+			output.write(Protocol.getOutputVoidCommand().getBytes(Charset.forName("UTF-8")));
+			output.flush();
+			return transport;
+		} catch (IOException e) {
+			try {
+				output.write(Protocol.getOutputFatalErrorCommand(e).getBytes(Charset.forName("UTF-8")));
+				output.flush();
+			} catch (IOException e2) {
+				// The error is reported to the listeners.
+			}
+			NetworkUtil.quietlyClose(socket);
+			throw e;
+		}
+	}
+
+	private String readPath(InputStream input) throws IOException {
+		// Read byte by byte: nothing must be read after the path.
+		ByteArrayOutputStream path = new ByteArrayOutputStream();
+		int b;
+		while ((b = input.read()) != '\n') {
+			if (b < 0 || path.size() >= MAX_PATH_LENGTH) {
+				throw new IOException("Invalid shared memory handshake.");
+			}
+			path.write(b);
+		}
+		return new String(path.toByteArray(), "UTF-8");
+	}
+}
@@ -0,0 +1,374 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>
+ * A single-producer single-consumer ring buffer in shared memory. The
+ * producer and the consumer can be in different processes (e.g., the Python
+ * side writes the commands and the JVM reads them).
+ * </p>
+ *
+ * <p>
+ * Layout (little endian): the position of the producer (a long, at offset 0),
+ * the position of the consumer (a long, at offset 64, in another cache line),
+ * a closed flag (an int, at offset 96), then the data starting at offset
+ * {@link #HEADER_SIZE}. The positions only increase: the number of unread
+ * bytes is the difference between the two positions. The capacity must be a
+ * power of two.
+ * </p>
+ *
+ * <p>
+ * A side that waits for the other side first spins, then parks for
+ * increasing durations (up to {@link #MAX_PARK_NANOS}). While parked, the
+ * socket used to set up the transport is periodically checked to detect a
+ * peer that died without closing the ring.
+ * </p>
+ *
+ * @author Barthelemy Dagenais
+ *
+ */
+public class SharedMemoryRing {
+
+	public final static int HEADER_SIZE = 128;
+
+	public final static int WRITE_POSITION = 0;
+
+	public final static int READ_POSITION = 64;
+
+	public final static int CLOSED = 96;
+
+	public final static int SPIN_COUNT = 1000;
+
+	public final static long MAX_PARK_NANOS = 1000000;
+
+	public final static long LIVENESS_CHECK_NANOS = 100000000;
+
+	// Volatile accesses order the accesses to the shared memory: the data is
+	// copied before the position is published.
+	private static volatile int fence;
+
+	private final ByteBuffer buffer;
+
+	private final int capacity;
+
+	private final int mask;
+
+	/**
+	 *
+	 * @param buffer
+	 *            The shared memory of the ring. Its size must be
+	 *            {@link #HEADER_SIZE} + capacity.
+	 * @param capacity
+	 *            A power of two.
+	 */
+	public SharedMemoryRing(ByteBuffer buffer, int capacity) {
+		if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+			throw new IllegalArgumentException("The capacity must be a power of two: " + capacity);
+		} else if (buffer.capacity() < HEADER_SIZE + capacity) {
+			throw new IllegalArgumentException("The buffer is too small for the capacity: " + capacity);
+		}
+		this.buffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		this.capacity = capacity;
+		this.mask = capacity - 1;
+	}
+
+	private static void fence() {
+		fence++;
+	}
+
+	/**
+	 * <p>
+	 * Checks whether the other side closed the socket. Returns false if the
+	 * socket is still open or is null.
+	 * </p>
+	 */
+	private static boolean isPeerClosed(Socket socket) {
+		if (socket == null) {
+			return false;
+		}
+		synchronized (socket) {
+			try {
+				int soTimeout = socket.getSoTimeout();
+				socket.setSoTimeout(1);
+				try {
+					// No data is sent on the socket once the transport is set up.
+					return socket.getInputStream().read() < 0;
+				} finally {
+					socket.setSoTimeout(soTimeout);
+				}
+			} catch (SocketTimeoutException e) {
+				return false;
+			} catch (IOException e) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @return The number of bytes that can be read without waiting.
+	 */
+	public int available() {
+		long write = buffer.getLong(WRITE_POSITION);
+		fence();
+		return (int) (write - buffer.getLong(READ_POSITION));
+	}
+
+	/**
+	 * <p>
+	 * Marks the ring as closed. The consumer can still read the bytes that
+	 * were written before.
+	 * </p>
+	 */
+	public void close() {
+		fence();
+		buffer.putInt(CLOSED, 1);
+		fence();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 *
+	 * @param socket
+	 *            The socket used to detect that the producer died. Can be
+	 *            null.
+	 * @param timeout
+	 *            The maximum time (in milliseconds) to wait for a byte. 0
+	 *            means no timeout.
+	 * @return A stream reading from this ring. Only one thread should read
+	 *         from the stream at a time.
+	 */
+	public InputStream getInputStream(Socket socket, int timeout) {
+		return new RingInputStream(socket, timeout);
+	}
+
+	/**
+	 *
+	 * @param socket
+	 *            The socket used to detect that the consumer died. Can be
+	 *            null.
+	 * @param timeout
+	 *            The maximum time (in milliseconds) to wait for free space. 0
+	 *            means no timeout.
+	 * @return A stream writing to this ring. Only one thread should write to
+	 *         the stream at a time.
+	 */
+	public OutputStream getOutputStream(Socket socket, int timeout) {
+		return new RingOutputStream(socket, timeout);
+	}
+
+	public boolean isClosed() {
+		return buffer.getInt(CLOSED) != 0;
+	}
+
+	/**
+	 * <p>
+	 * Waits for the other side: spins first and then parks for increasing
+	 * durations.
+	 * </p>
+	 *
+	 * @return The new iteration count.
+	 */
+	private int idle(int iteration, long start, int timeout, Socket socket, long[] lastCheck) throws IOException {
+		if (iteration < SPIN_COUNT) {
+			return iteration + 1;
+		}
+
+		long now = System.nanoTime();
+		if (timeout > 0 && now - start >= timeout * 1000000L) {
+			throw new SocketTimeoutException("Timeout while waiting for the shared memory ring.");
+		} else if (now - lastCheck[0] >= LIVENESS_CHECK_NANOS) {
+			lastCheck[0] = now;
+			if (isPeerClosed(socket)) {
+				close();
+			}
+		}
+		LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1000L << Math.min(iteration - SPIN_COUNT, 20)));
+		return iteration + 1;
+	}
+
+	private int read(ByteBuffer view, byte[] b, int off, int len, int timeout, Socket socket) throws IOException {
+		long read = buffer.getLong(READ_POSITION);
+		long write = buffer.getLong(WRITE_POSITION);
+		int iteration = 0;
+		long start = System.nanoTime();
+		long[] lastCheck = { start };
+		while (write == read) {
+			if (isClosed()) {
+				// Read the bytes written before the ring was closed.
+				fence();
+				write = buffer.getLong(WRITE_POSITION);
+				if (write == read) {
+					return -1;
+				}
+				break;
+			}
+			iteration = idle(iteration, start, timeout, socket, lastCheck);
+			write = buffer.getLong(WRITE_POSITION);
+		}
+		fence();
+
+		int count = (int) Math.min(len, write - read);
+		int index = (int) (read & mask);
+		int first = Math.min(count, capacity - index);
+		view.position(HEADER_SIZE + index);
+		view.get(b, off, first);
+		if (count > first) {
+			view.position(HEADER_SIZE);
+			view.get(b, off + first, count - first);
+		}
+
+		fence();
+		buffer.putLong(READ_POSITION, read + count);
+		return count;
+	}
+
+	private void write(ByteBuffer view, byte[] b, int off, int len, int timeout, Socket socket) throws IOException {
+		long write = buffer.getLong(WRITE_POSITION);
+		while (len > 0) {
+			long read = buffer.getLong(READ_POSITION);
+			int iteration = 0;
+			long start = System.nanoTime();
+			long[] lastCheck = { start };
+			while (write - read == capacity) {
+				if (isClosed()) {
+					throw new IOException("The shared memory ring is closed.");
+				}
+				iteration = idle(iteration, start, timeout, socket, lastCheck);
+				read = buffer.getLong(READ_POSITION);
+			}
+			if (isClosed()) {
+				throw new IOException("The shared memory ring is closed.");
+			}
+			fence();
+
+			int count = (int) Math.min(len, capacity - (write - read));
+			int index = (int) (write & mask);
+			int first = Math.min(count, capacity - index);
+			view.position(HEADER_SIZE + index);
+			view.put(b, off, first);
+			if (count > first) {
+				view.position(HEADER_SIZE);
+				view.put(b, off + first, count - first);
+			}
+
+			fence();
+			write += count;
+			buffer.putLong(WRITE_POSITION, write);
+			off += count;
+			len -= count;
+		}
+	}
+
+	private class RingInputStream extends InputStream {
+
+		private final ByteBuffer view = buffer.duplicate();
+
+		private final Socket socket;
+
+		private final int timeout;
+
+		RingInputStream(Socket socket, int timeout) {
+			this.socket = socket;
+			this.timeout = timeout;
+		}
+
+		@Override
+		public int available() {
+			return SharedMemoryRing.this.available();
+		}
+
+		@Override
+		public void close() {
+			SharedMemoryRing.this.close();
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (off < 0 || len < 0 || off + len > b.length) {
+				throw new IndexOutOfBoundsException();
+			} else if (len == 0) {
+				return 0;
+			}
+			return SharedMemoryRing.this.read(view, b, off, len, timeout, socket);
+		}
+	}
+
+	private class RingOutputStream extends OutputStream {
+
+		private final ByteBuffer view = buffer.duplicate();
+
+		private final Socket socket;
+
+		private final int timeout;
+
+		RingOutputStream(Socket socket, int timeout) {
+			this.socket = socket;
+			this.timeout = timeout;
+		}
+
+		@Override
+		public void close() {
+			SharedMemoryRing.this.close();
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (off < 0 || len < 0 || off + len > b.length) {
+				throw new IndexOutOfBoundsException();
+			}
+			SharedMemoryRing.this.write(view, b, off, len, timeout, socket);
+		}
+	}
+}
@@ -0,0 +1,179 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * <p>
+ * A pair of {@link SharedMemoryRing} mapped from a file created by the
+ * Python side (typically in /dev/shm). The first ring carries the commands
+ * sent by Python and the second ring carries the responses sent by the JVM.
+ * </p>
+ *
+ * <p>
+ * File layout: a header of {@link #FILE_HEADER_SIZE} bytes containing the
+ * magic {@link #MAGIC} and the capacity of each ring (a little endian int at
+ * offset 8), followed by the two rings. The file can be deleted once both
+ * sides mapped it.
+ * </p>
+ *
+ * <p>
+ * Because the file name comes from the other side, only files directly
+ * located in the configured directory, whose name starts with
+ * {@link #FILE_PREFIX} and whose content starts with the magic, are mapped.
+ * </p>
+ *
+ * @author Barthelemy Dagenais
+ *
+ */
+public class SharedMemoryTransport {
+
+	public final static String DEFAULT_DIRECTORY = "/dev/shm";
+
+	public final static String FILE_PREFIX = "py4j-";
+
+	public final static String MAGIC = "PY4JSHM1";
+
+	public final static int FILE_HEADER_SIZE = 64;
+
+	public final static int MIN_CAPACITY = 4096;
+
+	public final static int MAX_CAPACITY = 1 << 28;
+
+	private final SharedMemoryRing requests;
+
+	private final SharedMemoryRing responses;
+
+	private SharedMemoryTransport(SharedMemoryRing requests, SharedMemoryRing responses) {
+		this.requests = requests;
+		this.responses = responses;
+	}
+
+	/**
+	 * <p>
+	 * Maps the shared memory file created by the other side.
+	 * </p>
+	 *
+	 * @param path
+	 *            The path of the file.
+	 * @param directory
+	 *            The directory where the file must be located.
+	 * @return The transport.
+	 * @throws IOException
+	 *             If the file is not a valid shared memory file.
+	 */
+	public static SharedMemoryTransport open(String path, String directory) throws IOException {
+		File file = new File(path);
+		if (!file.getName().startsWith(FILE_PREFIX) || file.getParentFile() == null
+				|| !file.getParentFile().getCanonicalFile().equals(new File(directory).getCanonicalFile())) {
+			throw new IOException("Invalid shared memory file: " + path);
+		}
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			long length = raf.length();
+			if (length < FILE_HEADER_SIZE) {
+				throw new IOException("Invalid shared memory file: " + path);
+			}
+			byte[] magic = new byte[MAGIC.length()];
+			raf.readFully(magic);
+			if (!MAGIC.equals(new String(magic, Charset.forName("US-ASCII")))) {
+				throw new IOException("Invalid shared memory file: " + path);
+			}
+			raf.seek(8);
+			// RandomAccessFile reads big endian ints.
+			int capacity = Integer.reverseBytes(raf.readInt());
+			if (capacity < MIN_CAPACITY || capacity > MAX_CAPACITY || (capacity & (capacity - 1)) != 0
+					|| length != getFileSize(capacity)) {
+				throw new IOException("Invalid shared memory file: " + path);
+			}
+
+			MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			int ringSize = SharedMemoryRing.HEADER_SIZE + capacity;
+			return new SharedMemoryTransport(new SharedMemoryRing(slice(buffer, FILE_HEADER_SIZE, ringSize), capacity),
+					new SharedMemoryRing(slice(buffer, FILE_HEADER_SIZE + ringSize, ringSize), capacity));
+		} finally {
+			// The mapping stays valid after the file is closed.
+			raf.close();
+		}
+	}
+
+	/**
+	 *
+	 * @param capacity
+	 *            The capacity of each ring.
+	 * @return The size of a shared memory file.
+	 */
+	public static long getFileSize(int capacity) {
+		return FILE_HEADER_SIZE + 2L * (SharedMemoryRing.HEADER_SIZE + capacity);
+	}
+
+	private static ByteBuffer slice(ByteBuffer buffer, int offset, int size) {
+		ByteBuffer duplicate = buffer.duplicate();
+		duplicate.position(offset);
+		duplicate.limit(offset + size);
+		return duplicate.slice();
+	}
+
+	/**
+	 * <p>
+	 * Closes both rings: the other side sees the end of the streams.
+	 * </p>
+	 */
+	public void close() {
+		requests.close();
+		responses.close();
+	}
+
+	/**
+	 *
+	 * @return The ring carrying the commands sent by the Python side.
+	 */
+	public SharedMemoryRing getRequests() {
+		return requests;
+	}
+
+	/**
+	 *
+	 * @return The ring carrying the responses sent by the JVM.
+	 */
+	public SharedMemoryRing getResponses() {
+		return responses;
+	}
+}
@@ -41,38 +41,88 @@ public class StringUtil {
 
 	public final static char ESCAPE_CHAR = '\\';
 
+	/**
+	 * <p>
+	 * Escapes new lines, carriage returns and escape characters in a single
+	 * pass. The original string is returned if there is nothing to escape.
+	 * </p>
+	 *
+	 * @param original
+	 * @return The escaped string.
+	 */
 	public static String escape(String original) {
-		if (original != null) {
-			return original.replace("\\", "\\\\").replace("\r", "\\r").replace("\n", "\\n");
-		} else {
+		if (original == null) {
 			return null;
 		}
+
+		int length = original.length();
+		int escapes = 0;
+		for (int i = 0; i < length; i++) {
+			char c = original.charAt(i);
+			if (c == ESCAPE_CHAR || c == '\n' || c == '\r') {
+				escapes++;
+			}
+		}
+		if (escapes == 0) {
+			return original;
+		}
+
+		char[] escaped = new char[length + escapes];
+		int j = 0;
+		for (int i = 0; i < length; i++) {
+			char c = original.charAt(i);
+			if (c == ESCAPE_CHAR) {
+				escaped[j++] = ESCAPE_CHAR;
+				escaped[j++] = ESCAPE_CHAR;
+			} else if (c == '\n') {
+				escaped[j++] = ESCAPE_CHAR;
+				escaped[j++] = 'n';
+			} else if (c == '\r') {
+				escaped[j++] = ESCAPE_CHAR;
+				escaped[j++] = 'r';
+			} else {
+				escaped[j++] = c;
+			}
+		}
+		return new String(escaped);
 	}
 
+	/**
+	 * <p>
+	 * Unescapes a string escaped by {@link #escape(String)} in a single pass.
+	 * The escaped string is returned if it does not contain any escape
+	 * character.
+	 * </p>
+	 *
+	 * @param escaped
+	 * @return The unescaped string.
+	 */
 	public static String unescape(String escaped) {
-		boolean escaping = false;
-		StringBuilder newString = new StringBuilder();
+		int first = escaped.indexOf(ESCAPE_CHAR);
+		if (first < 0) {
+			return escaped;
+		}
 
-		for (char c : escaped.toCharArray()) {
-			if (!escaping) {
-				if (c == ESCAPE_CHAR) {
-					escaping = true;
-				} else {
-					newString.append(c);
-				}
-			} else {
+		int length = escaped.length();
+		char[] unescaped = new char[length];
+		escaped.getChars(0, first, unescaped, 0);
+		int j = first;
+		for (int i = first; i < length; i++) {
+			char c = escaped.charAt(i);
+			if (c != ESCAPE_CHAR) {
+				unescaped[j++] = c;
+			} else if (++i < length) {
+				c = escaped.charAt(i);
 				if (c == 'n') {
-					newString.append('\n');
+					unescaped[j++] = '\n';
 				} else if (c == 'r') {
-					newString.append('\r');
+					unescaped[j++] = '\r';
 				} else {
-					newString.append(c);
+					unescaped[j++] = c;
 				}
-				escaping = false;
 			}
 		}
 
-		return newString.toString();
-
+		return new String(unescaped, 0, j);
 	}
 }
@@ -0,0 +1,102 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j;
+
+import java.lang.reflect.Method;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>
+ * Thread utility class creating the threads that run the connections.
+ * </p>
+ *
+ * <p>
+ * Virtual threads are created through reflection so that Py4J still runs on
+ * JVMs that do not support them (before Java 21): on these JVMs, a regular
+ * (platform) thread is created instead.
+ * </p>
+ *
+ * @author Barthelemy Dagenais
+ *
+ */
+public class ThreadUtil {
+
+	private final static Logger logger = Logger.getLogger(ThreadUtil.class.getName());
+
+	private final static Object VIRTUAL_THREAD_BUILDER;
+
+	private final static Method UNSTARTED_METHOD;
+
+	static {
+		Object builder = null;
+		Method unstarted = null;
+		try {
+			builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+		} catch (Exception e) {
+			logger.log(Level.FINE, "Virtual threads are not supported by this JVM.");
+			builder = null;
+			unstarted = null;
+		}
+		VIRTUAL_THREAD_BUILDER = builder;
+		UNSTARTED_METHOD = unstarted;
+	}
+
+	/**
+	 *
+	 * @return True if this JVM can create virtual threads.
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return UNSTARTED_METHOD != null;
+	}
+
+	/**
+	 * <p>
+	 * Creates an unstarted thread that will execute the runnable.
+	 * </p>
+	 *
+	 * @param runnable
+	 * @param virtual
+	 *            If true, a virtual thread is created if the JVM supports
+	 *            them. Otherwise, a platform thread is created.
+	 * @return The unstarted thread.
+	 */
+	public static Thread newThread(Runnable runnable, boolean virtual) {
+		if (virtual && UNSTARTED_METHOD != null) {
+			try {
+				return (Thread) UNSTARTED_METHOD.invoke(VIRTUAL_THREAD_BUILDER, runnable);
+			} catch (Exception e) {
+				logger.log(Level.WARNING, "Could not create a virtual thread. Using a platform thread.", e);
+			}
+		}
+		return new Thread(runnable);
+	}
+}
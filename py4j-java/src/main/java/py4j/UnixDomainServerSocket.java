@@ -0,0 +1,221 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * <p>
+ * A server socket listening on a Unix domain socket path. The address passed
+ * to {@link #bind(SocketAddress, int)} is ignored: the server socket is always
+ * bound to its path, so a GatewayServer can listen on a Unix domain socket by
+ * using a {@link UnixDomainServerSocketFactory}.
+ * </p>
+ *
+ * <p>
+ * Access to the socket can be restricted with the permissions of the
+ * directory containing the socket file. The socket file is deleted when the
+ * server socket is closed. Requires Java 16+.
+ * </p>
+ *
+ * @author Barthelemy Dagenais
+ *
+ */
+public class UnixDomainServerSocket extends ServerSocket {
+
+	private final String path;
+
+	private volatile ServerSocketChannel channel;
+
+	private volatile Selector selector;
+
+	private volatile boolean closed = false;
+
+	private volatile int timeout;
+
+	public UnixDomainServerSocket(String path) throws IOException {
+		super();
+		this.path = path;
+	}
+
+	@Override
+	public Socket accept() throws IOException {
+		ServerSocketChannel currentChannel = channel;
+		if (closed) {
+			throw new SocketException("Socket is closed");
+		} else if (currentChannel == null) {
+			throw new SocketException("Socket is not bound yet");
+		}
+
+		try {
+			SocketChannel socketChannel;
+			while ((socketChannel = currentChannel.accept()) == null) {
+				selector = NetworkUtil.awaitChannel(currentChannel, selector, SelectionKey.OP_ACCEPT, timeout);
+			}
+			return new UnixDomainSocket(socketChannel, path);
+		} catch (IOException e) {
+			if (closed) {
+				// Same error as a ServerSocket closed while accepting.
+				throw new SocketException("Socket closed");
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Binds the server socket to its path. The endpoint is ignored.
+	 * </p>
+	 */
+	@Override
+	public synchronized void bind(SocketAddress endpoint, int backlog) throws IOException {
+		if (closed) {
+			throw new SocketException("Socket is closed");
+		} else if (channel != null) {
+			throw new SocketException("Already bound");
+		}
+		SocketAddress address = UnixDomainSocket.getAddress(path);
+		ServerSocketChannel newChannel = openChannel();
+		try {
+			ServerSocketChannel.class.getMethod("bind", SocketAddress.class, int.class).invoke(newChannel, address,
+					backlog);
+			newChannel.configureBlocking(false);
+		} catch (Exception e) {
+			NetworkUtil.quietlyClose(newChannel);
+			throw getIOException("Could not bind to " + path, e);
+		}
+		channel = newChannel;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		NetworkUtil.quietlyClose(channel);
+		NetworkUtil.quietlyClose(selector);
+		if (channel != null) {
+			new File(path).delete();
+		}
+	}
+
+	@Override
+	public ServerSocketChannel getChannel() {
+		return null;
+	}
+
+	@Override
+	public InetAddress getInetAddress() {
+		return null;
+	}
+
+	@Override
+	public int getLocalPort() {
+		return -1;
+	}
+
+	/**
+	 *
+	 * @return The path of the socket file.
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	@Override
+	public int getSoTimeout() {
+		return timeout;
+	}
+
+	@Override
+	public boolean isBound() {
+		return channel != null;
+	}
+
+	@Override
+	public boolean isClosed() {
+		return closed;
+	}
+
+	@Override
+	public void setReuseAddress(boolean on) {
+	}
+
+	@Override
+	public synchronized void setSoTimeout(int timeout) throws SocketException {
+		if (timeout < 0) {
+			throw new IllegalArgumentException("timeout can't be negative");
+		}
+		this.timeout = timeout;
+	}
+
+	@Override
+	public String toString() {
+		return "UnixDomainServerSocket[path=" + path + "]";
+	}
+
+	private static IOException getIOException(String message, Exception e) {
+		Throwable cause = e;
+		if (e instanceof InvocationTargetException) {
+			cause = e.getCause();
+		}
+		if (cause instanceof IOException) {
+			return (IOException) cause;
+		}
+		IOException exception = new IOException(message);
+		exception.initCause(cause);
+		return exception;
+	}
+
+	private static ServerSocketChannel openChannel() throws IOException {
+		if (!UnixDomainSocket.isSupported()) {
+			throw new SocketException("Unix domain sockets require Java 16 or later.");
+		}
+		try {
+			Class<?> familyClass = Class.forName("java.net.ProtocolFamily");
+			Object unix = Class.forName("java.net.StandardProtocolFamily").getField("UNIX").get(null);
+			return (ServerSocketChannel) ServerSocketChannel.class.getMethod("open", familyClass).invoke(null, unix);
+		} catch (Exception e) {
+			throw getIOException("Could not open a Unix domain socket", e);
+		}
+	}
+}
@@ -0,0 +1,244 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.channels.SocketChannel;
+
+/**
+ * <p>
+ * A socket connected to a Unix domain socket path. This class adapts a Unix
+ * domain {@link SocketChannel} to the {@link Socket} API so that the gateway
+ * and callback connections can use Unix domain sockets without any change.
+ * </p>
+ *
+ * <p>
+ * Unix domain sockets require Java 16+ and are accessed through reflection so
+ * that Py4J still runs on older JVMs. Options that only apply to TCP (e.g.,
+ * SO_LINGER) are ignored. Use {@link UnixDomainSocketFactory} to create these
+ * sockets.
+ * </p>
+ *
+ * @author Barthelemy Dagenais
+ *
+ */
+public class UnixDomainSocket extends Socket {
+
+	private final static Class<?> ADDRESS_CLASS;
+
+	static {
+		Class<?> addressClass = null;
+		try {
+			addressClass = Class.forName("java.net.UnixDomainSocketAddress");
+		} catch (Exception e) {
+			addressClass = null;
+		}
+		ADDRESS_CLASS = addressClass;
+	}
+
+	private final SocketChannel channel;
+
+	private final String path;
+
+	private final ChannelInputStream input;
+
+	private final ChannelOutputStream output;
+
+	private volatile int timeout;
+
+	/**
+	 *
+	 * @param channel
+	 *            A connected Unix domain socket channel.
+	 * @param path
+	 *            The path of the socket file.
+	 * @throws IOException
+	 */
+	public UnixDomainSocket(SocketChannel channel, String path) throws IOException {
+		super();
+		this.channel = channel;
+		this.path = path;
+		channel.configureBlocking(false);
+		this.input = new ChannelInputStream(channel, 0);
+		this.output = new ChannelOutputStream(channel, 0);
+	}
+
+	/**
+	 * <p>
+	 * Connects to the Unix domain socket at the given path.
+	 * </p>
+	 *
+	 * @param path
+	 * @return A connected socket.
+	 * @throws IOException
+	 */
+	public static UnixDomainSocket connect(String path) throws IOException {
+		SocketChannel channel = SocketChannel.open(getAddress(path));
+		try {
+			return new UnixDomainSocket(channel, path);
+		} catch (IOException e) {
+			NetworkUtil.quietlyClose(channel);
+			throw e;
+		}
+	}
+
+	/**
+	 *
+	 * @param path
+	 * @return The UnixDomainSocketAddress of the path.
+	 * @throws IOException
+	 *             If the JVM does not support Unix domain sockets.
+	 */
+	public static SocketAddress getAddress(String path) throws IOException {
+		if (ADDRESS_CLASS == null) {
+			throw new SocketException("Unix domain sockets require Java 16 or later.");
+		}
+		try {
+			return (SocketAddress) ADDRESS_CLASS.getMethod("of", String.class).invoke(null, path);
+		} catch (Exception e) {
+			throw new SocketException("Invalid Unix domain socket path: " + path);
+		}
+	}
+
+	/**
+	 *
+	 * @return True if this JVM supports Unix domain sockets.
+	 */
+	public static boolean isSupported() {
+		return ADDRESS_CLASS != null;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			channel.close();
+		} finally {
+			NetworkUtil.quietlyClose(input);
+			NetworkUtil.quietlyClose(output);
+		}
+	}
+
+	@Override
+	public SocketChannel getChannel() {
+		return channel;
+	}
+
+	@Override
+	public InetAddress getInetAddress() {
+		return null;
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		if (!channel.isOpen()) {
+			throw new SocketException("Socket is closed");
+		}
+		return input;
+	}
+
+	@Override
+	public int getLocalPort() {
+		return -1;
+	}
+
+	@Override
+	public OutputStream getOutputStream() throws IOException {
+		if (!channel.isOpen()) {
+			throw new SocketException("Socket is closed");
+		}
+		return output;
+	}
+
+	/**
+	 *
+	 * @return The path of the socket file.
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	@Override
+	public int getPort() {
+		return 0;
+	}
+
+	@Override
+	public int getSoTimeout() {
+		return timeout;
+	}
+
+	@Override
+	public boolean isBound() {
+		return true;
+	}
+
+	@Override
+	public boolean isClosed() {
+		return !channel.isOpen();
+	}
+
+	@Override
+	public boolean isConnected() {
+		return channel.isConnected();
+	}
+
+	@Override
+	public void setKeepAlive(boolean on) {
+	}
+
+	@Override
+	public void setSoLinger(boolean on, int linger) {
+	}
+
+	@Override
+	public synchronized void setSoTimeout(int timeout) throws SocketException {
+		if (timeout < 0) {
+			throw new IllegalArgumentException("timeout can't be negative");
+		}
+		this.timeout = timeout;
+		input.setTimeout(timeout);
+		output.setTimeout(timeout);
+	}
+
+	@Override
+	public void setTcpNoDelay(boolean on) {
+	}
+
+	@Override
+	public String toString() {
+		return "UnixDomainSocket[path=" + path + "]";
+	}
+}
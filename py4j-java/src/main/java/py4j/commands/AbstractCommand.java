@@ -39,6 +39,7 @@ import java.util.logging.Logger;
 
 import py4j.Gateway;
 import py4j.Protocol;
+import py4j.ProtocolReader;
 import py4j.Py4JException;
 import py4j.Py4JServerConnection;
 import py4j.ReturnObject;
@@ -76,6 +77,19 @@ public abstract class AbstractCommand implements Command {
 	 */
 	protected List<Object> getArguments(BufferedReader reader) throws IOException {
 		List<Object> arguments = new ArrayList<Object>();
+
+		if (reader instanceof ProtocolReader) {
+			// Decode the arguments directly from the reader (binary
+			// arguments are never converted to strings).
+			ProtocolReader protocolReader = (ProtocolReader) reader;
+			Object argument = protocolReader.readObject(this.gateway);
+			while (argument != ProtocolReader.END_OF_COMMAND) {
+				arguments.add(argument);
+				argument = protocolReader.readObject(this.gateway);
+			}
+			return arguments;
+		}
+
 		List<String> stringArguments = getStringArguments(reader);
 
 		for (String stringArgument : stringArguments) {
@@ -85,6 +99,23 @@ public abstract class AbstractCommand implements Command {
 		return arguments;
 	}
 
+	/**
+	 *
+	 * @param reader
+	 * @return An array of the remaining arguments in the reader. Consumes the
+	 *         end of command part. If the reader is a {@link ProtocolReader},
+	 *         the array is reused: it must be released with
+	 *         {@link #releaseArgumentArray(BufferedReader, Object[])}.
+	 * @throws IOException
+	 */
+	protected Object[] getArgumentArray(BufferedReader reader) throws IOException {
+		if (reader instanceof ProtocolReader) {
+			return ((ProtocolReader) reader).readArguments(this.gateway);
+		} else {
+			return getArguments(reader).toArray();
+		}
+	}
+
 	@Override
 	public String getCommandName() {
 		return commandName;
@@ -110,6 +141,38 @@ public abstract class AbstractCommand implements Command {
 		return arguments;
 	}
 
+	/**
+	 *
+	 * @param reader
+	 * @return The next line, which can refer to the string dictionary of the
+	 *         connection if the reader is a {@link ProtocolReader} (see
+	 *         {@link ProtocolReader#readInternedLine()}). Used for target ids
+	 *         and method names.
+	 * @throws IOException
+	 */
+	protected String readInternedLine(BufferedReader reader) throws IOException {
+		if (reader instanceof ProtocolReader) {
+			return ((ProtocolReader) reader).readInternedLine();
+		} else {
+			return reader.readLine();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Releases an array returned by
+	 * {@link #getArgumentArray(BufferedReader)}.
+	 * </p>
+	 *
+	 * @param reader
+	 * @param arguments
+	 */
+	protected void releaseArgumentArray(BufferedReader reader, Object[] arguments) {
+		if (reader instanceof ProtocolReader) {
+			((ProtocolReader) reader).releaseArguments(arguments);
+		}
+	}
+
 	@Override
 	public void init(Gateway gateway, Py4JServerConnection connection) {
 		this.gateway = gateway;
@@ -127,9 +190,23 @@ public abstract class AbstractCommand implements Command {
 	 * @return
 	 */
 	protected ReturnObject invokeMethod(String methodName, String targetObjectId, List<Object> arguments) {
+		return invokeMethod(methodName, targetObjectId, arguments != null ? arguments.toArray() : new Object[0]);
+	}
+
+	/**
+	 * <p>
+	 * Convenient shortcut to invoke a method dynamically.
+	 * </p>
+	 *
+	 * @param methodName
+	 * @param targetObjectId
+	 * @param arguments
+	 * @return
+	 */
+	protected ReturnObject invokeMethod(String methodName, String targetObjectId, Object[] arguments) {
 		ReturnObject returnObject = null;
 		try {
-			returnObject = gateway.invoke(methodName, targetObjectId, arguments);
+			returnObject = gateway.invokeMethod(methodName, targetObjectId, arguments);
 		} catch (Exception e) {
 			logger.log(Level.FINE, "Received exception while executing this command: " + methodName, e);
 			returnObject = ReturnObject.getErrorReturnObject(e);
@@ -37,6 +37,7 @@ import java.io.IOException;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import py4j.Protocol;
@@ -53,7 +54,7 @@ import py4j.reflection.TypeConverter;
  * @author Barthelemy Dagenais
  * 
  */
-public class ArrayCommand extends AbstractCommand {
+public class ArrayCommand extends AbstractCommand implements StatelessCommand {
 
 	private final Logger logger = Logger.getLogger(ArrayCommand.class.getName());
 
@@ -73,7 +74,7 @@ public class ArrayCommand extends AbstractCommand {
 		this.commandName = ARRAY_COMMAND_NAME;
 	}
 
-	private String createArray(BufferedReader reader) throws IOException {
+	private ReturnObject createArray(BufferedReader reader) throws IOException {
 		String fqn = (String) Protocol.getObject(reader.readLine(), gateway);
 		List<Object> dimensions = getArguments(reader);
 		int size = dimensions.size();
@@ -83,35 +84,37 @@ public class ArrayCommand extends AbstractCommand {
 		}
 		Object newArray = gateway.getReflectionEngine().createArray(fqn, dimensionsInt);
 		ReturnObject returnObject = gateway.getReturnObject(newArray);
-		return Protocol.getOutputCommand(returnObject);
+		return returnObject;
 	}
 
 	@Override
 	public void execute(String commandName, BufferedReader reader, BufferedWriter writer)
 			throws Py4JException, IOException {
 		char subCommand = safeReadLine(reader).charAt(0);
-		String returnCommand = null;
+		ReturnObject returnObject = null;
 		if (subCommand == ARRAY_GET_SUB_COMMAND_NAME) {
-			returnCommand = getArray(reader);
+			returnObject = getArray(reader);
 		} else if (subCommand == ARRAY_SET_SUB_COMMAND_NAME) {
-			returnCommand = setArray(reader);
+			returnObject = setArray(reader);
 		} else if (subCommand == ARRAY_SLICE_SUB_COMMAND_NAME) {
-			returnCommand = sliceArray(reader);
+			returnObject = sliceArray(reader);
 		} else if (subCommand == ARRAY_LEN_SUB_COMMAND_NAME) {
-			returnCommand = lenArray(reader);
+			returnObject = lenArray(reader);
 		} else if (subCommand == ARRAY_CREATE_SUB_COMMAND_NAME) {
-			returnCommand = createArray(reader);
+			returnObject = createArray(reader);
 		} else {
-			returnCommand = Protocol.getOutputErrorCommand("Unknown Array SubCommand Name: " + subCommand);
+			returnObject = ReturnObject.getErrorReturnObject("Unknown Array SubCommand Name: " + subCommand);
 		}
 
-		logger.finest("Returning command: " + returnCommand);
-		writer.write(returnCommand);
+		if (logger.isLoggable(Level.FINEST)) {
+			logger.finest("Returning command: " + Protocol.getOutputCommand(returnObject));
+		}
+		Protocol.writeOutputCommand(returnObject, writer);
 		writer.flush();
 
 	}
 
-	private String getArray(BufferedReader reader) throws IOException {
+	private ReturnObject getArray(BufferedReader reader) throws IOException {
 		Object arrayObject = gateway.getObject(reader.readLine());
 		int index = (Integer) Protocol.getObject(reader.readLine(), gateway);
 		// Read end
@@ -119,10 +122,10 @@ public class ArrayCommand extends AbstractCommand {
 
 		Object getObject = Array.get(arrayObject, index);
 		ReturnObject returnObject = gateway.getReturnObject(getObject);
-		return Protocol.getOutputCommand(returnObject);
+		return returnObject;
 	}
 
-	private String lenArray(BufferedReader reader) throws IOException {
+	private ReturnObject lenArray(BufferedReader reader) throws IOException {
 		Object arrayObject = gateway.getObject(reader.readLine());
 
 		// Read end
@@ -130,10 +133,10 @@ public class ArrayCommand extends AbstractCommand {
 
 		int length = Array.getLength(arrayObject);
 		ReturnObject returnObject = gateway.getReturnObject(length);
-		return Protocol.getOutputCommand(returnObject);
+		return returnObject;
 	}
 
-	private String setArray(BufferedReader reader) throws IOException {
+	private ReturnObject setArray(BufferedReader reader) throws IOException {
 		Object arrayObject = gateway.getObject(reader.readLine());
 		int index = (Integer) Protocol.getObject(reader.readLine(), gateway);
 		Object objectToSet = Protocol.getObject(reader.readLine(), gateway);
@@ -144,7 +147,7 @@ public class ArrayCommand extends AbstractCommand {
 		Object convertedObject = convertArgument(arrayObject.getClass().getComponentType(), objectToSet);
 
 		Array.set(arrayObject, index, convertedObject);
-		return RETURN_VOID;
+		return ReturnObject.getVoidReturnObject();
 	}
 
 	private Object convertArgument(Class<?> arrayClass, Object objectToSet) {
@@ -169,7 +172,7 @@ public class ArrayCommand extends AbstractCommand {
 		return newObject;
 	}
 
-	private String sliceArray(BufferedReader reader) throws IOException {
+	private ReturnObject sliceArray(BufferedReader reader) throws IOException {
 		Object arrayObject = gateway.getObject(reader.readLine());
 		List<Object> indices = getArguments(reader);
 		int size = indices.size();
@@ -180,6 +183,6 @@ public class ArrayCommand extends AbstractCommand {
 			Array.set(newArray, i, Array.get(arrayObject, index));
 		}
 		ReturnObject returnObject = gateway.getReturnObject(newArray);
-		return Protocol.getOutputCommand(returnObject);
+		return returnObject;
 	}
 }
@@ -0,0 +1,148 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j.commands;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import py4j.Protocol;
+import py4j.ProtocolReader;
+import py4j.Py4JException;
+import py4j.ReturnObject;
+
+/**
+ * <p>
+ * A BatchCommand executes a sequence of method calls received in a single
+ * command and sends all the results back in a single response. This saves
+ * one round trip per call when a client needs to make many independent
+ * calls (e.g., setting many properties).
+ * </p>
+ *
+ * <p>
+ * Each call is encoded like the body of a call command: target object id,
+ * method name, arguments, and end of command part. The batch ends with an
+ * additional end of command part. The response contains one return message
+ * per call, in the same order as the calls.
+ * </p>
+ *
+ * <p>
+ * The calls are all read before being executed, then executed
+ * sequentially and independently: if a call fails, including when its
+ * arguments cannot be decoded, its return message is an error and the next
+ * calls are still executed.
+ * </p>
+ *
+ * @author Barthelemy Dagenais
+ *
+ */
+public class BatchCommand extends AbstractCommand implements StatelessCommand {
+
+	private final Logger logger = Logger.getLogger(BatchCommand.class.getName());
+
+	public final static String BATCH_COMMAND_NAME = "b";
+
+	public BatchCommand() {
+		super();
+		this.commandName = BATCH_COMMAND_NAME;
+	}
+
+	@Override
+	public void execute(String commandName, BufferedReader reader, BufferedWriter writer)
+			throws Py4JException, IOException {
+		// All the calls are read before the first one is executed: a call may
+		// use the connection for a callback (e.g., in client server mode).
+		List<Call> calls = readCalls(reader);
+
+		for (Call call : calls) {
+			ReturnObject returnObject = call.error;
+			if (returnObject == null) {
+				returnObject = invokeMethod(call.methodName, call.targetObjectId, call.arguments);
+			}
+
+			if (logger.isLoggable(Level.FINEST)) {
+				logger.finest("Returning command: " + Protocol.getOutputCommand(returnObject));
+			}
+			Protocol.writeOutputCommand(returnObject, writer);
+		}
+
+		logger.finer("Executed batch of " + calls.size() + " calls");
+		writer.flush();
+	}
+
+	private List<Call> readCalls(BufferedReader reader) throws IOException {
+		List<Call> calls = new ArrayList<Call>();
+		while (true) {
+			String targetObjectId = readInternedLine(reader);
+			if (Protocol.isEmpty(targetObjectId)) {
+				throw new Py4JException("Batch command is not terminated.");
+			} else if (Protocol.isEnd(targetObjectId)) {
+				return calls;
+			}
+
+			Call call = new Call();
+			call.targetObjectId = targetObjectId;
+			call.methodName = readInternedLine(reader);
+			try {
+				call.arguments = getArguments(reader);
+			} catch (RuntimeException e) {
+				logger.log(Level.FINE, "Invalid arguments in batch call to " + call.methodName, e);
+				skipArguments(reader);
+				call.error = ReturnObject.getErrorReturnObject(e);
+			}
+			calls.add(call);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Consumes the remaining arguments of a call whose arguments could not be
+	 * decoded so that the next call can be read.
+	 * </p>
+	 */
+	private void skipArguments(BufferedReader reader) throws IOException {
+		// Other readers read all the arguments before decoding them.
+		if (reader instanceof ProtocolReader) {
+			((ProtocolReader) reader).skipCommandParts(gateway);
+		}
+	}
+
+	private static class Call {
+		private String targetObjectId;
+		private String methodName;
+		private List<Object> arguments;
+		private ReturnObject error;
+	}
+
+}
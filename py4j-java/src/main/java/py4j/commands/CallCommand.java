@@ -32,7 +32,7 @@ package py4j.commands;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
-import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import py4j.Protocol;
@@ -58,7 +58,7 @@ import py4j.ReturnObject;
  * @author Barthelemy Dagenais
  * 
  */
-public class CallCommand extends AbstractCommand {
+public class CallCommand extends AbstractCommand implements StatelessCommand {
 
 	private final Logger logger = Logger.getLogger(CallCommand.class.getName());
 
@@ -72,15 +72,21 @@ public class CallCommand extends AbstractCommand {
 	@Override
 	public void execute(String commandName, BufferedReader reader, BufferedWriter writer)
 			throws Py4JException, IOException {
-		String targetObjectId = reader.readLine();
-		String methodName = reader.readLine();
-		List<Object> arguments = getArguments(reader);
+		String targetObjectId = readInternedLine(reader);
+		String methodName = readInternedLine(reader);
+		Object[] arguments = getArgumentArray(reader);
 
-		ReturnObject returnObject = invokeMethod(methodName, targetObjectId, arguments);
+		ReturnObject returnObject;
+		try {
+			returnObject = invokeMethod(methodName, targetObjectId, arguments);
+		} finally {
+			releaseArgumentArray(reader, arguments);
+		}
 
-		String returnCommand = Protocol.getOutputCommand(returnObject);
-		logger.finest("Returning command: " + returnCommand);
-		writer.write(returnCommand);
+		if (logger.isLoggable(Level.FINEST)) {
+			logger.finest("Returning command: " + Protocol.getOutputCommand(returnObject));
+		}
+		Protocol.writeOutputCommand(returnObject, writer);
 		writer.flush();
 	}
 
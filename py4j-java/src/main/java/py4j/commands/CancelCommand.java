@@ -45,7 +45,7 @@ import py4j.Py4JServerConnection;
  * down the associated socket in JVM.
  * </p>
  */
-public class CancelCommand extends AbstractCommand {
+public class CancelCommand extends AbstractCommand implements StatelessCommand {
 	private Py4JJavaServer gatewayServer;
 
 	public CancelCommand() {
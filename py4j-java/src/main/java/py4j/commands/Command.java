@@ -54,8 +54,10 @@ import py4j.Py4JServerConnection;
  * </p>
  *
  * <p>
- * There is a command instance per {@link GatewayConnection}: this ensures that
- * each command instance is accessed by only one thread/connection at a time.
+ * There is a command instance per {@link GatewayConnection}, created the first
+ * time the connection uses the command, unless the command implements
+ * {@link StatelessCommand}: a stateless command instance is shared by all the
+ * connections of a server.
  * </p>
  *
  * @author barthelemy
@@ -92,6 +94,7 @@ public interface Command {
 	 *
 	 * @param gateway
 	 * @param connection the {@link Py4JServerConnection} this socket is assigned to
+	 *            or null if the command is a {@link StatelessCommand}.
 	 */
 	public void init(Gateway gateway, Py4JServerConnection connection);
 
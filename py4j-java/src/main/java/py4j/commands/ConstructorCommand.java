@@ -49,7 +49,7 @@ import py4j.ReturnObject;
  * @author Barthelemy Dagenais
  * 
  */
-public class ConstructorCommand extends AbstractCommand {
+public class ConstructorCommand extends AbstractCommand implements StatelessCommand {
 
 	private final Logger logger = Logger.getLogger(CallCommand.class.getName());
 
@@ -64,20 +64,30 @@ public class ConstructorCommand extends AbstractCommand {
 	public void execute(String commandName, BufferedReader reader, BufferedWriter writer)
 			throws Py4JException, IOException {
 		String fqn = reader.readLine();
-		List<Object> arguments = getArguments(reader);
+		Object[] arguments = getArgumentArray(reader);
 
-		ReturnObject returnObject = invokeConstructor(fqn, arguments);
+		ReturnObject returnObject;
+		try {
+			returnObject = invokeConstructor(fqn, arguments);
+		} finally {
+			releaseArgumentArray(reader, arguments);
+		}
 
-		String returnCommand = Protocol.getOutputCommand(returnObject);
-		logger.finest("Returning command: " + returnCommand);
-		writer.write(returnCommand);
+		if (logger.isLoggable(Level.FINEST)) {
+			logger.finest("Returning command: " + Protocol.getOutputCommand(returnObject));
+		}
+		Protocol.writeOutputCommand(returnObject, writer);
 		writer.flush();
 	}
 
 	protected ReturnObject invokeConstructor(String fqn, List<Object> arguments) {
+		return invokeConstructor(fqn, arguments != null ? arguments.toArray() : new Object[0]);
+	}
+
+	protected ReturnObject invokeConstructor(String fqn, Object[] arguments) {
 		ReturnObject returnObject = null;
 		try {
-			returnObject = gateway.invoke(fqn, arguments);
+			returnObject = gateway.invokeConstructor(fqn, arguments);
 		} catch (Exception e) {
 			logger.log(Level.FINE, "Received exception while executing this command: " + fqn, e);
 			returnObject = ReturnObject.getErrorReturnObject(e);
@@ -46,7 +46,7 @@ import py4j.ReturnObject;
 import py4j.reflection.ReflectionEngine;
 import py4j.reflection.TypeUtil;
 
-public class DirCommand extends AbstractCommand {
+public class DirCommand extends AbstractCommand implements StatelessCommand {
 
 	private final Logger logger = Logger.getLogger(DirCommand.class.getName());
 
@@ -38,7 +38,7 @@ import py4j.Protocol;
 import py4j.Py4JException;
 import py4j.ReturnObject;
 
-public class ExceptionCommand extends AbstractCommand {
+public class ExceptionCommand extends AbstractCommand implements StatelessCommand {
 
 	private final Logger logger = Logger.getLogger(ExceptionCommand.class.getName());
 
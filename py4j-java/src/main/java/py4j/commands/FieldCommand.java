@@ -35,6 +35,7 @@ import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import py4j.Gateway;
@@ -52,7 +53,7 @@ import py4j.reflection.ReflectionEngine;
  * @author Barthelemy Dagenais
  *
  */
-public class FieldCommand extends AbstractCommand {
+public class FieldCommand extends AbstractCommand implements StatelessCommand {
 
 	private final Logger logger = Logger.getLogger(FieldCommand.class.getName());
 
@@ -72,22 +73,24 @@ public class FieldCommand extends AbstractCommand {
 	@Override
 	public void execute(String commandName, BufferedReader reader, BufferedWriter writer)
 			throws Py4JException, IOException {
-		String returnCommand = null;
+		ReturnObject returnObject = null;
 		String subCommand = safeReadLine(reader, false);
 
 		if (subCommand.equals(FIELD_GET_SUB_COMMAND_NAME)) {
-			returnCommand = getField(reader);
+			returnObject = getField(reader);
 		} else if (subCommand.equals(FIELD_SET_SUB_COMMAND_NAME)) {
-			returnCommand = setField(reader);
+			returnObject = setField(reader);
 		} else {
-			returnCommand = Protocol.getOutputErrorCommand("Unknown Field SubCommand Name: " + subCommand);
+			returnObject = ReturnObject.getErrorReturnObject("Unknown Field SubCommand Name: " + subCommand);
 		}
-		logger.finest("Returning command: " + returnCommand);
-		writer.write(returnCommand);
+		if (logger.isLoggable(Level.FINEST)) {
+			logger.finest("Returning command: " + Protocol.getOutputCommand(returnObject));
+		}
+		Protocol.writeOutputCommand(returnObject, writer);
 		writer.flush();
 	}
 
-	private String getField(BufferedReader reader) throws IOException {
+	private ReturnObject getField(BufferedReader reader) throws IOException {
 		String targetObjectId = reader.readLine();
 		String fieldName = reader.readLine();
 		reader.readLine(); // read EndOfCommand.
@@ -95,15 +98,14 @@ public class FieldCommand extends AbstractCommand {
 		Object object = gateway.getObject(targetObjectId);
 		Field field = reflectionEngine.getField(object, fieldName);
 		logger.finer("Getting field " + fieldName);
-		String returnCommand = null;
+		ReturnObject returnObject = null;
 		if (field == null) {
-			returnCommand = Protocol.getNoSuchFieldOutputCommand();
+			returnObject = ReturnObject.getNoMemberReturnObject();
 		} else {
 			Object fieldObject = reflectionEngine.getFieldValue(object, field);
-			ReturnObject rObject = gateway.getReturnObject(fieldObject);
-			returnCommand = Protocol.getOutputCommand(rObject);
+			returnObject = gateway.getReturnObject(fieldObject);
 		}
-		return returnCommand;
+		return returnObject;
 	}
 
 	@Override
@@ -112,7 +114,7 @@ public class FieldCommand extends AbstractCommand {
 		reflectionEngine = gateway.getReflectionEngine();
 	}
 
-	private String setField(BufferedReader reader) throws IOException {
+	private ReturnObject setField(BufferedReader reader) throws IOException {
 		String targetObjectId = reader.readLine();
 		String fieldName = reader.readLine();
 		String value = reader.readLine();
@@ -123,14 +125,14 @@ public class FieldCommand extends AbstractCommand {
 		Object object = gateway.getObject(targetObjectId);
 		Field field = reflectionEngine.getField(object, fieldName);
 		logger.finer("Setting field " + fieldName);
-		String returnCommand = null;
+		ReturnObject returnObject = null;
 		if (field == null) {
-			returnCommand = Protocol.getNoSuchFieldOutputCommand();
+			returnObject = ReturnObject.getNoMemberReturnObject();
 		} else {
 			reflectionEngine.setFieldValue(object, field, valueObject);
-			returnCommand = Protocol.getOutputVoidCommand();
+			returnObject = ReturnObject.getVoidReturnObject();
 		}
-		return returnCommand;
+		return returnObject;
 	}
 
 }
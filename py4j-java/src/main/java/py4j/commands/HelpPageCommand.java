@@ -53,7 +53,7 @@ import py4j.reflection.ReflectionUtil;
  * @author Barthelemy Dagenais
  * 
  */
-public class HelpPageCommand extends AbstractCommand {
+public class HelpPageCommand extends AbstractCommand implements StatelessCommand {
 	private final Logger logger = Logger.getLogger(HelpPageCommand.class.getName());
 
 	public final static String HELP_COMMAND_NAME = "h";
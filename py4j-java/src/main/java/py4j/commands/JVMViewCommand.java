@@ -54,7 +54,7 @@ import py4j.reflection.ReflectionEngine;
  * @author Barthelemy Dagenais
  *
  */
-public class JVMViewCommand extends AbstractCommand {
+public class JVMViewCommand extends AbstractCommand implements StatelessCommand {
 
 	private final Logger logger = Logger.getLogger(JVMViewCommand.class.getName());
 
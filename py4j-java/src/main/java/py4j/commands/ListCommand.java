@@ -37,6 +37,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import py4j.Protocol;
@@ -52,7 +53,7 @@ import py4j.ReturnObject;
  * @author Barthelemy Dagenais
  * 
  */
-public class ListCommand extends AbstractCommand {
+public class ListCommand extends AbstractCommand implements StatelessCommand {
 
 	private final Logger logger = Logger.getLogger(ListCommand.class.getName());
 
@@ -78,8 +79,8 @@ public class ListCommand extends AbstractCommand {
 	}
 
 	@SuppressWarnings({ "rawtypes" })
-	private String call_collections_method(BufferedReader reader, char listCommand) throws IOException {
-		String returnCommand;
+	private ReturnObject call_collections_method(BufferedReader reader, char listCommand) throws IOException {
+		ReturnObject returnObject;
 		String list_id = reader.readLine();
 
 		// Read end of command
@@ -88,24 +89,24 @@ public class ListCommand extends AbstractCommand {
 		List list = (List) gateway.getObject(list_id);
 		try {
 			if (listCommand == LIST_SORT_SUB_COMMAND_NAME) {
-				returnCommand = sort_list(list);
+				returnObject = sort_list(list);
 			} else if (listCommand == LIST_REVERSE_SUB_COMMAND_NAME) {
-				returnCommand = reverse_list(list);
+				returnObject = reverse_list(list);
 			} else if (listCommand == LIST_MAX_SUB_COMMAND_NAME) {
-				returnCommand = max_list(list);
+				returnObject = max_list(list);
 			} else if (listCommand == LIST_MIN_SUB_COMMAND_NAME) {
-				returnCommand = min_list(list);
+				returnObject = min_list(list);
 			} else {
-				returnCommand = Protocol.getOutputErrorCommand();
+				returnObject = ReturnObject.getErrorReturnObject();
 			}
 		} catch (Exception e) {
-			returnCommand = Protocol.getOutputErrorCommand();
+			returnObject = ReturnObject.getErrorReturnObject();
 		}
-		return returnCommand;
+		return returnObject;
 	}
 
 	@SuppressWarnings({ "rawtypes", "unchecked" })
-	private String concat_list(BufferedReader reader) throws IOException {
+	private ReturnObject concat_list(BufferedReader reader) throws IOException {
 		List list1 = (List) gateway.getObject(reader.readLine());
 		List list2 = (List) gateway.getObject(reader.readLine());
 		// Read end
@@ -114,11 +115,11 @@ public class ListCommand extends AbstractCommand {
 		List list3 = new ArrayList(list1);
 		list3.addAll(list2);
 		ReturnObject returnObject = gateway.getReturnObject(list3);
-		return Protocol.getOutputCommand(returnObject);
+		return returnObject;
 	}
 
 	@SuppressWarnings("rawtypes")
-	private String count_list(BufferedReader reader) throws IOException {
+	private ReturnObject count_list(BufferedReader reader) throws IOException {
 		List list1 = (List) gateway.getObject(reader.readLine());
 		Object objectToCount = Protocol.getObject(reader.readLine(), gateway);
 
@@ -127,35 +128,37 @@ public class ListCommand extends AbstractCommand {
 
 		int count = Collections.frequency(list1, objectToCount);
 		ReturnObject returnObject = gateway.getReturnObject(count);
-		return Protocol.getOutputCommand(returnObject);
+		return returnObject;
 	}
 
 	@Override
 	public void execute(String commandName, BufferedReader reader, BufferedWriter writer)
 			throws Py4JException, IOException {
 		char subCommand = safeReadLine(reader).charAt(0);
-		String returnCommand = null;
+		ReturnObject returnObject = null;
 		if (subCommand == LIST_SLICE_SUB_COMMAND_NAME) {
-			returnCommand = slice_list(reader);
+			returnObject = slice_list(reader);
 		} else if (subCommand == LIST_CONCAT_SUB_COMMAND_NAME) {
-			returnCommand = concat_list(reader);
+			returnObject = concat_list(reader);
 		} else if (subCommand == LIST_MULT_SUB_COMMAND_NAME) {
-			returnCommand = mult_list(reader);
+			returnObject = mult_list(reader);
 		} else if (subCommand == LIST_IMULT_SUB_COMMAND_NAME) {
-			returnCommand = imult_list(reader);
+			returnObject = imult_list(reader);
 		} else if (subCommand == LIST_COUNT_SUB_COMMAND_NAME) {
-			returnCommand = count_list(reader);
+			returnObject = count_list(reader);
 		} else {
-			returnCommand = call_collections_method(reader, subCommand);
+			returnObject = call_collections_method(reader, subCommand);
 		}
 
-		logger.finest("Returning command: " + returnCommand);
-		writer.write(returnCommand);
+		if (logger.isLoggable(Level.FINEST)) {
+			logger.finest("Returning command: " + Protocol.getOutputCommand(returnObject));
+		}
+		Protocol.writeOutputCommand(returnObject, writer);
 		writer.flush();
 	}
 
 	@SuppressWarnings({ "rawtypes", "unchecked" })
-	private String imult_list(BufferedReader reader) throws IOException {
+	private ReturnObject imult_list(BufferedReader reader) throws IOException {
 		List list1 = (List) gateway.getObject(reader.readLine());
 		List tempList = new ArrayList(list1.subList(0, list1.size()));
 		int n = Protocol.getInteger(reader.readLine());
@@ -170,25 +173,25 @@ public class ListCommand extends AbstractCommand {
 			}
 		}
 
-		return RETURN_VOID;
+		return ReturnObject.getVoidReturnObject();
 	}
 
 	@SuppressWarnings({ "rawtypes", "unchecked" })
-	private String max_list(List list) {
+	private ReturnObject max_list(List list) {
 		Object object = Collections.max(list);
 		ReturnObject returnObject = gateway.getReturnObject(object);
-		return Protocol.getOutputCommand(returnObject);
+		return returnObject;
 	}
 
 	@SuppressWarnings({ "rawtypes", "unchecked" })
-	private String min_list(List list) {
+	private ReturnObject min_list(List list) {
 		Object object = Collections.min(list);
 		ReturnObject returnObject = gateway.getReturnObject(object);
-		return Protocol.getOutputCommand(returnObject);
+		return returnObject;
 	}
 
 	@SuppressWarnings({ "rawtypes", "unchecked" })
-	private String mult_list(BufferedReader reader) throws IOException {
+	private ReturnObject mult_list(BufferedReader reader) throws IOException {
 		List list1 = (List) gateway.getObject(reader.readLine());
 		int n = Protocol.getInteger(reader.readLine());
 		// Read end
@@ -199,17 +202,17 @@ public class ListCommand extends AbstractCommand {
 			list2.addAll(list1);
 		}
 		ReturnObject returnObject = gateway.getReturnObject(list2);
-		return Protocol.getOutputCommand(returnObject);
+		return returnObject;
 	}
 
 	@SuppressWarnings({ "rawtypes" })
-	private String reverse_list(List list) {
+	private ReturnObject reverse_list(List list) {
 		Collections.reverse(list);
-		return RETURN_VOID;
+		return ReturnObject.getVoidReturnObject();
 	}
 
 	@SuppressWarnings({ "rawtypes", "unchecked" })
-	private String slice_list(BufferedReader reader) throws IOException {
+	private ReturnObject slice_list(BufferedReader reader) throws IOException {
 		List list1 = (List) gateway.getObject(reader.readLine());
 		List<Object> arguments = getArguments(reader);
 		List slice = new ArrayList();
@@ -217,13 +220,13 @@ public class ListCommand extends AbstractCommand {
 			slice.add(list1.get((Integer) argument));
 		}
 		ReturnObject returnObject = gateway.getReturnObject(slice);
-		return Protocol.getOutputCommand(returnObject);
+		return returnObject;
 	}
 
 	@SuppressWarnings({ "rawtypes", "unchecked" })
-	private String sort_list(List list) {
+	private ReturnObject sort_list(List list) {
 		Collections.sort(list);
-		return RETURN_VOID;
+		return ReturnObject.getVoidReturnObject();
 	}
 
 }
@@ -50,7 +50,7 @@ import py4j.Py4JException;
  * @author Barthelemy Dagenais
  * 
  */
-public class MemoryCommand extends AbstractCommand {
+public class MemoryCommand extends AbstractCommand implements StatelessCommand {
 
 	private final Logger logger = Logger.getLogger(MemoryCommand.class.getName());
 
@@ -0,0 +1,323 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j.commands;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import py4j.Gateway;
+import py4j.GatewayConnection;
+import py4j.Protocol;
+import py4j.ProtocolReader;
+import py4j.ProtocolWriter;
+import py4j.Py4JException;
+import py4j.Py4JServerConnection;
+
+/**
+ * <p>
+ * A MultiplexCommand wraps another command with a correlation id so that
+ * several threads on the client side can share a single connection. The
+ * wrapped command is executed by a pool of worker threads owned by the
+ * connection and its response is sent, prefixed by the correlation id, as
+ * soon as it is ready. Responses can thus be received in a different order
+ * than the commands. Each wrapped command takes a permit when it is executed
+ * (see {@link py4j.CommandPermits}), and a command that cannot be queued or
+ * that is rejected is answered with an error.
+ * </p>
+ *
+ * <p>
+ * Commands that change the state of the connection (e.g., negotiate) or that
+ * write directly to the socket (e.g., stream) cannot be multiplexed. Once a
+ * client has sent multiplexed commands on a connection, it should only send
+ * multiplexed commands on this connection. Multiplexed commands are refused
+ * on a connection that negotiated the
+ * {@link Protocol#STRING_DICTIONARY_FEATURE}: the wrapped commands are
+ * decoded concurrently and cannot share the dictionary of the connection.
+ * </p>
+ *
+ * @author Barthelemy Dagenais
+ *
+ */
+public class MultiplexCommand extends AbstractCommand {
+
+	private final Logger logger = Logger.getLogger(MultiplexCommand.class.getName());
+
+	public final static String MULTIPLEX_COMMAND_NAME = Protocol.MULTIPLEX_COMMAND_NAME;
+
+	public final static int DEFAULT_WORKER_COUNT = 16;
+
+	public final static int DEFAULT_MAX_QUEUED_COMMANDS = 1024;
+
+	// Idle workers are stopped after this delay.
+	private final static long WORKER_KEEP_ALIVE_SECONDS = 60;
+
+	private final static AtomicInteger workerCounter = new AtomicInteger();
+
+	private final int workerCount;
+
+	private final int maxQueuedCommands;
+
+	private ThreadPoolExecutor executor;
+
+	private boolean shutdown;
+
+	private GatewayConnection gatewayConnection;
+
+	public MultiplexCommand() {
+		this(DEFAULT_WORKER_COUNT);
+	}
+
+	public MultiplexCommand(int workerCount) {
+		this(workerCount, DEFAULT_MAX_QUEUED_COMMANDS);
+	}
+
+	/**
+	 *
+	 * @param workerCount
+	 *            The maximum number of multiplexed commands executed
+	 *            concurrently on a connection.
+	 * @param maxQueuedCommands
+	 *            The maximum number of multiplexed commands waiting for a
+	 *            worker. Excess commands are answered with an error.
+	 */
+	public MultiplexCommand(int workerCount, int maxQueuedCommands) {
+		super();
+		if (workerCount < 1) {
+			throw new IllegalArgumentException("Worker count < 1");
+		}
+		if (maxQueuedCommands < 1) {
+			throw new IllegalArgumentException("Max queued commands < 1");
+		}
+		this.commandName = MULTIPLEX_COMMAND_NAME;
+		this.workerCount = workerCount;
+		this.maxQueuedCommands = maxQueuedCommands;
+	}
+
+	@Override
+	public void execute(String commandName, BufferedReader reader, BufferedWriter writer)
+			throws Py4JException, IOException {
+		if (!(reader instanceof ProtocolReader) || !(writer instanceof ProtocolWriter)) {
+			throw new Py4JException("Multiplexed commands require a ProtocolReader and a ProtocolWriter.");
+		}
+
+		String header = reader.readLine();
+		int separator = header != null ? header.indexOf(Protocol.MULTIPLEXED_LENGTH_SEPARATOR) : -1;
+		if (separator < 1) {
+			throw new Py4JException("Invalid multiplexed command header: " + header);
+		}
+		final String id = header.substring(0, separator);
+		int length;
+		try {
+			length = Integer.parseInt(header.substring(separator + 1));
+		} catch (NumberFormatException e) {
+			throw new Py4JException("Invalid multiplexed command header: " + header, e);
+		}
+		if (length < 0) {
+			throw new Py4JException("Invalid multiplexed command header: " + header);
+		}
+		final byte[] command = ((ProtocolReader) reader).readRawBytes(length);
+		final ProtocolWriter protocolWriter = (ProtocolWriter) writer;
+
+		if (gatewayConnection == null) {
+			byte[] error = Protocol.getOutputErrorCommand("Multiplexed commands are not supported by this connection.")
+					.getBytes("UTF-8");
+			sendResponse(id, error, error.length, protocolWriter);
+			return;
+		} else if (((ProtocolReader) reader).isStringDictionary()) {
+			byte[] error = Protocol
+					.getOutputErrorCommand("Multiplexed commands cannot be used with the string dictionary.")
+					.getBytes("UTF-8");
+			sendResponse(id, error, error.length, protocolWriter);
+			return;
+		}
+
+		try {
+			getExecutor().execute(new Runnable() {
+				@Override
+				public void run() {
+					executeCommand(id, command, protocolWriter);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			logger.fine("Too many multiplexed commands queued: rejected command " + id);
+			byte[] error = Protocol.getOutputErrorCommand(
+					"Too many multiplexed commands queued: the command was rejected. Maximum: " + maxQueuedCommands)
+					.getBytes("UTF-8");
+			sendResponse(id, error, error.length, protocolWriter);
+		}
+	}
+
+	private void executeCommand(String id, byte[] command, ProtocolWriter writer) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ProtocolWriter commandWriter = new ProtocolWriter(output);
+		commandWriter.setRawBytes(writer.isRawBytes());
+		commandWriter.setDoubleBits(writer.isDoubleBits());
+		commandWriter.setExactTypes(writer.isExactTypes());
+		commandWriter.setCompressionThreshold(writer.getCompressionThreshold());
+		try {
+			ProtocolReader commandReader = new ProtocolReader(new ByteArrayInputStream(command));
+			String name = commandReader.readLine();
+			Command wrapped = gatewayConnection.getCommand(name);
+			if (wrapped == null || !isMultiplexable(name)) {
+				throw new Py4JException("Command cannot be multiplexed: " + name);
+			}
+			if (gatewayConnection.acquireCommandPermit(name)) {
+				try {
+					wrapped.execute(name, commandReader, commandWriter);
+				} finally {
+					gatewayConnection.releaseCommandPermit();
+				}
+			} else {
+				commandWriter.write(gatewayConnection.getCommandPermits().getRejectedCommandError());
+			}
+			commandWriter.flush();
+		} catch (Exception e) {
+			logger.log(Level.FINE, "Error while executing multiplexed command " + id, e);
+			output.reset();
+			try {
+				commandWriter = new ProtocolWriter(output);
+				commandWriter.write(Protocol.getOutputErrorCommand(e));
+				commandWriter.flush();
+			} catch (IOException ioe) {
+				// Cannot happen with a ByteArrayOutputStream.
+			}
+		}
+
+		try {
+			sendResponse(id, output.toByteArray(), output.size(), writer);
+		} catch (IOException e) {
+			logger.log(Level.FINE, "Could not send the response to multiplexed command " + id, e);
+		}
+	}
+
+	private ThreadPoolExecutor getExecutor() {
+		synchronized (this) {
+			if (shutdown) {
+				throw new Py4JException("Connection is shutting down.");
+			}
+			if (executor == null) {
+				executor = new ThreadPoolExecutor(workerCount, workerCount, WORKER_KEEP_ALIVE_SECONDS,
+						TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(maxQueuedCommands), new ThreadFactory() {
+							@Override
+							public Thread newThread(Runnable runnable) {
+								Thread thread = new Thread(runnable,
+										"py4j-multiplex-worker-" + workerCounter.incrementAndGet());
+								thread.setDaemon(true);
+								return thread;
+							}
+						});
+				executor.allowCoreThreadTimeOut(true);
+			}
+			return executor;
+		}
+	}
+
+	/**
+	 *
+	 * @return The maximum number of multiplexed commands executed
+	 *         concurrently on a connection.
+	 */
+	public int getWorkerCount() {
+		return workerCount;
+	}
+
+	/**
+	 *
+	 * @return The maximum number of multiplexed commands waiting for a worker
+	 *         on a connection.
+	 */
+	public int getMaxQueuedCommands() {
+		return maxQueuedCommands;
+	}
+
+	@Override
+	public void init(Gateway gateway, Py4JServerConnection connection) {
+		super.init(gateway, connection);
+		if (connection instanceof GatewayConnection) {
+			this.gatewayConnection = (GatewayConnection) connection;
+		}
+	}
+
+	protected boolean isMultiplexable(String commandName) {
+		return !(MULTIPLEX_COMMAND_NAME.equals(commandName) || Protocol.AUTH_COMMAND_NAME.equals(commandName)
+				|| Protocol.NEGOTIATE_COMMAND_NAME.equals(commandName)
+				|| StreamCommand.STREAM_COMMAND_NAME.equals(commandName));
+	}
+
+	/**
+	 * <p>
+	 * Writes a response to a multiplexed command and sends it right away,
+	 * even if the connection is deferring its responses.
+	 * </p>
+	 */
+	private void sendResponse(String id, byte[] response, int length, ProtocolWriter writer) throws IOException {
+		synchronized (writer) {
+			boolean deferred = writer.isFlushDeferred();
+			writer.setFlushDeferred(false);
+			try {
+				writer.write(Protocol.MULTIPLEXED_RETURN_MESSAGE);
+				writer.write(id);
+				writer.write(Protocol.MULTIPLEXED_LENGTH_SEPARATOR);
+				writer.write(Integer.toString(length));
+				writer.write(Protocol.END_OUTPUT);
+				writer.writeEncoded(response, 0, length);
+				writer.flush();
+			} finally {
+				writer.setFlushDeferred(deferred);
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Stops the workers. Multiplexed commands that were not executed yet are
+	 * dropped.
+	 * </p>
+	 */
+	public void shutdown() {
+		synchronized (this) {
+			shutdown = true;
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+		}
+	}
+}
@@ -0,0 +1,213 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j.commands;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import py4j.Protocol;
+import py4j.ProtocolReader;
+import py4j.ProtocolWriter;
+import py4j.Py4JException;
+import py4j.ReturnObject;
+
+/**
+ * <p>
+ * The NegotiateCommand is responsible for enabling optional protocol features
+ * (e.g., the binary protocol) requested by the client when the connection is
+ * opened.
+ * </p>
+ *
+ * <p>
+ * The client sends the names of the features it supports as string command
+ * parts. The command answers (always in text) with the comma-separated list of
+ * features that were accepted. The features are enabled only after the
+ * response has been sent, so the next command can use them.
+ * </p>
+ *
+ * <p>
+ * This command is instantiated by each connection because some features are
+ * remembered by the gateway for as long as the connection that negotiated
+ * them is open (e.g., the encoding of doubles in callbacks).
+ * </p>
+ *
+ * @author Barthelemy Dagenais
+ *
+ */
+public class NegotiateCommand extends AbstractCommand {
+
+	private final Logger logger = Logger.getLogger(NegotiateCommand.class.getName());
+
+	public final static String NEGOTIATE_COMMAND_NAME = Protocol.NEGOTIATE_COMMAND_NAME;
+
+	public final static String FEATURE_SEPARATOR = ",";
+
+	public NegotiateCommand() {
+		super();
+		this.commandName = NEGOTIATE_COMMAND_NAME;
+	}
+
+	/**
+	 * <p>
+	 * Enables a feature that was accepted by
+	 * {@link #isFeatureSupported(String, BufferedReader, BufferedWriter)}.
+	 * Called after the response has been flushed.
+	 * </p>
+	 *
+	 * @param feature
+	 * @param reader
+	 * @param writer
+	 * @throws IOException
+	 */
+	protected void enableFeature(String feature, BufferedReader reader, BufferedWriter writer) throws IOException {
+		if (Protocol.BINARY_FEATURE.equals(feature)) {
+			((ProtocolReader) reader).setFramed(true);
+			((ProtocolWriter) writer).setFramed(true);
+		} else if (Protocol.RAW_BYTES_FEATURE.equals(feature)) {
+			((ProtocolWriter) writer).setRawBytes(true);
+		} else if (getFeatureName(feature).equals(Protocol.COMPRESSION_FEATURE)) {
+			int threshold = getCompressionThreshold(feature);
+			if (threshold > 0) {
+				((ProtocolWriter) writer).setCompressionThreshold(threshold);
+			} else {
+				logger.warning("Invalid compression threshold: " + feature);
+			}
+		} else if (Protocol.DOUBLE_BITS_FEATURE.equals(feature)) {
+			((ProtocolWriter) writer).setDoubleBits(true);
+			gateway.setCallbackDoubleBits(connection, true);
+		} else if (Protocol.STRING_DICTIONARY_FEATURE.equals(feature)) {
+			((ProtocolReader) reader).setStringDictionary(true);
+		} else if (Protocol.EXACT_TYPES_FEATURE.equals(feature)) {
+			((ProtocolWriter) writer).setExactTypes(true);
+		}
+	}
+
+	@Override
+	public void execute(String commandName, BufferedReader reader, BufferedWriter writer)
+			throws Py4JException, IOException {
+		List<String> requestedFeatures = getStringArguments(reader);
+		List<String> acceptedFeatures = new ArrayList<String>();
+		StringBuilder builder = new StringBuilder();
+
+		for (String requestedFeature : requestedFeatures) {
+			String feature = Protocol.isString(requestedFeature) ? Protocol.getString(requestedFeature)
+					: requestedFeature;
+			if (!acceptedFeatures.contains(feature) && isFeatureSupported(feature, reader, writer)) {
+				if (acceptedFeatures.size() > 0) {
+					builder.append(FEATURE_SEPARATOR);
+				}
+				builder.append(feature);
+				acceptedFeatures.add(feature);
+			}
+		}
+
+		String returnCommand = Protocol.getOutputCommand(ReturnObject.getPrimitiveReturnObject(builder.toString()));
+		logger.finer("Accepted protocol features: " + builder);
+		writer.write(returnCommand);
+		writer.flush();
+
+		for (String feature : acceptedFeatures) {
+			enableFeature(feature, reader, writer);
+		}
+	}
+
+	/**
+	 *
+	 * @param feature
+	 * @return The name of the feature, without its parameter (e.g., deflate
+	 *         for deflate:1024).
+	 */
+	protected String getFeatureName(String feature) {
+		int index = feature.indexOf(Protocol.FEATURE_PARAMETER_SEPARATOR);
+		return index < 0 ? feature : feature.substring(0, index);
+	}
+
+	/**
+	 *
+	 * @param feature
+	 * @return The parameter of the feature (e.g., 1024 for deflate:1024) or
+	 *         null if the feature does not have a parameter.
+	 */
+	protected String getFeatureParameter(String feature) {
+		int index = feature.indexOf(Protocol.FEATURE_PARAMETER_SEPARATOR);
+		return index < 0 ? null : feature.substring(index + 1);
+	}
+
+	/**
+	 *
+	 * @param feature
+	 *            The compression feature, e.g., deflate or deflate:1000.
+	 * @return The threshold requested by the feature, the default threshold
+	 *         if the feature has no parameter, or -1 if the parameter is not
+	 *         a positive integer.
+	 */
+	protected int getCompressionThreshold(String feature) {
+		String threshold = getFeatureParameter(feature);
+		if (threshold == null) {
+			return Protocol.DEFAULT_COMPRESSION_THRESHOLD;
+		}
+		try {
+			int value = Integer.parseInt(threshold);
+			return value > 0 ? value : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 *
+	 * @param feature
+	 * @param reader
+	 * @param writer
+	 * @return True if the feature can be enabled on this connection.
+	 */
+	protected boolean isFeatureSupported(String feature, BufferedReader reader, BufferedWriter writer) {
+		if (Protocol.BINARY_FEATURE.equals(feature)) {
+			return reader instanceof ProtocolReader && writer instanceof ProtocolWriter
+					&& !((ProtocolReader) reader).isFramed();
+		} else if (Protocol.RAW_BYTES_FEATURE.equals(feature)) {
+			return writer instanceof ProtocolWriter;
+		} else if (getFeatureName(feature).equals(Protocol.COMPRESSION_FEATURE)) {
+			return writer instanceof ProtocolWriter && getCompressionThreshold(feature) > 0;
+		} else if (Protocol.DOUBLE_BITS_FEATURE.equals(feature)) {
+			return writer instanceof ProtocolWriter;
+		} else if (Protocol.STRING_DICTIONARY_FEATURE.equals(feature)) {
+			return reader instanceof ProtocolReader;
+		} else if (Protocol.EXACT_TYPES_FEATURE.equals(feature)) {
+			return writer instanceof ProtocolWriter;
+		}
+		return false;
+	}
+
+}
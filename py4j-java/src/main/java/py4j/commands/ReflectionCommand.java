@@ -58,7 +58,7 @@ import py4j.reflection.TypeUtil;
  * @author Barthelemy Dagenais
  *
  */
-public class ReflectionCommand extends AbstractCommand {
+public class ReflectionCommand extends AbstractCommand implements StatelessCommand {
 
 	private final Logger logger = Logger.getLogger(ReflectionCommand.class.getName());
 
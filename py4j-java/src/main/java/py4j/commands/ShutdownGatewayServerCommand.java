@@ -49,7 +49,7 @@ import py4j.Py4JServerConnection;
  * @author Barthelemy Dagenais
  *
  */
-public class ShutdownGatewayServerCommand extends AbstractCommand {
+public class ShutdownGatewayServerCommand extends AbstractCommand implements StatelessCommand {
 
 	private Py4JJavaServer gatewayServer;
 
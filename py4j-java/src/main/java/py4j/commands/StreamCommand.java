@@ -57,7 +57,10 @@ public class StreamCommand extends AbstractCommand {
 	/**
 	 * Usually a page.
 	 */
-	private final ByteBuffer streamBuffer = ByteBuffer.allocateDirect(4096);
+	private final static int STREAM_BUFFER_SIZE = 4096;
+
+	// Allocated the first time a stream is sent on the connection.
+	private ByteBuffer streamBuffer;
 
 	public StreamCommand() {
 		this.commandName = STREAM_COMMAND_NAME;
@@ -104,7 +107,10 @@ public class StreamCommand extends AbstractCommand {
 		ReadableByteChannel in = (ReadableByteChannel) obj;
 		try {
 			WritableByteChannel out = Channels.newChannel(connection.getSocket().getOutputStream());
-			streamBuffer.rewind();
+			if (streamBuffer == null) {
+				streamBuffer = ByteBuffer.allocateDirect(STREAM_BUFFER_SIZE);
+			}
+			streamBuffer.clear();
 
 			while (in.read(streamBuffer) != -1) {
 				streamBuffer.flip();
@@ -103,7 +103,8 @@ public class MethodInvoker {
 			} else if (parameters[i].isAssignableFrom(arguments[i])) {
 				tempCost = TypeUtil.computeDistance(parameters[i], arguments[i]);
 				converters.add(TypeConverter.NO_CONVERTER);
-			} else if (TypeUtil.isNumeric(parameters[i]) && TypeUtil.isNumeric(arguments[i])) {
+			} else if ((TypeUtil.isNumeric(parameters[i]) || TypeUtil.isBigInteger(parameters[i]))
+					&& TypeUtil.isNumeric(arguments[i])) {
 				tempCost = TypeUtil.computeNumericConversion(parameters[i], arguments[i], converters);
 			} else if (TypeUtil.isCharacter(parameters[i])) {
 				tempCost = TypeUtil.computeCharacterConversion(parameters[i], arguments[i], converters);
@@ -31,11 +31,17 @@ package py4j.reflection;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import py4j.CallbackFuture;
 import py4j.Gateway;
+import py4j.OneWay;
+import py4j.OneWayCallbackListener;
 import py4j.Protocol;
 import py4j.Py4JException;
 
@@ -46,6 +52,18 @@ import py4j.Py4JException;
  * objects are represented by dynamic proxies with a PythonProxyHandler.
  * </p>
  *
+ * <p>
+ * Methods returning a CompletableFuture or a CompletionStage (Java 8+) are
+ * called asynchronously: the calling thread does not wait for the Python side
+ * and the returned future is completed when the Python side answers. These
+ * classes are used through reflection so that Py4J still runs on older JVMs.
+ * </p>
+ *
+ * <p>
+ * One-way methods (see {@link OneWay}) return as soon as the callback is
+ * sent.
+ * </p>
+ *
  * @author Barthelemy Dagenais
  *
  */
@@ -63,6 +81,38 @@ public class PythonProxyHandler implements InvocationHandler {
 
 	public final static String GARBAGE_COLLECT_PROXY_COMMAND_NAME = "g\n";
 
+	private final static Class<?> COMPLETABLE_FUTURE_CLASS;
+
+	private final static Class<?> COMPLETION_STAGE_CLASS;
+
+	private final static Method COMPLETE_METHOD;
+
+	private final static Method COMPLETE_EXCEPTIONALLY_METHOD;
+
+	static {
+		Class<?> futureClass = null;
+		Class<?> stageClass = null;
+		Method complete = null;
+		Method completeExceptionally = null;
+		try {
+			futureClass = Class.forName("java.util.concurrent.CompletableFuture");
+			stageClass = Class.forName("java.util.concurrent.CompletionStage");
+			complete = futureClass.getMethod("complete", Object.class);
+			completeExceptionally = futureClass.getMethod("completeExceptionally", Throwable.class);
+		} catch (Exception e) {
+			Logger.getLogger(PythonProxyHandler.class.getName()).log(Level.FINE,
+					"CompletableFuture is not supported by this JVM.");
+			futureClass = null;
+			stageClass = null;
+			complete = null;
+			completeExceptionally = null;
+		}
+		COMPLETABLE_FUTURE_CLASS = futureClass;
+		COMPLETION_STAGE_CLASS = stageClass;
+		COMPLETE_METHOD = complete;
+		COMPLETE_EXCEPTIONALLY_METHOD = completeExceptionally;
+	}
+
 	public PythonProxyHandler(String id, Gateway gateway) {
 		super();
 		this.id = id;
@@ -95,23 +145,115 @@ public class PythonProxyHandler implements InvocationHandler {
 		sBuilder.append("\n");
 
 		if (args != null) {
+			boolean doubleBits = gateway.isCallbackDoubleBits();
 			for (Object arg : args) {
-				sBuilder.append(gateway.getReturnObject(arg).getCommandPart());
+				sBuilder.append(gateway.getReturnObject(arg).getCommandPart(doubleBits));
 				sBuilder.append("\n");
 			}
 		}
 
 		sBuilder.append("e\n");
 
+		if (isAsync(method.getReturnType())) {
+			return invokeAsync(method, sBuilder.toString());
+		} else if (gateway.isOneWay(method)) {
+			invokeOneWay(method, sBuilder.toString());
+			return null;
+		}
+
 		String returnCommand = gateway.getCallbackClient().sendCommand(sBuilder.toString());
 
 		Object output = Protocol.getReturnValue(returnCommand, gateway);
-		Object convertedOutput = convertOutput(method, output);
+		Object convertedOutput = convertOutput(method.getReturnType(), output);
 		return convertedOutput;
 	}
 
-	private Object convertOutput(Method method, Object output) {
-		Class<?> returnType = method.getReturnType();
+	private boolean isAsync(Class<?> returnType) {
+		return COMPLETABLE_FUTURE_CLASS != null
+				&& (returnType.equals(COMPLETABLE_FUTURE_CLASS) || returnType.equals(COMPLETION_STAGE_CLASS));
+	}
+
+	/**
+	 *
+	 * @return The class of the value of the future returned by the method, or
+	 *         Object if it is not known.
+	 */
+	private Class<?> getAsyncValueType(Method method) {
+		Type returnType = method.getGenericReturnType();
+		if (returnType instanceof ParameterizedType) {
+			Type valueType = ((ParameterizedType) returnType).getActualTypeArguments()[0];
+			if (valueType instanceof Class) {
+				return (Class<?>) valueType;
+			} else if (valueType instanceof ParameterizedType
+					&& ((ParameterizedType) valueType).getRawType() instanceof Class) {
+				return (Class<?>) ((ParameterizedType) valueType).getRawType();
+			}
+		}
+		return Object.class;
+	}
+
+	private Object invokeAsync(Method method, String command) throws Exception {
+		final Object future = COMPLETABLE_FUTURE_CLASS.newInstance();
+		final Class<?> valueType = getAsyncValueType(method);
+		gateway.getCallbackClient().sendCommandAsync(command).addListener(new CallbackFuture.Listener() {
+			@Override
+			public void completed(String response, Throwable error) {
+				try {
+					if (error != null) {
+						COMPLETE_EXCEPTIONALLY_METHOD.invoke(future, error);
+						return;
+					}
+					Object output;
+					try {
+						output = convertOutput(valueType, Protocol.getReturnValue(response, gateway));
+					} catch (Throwable e) {
+						COMPLETE_EXCEPTIONALLY_METHOD.invoke(future, e);
+						return;
+					}
+					COMPLETE_METHOD.invoke(future, output);
+				} catch (Exception e) {
+					logger.log(Level.WARNING, "Could not complete the future of Python object " + id, e);
+				}
+			}
+		});
+		return future;
+	}
+
+	private void invokeOneWay(final Method method, String command) {
+		gateway.getCallbackClient().sendCommandAsync(command).addListener(new CallbackFuture.Listener() {
+			@Override
+			public void completed(String response, Throwable error) {
+				Throwable failure = error;
+				if (failure == null) {
+					try {
+						// Raises the Python exception, if any.
+						Protocol.getReturnValue(response, gateway);
+					} catch (Throwable e) {
+						failure = e;
+					}
+				}
+				if (failure != null) {
+					reportOneWayFailure(method, failure);
+				}
+			}
+		});
+	}
+
+	private void reportOneWayFailure(Method method, Throwable error) {
+		OneWayCallbackListener listener = gateway.getOneWayCallbackListener();
+		if (listener == null) {
+			logger.log(Level.WARNING, "One-way callback " + method.getName() + " failed on Python object " + id,
+					error);
+			return;
+		}
+		try {
+			listener.callbackFailed(id, method, error);
+		} catch (Exception e) {
+			logger.log(Level.WARNING, "Error while notifying a one-way callback listener.", e);
+		}
+	}
+
+	private Object convertOutput(Class<?> returnType, Object output) {
 		// If output is None/null or expected return type is 
 		// Void then return output with no conversion
 		if (output == null || returnType.equals(Void.TYPE)) {
@@ -29,6 +29,8 @@
  *****************************************************************************/
 package py4j.reflection;
 
+import java.math.BigInteger;
+
 /**
  * <p>
  * A TypeConverter converts a Python type into a Java Type. For example, a
@@ -47,6 +49,7 @@ public class TypeConverter {
 	public final static int INT_TO_BYTE = 2;
 	public final static int STRING_TO_CHAR = 3;
 	public final static int NUM_TO_LONG = 4;
+	public final static int NUM_TO_BIG_INTEGER = 5;
 
 	private final int conversion;
 
@@ -56,6 +59,7 @@ public class TypeConverter {
 	public final static TypeConverter BYTE_CONVERTER = new TypeConverter(INT_TO_BYTE);
 	public final static TypeConverter CHAR_CONVERTER = new TypeConverter(STRING_TO_CHAR);
 	public final static TypeConverter LONG_CONVERTER = new TypeConverter(NUM_TO_LONG);
+	public final static TypeConverter BIG_INTEGER_CONVERTER = new TypeConverter(NUM_TO_BIG_INTEGER);
 
 	public TypeConverter() {
 		this(NO_CONVERSION);
@@ -85,7 +89,10 @@ public class TypeConverter {
 			newObject = ((CharSequence) obj).charAt(0);
 			break;
 		case NUM_TO_LONG:
-			newObject = Long.parseLong(obj.toString());
+			newObject = ((Number) obj).longValue();
+			break;
+		case NUM_TO_BIG_INTEGER:
+			newObject = BigInteger.valueOf(((Number) obj).longValue());
 			break;
 		default:
 			newObject = null;
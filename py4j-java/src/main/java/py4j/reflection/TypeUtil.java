@@ -29,6 +29,7 @@
  *****************************************************************************/
 package py4j.reflection;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -205,6 +206,13 @@ public class TypeUtil {
 				cost = 1;
 				converters.add(TypeConverter.FLOAT_CONVERTER);
 			}
+		} else if (isBigInteger(parent)) {
+			// BigIntegers are returned by value: Python sends them back as
+			// ints or longs.
+			if (isLong(child) || isInteger(child) || isShort(child) || isByte(child)) {
+				cost = getCost(parent, child);
+				converters.add(TypeConverter.BIG_INTEGER_CONVERTER);
+			}
 		}
 
 		return cost;
@@ -335,10 +343,16 @@ public class TypeUtil {
 			point = 2;
 		} else if (isLong(clazz)) {
 			point = 3;
+		} else if (isBigInteger(clazz)) {
+			point = 4;
 		}
 		return point;
 	}
 
+	public static boolean isBigInteger(Class<?> clazz) {
+		return clazz.equals(BigInteger.class);
+	}
+
 	public static boolean isBoolean(Class<?> clazz) {
 		return clazz.equals(Boolean.class) || clazz.equals(boolean.class);
 	}
@@ -0,0 +1,203 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.SocketFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CallbackClientTest {
+
+	private ServerSocket serverSocket;
+
+	private volatile CountDownLatch commandLatch;
+
+	private CallbackClient client;
+
+	/**
+	 * <p>
+	 * Fake callback server: answers each command with a void return value
+	 * once all the expected commands were received.
+	 * </p>
+	 */
+	@Before
+	public void setup() throws Exception {
+		commandLatch = new CountDownLatch(0);
+		serverSocket = new ServerSocket(0, 50, InetAddress.getByName(GatewayServer.DEFAULT_ADDRESS));
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						final Socket socket = serverSocket.accept();
+						new Thread(new Runnable() {
+							@Override
+							public void run() {
+								answer(socket);
+							}
+						}).start();
+					}
+				} catch (Exception e) {
+					// The server socket was closed.
+				}
+			}
+		});
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	private void answer(Socket socket) {
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+			OutputStream output = socket.getOutputStream();
+			String line = reader.readLine();
+			while (line != null) {
+				if (line.equals("e")) {
+					CountDownLatch latch = commandLatch;
+					latch.countDown();
+					latch.await(5, TimeUnit.SECONDS);
+					output.write("!yv\n".getBytes("UTF-8"));
+					output.flush();
+				}
+				line = reader.readLine();
+			}
+		} catch (Exception e) {
+			// The connection was closed.
+		} finally {
+			NetworkUtil.quietlyClose(socket);
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (client != null) {
+			client.shutdown();
+		}
+		serverSocket.close();
+	}
+
+	private CallbackClient createClient() {
+		// No periodic cleanup: the tests call it explicitly.
+		return new CallbackClient(serverSocket.getLocalPort(), serverSocket.getInetAddress(), 0, TimeUnit.SECONDS,
+				SocketFactory.getDefault());
+	}
+
+	@Test
+	public void testWarmUp() throws Exception {
+		client = createClient();
+		client.setMinIdleConnections(2);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (client.getIdleConnectionCount() < 2 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(2, client.getIdleConnectionCount());
+		assertEquals(2, client.getCreatedConnectionCount());
+
+		assertEquals("yv", client.sendCommand("c\nt\nhello\ne\n"));
+		assertEquals(1, client.getReusedConnectionCount());
+		assertEquals(2, client.getCreatedConnectionCount());
+		assertEquals(0, client.getActiveConnectionCount());
+
+		// The minimum is kept even if the connections are not used.
+		client.periodicCleanup();
+		client.periodicCleanup();
+		assertEquals(2, client.getIdleConnectionCount());
+		assertEquals(0, client.getClosedConnectionCount());
+	}
+
+	@Test
+	public void testPeriodicCleanup() throws Exception {
+		client = createClient();
+		int concurrency = 4;
+		commandLatch = new CountDownLatch(concurrency);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < concurrency; i++) {
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					client.sendCommand("c\nt\nhello\ne\n");
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		for (Thread thread : threads) {
+			thread.join(5000);
+		}
+		assertEquals(concurrency, client.getIdleConnectionCount());
+		assertEquals(concurrency, client.getPeakActiveConnectionCount());
+
+		// The connections were used during this period.
+		client.periodicCleanup();
+		assertEquals(4, client.getIdleConnectionCount());
+		assertEquals(0, client.getPeakActiveConnectionCount());
+
+		// Half of the unused connections are closed at each period.
+		client.periodicCleanup();
+		assertEquals(2, client.getIdleConnectionCount());
+		client.periodicCleanup();
+		assertEquals(1, client.getIdleConnectionCount());
+		client.periodicCleanup();
+		assertEquals(0, client.getIdleConnectionCount());
+		assertEquals(4, client.getClosedConnectionCount());
+		assertTrue(client.getCreatedConnectionCount() >= concurrency);
+	}
+
+	@Test
+	public void testSendCommandAsync() throws Exception {
+		client = createClient();
+		commandLatch = new CountDownLatch(2);
+		CallbackFuture first = client.sendCommandAsync("c\nt\nhello\ne\n");
+		CallbackFuture second = client.sendCommandAsync("c\nt\nhello\ne\n");
+		// The server only answers once both commands were received.
+		assertEquals("yv", first.get(5, TimeUnit.SECONDS));
+		assertEquals("yv", second.get(5, TimeUnit.SECONDS));
+
+		client.shutdown();
+		assertTrue(client.sendCommandAsync("c\nt\nhello\ne\n").getError() instanceof Py4JException);
+		client = null;
+	}
+}
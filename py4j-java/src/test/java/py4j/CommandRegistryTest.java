@@ -0,0 +1,99 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import py4j.commands.AbstractCommand;
+import py4j.commands.CallCommand;
+import py4j.commands.Command;
+import py4j.commands.MultiplexCommand;
+
+public class CommandRegistryTest {
+
+	public static class CustomCallCommand extends AbstractCommand {
+		public CustomCallCommand() {
+			this.commandName = CallCommand.CALL_COMMAND_NAME;
+		}
+
+		@Override
+		public void execute(String commandName, BufferedReader reader, BufferedWriter writer) {
+		}
+	}
+
+	private GatewayConnection createConnection(CommandRegistry registry) {
+		return new GatewayConnection(registry, new Socket(), new ProtocolReader(new ByteArrayInputStream(new byte[0])),
+				new ProtocolWriter(new ByteArrayOutputStream()), null, new ArrayList<GatewayServerListener>());
+	}
+
+	@Test
+	public void testSharedCommands() {
+		CommandRegistry registry = new CommandRegistry(new Gateway(null), null);
+		GatewayConnection connection1 = createConnection(registry);
+		GatewayConnection connection2 = createConnection(registry);
+
+		// Stateless commands are shared.
+		Command call = connection1.getCommand(CallCommand.CALL_COMMAND_NAME);
+		assertTrue(call instanceof CallCommand);
+		assertSame(call, connection2.getCommand(CallCommand.CALL_COMMAND_NAME));
+
+		// Other commands are created once per connection.
+		Command multiplex = connection1.getCommand(MultiplexCommand.MULTIPLEX_COMMAND_NAME);
+		assertTrue(multiplex instanceof MultiplexCommand);
+		assertSame(multiplex, connection1.getCommand(MultiplexCommand.MULTIPLEX_COMMAND_NAME));
+		assertNotSame(multiplex, connection2.getCommand(MultiplexCommand.MULTIPLEX_COMMAND_NAME));
+
+		assertNull(connection1.getCommand("unknown"));
+	}
+
+	@Test
+	public void testCustomCommandHidesBaseCommand() {
+		List<Class<? extends Command>> customCommands = new ArrayList<Class<? extends Command>>();
+		customCommands.add(CustomCallCommand.class);
+		CommandRegistry registry = new CommandRegistry(new Gateway(null), customCommands);
+		assertNull(registry.getSharedCommand(CallCommand.CALL_COMMAND_NAME));
+		Command command = registry.newConnectionCommand(CallCommand.CALL_COMMAND_NAME, null);
+		assertEquals(CustomCallCommand.class, command.getClass());
+	}
+}
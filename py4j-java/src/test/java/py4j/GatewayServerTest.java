@@ -29,21 +29,31 @@
  *****************************************************************************/
 package py4j;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
@@ -167,6 +177,645 @@ public class GatewayServerTest {
 		}
 	}
 
+	@Test
+	public void testPipelining() throws Exception {
+		List<Integer> entryPoint = new CopyOnWriteArrayList<Integer>();
+		final AtomicInteger writes = new AtomicInteger();
+		GatewayServer server = new GatewayServer(entryPoint, 0) {
+			@Override
+			protected Py4JServerConnection createConnection(Gateway gateway, Socket socket) throws IOException {
+				// Counts the writes of the responses to the socket.
+				OutputStream out = new FilterOutputStream(socket.getOutputStream()) {
+					@Override
+					public void write(byte[] b, int off, int len) throws IOException {
+						writes.incrementAndGet();
+						out.write(b, off, len);
+					}
+				};
+				GatewayConnection connection = new GatewayConnection(getCommandRegistry(), socket,
+						new ProtocolReader(socket.getInputStream()), new ProtocolWriter(out), null, getListeners());
+				connection.startConnection();
+				return connection;
+			}
+		};
+		server.start(true);
+
+		try {
+			Socket s = new Socket(server.getAddress(), server.getListeningPort());
+			try {
+				OutputStream out = s.getOutputStream();
+				BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "UTF-8"));
+				// All the commands are sent before reading the first response.
+				StringBuilder commands = new StringBuilder();
+				for (int i = 0; i < 100; i++) {
+					commands.append("c\nt\nadd\ni" + i + "\ne\n");
+				}
+				out.write(commands.toString().getBytes("UTF-8"));
+				out.flush();
+				for (int i = 0; i < 100; i++) {
+					assertEquals("!ybtrue", in.readLine());
+				}
+				assertEquals(100, entryPoint.size());
+				assertEquals(Integer.valueOf(99), entryPoint.get(99));
+				// The responses were coalesced in a single write.
+				assertEquals(1, writes.get());
+			} finally {
+				s.close();
+			}
+		} finally {
+			server.shutdown(true);
+		}
+	}
+
+	@Test
+	public void testMultiplexing() throws Exception {
+		GatewayServer server = new GatewayServer(null, 0);
+		server.start(true);
+
+		try {
+			Socket s = new Socket(server.getAddress(), server.getListeningPort());
+			try {
+				OutputStream out = s.getOutputStream();
+				BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "UTF-8"));
+				// The first command is slower: its response comes last.
+				out.write(getMultiplexedCommand("1", "c\nz:java.lang.Thread\nsleep\nL500\ne\n"));
+				out.write(getMultiplexedCommand("2", "c\nz:java.lang.String\nvalueOf\ni42\ne\n"));
+				out.write(getMultiplexedCommand("3", "N\nsbinary\ne\n"));
+				out.flush();
+
+				Map<String, String> responses = new HashMap<String, String>();
+				for (int i = 0; i < 2; i++) {
+					String header = in.readLine();
+					responses.put(header.substring(1, header.indexOf(':')), in.readLine());
+				}
+				assertEquals("!ys42", responses.get("2"));
+				assertTrue(responses.get("3").startsWith("!xspy4j.Py4JException: Command cannot be multiplexed"));
+				assertEquals("#1:4", in.readLine());
+				assertEquals("!yv", in.readLine());
+			} finally {
+				s.close();
+			}
+		} finally {
+			server.shutdown(true);
+		}
+	}
+
+	@Test
+	public void testMultiplexingDoubleBits() throws Exception {
+		GatewayServer server = new GatewayServer(null, 0);
+		server.start(true);
+
+		try {
+			Socket s = new Socket(server.getAddress(), server.getListeningPort());
+			try {
+				OutputStream out = s.getOutputStream();
+				BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "UTF-8"));
+				out.write("N\nshexfloat\ne\n".getBytes("UTF-8"));
+				out.flush();
+				assertEquals("!yshexfloat", in.readLine());
+
+				// Multiplexed responses use the negotiated double encoding.
+				out.write(getMultiplexedCommand("1", "c\nz:java.lang.Math\nabs\nd-0.1\ne\n"));
+				out.flush();
+				assertEquals("#1", in.readLine().split(":")[0]);
+				assertEquals("!y" + Protocol.DOUBLE_BITS_TYPE + Protocol.encodeDoubleBits(0.1), in.readLine());
+			} finally {
+				s.close();
+			}
+		} finally {
+			server.shutdown(true);
+		}
+	}
+
+	@Test
+	public void testCallbackDoubleBitsReset() throws Exception {
+		GatewayServer server = new GatewayServer(null, 0);
+		server.start(true);
+
+		try {
+			Socket s = new Socket(server.getAddress(), server.getListeningPort());
+			OutputStream out = s.getOutputStream();
+			BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "UTF-8"));
+			out.write("N\nshexfloat\ne\n".getBytes("UTF-8"));
+			out.flush();
+			assertEquals("!yshexfloat", in.readLine());
+			assertTrue(server.getGateway().isCallbackDoubleBits());
+
+			// Only this connection negotiated the feature.
+			s.close();
+			for (int i = 0; i < 100 && server.getGateway().isCallbackDoubleBits(); i++) {
+				Thread.sleep(50);
+			}
+			assertFalse(server.getGateway().isCallbackDoubleBits());
+		} finally {
+			server.shutdown(true);
+		}
+	}
+
+	public static class Echo {
+		public String echo(String value) {
+			return value;
+		}
+
+		public byte[] echoBytes(byte[] value) {
+			return value;
+		}
+	}
+
+	@Test
+	public void testBinaryProtocol() throws Exception {
+		GatewayServer server = new GatewayServer(new Echo(), 0);
+		server.start(true);
+
+		try {
+			Socket s = new Socket(server.getAddress(), server.getListeningPort());
+			try {
+				ProtocolWriter out = new ProtocolWriter(s.getOutputStream());
+				ProtocolReader in = new ProtocolReader(s.getInputStream());
+				out.write("N\nsbinary\ne\n");
+				out.flush();
+				assertEquals("!ysbinary", in.readLine());
+				out.setFramed(true);
+				in.setFramed(true);
+
+				out.write("c\nz:java.lang.String\nvalueOf\ni42\ne\n");
+				out.flush();
+				assertEquals("!ys42", readFramedResponse(in));
+
+				// Unpaired surrogates are replaced on both sides.
+				out.write("c\nt\necho\n");
+				out.writeBinaryString("\u00e9\ud83d\ude00 \ud83d");
+				out.write("e\n");
+				out.flush();
+				assertEquals("!ys\u00e9\ud83d\ude00 ?", readFramedResponse(in));
+
+				// Text command parts are still accepted.
+				out.write("c\nt\necho\nstext\\nin binary mode\ne\n");
+				out.flush();
+				assertEquals("!ystext\\nin binary mode", readFramedResponse(in));
+			} finally {
+				s.close();
+			}
+		} finally {
+			server.shutdown(true);
+		}
+	}
+
+	@Test
+	public void testRawBytesFeature() throws Exception {
+		GatewayServer server = new GatewayServer(new Echo(), 0);
+		server.start(true);
+		byte[] bytes = new byte[] { 1, '\n', 3, (byte) 0xff };
+
+		try {
+			Socket s = new Socket(server.getAddress(), server.getListeningPort());
+			try {
+				ProtocolWriter out = new ProtocolWriter(s.getOutputStream());
+				ProtocolReader in = new ProtocolReader(s.getInputStream());
+				// Raw bytes are always accepted, but only sent back once the
+				// feature is negotiated.
+				out.write("c\nt\nechoBytes\n");
+				out.writeRawBytes(bytes, 0, bytes.length);
+				out.write("e\n");
+				out.flush();
+				assertEquals("!yj" + Base64.encodeToString(bytes, false), in.readLine());
+
+				out.write("N\nsbytes\ne\n");
+				out.flush();
+				assertEquals("!ysbytes", in.readLine());
+
+				out.write("c\nt\nechoBytes\n");
+				out.writeRawBytes(bytes, 0, bytes.length);
+				out.write("e\n");
+				out.flush();
+				assertEquals('!', in.read());
+				assertEquals('y', in.read());
+				assertArrayEquals(bytes, (byte[]) in.readObject(null));
+
+				out.write("c\nt\necho\nsafter\ne\n");
+				out.flush();
+				assertEquals("!ysafter", in.readLine());
+			} finally {
+				s.close();
+			}
+		} finally {
+			server.shutdown(true);
+		}
+	}
+
+	@Test
+	public void testCompressionFeature() throws Exception {
+		GatewayServer server = new GatewayServer(new Echo(), 0);
+		server.start(true);
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			builder.append("compressible \u00e9 line ").append(i % 3).append('\n');
+		}
+		String value = builder.toString();
+		byte[] utf8 = value.getBytes("UTF-8");
+
+		try {
+			Socket s = new Socket(server.getAddress(), server.getListeningPort());
+			try {
+				ProtocolWriter out = new ProtocolWriter(s.getOutputStream());
+				ProtocolReader in = new ProtocolReader(s.getInputStream());
+				out.write("N\nsdeflate:256\ne\n");
+				out.flush();
+				assertEquals("!ysdeflate:256", in.readLine());
+
+				out.write("c\nt\necho\n");
+				out.writeCompressed(Protocol.STRING_TYPE, utf8, 0, utf8.length);
+				out.write("e\n");
+				out.flush();
+				assertEquals('!', in.read());
+				assertEquals('y', in.read());
+				assertEquals(value, in.readObject(null));
+
+				// Below the threshold, strings are not compressed.
+				out.write("c\nt\necho\nsshort\ne\n");
+				out.flush();
+				assertEquals("!ysshort", in.readLine());
+			} finally {
+				s.close();
+			}
+		} finally {
+			server.shutdown(true);
+		}
+	}
+
+	@Test
+	public void testStringDictionaryFeature() throws Exception {
+		GatewayServer server = new GatewayServer(new Echo(), 0);
+		server.start(true);
+
+		try {
+			Socket s = new Socket(server.getAddress(), server.getListeningPort());
+			try {
+				PrintWriter out = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), "UTF-8"));
+				BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "UTF-8"));
+				out.print("N\nsstrings\ne\n");
+				out.flush();
+				assertEquals("!ysstrings", in.readLine());
+
+				out.print("c\n@0:t\n@1:echo\n@2:hello\\nworld\ne\n");
+				out.print("c\n@0\n@1\n@2\ne\n");
+				// Redefines an id.
+				out.print("c\n@0\n@1\n@2:bye\ne\n");
+				out.print("c\n@0\n@1\n@2\ne\n");
+				out.flush();
+				assertEquals("!yshello\\nworld", in.readLine());
+				assertEquals("!yshello\\nworld", in.readLine());
+				assertEquals("!ysbye", in.readLine());
+				assertEquals("!ysbye", in.readLine());
+			} finally {
+				s.close();
+			}
+		} finally {
+			server.shutdown(true);
+		}
+	}
+
+	@Test
+	public void testStringDictionaryMultiplexing() throws Exception {
+		GatewayServer server = new GatewayServer(new Echo(), 0);
+		server.start(true);
+
+		try {
+			Socket s = new Socket(server.getAddress(), server.getListeningPort());
+			try {
+				OutputStream out = s.getOutputStream();
+				BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "UTF-8"));
+				out.write("N\nsstrings\ne\nc\n@0:t\n@1:echo\nsa\ne\n".getBytes("UTF-8"));
+				out.flush();
+				assertEquals("!ysstrings", in.readLine());
+				assertEquals("!ysa", in.readLine());
+
+				// The dictionary cannot be shared with the multiplexed
+				// commands: they are refused.
+				out.write(getMultiplexedCommand("1", "c\n@0\n@1\nsb\ne\n"));
+				out.flush();
+				assertEquals("#1", in.readLine().split(":")[0]);
+				assertEquals("!xsMultiplexed commands cannot be used with the string dictionary.", in.readLine());
+
+				// The connection and its dictionary are still usable.
+				out.write("c\n@0\n@1\nsc\ne\n".getBytes("UTF-8"));
+				out.flush();
+				assertEquals("!ysc", in.readLine());
+			} finally {
+				s.close();
+			}
+		} finally {
+			server.shutdown(true);
+		}
+	}
+
+	private String readFramedResponse(ProtocolReader in) throws IOException {
+		// The return value is a binary part: it must start a line to be read
+		// as text (escaped like a text command part).
+		assertEquals('!', in.read());
+		assertEquals('y', in.read());
+		return "!y" + in.readLine();
+	}
+
+	@Test
+	public void testVirtualThreads() throws Exception {
+		GatewayServer server = new GatewayServer.GatewayServerBuilder().javaPort(0).useVirtualThreads(true).build();
+		assertTrue(server.isVirtualThreads());
+		server.start(true);
+
+		try {
+			// Falls back to platform threads on JVMs without virtual threads.
+			Socket s = new Socket(server.getAddress(), server.getListeningPort());
+			try {
+				PrintWriter out = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), "UTF-8"));
+				BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "UTF-8"));
+				out.print("c\nz:java.lang.String\nvalueOf\ni42\ne\n");
+				out.flush();
+				assertEquals("!ys42", in.readLine());
+			} finally {
+				s.close();
+			}
+		} finally {
+			server.shutdown(true);
+		}
+	}
+
+	@Test
+	public void testMaxConnections() throws Exception {
+		TestListener listener = new TestListener();
+		GatewayServer server = new GatewayServer.GatewayServerBuilder().javaPort(0).maxConnections(1)
+				.acceptQueueSize(10).build();
+		server.addListener(listener);
+		server.start(true);
+
+		try {
+			Socket s1 = new Socket(server.getAddress(), server.getListeningPort());
+			Socket s2 = null;
+			try {
+				PrintWriter out1 = new PrintWriter(new OutputStreamWriter(s1.getOutputStream(), "UTF-8"));
+				BufferedReader in1 = new BufferedReader(new InputStreamReader(s1.getInputStream(), "UTF-8"));
+				out1.print("c\nz:java.lang.String\nvalueOf\ni1\ne\n");
+				out1.flush();
+				assertEquals("!ys1", in1.readLine());
+
+				s2 = new Socket(server.getAddress(), server.getListeningPort());
+				BufferedReader in2 = new BufferedReader(new InputStreamReader(s2.getInputStream(), "UTF-8"));
+				assertTrue(in2.readLine().startsWith("!zspy4j.Py4JException: Too many connections"));
+				assertEquals(null, in2.readLine());
+				assertEquals(1, server.getRejectedConnectionCount());
+				assertTrue(listener.values.contains(new Long(100000000)));
+			} finally {
+				s1.close();
+				if (s2 != null) {
+					s2.close();
+				}
+			}
+
+			// The slot is released once the first connection is closed.
+			for (int i = 0; i < 50 && server.getConnectionCount() > 0; i++) {
+				Thread.sleep(20);
+			}
+			Socket s3 = new Socket(server.getAddress(), server.getListeningPort());
+			try {
+				PrintWriter out3 = new PrintWriter(new OutputStreamWriter(s3.getOutputStream(), "UTF-8"));
+				BufferedReader in3 = new BufferedReader(new InputStreamReader(s3.getInputStream(), "UTF-8"));
+				out3.print("c\nz:java.lang.String\nvalueOf\ni3\ne\n");
+				out3.flush();
+				assertEquals("!ys3", in3.readLine());
+			} finally {
+				s3.close();
+			}
+		} finally {
+			server.shutdown(true);
+		}
+	}
+
+	@Test
+	public void testMaxCommands() throws Exception {
+		TestListener listener = new TestListener();
+		GatewayServer server = new GatewayServer.GatewayServerBuilder().javaPort(0).maxCommands(1).build();
+		server.addListener(listener);
+		server.start(true);
+
+		try {
+			Socket s1 = new Socket(server.getAddress(), server.getListeningPort());
+			Socket s2 = new Socket(server.getAddress(), server.getListeningPort());
+			try {
+				PrintWriter out1 = new PrintWriter(new OutputStreamWriter(s1.getOutputStream(), "UTF-8"));
+				BufferedReader in1 = new BufferedReader(new InputStreamReader(s1.getInputStream(), "UTF-8"));
+				PrintWriter out2 = new PrintWriter(new OutputStreamWriter(s2.getOutputStream(), "UTF-8"));
+				BufferedReader in2 = new BufferedReader(new InputStreamReader(s2.getInputStream(), "UTF-8"));
+				out1.print("c\nz:java.lang.Thread\nsleep\nL500\ne\n");
+				out1.flush();
+				Thread.sleep(100);
+				out2.print("c\nz:java.lang.String\nvalueOf\ni2\ne\n");
+				out2.print("b\nz:java.lang.String\nvalueOf\ni3\ne\nz:java.lang.String\nvalueOf\ni4\ne\ne\n");
+				out2.flush();
+				assertTrue(in2.readLine().startsWith("!xsToo many commands in flight"));
+				assertTrue(in2.readLine().startsWith("!xsToo many commands in flight"));
+				assertEquals("!yv", in1.readLine());
+				assertEquals(2, server.getCommandPermits().getRejectedCount());
+				// The permit is released right after the response is sent.
+				for (int i = 0; i < 50 && server.getCommandPermits().getCommandsInFlight() > 0; i++) {
+					Thread.sleep(20);
+				}
+				assertEquals(0, server.getCommandPermits().getCommandsInFlight());
+				assertTrue(listener.values.contains(new Long(1000000000)));
+
+				// The rejected commands were skipped: the connection is still
+				// usable.
+				out2.print("c\nz:java.lang.String\nvalueOf\ni5\ne\n");
+				out2.flush();
+				assertEquals("!ys5", in2.readLine());
+			} finally {
+				s1.close();
+				s2.close();
+			}
+		} finally {
+			server.shutdown(true);
+		}
+	}
+
+	@Test
+	public void testMaxCommandsMultiplexed() throws Exception {
+		GatewayServer server = new GatewayServer.GatewayServerBuilder().javaPort(0).maxCommands(1).build();
+		server.start(true);
+
+		try {
+			Socket s = new Socket(server.getAddress(), server.getListeningPort());
+			try {
+				OutputStream out = s.getOutputStream();
+				BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "UTF-8"));
+				out.write(getMultiplexedCommand("1", "c\nz:java.lang.Thread\nsleep\nL500\ne\n"));
+				out.flush();
+				Thread.sleep(100);
+				out.write(getMultiplexedCommand("2", "c\nz:java.lang.String\nvalueOf\ni42\ne\n"));
+				out.flush();
+
+				// Each multiplexed command takes its own permit.
+				assertEquals("#2", in.readLine().split(":")[0]);
+				assertTrue(in.readLine().startsWith("!xsToo many commands in flight"));
+				assertEquals("#1:4", in.readLine());
+				assertEquals("!yv", in.readLine());
+				assertEquals(1, server.getCommandPermits().getRejectedCount());
+			} finally {
+				s.close();
+			}
+		} finally {
+			server.shutdown(true);
+		}
+	}
+
+	@Test
+	public void testSelector() throws Exception {
+		List<Integer> entryPoint = new CopyOnWriteArrayList<Integer>();
+		GatewayServer server = new GatewayServer.GatewayServerBuilder(entryPoint).javaPort(0).useSelector(true)
+				.build();
+		assertTrue(server instanceof SelectorGatewayServer);
+		server.start(true);
+
+		try {
+			Socket s1 = new Socket(server.getAddress(), server.getListeningPort());
+			Socket s2 = new Socket(server.getAddress(), server.getListeningPort());
+			try {
+				PrintWriter out1 = new PrintWriter(new OutputStreamWriter(s1.getOutputStream(), "UTF-8"));
+				BufferedReader in1 = new BufferedReader(new InputStreamReader(s1.getInputStream(), "UTF-8"));
+				PrintWriter out2 = new PrintWriter(new OutputStreamWriter(s2.getOutputStream(), "UTF-8"));
+				BufferedReader in2 = new BufferedReader(new InputStreamReader(s2.getInputStream(), "UTF-8"));
+
+				// Pipelined commands are executed by the same worker.
+				StringBuilder commands = new StringBuilder();
+				for (int i = 0; i < 50; i++) {
+					commands.append("c\nt\nadd\ni" + i + "\ne\n");
+				}
+				out1.print(commands);
+				out1.flush();
+				for (int i = 0; i < 50; i++) {
+					assertEquals("!ybtrue", in1.readLine());
+				}
+
+				// A command split across several packets.
+				out2.print("c\nt\nsi");
+				out2.flush();
+				Thread.sleep(100);
+				out2.print("ze\ne\n");
+				out2.flush();
+				assertEquals("!yi50", in2.readLine());
+
+				// The idle connection is given back to the selector.
+				Thread.sleep(100);
+				out1.print("c\nt\nget\ni49\ne\n");
+				out1.flush();
+				assertEquals("!yi49", in1.readLine());
+			} finally {
+				s1.close();
+				s2.close();
+			}
+		} finally {
+			server.shutdown(true);
+		}
+	}
+
+	@Test
+	public void testSelectorVirtualThreads() throws Exception {
+		GatewayServer server = new GatewayServer.GatewayServerBuilder().javaPort(0).useSelector(true)
+				.useVirtualThreads(true).build();
+		assertTrue(server.isVirtualThreads());
+		server.start(true);
+
+		try {
+			// Falls back to platform workers on JVMs without virtual threads.
+			Socket s = new Socket(server.getAddress(), server.getListeningPort());
+			try {
+				PrintWriter out = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), "UTF-8"));
+				BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "UTF-8"));
+				out.print("c\nz:java.lang.String\nvalueOf\ni42\ne\n");
+				out.flush();
+				assertEquals("!ys42", in.readLine());
+			} finally {
+				s.close();
+			}
+		} finally {
+			server.shutdown(true);
+		}
+	}
+
+	@Test
+	public void testSelectorAuthentication() throws Exception {
+		GatewayServer server = new GatewayServer.GatewayServerBuilder().javaPort(0).authToken("secret")
+				.useSelector(true).build();
+		server.start(true);
+
+		try {
+			Socket valid = new Socket(server.getAddress(), server.getListeningPort());
+			try {
+				testServerAccess(valid, "secret");
+			} finally {
+				valid.close();
+			}
+
+			Socket conn = new Socket(server.getAddress(), server.getListeningPort());
+			try {
+				testServerAccess(conn, "invalidSecret");
+				fail("Should have failed to communicate with server.");
+			} catch (IOException ioe) {
+				// Expected.
+			} finally {
+				conn.close();
+			}
+		} finally {
+			server.shutdown(true);
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testSelectorCustomSocketFactory() {
+		new GatewayServer.GatewayServerBuilder().useSelector(true)
+				.serverSocketFactory(javax.net.ssl.SSLServerSocketFactory.getDefault()).build();
+	}
+
+	private byte[] getMultiplexedCommand(String id, String command) throws IOException {
+		byte[] bytes = command.getBytes("UTF-8");
+		return ("#\n" + id + ":" + bytes.length + "\n" + command).getBytes("UTF-8");
+	}
+
+	public static class StreamSource {
+
+		public int getSize() {
+			return 4;
+		}
+
+		public ReadableByteChannel getStream() {
+			return Channels.newChannel(new ByteArrayInputStream(new byte[] { 'B', 'L', 'O', 'B' }));
+		}
+	}
+
+	@Test
+	public void testPipeliningBeforeStream() throws Exception {
+		GatewayServer server = new GatewayServer(new StreamSource(), 0);
+		server.start(true);
+
+		try {
+			Socket s = new Socket(server.getAddress(), server.getListeningPort());
+			try {
+				OutputStream out = s.getOutputStream();
+				// The stream command is received before the first response
+				// is sent.
+				out.write("c\nt\ngetSize\ne\nc\nt\ngetSize\ne\nS\nt\ngetStream\ne\n".getBytes("UTF-8"));
+				out.flush();
+				DataInputStream in = new DataInputStream(s.getInputStream());
+				byte[] expected = "!yi4\n!yi4\n!yv\nBLOB".getBytes("UTF-8");
+				byte[] received = new byte[expected.length];
+				in.readFully(received);
+				assertEquals(new String(expected, "UTF-8"), new String(received, "UTF-8"));
+			} finally {
+				s.close();
+			}
+		} finally {
+			server.shutdown(true);
+		}
+	}
+
 	private void testServerAccess(Socket s, String authToken) throws Exception {
 		PrintWriter out = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), "UTF-8"));
 		BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "UTF-8"));
@@ -253,4 +902,14 @@ class TestListener implements GatewayServerListener {
 		values.add(new Long(10000000));
 	}
 
+	@Override
+	public void connectionRejected(Socket socket) {
+		values.add(new Long(100000000));
+	}
+
+	@Override
+	public void commandRejected(Py4JServerConnection gatewayConnection, String commandName) {
+		values.add(new Long(1000000000));
+	}
+
 }
\ No newline at end of file
@@ -31,6 +31,7 @@ package py4j;
 
 import static org.junit.Assert.*;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -128,6 +129,35 @@ public class GatewayTest {
 		assertEquals(2, obj3.getPrimitiveObject());
 	}
 
+	@Test
+	public void testBigIntegerRoundTrip() {
+		String name = gateway.putNewObject(new BigIntegerHolder());
+		ReturnObject value = gateway.invoke("getValue", name, null);
+		assertEquals(BigInteger.valueOf(5), value.getPrimitiveObject());
+
+		// Python reads the value as an int and sends it back as i or L.
+		List<Object> args = new ArrayList<Object>();
+		args.add(Protocol.getObject(Protocol.INTEGER_TYPE + value.getPrimitiveObject().toString(), null));
+		assertTrue(gateway.invoke("setValue", name, args).isVoid());
+		assertEquals(BigInteger.valueOf(5), gateway.invoke("getValue", name, null).getPrimitiveObject());
+
+		args.set(0, Protocol.getObject(Protocol.LONG_TYPE + Long.toString(Long.MAX_VALUE), null));
+		assertTrue(gateway.invoke("setValue", name, args).isVoid());
+		assertEquals(BigInteger.valueOf(Long.MAX_VALUE), gateway.invoke("getValue", name, null).getPrimitiveObject());
+	}
+
+	public static class BigIntegerHolder {
+		private BigInteger value = BigInteger.valueOf(5);
+
+		public BigInteger getValue() {
+			return value;
+		}
+
+		public void setValue(BigInteger value) {
+			this.value = value;
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	@Test
 	public void testListMethod() {
@@ -0,0 +1,242 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.SocketFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MultiplexedCallbackClientTest {
+
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	private ServerSocket serverSocket;
+
+	private final AtomicInteger acceptedSockets = new AtomicInteger();
+
+	private volatile int expectedCommands;
+
+	private MultiplexedCallbackClient client;
+
+	/**
+	 * <p>
+	 * Fake callback server: waits for the expected number of multiplexed
+	 * commands and answers them in the reverse order, echoing the method name.
+	 * Commands whose method name is "slow" are never answered.
+	 * </p>
+	 */
+	@Before
+	public void setup() throws Exception {
+		expectedCommands = 1;
+		serverSocket = new ServerSocket(0, 50, InetAddress.getByName(GatewayServer.DEFAULT_ADDRESS));
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						final Socket socket = serverSocket.accept();
+						acceptedSockets.incrementAndGet();
+						new Thread(new Runnable() {
+							@Override
+							public void run() {
+								answer(socket);
+							}
+						}).start();
+					}
+				} catch (Exception e) {
+					// The server socket was closed.
+				}
+			}
+		});
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	private void answer(Socket socket) {
+		try {
+			ProtocolReader reader = new ProtocolReader(socket.getInputStream());
+			OutputStream output = socket.getOutputStream();
+			List<String> ids = new ArrayList<String>();
+			List<String> methods = new ArrayList<String>();
+			String line = reader.readLine();
+			while (line != null) {
+				assertEquals(Protocol.MULTIPLEX_COMMAND_NAME, line);
+				String header = reader.readLine();
+				int separator = header.indexOf(Protocol.MULTIPLEXED_LENGTH_SEPARATOR);
+				String command = new String(reader.readRawBytes(Integer.parseInt(header.substring(separator + 1))),
+						UTF8);
+				String method = command.split("\n")[2];
+				if (!method.equals("slow")) {
+					ids.add(header.substring(0, separator));
+					methods.add(method);
+				}
+				if (ids.size() == expectedCommands) {
+					for (int i = ids.size() - 1; i >= 0; i--) {
+						byte[] response = ("!ys" + methods.get(i) + "\n").getBytes(UTF8);
+						output.write(("#" + ids.get(i) + ":" + response.length + "\n").getBytes(UTF8));
+						output.write(response);
+					}
+					output.flush();
+					ids.clear();
+					methods.clear();
+				}
+				line = reader.readLine();
+			}
+		} catch (Exception e) {
+			// The connection was closed.
+		} finally {
+			NetworkUtil.quietlyClose(socket);
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (client != null) {
+			client.shutdown();
+		}
+		serverSocket.close();
+	}
+
+	private MultiplexedCallbackClient createClient(int readTimeout, int connectionCount) {
+		// No periodic cleanup: the tests call it explicitly.
+		return new MultiplexedCallbackClient(serverSocket.getLocalPort(), serverSocket.getInetAddress(), null, 0,
+				TimeUnit.SECONDS, SocketFactory.getDefault(), true, readTimeout, connectionCount);
+	}
+
+	@Test
+	public void testConcurrentCommands() throws Exception {
+		final int threadCount = 8;
+		expectedCommands = threadCount;
+		client = createClient(0, 1);
+		final CountDownLatch done = new CountDownLatch(threadCount);
+		final AtomicInteger successes = new AtomicInteger();
+		for (int i = 0; i < threadCount; i++) {
+			final String method = "m" + i;
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						if (("ys" + method).equals(client.sendCommand("c\no1\n" + method + "\ne\n"))) {
+							successes.incrementAndGet();
+						}
+					} finally {
+						done.countDown();
+					}
+				}
+			}).start();
+		}
+		// The responses are only sent once all the commands are in flight.
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(threadCount, successes.get());
+		assertEquals(1, acceptedSockets.get());
+		assertEquals(1, client.getOpenConnectionCount());
+	}
+
+	@Test
+	public void testTimeoutKeepsConnection() throws Exception {
+		client = createClient(200, 1);
+		try {
+			client.sendCommand("c\no1\nslow\ne\n");
+			fail();
+		} catch (Py4JException e) {
+			// Expected.
+		}
+		assertEquals(1, client.getOpenConnectionCount());
+		assertEquals("yshello", client.sendCommand("c\no1\nhello\ne\n"));
+		assertEquals(1, acceptedSockets.get());
+	}
+
+	@Test
+	public void testPeriodicCleanup() throws Exception {
+		client = createClient(0, 2);
+		assertEquals("yshello", client.sendCommand("c\no1\nhello\ne\n"));
+		assertEquals("yshello", client.sendCommand("c\no1\nhello\ne\n"));
+		assertEquals(2, client.getOpenConnectionCount());
+
+		client.periodicCleanup();
+		assertEquals(2, client.getOpenConnectionCount());
+		client.periodicCleanup();
+		assertEquals(0, client.getOpenConnectionCount());
+
+		assertEquals("yshello", client.sendCommand("c\no1\nhello\ne\n"));
+		assertEquals(1, client.getOpenConnectionCount());
+	}
+
+	@Test
+	public void testSendCommandAsync() throws Exception {
+		expectedCommands = 2;
+		client = createClient(0, 1);
+		final CountDownLatch listened = new CountDownLatch(1);
+		CallbackFuture first = client.sendCommandAsync("c\no1\nfirst\ne\n");
+		first.addListener(new CallbackFuture.Listener() {
+			@Override
+			public void completed(String response, Throwable error) {
+				if ("ysfirst".equals(response)) {
+					listened.countDown();
+				}
+			}
+		});
+		assertFalse(first.isDone());
+		CallbackFuture second = client.sendCommandAsync("c\no1\nsecond\ne\n");
+		assertEquals("yssecond", second.get(5, TimeUnit.SECONDS));
+		assertEquals("ysfirst", first.get(5, TimeUnit.SECONDS));
+		assertTrue(listened.await(5, TimeUnit.SECONDS));
+
+		// Pending asynchronous commands fail when the channel is closed.
+		CallbackFuture slow = client.sendCommandAsync("c\no1\nslow\ne\n");
+		client.shutdown();
+		try {
+			slow.get(5, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			// Expected.
+		}
+		client = null;
+	}
+}
@@ -0,0 +1,172 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class OneWayCallbackTest {
+
+	@OneWay
+	public interface Sink {
+
+		void record(String event);
+
+		String flush();
+	}
+
+	public interface Recorder {
+
+		@OneWay
+		void record(String event);
+
+		void reset();
+	}
+
+	/**
+	 * <p>
+	 * Records the commands. Asynchronous commands are completed by the tests.
+	 * </p>
+	 */
+	private static class RecordingCallbackClient extends CallbackClient {
+
+		private final List<String> commands = new ArrayList<String>();
+
+		private final List<CallbackFuture> futures = new ArrayList<CallbackFuture>();
+
+		public RecordingCallbackClient() {
+			super(GatewayServer.DEFAULT_PYTHON_PORT);
+		}
+
+		@Override
+		public String sendCommand(String command, boolean blocking) {
+			commands.add(command);
+			return "yv";
+		}
+
+		@Override
+		public CallbackFuture sendCommandAsync(String command) {
+			commands.add(command);
+			CallbackFuture future = new CallbackFuture();
+			futures.add(future);
+			return future;
+		}
+	}
+
+	private RecordingCallbackClient client;
+
+	private Gateway gateway;
+
+	private final List<Throwable> failures = new ArrayList<Throwable>();
+
+	@Before
+	public void setup() {
+		client = new RecordingCallbackClient();
+		gateway = new Gateway(null, client);
+		gateway.setOneWayCallbackListener(new OneWayCallbackListener() {
+			@Override
+			public void callbackFailed(String objectId, Method method, Throwable error) {
+				assertEquals("p0", objectId);
+				failures.add(error);
+			}
+		});
+	}
+
+	private Object createProxy(Class<?> interfaceClass) {
+		return gateway.createProxy(getClass().getClassLoader(), new Class<?>[] { interfaceClass }, "p0");
+	}
+
+	@Test
+	public void testAnnotatedInterface() throws Exception {
+		Sink sink = (Sink) createProxy(Sink.class);
+		sink.record("hello");
+		assertEquals(1, client.futures.size());
+		assertEquals("c\np0\nrecord\nshello\ne\n", client.commands.get(0));
+
+		// Methods that return a value wait for the response.
+		assertNull(sink.flush());
+		assertEquals(1, client.futures.size());
+		assertEquals(2, client.commands.size());
+
+		client.futures.get(0).complete("yv");
+		assertTrue(failures.isEmpty());
+	}
+
+	@Test
+	public void testAnnotatedMethod() throws Exception {
+		Recorder recorder = (Recorder) createProxy(Recorder.class);
+		recorder.record("hello");
+		recorder.reset();
+		assertEquals(1, client.futures.size());
+		assertEquals(2, client.commands.size());
+	}
+
+	@Test
+	public void testRegisteredMethod() throws Exception {
+		Runnable runnable = (Runnable) createProxy(Runnable.class);
+		assertFalse(gateway.isOneWay(Runnable.class.getMethod("run")));
+		gateway.addOneWayMethod(Runnable.class.getMethod("run"));
+		runnable.run();
+		assertEquals(1, client.futures.size());
+	}
+
+	@Test
+	public void testFailures() throws Exception {
+		gateway.addOneWayInterface(Runnable.class);
+		Runnable runnable = (Runnable) createProxy(Runnable.class);
+		runnable.run();
+		runnable.run();
+
+		// A Python exception.
+		client.futures.get(0).complete("xsboom");
+		assertEquals(1, failures.size());
+		assertTrue(failures.get(0) instanceof Py4JException);
+
+		// A network error.
+		Py4JNetworkException error = new Py4JNetworkException("closed");
+		client.futures.get(1).fail(error);
+		assertEquals(2, failures.size());
+		assertEquals(error, failures.get(1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNonVoidMethod() throws Exception {
+		gateway.addOneWayMethod(Sink.class.getMethod("flush"));
+	}
+}
@@ -0,0 +1,448 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import py4j.examples.ExampleEntryPoint;
+
+public class ProtocolReaderTest {
+
+	private Gateway gateway;
+
+	@Before
+	public void setUp() {
+		gateway = new Gateway(new ExampleEntryPoint());
+		gateway.startup();
+	}
+
+	@After
+	public void tearDown() {
+		gateway.shutdown();
+	}
+
+	private ProtocolReader getReader(byte[] bytes, int bufferSize) {
+		return new ProtocolReader(new ByteArrayInputStream(bytes), bufferSize);
+	}
+
+	private byte[] frame(ByteArrayOutputStream message, int frameSize) {
+		byte[] bytes = message.toByteArray();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int offset = 0;
+		do {
+			int length = Math.min(frameSize, bytes.length - offset);
+			int header = offset + length < bytes.length ? length | Protocol.FRAME_CONTINUATION : length;
+			out.write(header >>> 24);
+			out.write(header >>> 16);
+			out.write(header >>> 8);
+			out.write(header);
+			out.write(bytes, offset, length);
+			offset += length;
+		} while (offset < bytes.length);
+		return out.toByteArray();
+	}
+
+	private void writeInt(ByteArrayOutputStream out, int value) {
+		out.write(value >>> 24);
+		out.write(value >>> 16);
+		out.write(value >>> 8);
+		out.write(value);
+	}
+
+	@Test
+	public void testReadLines() throws IOException {
+		ProtocolReader reader = getReader("c\r\nt\rhello\u00e9\u20ac\ud83d\ude00\n\ne\n".getBytes("UTF-8"), 3);
+		assertEquals("c", reader.readLine());
+		assertEquals("t", reader.readLine());
+		assertEquals("hello\u00e9\u20ac\ud83d\ude00", reader.readLine());
+		assertEquals("", reader.readLine());
+		assertEquals("e", reader.readLine());
+		assertNull(reader.readLine());
+	}
+
+	@Test
+	public void testReadChars() throws IOException {
+		ProtocolReader reader = getReader("a\u00e9\ud83d\ude00b".getBytes("UTF-8"), 16);
+		char[] chars = new char[10];
+		assertEquals(5, reader.read(chars, 0, 10));
+		assertEquals("a\u00e9\ud83d\ude00b", new String(chars, 0, 5));
+		assertEquals(-1, reader.read());
+	}
+
+	@Test
+	public void testReadTextObjects() throws IOException {
+		ProtocolReader reader = getReader("i5\nsHello\\nWorld\nbtrue\nn\nro0\ne\n".getBytes("UTF-8"), 8192);
+		Object object = new Object();
+		assertEquals("o0", gateway.putNewObject(object));
+		assertEquals(5, reader.readObject(gateway));
+		assertEquals("Hello\nWorld", reader.readObject(gateway));
+		assertEquals(true, reader.readObject(gateway));
+		assertNull(reader.readObject(gateway));
+		assertSame(object, reader.readObject(gateway));
+		assertSame(ProtocolReader.END_OF_COMMAND, reader.readObject(gateway));
+	}
+
+	@Test
+	public void testReadExactNumericTypes() throws IOException {
+		ProtocolReader reader = getReader("S-12\nY7\nS40000\nF1.5\nCx\ne\n".getBytes("UTF-8"), 8192);
+		assertEquals(Short.valueOf((short) -12), reader.readObject(gateway));
+		assertEquals(Byte.valueOf((byte) 7), reader.readObject(gateway));
+		try {
+			reader.readObject(gateway);
+			fail();
+		} catch (NumberFormatException e) {
+			// Out of range.
+		}
+		assertEquals(Float.valueOf(1.5f), reader.readObject(gateway));
+		assertEquals(Character.valueOf('x'), reader.readObject(gateway));
+		assertSame(ProtocolReader.END_OF_COMMAND, reader.readObject(gateway));
+	}
+
+	@Test
+	public void testStringDictionary() throws IOException {
+		ProtocolReader reader = getReader(
+				"@0:t\n@1:get\\nKey\n@2:col\n@0\n@1\n@2\ns@0\n@5\ne\n".getBytes("UTF-8"), 4);
+		reader.setStringDictionary(true);
+		String target = reader.readInternedLine();
+		String method = reader.readInternedLine();
+		Object argument = reader.readObject(gateway);
+		assertEquals("t", target);
+		assertEquals("get\nKey", method);
+		assertEquals("col", argument);
+		assertSame(target, reader.readInternedLine());
+		assertSame(method, reader.readInternedLine());
+		assertSame(argument, reader.readObject(gateway));
+		assertEquals("@0", reader.readObject(gateway));
+		try {
+			reader.readObject(gateway);
+			fail();
+		} catch (Py4JException e) {
+			// Undefined id.
+		}
+		assertSame(ProtocolReader.END_OF_COMMAND, reader.readObject(gateway));
+
+		// Lines are not interpreted if the dictionary was not negotiated.
+		reader = getReader("@0\n".getBytes("UTF-8"), 8192);
+		assertEquals("@0", reader.readInternedLine());
+	}
+
+	@Test
+	public void testReadDoubleBits() throws IOException {
+		ProtocolReader reader = getReader("q3ff0000000000000\nqBFF8000000000000\nq0\nQ3fc00000\ne\n".getBytes("UTF-8"),
+				8192);
+		assertEquals(1.0, reader.readObject(gateway));
+		assertEquals(-1.5, reader.readObject(gateway));
+		assertEquals(0.0, reader.readObject(gateway));
+		assertEquals(1.5f, reader.readObject(gateway));
+		assertSame(ProtocolReader.END_OF_COMMAND, reader.readObject(gateway));
+	}
+
+	@Test
+	public void testReadFramedObjects() throws IOException {
+		Object object = new Object();
+		String id = gateway.putNewObject(object);
+		ByteArrayOutputStream message = new ByteArrayOutputStream();
+		message.write('c');
+		message.write('\n');
+		message.write(Protocol.BINARY_INTEGER_TYPE);
+		writeInt(message, -42);
+		message.write(Protocol.BINARY_LONG_TYPE);
+		writeInt(message, 1);
+		writeInt(message, 2);
+		message.write(Protocol.BINARY_DOUBLE_TYPE);
+		long bits = Double.doubleToLongBits(2.5);
+		writeInt(message, (int) (bits >>> 32));
+		writeInt(message, (int) bits);
+		message.write(Protocol.BINARY_BOOLEAN_TYPE);
+		message.write(1);
+		byte[] string = "a\nb\u00e9".getBytes("UTF-8");
+		message.write(Protocol.BINARY_STRING_TYPE);
+		writeInt(message, string.length);
+		message.write(string, 0, string.length);
+		message.write(Protocol.BINARY_REFERENCE_TYPE);
+		writeInt(message, Protocol.getObjectIdNumber(id));
+		message.write('i');
+		message.write('7');
+		message.write('\n');
+		message.write('e');
+		message.write('\n');
+
+		// Tiny frames and a tiny buffer so values span frames.
+		ProtocolReader reader = getReader(frame(message, 3), 2);
+		reader.setFramed(true);
+		assertEquals("c", reader.readLine());
+		assertEquals(-42, reader.readObject(gateway));
+		assertEquals((1L << 32) | 2L, reader.readObject(gateway));
+		assertEquals(2.5, reader.readObject(gateway));
+		assertEquals(true, reader.readObject(gateway));
+		assertEquals("a\nb\u00e9", reader.readObject(gateway));
+		assertSame(object, reader.readObject(gateway));
+		assertEquals(7, reader.readObject(gateway));
+		assertSame(ProtocolReader.END_OF_COMMAND, reader.readObject(gateway));
+		assertNull(reader.readLine());
+	}
+
+	@Test
+	public void testReadFramedLines() throws IOException {
+		ByteArrayOutputStream message = new ByteArrayOutputStream();
+		message.write(Protocol.BINARY_INTEGER_TYPE);
+		writeInt(message, 123);
+		byte[] string = "a\nb".getBytes("UTF-8");
+		message.write(Protocol.BINARY_STRING_TYPE);
+		writeInt(message, string.length);
+		message.write(string, 0, string.length);
+		message.write(Protocol.BINARY_REFERENCE_TYPE);
+		writeInt(message, 3);
+		message.write('e');
+		message.write('\n');
+
+		ProtocolReader reader = getReader(frame(message, 5), 8192);
+		reader.setFramed(true);
+		assertEquals("i123", reader.readLine());
+		assertEquals("sa\\nb", reader.readLine());
+		assertEquals("ro3", reader.readLine());
+		assertEquals("e", reader.readLine());
+	}
+
+	@Test
+	public void testSwitchToFramed() throws IOException {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		stream.write("N\nsbinary\ne\n".getBytes("UTF-8"));
+		ByteArrayOutputStream message = new ByteArrayOutputStream();
+		message.write(Protocol.BINARY_INTEGER_TYPE);
+		writeInt(message, 1);
+		byte[] frames = frame(message, 100);
+		stream.write(frames, 0, frames.length);
+
+		// Everything is read at once: the framed bytes are already buffered
+		// when the mode changes.
+		ProtocolReader reader = getReader(stream.toByteArray(), 8192);
+		assertEquals("N", reader.readLine());
+		assertEquals("sbinary", reader.readLine());
+		assertEquals("e", reader.readLine());
+		reader.setFramed(true);
+		assertEquals(1, reader.readObject(gateway));
+		assertNull(reader.readLine());
+	}
+
+	@Test
+	public void testReadLargeFramedString() throws IOException {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			builder.append((char) ('a' + i % 26));
+		}
+		String value = builder.toString();
+		ByteArrayOutputStream message = new ByteArrayOutputStream();
+		message.write(Protocol.BINARY_STRING_TYPE);
+		writeInt(message, value.length());
+		byte[] bytes = value.getBytes("UTF-8");
+		message.write(bytes, 0, bytes.length);
+
+		InputStream in = new ByteArrayInputStream(frame(message, 1000));
+		ProtocolReader reader = new ProtocolReader(in, 64);
+		reader.setFramed(true);
+		assertEquals(value, reader.readObject(gateway));
+		assertNull(reader.readLine());
+	}
+
+	@Test
+	public void testReadRawBytes() throws IOException {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		stream.write("J4\n".getBytes("UTF-8"));
+		stream.write(new byte[] { '\n', 0, (byte) 0xff, 'e' });
+		stream.write("J0\ne\n".getBytes("UTF-8"));
+		ProtocolReader reader = getReader(stream.toByteArray(), 2);
+		assertArrayEquals(new byte[] { '\n', 0, (byte) 0xff, 'e' }, (byte[]) reader.readObject(gateway));
+		assertArrayEquals(new byte[0], (byte[]) reader.readObject(gateway));
+		assertSame(ProtocolReader.END_OF_COMMAND, reader.readObject(gateway));
+	}
+
+	@Test
+	public void testReadLargeRawBytes() throws IOException {
+		byte[] bytes = new byte[300000];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) i;
+		}
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		stream.write(("J" + bytes.length + "\n").getBytes("UTF-8"));
+		stream.write(bytes, 0, bytes.length);
+		stream.write("e\n".getBytes("UTF-8"));
+		ProtocolReader reader = getReader(stream.toByteArray(), 64);
+		assertArrayEquals(bytes, (byte[]) reader.readObject(gateway));
+		assertSame(ProtocolReader.END_OF_COMMAND, reader.readObject(gateway));
+
+		// The declared length is not allocated before the bytes are received.
+		reader = getReader(("J" + Integer.MAX_VALUE + "\nabc").getBytes("UTF-8"), 64);
+		try {
+			reader.readObject(gateway);
+			fail();
+		} catch (EOFException e) {
+			assertTrue(true);
+		}
+	}
+
+	@Test
+	public void testReadCompressed() throws IOException {
+		byte[] bytes = new byte[10000];
+		Deflater deflater = new Deflater();
+		deflater.setInput(bytes);
+		deflater.finish();
+		byte[] compressed = new byte[100];
+		int compressedLength = deflater.deflate(compressed);
+		deflater.end();
+
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		stream.write(("Zj" + compressedLength + ":" + bytes.length + "\n").getBytes("UTF-8"));
+		stream.write(compressed, 0, compressedLength);
+		stream.write("e\n".getBytes("UTF-8"));
+		ProtocolReader reader = getReader(stream.toByteArray(), 16);
+		assertArrayEquals(bytes, (byte[]) reader.readObject(gateway));
+		assertSame(ProtocolReader.END_OF_COMMAND, reader.readObject(gateway));
+
+		// The declared length cannot be reached from the compressed length:
+		// it is rejected before anything is allocated.
+		reader = getReader(("Zj10:" + Integer.MAX_VALUE + "\n").getBytes("UTF-8"), 16);
+		try {
+			reader.readObject(gateway);
+			fail();
+		} catch (Py4JException e) {
+			assertTrue(e.getMessage().startsWith("Invalid compressed command part"));
+		}
+	}
+
+	@Test
+	public void testReadFramedRawBytes() throws IOException {
+		byte[] bytes = new byte[5000];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) i;
+		}
+		ByteArrayOutputStream message = new ByteArrayOutputStream();
+		message.write("J5000\n".getBytes("UTF-8"));
+		message.write(bytes, 0, bytes.length);
+		message.write('e');
+		message.write('\n');
+		ProtocolReader reader = getReader(frame(message, 700), 64);
+		reader.setFramed(true);
+		assertArrayEquals(bytes, (byte[]) reader.readObject(gateway));
+		assertEquals("e", reader.readLine());
+		assertNull(reader.readLine());
+	}
+
+	@Test
+	public void testDecodeTextParts() throws IOException {
+		String input = "i-2147483648\ni2147483648\nL-9223372036854775808\nL9223372036854775807\ni+5\nbTRUE\nbno\n"
+				+ "d1.5\ndnan\ns\nsa\\nb\nsplain\njAQID\nv\nrmissing\n \n";
+		ProtocolReader reader = getReader(input.getBytes("UTF-8"), 4);
+		assertEquals(Integer.MIN_VALUE, reader.readObject(gateway));
+		assertEquals(2147483648L, reader.readObject(gateway));
+		assertEquals(Long.MIN_VALUE, reader.readObject(gateway));
+		assertEquals(Long.MAX_VALUE, reader.readObject(gateway));
+		assertEquals(5, reader.readObject(gateway));
+		assertEquals(true, reader.readObject(gateway));
+		assertEquals(false, reader.readObject(gateway));
+		assertEquals(1.5, reader.readObject(gateway));
+		assertTrue(Double.isNaN((Double) reader.readObject(gateway)));
+		assertEquals("", reader.readObject(gateway));
+		assertEquals("a\nb", reader.readObject(gateway));
+		assertEquals("plain", reader.readObject(gateway));
+		assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) reader.readObject(gateway));
+		assertNull(reader.readObject(gateway));
+		assertNull(reader.readObject(gateway));
+		assertSame(ProtocolReader.END_OF_COMMAND, reader.readObject(gateway));
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testDecodeLongOverflow() throws IOException {
+		ProtocolReader reader = getReader("L9223372036854775808\n".getBytes("UTF-8"), 8192);
+		reader.readObject(gateway);
+	}
+
+	@Test
+	public void testReadArguments() throws IOException {
+		ProtocolReader reader = getReader("i1\nsa\ne\ni2\nsb\ne\ne\n".getBytes("UTF-8"), 8192);
+		Object[] arguments = reader.readArguments(gateway);
+		assertArrayEquals(new Object[] { 1, "a" }, arguments);
+		reader.releaseArguments(arguments);
+		assertArrayEquals(new Object[] { null, null }, arguments);
+
+		Object[] arguments2 = reader.readArguments(gateway);
+		assertSame(arguments, arguments2);
+		assertArrayEquals(new Object[] { 2, "b" }, arguments2);
+		assertEquals(0, reader.readArguments(gateway).length);
+	}
+
+	@Test
+	public void testReadManyArguments() throws IOException {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 20; i++) {
+			builder.append("i").append(i).append("\n");
+		}
+		builder.append("e\n");
+		ProtocolReader reader = getReader(builder.toString().getBytes("UTF-8"), 8192);
+		Object[] arguments = reader.readArguments(gateway);
+		assertEquals(20, arguments.length);
+		assertEquals(19, arguments[19]);
+	}
+
+	@Test
+	public void testDecodeEscapedStrings() throws IOException {
+		String value = "\u00e9\\n\r\n\\\u20ac";
+		String input = "s" + StringUtil.escape(value) + "\ns\\\ne\n";
+		ProtocolReader reader = getReader(input.getBytes("UTF-8"), 8192);
+		assertEquals(value, reader.readObject(gateway));
+		assertEquals("", reader.readObject(gateway));
+		assertSame(ProtocolReader.END_OF_COMMAND, reader.readObject(gateway));
+	}
+
+	@Test
+	public void testDecodeLargeString() throws IOException {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 300000; i++) {
+			builder.append("ab\n\\");
+		}
+		String value = builder.toString();
+		String input = "s" + StringUtil.escape(value) + "\ni1\ne\n";
+		ProtocolReader reader = getReader(input.getBytes("UTF-8"), 8192);
+		assertEquals(value, reader.readObject(gateway));
+		assertEquals(1, reader.readObject(gateway));
+		assertSame(ProtocolReader.END_OF_COMMAND, reader.readObject(gateway));
+	}
+}
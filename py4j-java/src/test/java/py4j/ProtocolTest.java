@@ -32,6 +32,12 @@ package py4j;
 import static org.junit.Assert.*;
 
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import org.junit.Test;
 
@@ -226,6 +232,104 @@ public class ProtocolTest {
 		assertEquals(Double.NEGATIVE_INFINITY, Protocol.getDouble("d-inf"), 0.001);
 	}
 
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testCollectionLiterals() {
+		Gateway gateway = new Gateway(null);
+		gateway.startup();
+		Object object = new Object();
+		String id = gateway.putNewObject(object);
+
+		List<Object> list = (List<Object>) Protocol.getObject("Ul2:i12:sa" + (id.length() + 1) + ":r" + id
+				+ "6:Uh2:i1" + "4:s:\\n", gateway);
+		assertEquals(5, list.size());
+		assertEquals(1, list.get(0));
+		assertEquals("a", list.get(1));
+		assertSame(object, list.get(2));
+		assertEquals(Collections.singleton(1), list.get(3));
+		assertEquals(":\n", list.get(4));
+
+		Map<Object, Object> map = (Map<Object, Object>) Protocol.getObject("Ua2:sa1:n2:sb6:Ul2:d1", gateway);
+		assertEquals(2, map.size());
+		assertNull(map.get("a"));
+		assertEquals(Arrays.asList(1.0), map.get("b"));
+		assertEquals(new ArrayList<Object>(), Protocol.getObject("Ul", gateway));
+		assertEquals("\ud83d\ude00", ((List<Object>) Protocol.getObject("Ul3:s\ud83d\ude00", gateway)).get(0));
+
+		String[] invalid = { "Ux", "Ul3:i1", "Ul2i1", "Ula:i1", "Ua2:i1", "Ul0:" };
+		for (String commandPart : invalid) {
+			try {
+				Protocol.getObject(commandPart, gateway);
+				fail(commandPart);
+			} catch (Py4JException e) {
+				// Expected.
+			}
+		}
+		gateway.shutdown();
+	}
+
+	@Test
+	public void testDoubleBits() {
+		double[] doubles = { 0.0, -0.0, 0.1, -1e-310, Double.MAX_VALUE, Double.NEGATIVE_INFINITY, Double.NaN };
+		for (double d : doubles) {
+			String commandPart = Protocol.DOUBLE_BITS_TYPE + Protocol.encodeDoubleBits(d);
+			assertEquals(Double.doubleToRawLongBits(d),
+					Double.doubleToRawLongBits((Double) Protocol.getObject(commandPart, null)));
+		}
+		assertEquals(1.5f, Protocol.getObject("Q3FC00000", null));
+		assertEquals(Float.MIN_VALUE, Protocol.getObject("Q" + Protocol.encodeFloatBits(Float.MIN_VALUE), null));
+		assertEquals("q3fb999999999999a", ReturnObject.getPrimitiveReturnObject(0.1).getCommandPart(true));
+		assertEquals("d0.1", ReturnObject.getPrimitiveReturnObject(0.1).getCommandPart(false));
+		assertEquals("si", ReturnObject.getPrimitiveReturnObject("i").getCommandPart(true));
+
+		try {
+			Protocol.getObject("q10000000000000000", null);
+			fail();
+		} catch (NumberFormatException e) {
+			// Too many digits.
+		}
+		try {
+			Protocol.getObject("Q3g", null);
+			fail();
+		} catch (NumberFormatException e) {
+			// Not hexadecimal.
+		}
+	}
+
+	@Test
+	public void testExactNumericTypes() {
+		BigInteger big = new BigInteger("123456789012345678901234567890");
+		assertEquals(big, Protocol.getObject("B123456789012345678901234567890", null));
+		assertEquals(Float.valueOf(2.5f), Protocol.getObject("F2.5", null));
+		assertTrue(Float.isNaN((Float) Protocol.getObject("Fnan", null)));
+		assertEquals(Float.valueOf(Float.NEGATIVE_INFINITY), Protocol.getObject("F-inf", null));
+		assertEquals(Short.valueOf((short) -300), Protocol.getObject("S-300", null));
+		assertEquals(Byte.valueOf((byte) 127), Protocol.getObject("Y127", null));
+		assertEquals(Character.valueOf('\n'), Protocol.getObject("C\\n", null));
+
+		try {
+			Protocol.getObject("Y128", null);
+			fail();
+		} catch (NumberFormatException e) {
+			assertTrue(true);
+		}
+		try {
+			Protocol.getObject("Cab", null);
+			fail();
+		} catch (Py4JException e) {
+			assertTrue(true);
+		}
+
+		// Without the exact types feature, the values are widened to the
+		// types understood by every client.
+		Gateway g = new Gateway(null);
+		assertEquals("!yL" + big + "\n", Protocol.getOutputCommand(g.getReturnObject(big)));
+		assertEquals("!yi-300\n", Protocol.getOutputCommand(g.getReturnObject((short) -300)));
+		assertEquals("!yi-1\n", Protocol.getOutputCommand(g.getReturnObject((byte) -1)));
+		assertEquals("!ys\\n\n", Protocol.getOutputCommand(g.getReturnObject('\n')));
+		assertEquals("!yd2.5\n", Protocol.getOutputCommand(g.getReturnObject(2.5f)));
+	}
+
 	@Test
 	public void testEnd() {
 		assertTrue(Protocol.isEnd("e"));
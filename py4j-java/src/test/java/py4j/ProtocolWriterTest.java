@@ -0,0 +1,341 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ProtocolWriterTest {
+
+	@Test
+	public void testText() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ProtocolWriter writer = new ProtocolWriter(out, 16);
+		String value = "!ysHello \u00e9\u20ac\ud83d\ude00 World, this is longer than the buffer\n";
+		writer.write(value);
+		writer.flush();
+		assertEquals(value, new String(out.toByteArray(), "UTF-8"));
+	}
+
+	@Test
+	public void testUnpairedSurrogate() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ProtocolWriter writer = new ProtocolWriter(out);
+		writer.write("a\ud83db\ude00c");
+		writer.flush();
+		assertEquals("a?b?c", new String(out.toByteArray(), "UTF-8"));
+	}
+
+	@Test(expected = Py4JException.class)
+	public void testBinaryInTextMode() throws IOException {
+		ProtocolWriter writer = new ProtocolWriter(new ByteArrayOutputStream());
+		writer.writeBinaryInteger(1);
+	}
+
+	@Test
+	public void testFramedRoundTrip() throws IOException {
+		Gateway gateway = new Gateway(null);
+		String id = gateway.putNewObject(new Object());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ProtocolWriter writer = new ProtocolWriter(out, 16);
+		writer.write("text\n");
+		writer.setFramed(true);
+		String longString = "\u00e9 this string spans several frames \ud83d\ude00";
+		writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject(42));
+		writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject(longString));
+		writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject(Long.MAX_VALUE));
+		writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject(-0.5));
+		writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject(false));
+		writer.writeOutputCommand(ReturnObject.getReferenceReturnObject(id));
+		writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject('c'));
+		writer.flush();
+		writer.write("e\n");
+		writer.flush();
+
+		ProtocolReader reader = new ProtocolReader(new ByteArrayInputStream(out.toByteArray()), 8);
+		assertEquals("text", reader.readLine());
+		reader.setFramed(true);
+		assertEquals("!yi42", readResponse(reader));
+		assertEquals("!ys\u00e9 this string spans several frames \ud83d\ude00", readResponse(reader));
+		assertEquals("!yL" + Long.MAX_VALUE, readResponse(reader));
+		assertEquals("!yd-0.5", readResponse(reader));
+		assertEquals("!ybfalse", readResponse(reader));
+		assertEquals("!yr" + id, readResponse(reader));
+		assertEquals("!ysc", readResponse(reader));
+		assertEquals("e", reader.readLine());
+		assertNull(reader.readLine());
+	}
+
+	@Test
+	public void testFramedUnpairedSurrogate() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ProtocolWriter writer = new ProtocolWriter(out);
+		writer.setFramed(true);
+		writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject("a\ud83db\ude00c"));
+		writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject("\u00e9\ud83d"));
+		writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject("d"));
+		writer.flush();
+
+		ProtocolReader reader = new ProtocolReader(new ByteArrayInputStream(out.toByteArray()));
+		reader.setFramed(true);
+		assertEquals("!ysa?b?c", readResponse(reader));
+		assertEquals("!ys\u00e9?", readResponse(reader));
+		assertEquals("!ysd", readResponse(reader));
+		assertNull(reader.readLine());
+	}
+
+	private String readResponse(ProtocolReader reader) throws IOException {
+		assertEquals('!', reader.read());
+		assertEquals('y', reader.read());
+		return "!y" + reader.readLine();
+	}
+
+	@Test
+	public void testDoubleBits() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ProtocolWriter writer = new ProtocolWriter(out, 16);
+		writer.setDoubleBits(true);
+		writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject(1.0));
+		writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject(0.0));
+		writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject(-0.1));
+		writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject(1.5f));
+		writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject(-1.5f));
+		writer.flush();
+		assertEquals("!yq3ff0000000000000\n!yq0\n!yqbfb999999999999a\n!yQ3fc00000\n!yQbfc00000\n",
+				new String(out.toByteArray(), "UTF-8"));
+
+		out.reset();
+		writer.setDoubleBits(false);
+		writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject(-0.1));
+		writer.flush();
+		assertEquals("!yd-0.1\n", new String(out.toByteArray(), "UTF-8"));
+	}
+
+	@Test
+	public void testExactTypes() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ProtocolWriter writer = new ProtocolWriter(out, 16);
+		writer.setExactTypes(true);
+		writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject(2.5f));
+		writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject((short) -300));
+		writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject((byte) -1));
+		writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject('\n'));
+		writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject(new BigInteger("123456789012345678901")));
+		writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject(3));
+		writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject("c"));
+		writer.flush();
+		assertEquals("!yF2.5\n!yS-300\n!yY-1\n!yC\\n\n!yB123456789012345678901\n!yi3\n!ysc\n",
+				new String(out.toByteArray(), "UTF-8"));
+
+		out.reset();
+		writer.setExactTypes(false);
+		writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject(2.5f));
+		writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject((short) -300));
+		writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject('\n'));
+		writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject(new BigInteger("123456789012345678901")));
+		writer.flush();
+		assertEquals("!yd2.5\n!yi-300\n!ys\\n\n!yL123456789012345678901\n", new String(out.toByteArray(), "UTF-8"));
+	}
+
+	@Test
+	public void testContinuationFrame() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ProtocolWriter writer = new ProtocolWriter(out, 16);
+		writer.setFramed(true);
+		writer.write("0123456789abc");
+		writer.flush();
+		byte[] bytes = out.toByteArray();
+		// One full frame with the continuation bit and a final frame.
+		assertEquals(13 + 4 + 4, bytes.length);
+		assertEquals((byte) 0x80, bytes[0]);
+		assertEquals(12, bytes[3]);
+		assertEquals(1, bytes[16 + 3]);
+
+		ProtocolReader reader = new ProtocolReader(new ByteArrayInputStream(bytes));
+		reader.setFramed(true);
+		char[] chars = new char[20];
+		assertEquals(13, reader.read(chars, 0, 20));
+		assertEquals(-1, reader.read());
+	}
+
+	@Test
+	public void testRawBytes() throws IOException {
+		byte[] small = new byte[] { 1, '\n', 3 };
+		byte[] large = new byte[100];
+		for (int i = 0; i < large.length; i++) {
+			large[i] = (byte) (i * 7);
+		}
+
+		for (boolean framed : new boolean[] { false, true }) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ProtocolWriter writer = new ProtocolWriter(out, 16);
+			writer.setFramed(framed);
+			writer.setRawBytes(true);
+			writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject(small));
+			writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject(large));
+			writer.write("e\n");
+			writer.flush();
+
+			ProtocolReader reader = new ProtocolReader(new ByteArrayInputStream(out.toByteArray()), 8);
+			reader.setFramed(framed);
+			assertEquals('!', reader.read());
+			assertEquals('y', reader.read());
+			assertArrayEquals(small, (byte[]) reader.readObject(null));
+			assertEquals('!', reader.read());
+			assertEquals('y', reader.read());
+			assertArrayEquals(large, (byte[]) reader.readObject(null));
+			assertEquals("e", reader.readLine());
+			assertNull(reader.readLine());
+		}
+	}
+
+	@Test
+	public void testBase64Bytes() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ProtocolWriter writer = new ProtocolWriter(out);
+		writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject(new byte[] { 1, 2, 3 }));
+		writer.flush();
+		assertEquals("!yjAQID\n", new String(out.toByteArray(), "UTF-8"));
+	}
+
+	@Test
+	public void testStreamedString() throws IOException {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			builder.append("line\\ \u00e9\r\n");
+		}
+		String value = builder.toString();
+		ReturnObject rObject = ReturnObject.getPrimitiveReturnObject(value);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ProtocolWriter writer = new ProtocolWriter(out, 16);
+		writer.writeOutputCommand(rObject);
+		writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject('\n'));
+		writer.writeOutputCommand(ReturnObject.getErrorReturnObject("bad\nthing"));
+		writer.writeOutputCommand(ReturnObject.getNoMemberReturnObject());
+		writer.flush();
+
+		String expected = Protocol.getOutputCommand(rObject) + "!ys\\n\n" + "!xsbad\\nthing\n" + "!yo\n";
+		assertEquals(expected, new String(out.toByteArray(), "UTF-8"));
+	}
+
+	@Test
+	public void testCompressed() throws IOException {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			builder.append("compress me \u00e9\n");
+		}
+		String value = builder.toString();
+		byte[] bytes = new byte[20000];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) (i % 7);
+		}
+
+		for (boolean framed : new boolean[] { false, true }) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ProtocolWriter writer = new ProtocolWriter(out, 64);
+			writer.setFramed(framed);
+			writer.setCompressionThreshold(1000);
+			writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject(value));
+			writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject(bytes));
+			writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject("small"));
+			writer.flush();
+			assertTrue(out.size() < 2000);
+
+			ProtocolReader reader = new ProtocolReader(new ByteArrayInputStream(out.toByteArray()), 64);
+			reader.setFramed(framed);
+			assertEquals('!', reader.read());
+			assertEquals('y', reader.read());
+			assertEquals(value, reader.readObject(null));
+			assertEquals('!', reader.read());
+			assertEquals('y', reader.read());
+			assertArrayEquals(bytes, (byte[]) reader.readObject(null));
+			assertEquals('!', reader.read());
+			assertEquals('y', reader.read());
+			assertEquals("small", reader.readObject(null));
+			writer.close();
+			reader.close();
+		}
+	}
+
+	@Test(expected = Py4JException.class)
+	public void testInvalidCompressedLength() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ProtocolWriter writer = new ProtocolWriter(out);
+		byte[] bytes = new byte[100];
+		writer.writeCompressed(Protocol.BYTES_TYPE, bytes, 0, bytes.length);
+		writer.flush();
+		String encoded = new String(out.toByteArray(), "ISO-8859-1").replace(":100\n", ":99\n");
+
+		ProtocolReader reader = new ProtocolReader(new ByteArrayInputStream(encoded.getBytes("ISO-8859-1")));
+		reader.readObject(null);
+	}
+
+	@Test
+	public void testDeferredFlush() throws IOException {
+		final List<Integer> writes = new ArrayList<Integer>();
+		OutputStream out = new ByteArrayOutputStream() {
+			@Override
+			public synchronized void write(byte[] b, int off, int len) {
+				writes.add(len);
+				super.write(b, off, len);
+			}
+		};
+		ProtocolWriter writer = new ProtocolWriter(out, 64);
+		writer.setFramed(true);
+		writer.setFlushDeferred(true);
+		for (int i = 0; i < 3; i++) {
+			writer.writeOutputCommand(ReturnObject.getPrimitiveReturnObject(i));
+			writer.flush();
+		}
+		assertTrue(writes.isEmpty());
+		writer.setFlushDeferred(false);
+		writer.flush();
+		// Three complete frames sent in one write.
+		assertEquals(1, writes.size());
+
+		ProtocolReader reader = new ProtocolReader(
+				new ByteArrayInputStream(((ByteArrayOutputStream) out).toByteArray()));
+		reader.setFramed(true);
+		for (int i = 0; i < 3; i++) {
+			assertEquals("!yi" + i, readResponse(reader));
+		}
+		assertNull(reader.readLine());
+	}
+}
@@ -0,0 +1,200 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SharedMemoryTest {
+
+	private File directory;
+
+	@Before
+	public void setup() throws Exception {
+		directory = File.createTempFile("py4j", "shm");
+		directory.delete();
+		directory.mkdir();
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	private File createFile(String name, int capacity) throws IOException {
+		File file = new File(directory, name);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(SharedMemoryTransport.getFileSize(capacity));
+			raf.write(SharedMemoryTransport.MAGIC.getBytes("US-ASCII"));
+			raf.writeInt(Integer.reverseBytes(capacity));
+		} finally {
+			raf.close();
+		}
+		return file;
+	}
+
+	@Test
+	public void testRing() throws Exception {
+		File file = createFile("py4j-ring", SharedMemoryTransport.MIN_CAPACITY);
+		final SharedMemoryTransport transport = SharedMemoryTransport.open(file.getAbsolutePath(),
+				directory.getAbsolutePath());
+		// Larger than the ring to wrap around.
+		final byte[] data = new byte[SharedMemoryTransport.MIN_CAPACITY * 10 + 7];
+		new Random(42).nextBytes(data);
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					OutputStream output = transport.getRequests().getOutputStream(null, 0);
+					output.write(data);
+					output.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		});
+		writer.start();
+
+		InputStream input = transport.getRequests().getInputStream(null, 5000);
+		byte[] read = new byte[data.length];
+		int offset = 0;
+		while (offset < read.length) {
+			int count = input.read(read, offset, read.length - offset);
+			assertTrue(count > 0);
+			offset += count;
+		}
+		writer.join();
+		assertTrue(Arrays.equals(data, read));
+		assertEquals(-1, input.read());
+		transport.close();
+	}
+
+	@Test
+	public void testInvalidFile() throws Exception {
+		File file = createFile("py4j-invalid", 1000);
+		try {
+			SharedMemoryTransport.open(file.getAbsolutePath(), directory.getAbsolutePath());
+			fail("The capacity is not a power of two.");
+		} catch (IOException e) {
+			// Expected.
+		}
+		file = createFile("invalid", SharedMemoryTransport.MIN_CAPACITY);
+		try {
+			SharedMemoryTransport.open(file.getAbsolutePath(), directory.getAbsolutePath());
+			fail("The file does not have the prefix.");
+		} catch (IOException e) {
+			// Expected.
+		}
+		try {
+			SharedMemoryTransport.open(file.getAbsolutePath(), file.getParentFile().getParent());
+			fail("The file is not in the directory.");
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	@Test
+	public void testGatewayServer() throws Exception {
+		GatewayServer server = new GatewayServer.GatewayServerBuilder()
+				.sharedMemoryDirectory(directory.getAbsolutePath()).build();
+		server.start(true);
+
+		try {
+			File file = createFile("py4j-server", SharedMemoryTransport.MIN_CAPACITY);
+			Socket s = new Socket(GatewayServer.DEFAULT_ADDRESS, GatewayServer.DEFAULT_PORT);
+			try {
+				s.getOutputStream().write((file.getAbsolutePath() + "\n").getBytes("UTF-8"));
+				BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "UTF-8"));
+				assertEquals("!yv", in.readLine());
+
+				SharedMemoryTransport transport = SharedMemoryTransport.open(file.getAbsolutePath(),
+						directory.getAbsolutePath());
+				PrintWriter out = new PrintWriter(
+						new OutputStreamWriter(transport.getRequests().getOutputStream(s, 0), "UTF-8"));
+				in = new BufferedReader(
+						new InputStreamReader(transport.getResponses().getInputStream(s, 5000), "UTF-8"));
+				for (int i = 0; i < 10; i++) {
+					out.print("c\nz:java.lang.String\nvalueOf\ni" + i + "\ne\n");
+					out.flush();
+					assertEquals("!ys" + i, in.readLine());
+				}
+				transport.close();
+			} finally {
+				s.close();
+			}
+		} finally {
+			server.shutdown(true);
+		}
+	}
+
+	@Test
+	public void testGatewayServerInvalidFile() throws Exception {
+		GatewayServer server = new GatewayServer.GatewayServerBuilder()
+				.sharedMemoryDirectory(directory.getAbsolutePath()).build();
+		server.start(true);
+
+		try {
+			File file = createFile("invalid", SharedMemoryTransport.MIN_CAPACITY);
+			Socket s = new Socket(GatewayServer.DEFAULT_ADDRESS, GatewayServer.DEFAULT_PORT);
+			try {
+				s.getOutputStream().write((file.getAbsolutePath() + "\n").getBytes("UTF-8"));
+				BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "UTF-8"));
+				assertTrue(in.readLine().startsWith("!zs"));
+				assertEquals(null, in.readLine());
+			} finally {
+				s.close();
+			}
+		} finally {
+			server.shutdown(true);
+		}
+	}
+}
@@ -30,6 +30,7 @@
 package py4j;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import org.junit.Test;
 
@@ -71,4 +72,16 @@ public class StringUtilTest {
 		assertEquals("Hello\\\\World!", StringUtil.escape("Hello\\World!"));
 	}
 
+	@Test
+	public void testFastPath() {
+		String original = "Hello\tWorld!";
+		assertSame(original, StringUtil.escape(original));
+		assertSame(original, StringUtil.unescape(original));
+	}
+
+	@Test
+	public void testTrailingEscapeChar() {
+		assertEquals("Hello", StringUtil.unescape("Hello\\"));
+	}
+
 }
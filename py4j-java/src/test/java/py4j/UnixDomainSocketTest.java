@@ -0,0 +1,128 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class UnixDomainSocketTest {
+
+	private String path;
+
+	@Before
+	public void setup() throws Exception {
+		assumeTrue(UnixDomainSocket.isSupported());
+		File file = File.createTempFile("py4j", ".sock");
+		file.delete();
+		path = file.getAbsolutePath();
+	}
+
+	@Test
+	public void testGatewayServer() throws Exception {
+		GatewayServer server = new GatewayServer.GatewayServerBuilder().javaUnixDomainSocket(path).build();
+		server.start(true);
+
+		try {
+			assertTrue(new File(path).exists());
+			Socket s = new UnixDomainSocketFactory(path).createSocket("ignored", 0);
+			try {
+				PrintWriter out = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), "UTF-8"));
+				BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "UTF-8"));
+				for (int i = 0; i < 10; i++) {
+					out.print("c\nz:java.lang.String\nvalueOf\ni" + i + "\ne\n");
+					out.flush();
+					assertEquals("!ys" + i, in.readLine());
+				}
+			} finally {
+				s.close();
+			}
+		} finally {
+			server.shutdown(true);
+		}
+		assertFalse(new File(path).exists());
+	}
+
+	@Test
+	public void testReadTimeout() throws Exception {
+		UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(path);
+		serverSocket.bind(null);
+		try {
+			Socket client = UnixDomainSocket.connect(path);
+			Socket accepted = serverSocket.accept();
+			try {
+				accepted.setSoTimeout(100);
+				try {
+					accepted.getInputStream().read();
+					fail("Should have timed out.");
+				} catch (SocketTimeoutException e) {
+					// Expected.
+				}
+				client.getOutputStream().write('a');
+				assertEquals('a', accepted.getInputStream().read());
+				client.close();
+				assertEquals(-1, accepted.getInputStream().read());
+			} finally {
+				client.close();
+				accepted.close();
+			}
+		} finally {
+			serverSocket.close();
+		}
+	}
+
+	@Test
+	public void testAcceptTimeout() throws Exception {
+		UnixDomainServerSocket serverSocket = new UnixDomainServerSocket(path);
+		serverSocket.bind(null);
+		try {
+			serverSocket.setSoTimeout(100);
+			serverSocket.accept();
+			fail("Should have timed out.");
+		} catch (SocketTimeoutException e) {
+			// Expected.
+		} finally {
+			serverSocket.close();
+		}
+	}
+}
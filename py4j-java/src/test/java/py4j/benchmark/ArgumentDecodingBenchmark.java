@@ -0,0 +1,140 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j.benchmark;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import py4j.Gateway;
+import py4j.Protocol;
+import py4j.ProtocolReader;
+
+/**
+ * <p>
+ * Compares the legacy argument decoding path (readLine, Protocol.getObject and
+ * List.toArray) with the cursor-based decoding of
+ * {@link ProtocolReader#readArguments(Gateway)}.
+ * </p>
+ *
+ * <p>
+ * This is not a unit test: run the main method manually, e.g.,
+ * <code>java -cp target/classes:target/test-classes py4j.benchmark.ArgumentDecodingBenchmark</code>
+ * </p>
+ *
+ * @author Barthelemy Dagenais
+ *
+ */
+public class ArgumentDecodingBenchmark {
+
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+
+	private final static int COMMANDS = 10000;
+
+	private final static int ITERATIONS = 20;
+
+	private static byte[] createInput(Gateway gateway) {
+		String id = gateway.putNewObject(new Object());
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < COMMANDS; i++) {
+			builder.append("i").append(i).append("\n");
+			builder.append("L").append(i * 1000000000L).append("\n");
+			builder.append("d").append(i / 3.0).append("\n");
+			builder.append("btrue\n");
+			builder.append("sHello World\n");
+			builder.append("r").append(id).append("\n");
+			builder.append("e\n");
+		}
+		return builder.toString().getBytes(UTF8);
+	}
+
+	private static long legacy(byte[] input, Gateway gateway) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(input), UTF8));
+		long checksum = 0;
+		for (int i = 0; i < COMMANDS; i++) {
+			List<String> stringArguments = new ArrayList<String>();
+			String line = reader.readLine();
+			while (!Protocol.isEmpty(line) && !Protocol.isEnd(line)) {
+				stringArguments.add(line);
+				line = reader.readLine();
+			}
+			List<Object> arguments = new ArrayList<Object>();
+			for (String stringArgument : stringArguments) {
+				arguments.add(Protocol.getObject(stringArgument, gateway));
+			}
+			checksum += arguments.toArray().length;
+		}
+		return checksum;
+	}
+
+	private static long cursor(byte[] input, Gateway gateway) throws IOException {
+		ProtocolReader reader = new ProtocolReader(new ByteArrayInputStream(input));
+		long checksum = 0;
+		for (int i = 0; i < COMMANDS; i++) {
+			Object[] arguments = reader.readArguments(gateway);
+			checksum += arguments.length;
+			reader.releaseArguments(arguments);
+		}
+		return checksum;
+	}
+
+	public static void main(String[] args) throws IOException {
+		Gateway gateway = new Gateway(null);
+		byte[] input = createInput(gateway);
+
+		// Warm up both paths before measuring.
+		for (int i = 0; i < ITERATIONS; i++) {
+			legacy(input, gateway);
+			cursor(input, gateway);
+		}
+
+		long legacyTime = 0;
+		long cursorTime = 0;
+		long checksum = 0;
+		for (int i = 0; i < ITERATIONS; i++) {
+			long start = System.nanoTime();
+			checksum += legacy(input, gateway);
+			legacyTime += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			checksum += cursor(input, gateway);
+			cursorTime += System.nanoTime() - start;
+		}
+
+		long calls = (long) COMMANDS * ITERATIONS;
+		System.out.println("Legacy decoding: " + (legacyTime / calls) + " ns/call");
+		System.out.println("Cursor decoding: " + (cursorTime / calls) + " ns/call");
+		System.out.println("Checksum: " + checksum);
+	}
+}
@@ -0,0 +1,209 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.SocketFactory;
+
+import py4j.CallbackClient;
+import py4j.GatewayServer;
+import py4j.Py4JClientConnection;
+
+/**
+ * <p>
+ * Measures the throughput of the callback channel checkout as the number of
+ * threads sending commands grows. The striped pool of {@link CallbackClient}
+ * is compared with the legacy pool, a single deque guarded by a fair lock.
+ * </p>
+ *
+ * <p>
+ * The channels answer immediately without any I/O, so only the checkout and
+ * the give back are measured.
+ * </p>
+ *
+ * <p>
+ * This is not a unit test: run the main method manually, e.g.,
+ * <code>java -cp target/classes:target/test-classes py4j.benchmark.CallbackCheckoutBenchmark</code>
+ * </p>
+ *
+ * @author Barthelemy Dagenais
+ *
+ */
+public class CallbackCheckoutBenchmark {
+
+	private final static int[] THREADS = { 1, 2, 4, 8, 16, 32, 64 };
+
+	private final static long DURATION = 1000;
+
+	private final static int ITERATIONS = 3;
+
+	private static class InMemoryConnection implements Py4JClientConnection {
+
+		private boolean used;
+
+		@Override
+		public String sendCommand(String command) {
+			return sendCommand(command, true);
+		}
+
+		@Override
+		public String sendCommand(String command, boolean blocking) {
+			used = true;
+			return "yv";
+		}
+
+		@Override
+		public void shutdown() {
+		}
+
+		@Override
+		public void shutdown(boolean reset) {
+		}
+
+		@Override
+		public void start() throws IOException {
+		}
+
+		@Override
+		public void setUsed(boolean used) {
+			this.used = used;
+		}
+
+		@Override
+		public boolean wasUsed() {
+			return used;
+		}
+	}
+
+	private static class InMemoryCallbackClient extends CallbackClient {
+
+		public InMemoryCallbackClient() {
+			super(0, GatewayServer.defaultAddress(), 0, TimeUnit.SECONDS, SocketFactory.getDefault());
+		}
+
+		@Override
+		protected Py4JClientConnection createConnection() throws IOException {
+			return new InMemoryConnection();
+		}
+	}
+
+	private static class LegacyCallbackClient extends InMemoryCallbackClient {
+
+		@Override
+		protected Py4JClientConnection getConnectionLock() {
+			try {
+				lock.lock();
+				Py4JClientConnection cc = connections.pollLast();
+				if (cc == null) {
+					cc = createConnection();
+				}
+				return cc;
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		protected void giveBackConnection(Py4JClientConnection cc) {
+			try {
+				lock.lock();
+				connections.addLast(cc);
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	private static long run(final CallbackClient client, int threadCount) throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicLong commands = new AtomicLong();
+		final long end[] = new long[1];
+		Thread[] threads = new Thread[threadCount];
+		for (int i = 0; i < threadCount; i++) {
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					long count = 0;
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					while (System.currentTimeMillis() < end[0]) {
+						client.sendCommand("c\nt\nm\ne\n");
+						count++;
+					}
+					commands.addAndGet(count);
+				}
+			});
+			threads[i].start();
+		}
+		end[0] = System.currentTimeMillis() + DURATION;
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		return commands.get() * 1000 / DURATION;
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		// The checkout logs at the INFO level.
+		Logger.getLogger("py4j").setLevel(Level.WARNING);
+
+		CallbackClient legacy = new LegacyCallbackClient();
+		CallbackClient striped = new InMemoryCallbackClient();
+
+		// Warm up both pools before measuring.
+		run(legacy, 4);
+		run(striped, 4);
+
+		for (int threadCount : THREADS) {
+			long legacyThroughput = 0;
+			long stripedThroughput = 0;
+			for (int i = 0; i < ITERATIONS; i++) {
+				legacyThroughput += run(legacy, threadCount);
+				stripedThroughput += run(striped, threadCount);
+			}
+			System.out.println(threadCount + " threads: legacy " + (legacyThroughput / ITERATIONS)
+					+ " commands/s, striped " + (stripedThroughput / ITERATIONS) + " commands/s");
+		}
+
+		legacy.shutdown();
+		striped.shutdown();
+	}
+}
@@ -0,0 +1,120 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j.commands;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import py4j.Gateway;
+import py4j.ProtocolReader;
+import py4j.Py4JException;
+import py4j.examples.ExampleClass;
+import py4j.examples.ExampleEntryPoint;
+
+public class BatchCommandTest {
+
+	private ExampleEntryPoint entryPoint;
+	private Gateway gateway;
+	private BatchCommand command;
+	private BufferedWriter writer;
+	private StringWriter sWriter;
+	private String target;
+
+	@Before
+	public void setUp() {
+		entryPoint = new ExampleEntryPoint();
+		gateway = new Gateway(entryPoint);
+		gateway.startup();
+		command = new BatchCommand();
+		command.init(gateway, null);
+		sWriter = new StringWriter();
+		writer = new BufferedWriter(sWriter);
+		target = gateway.putNewObject(entryPoint.getNewExample());
+	}
+
+	@After
+	public void tearDown() {
+		gateway.shutdown();
+	}
+
+	@Test
+	public void testBatch() throws Exception {
+		String inputCommand = target + "\nsetField1\ni42\ne\n" + target + "\ngetField1\ne\n"
+				+ "z:java.lang.String\nvalueOf\ni123\ne\ne\n";
+		command.execute("b", new BufferedReader(new StringReader(inputCommand)), writer);
+		assertEquals("!yv\n!yi42\n!ys123\n", sWriter.toString());
+		assertEquals(42, ((ExampleClass) gateway.getObject(target)).getField1());
+	}
+
+	@Test
+	public void testErrorIsolation() throws Exception {
+		String inputCommand = target + "\nmethod1aa\ne\n" + "z:java.lang.Integer\nvalueOf\nsallo\ne\n" + target
+				+ "\nmethod1\ne\ne\n";
+		command.execute("b", new ProtocolReader(new ByteArrayInputStream(inputCommand.getBytes("UTF-8"))), writer);
+		String[] results = sWriter.toString().split("\n");
+		assertEquals(3, results.length);
+		assertTrue(results[0].startsWith("!xspy4j.Py4JException: "));
+		assertTrue(results[1].startsWith("!xro"));
+		assertEquals("!yi1", results[2]);
+	}
+
+	@Test
+	public void testInvalidArguments() throws Exception {
+		String inputCommand = target + "\nsetField1\nifoo\ne\n" + target + "\nsetField1\ni1\nd1.x\nsbar\ne\n"
+				+ target + "\nsetField1\ni42\ne\n" + target + "\ngetField1\ne\ne\n";
+		command.execute("b", new ProtocolReader(new ByteArrayInputStream(inputCommand.getBytes("UTF-8"))), writer);
+		String[] results = sWriter.toString().split("\n");
+		assertEquals(4, results.length);
+		assertTrue(results[0].startsWith("!x"));
+		assertTrue(results[1].startsWith("!x"));
+		assertEquals("!yv", results[2]);
+		assertEquals("!yi42", results[3]);
+	}
+
+	@Test
+	public void testEmptyBatch() throws Exception {
+		command.execute("b", new BufferedReader(new StringReader("e\n")), writer);
+		assertEquals("", sWriter.toString());
+	}
+
+	@Test(expected = Py4JException.class)
+	public void testUnterminatedBatch() throws Exception {
+		command.execute("b", new BufferedReader(new StringReader(target + "\nmethod1\ne\n")), writer);
+	}
+}
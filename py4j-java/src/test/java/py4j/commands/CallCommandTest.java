@@ -33,6 +33,7 @@ import static org.junit.Assert.*;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
 
@@ -41,6 +42,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import py4j.Gateway;
+import py4j.ProtocolReader;
 import py4j.examples.ExampleClass;
 import py4j.examples.ExampleEntryPoint;
 
@@ -82,6 +84,16 @@ public class CallCommandTest {
 		}
 	}
 
+	@Test
+	public void testStringDictionary() throws Exception {
+		ProtocolReader reader = new ProtocolReader(new ByteArrayInputStream(
+				("@0:" + target + "\n@1:method7\n@2:hello\ne\n@0\n@1\n@2\ne\n").getBytes("UTF-8")));
+		reader.setStringDictionary(true);
+		command.execute("c", reader, writer);
+		command.execute("c", reader, writer);
+		assertEquals("!yi2\n!yi2\n", sWriter.toString());
+	}
+
 	@Test
 	public void testReflectionException() {
 		String inputCommand = "z:java.lang.String\nvalueOf2\ni123\ne\n";
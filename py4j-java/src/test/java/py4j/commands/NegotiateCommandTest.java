@@ -0,0 +1,184 @@
+/******************************************************************************
+ * Copyright (c) 2009-2022, Barthelemy Dagenais and individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * - Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * - The name of the author may not be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *****************************************************************************/
+package py4j.commands;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.Socket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import py4j.Gateway;
+import py4j.Protocol;
+import py4j.Py4JServerConnection;
+import py4j.ProtocolReader;
+import py4j.ProtocolWriter;
+import py4j.examples.ExampleEntryPoint;
+
+public class NegotiateCommandTest {
+
+	private Gateway gateway;
+	private NegotiateCommand command;
+	private Py4JServerConnection connection;
+
+	@Before
+	public void setUp() {
+		gateway = new Gateway(new ExampleEntryPoint());
+		gateway.startup();
+		connection = new Py4JServerConnection() {
+			public Socket getSocket() {
+				return null;
+			}
+
+			public void shutdown() {
+			}
+
+			public void shutdown(boolean reset) {
+			}
+		};
+		command = new NegotiateCommand();
+		command.init(gateway, connection);
+	}
+
+	@After
+	public void tearDown() {
+		gateway.shutdown();
+	}
+
+	@Test
+	public void testBinary() throws Exception {
+		ProtocolReader reader = new ProtocolReader(new ByteArrayInputStream("sbinary\nsunknown\ne\n".getBytes("UTF-8")));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ProtocolWriter writer = new ProtocolWriter(out);
+		command.execute("N", reader, writer);
+		// The response is sent before the binary protocol is enabled.
+		assertEquals("!ysbinary\n", new String(out.toByteArray(), "UTF-8"));
+		assertTrue(reader.isFramed());
+		assertTrue(writer.isFramed());
+	}
+
+	@Test
+	public void testAlreadyFramed() throws Exception {
+		ProtocolReader reader = new ProtocolReader(new ByteArrayInputStream("sbinary\ne\n".getBytes("UTF-8")));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ProtocolWriter writer = new ProtocolWriter(out);
+		command.execute("N", reader, writer);
+		reader.setFramed(false);
+		writer.setFramed(false);
+		out.reset();
+
+		reader = new ProtocolReader(new ByteArrayInputStream(new byte[] { 0, 0, 0, 10, 's', 'b', 'i', 'n', 'a', 'r', 'y',
+				'\n', 'e', '\n' }));
+		reader.setFramed(true);
+		command.execute("N", reader, writer);
+		assertEquals("!ys\n", new String(out.toByteArray(), "UTF-8"));
+	}
+
+	@Test
+	public void testTextOnlyConnection() throws Exception {
+		StringWriter sWriter = new StringWriter();
+		command.execute("N", new BufferedReader(new StringReader("sbinary\ne\n")), new BufferedWriter(sWriter));
+		assertEquals("!ys\n", sWriter.toString());
+	}
+
+	@Test
+	public void testRawBytes() throws Exception {
+		ProtocolReader reader = new ProtocolReader(new ByteArrayInputStream("sbytes\ne\n".getBytes("UTF-8")));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ProtocolWriter writer = new ProtocolWriter(out);
+		command.execute("N", reader, writer);
+		assertEquals("!ysbytes\n", new String(out.toByteArray(), "UTF-8"));
+		assertTrue(writer.isRawBytes());
+		assertFalse(writer.isFramed());
+	}
+
+	@Test
+	public void testCompression() throws Exception {
+		ProtocolReader reader = new ProtocolReader(
+				new ByteArrayInputStream("sdeflate:1000\nsdeflate:-1\ne\n".getBytes("UTF-8")));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ProtocolWriter writer = new ProtocolWriter(out);
+		command.execute("N", reader, writer);
+		assertEquals("!ysdeflate:1000\n", new String(out.toByteArray(), "UTF-8"));
+		assertEquals(1000, writer.getCompressionThreshold());
+
+		out.reset();
+		writer = new ProtocolWriter(out);
+		reader = new ProtocolReader(new ByteArrayInputStream("sdeflate\ne\n".getBytes("UTF-8")));
+		command.execute("N", reader, writer);
+		assertEquals(Protocol.DEFAULT_COMPRESSION_THRESHOLD, writer.getCompressionThreshold());
+
+		// Invalid thresholds are rejected.
+		out.reset();
+		writer = new ProtocolWriter(out);
+		reader = new ProtocolReader(new ByteArrayInputStream("sdeflate:abc\nsdeflate:0\ne\n".getBytes("UTF-8")));
+		command.execute("N", reader, writer);
+		assertEquals("!ys\n", new String(out.toByteArray(), "UTF-8"));
+		command.enableFeature("deflate:abc", reader, writer);
+		command.enableFeature("deflate:-5", reader, writer);
+		assertEquals(0, writer.getCompressionThreshold());
+	}
+
+	@Test
+	public void testDoubleBits() throws Exception {
+		ProtocolReader reader = new ProtocolReader(new ByteArrayInputStream("shexfloat\ne\n".getBytes("UTF-8")));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ProtocolWriter writer = new ProtocolWriter(out);
+		assertFalse(gateway.isCallbackDoubleBits());
+		command.execute("N", reader, writer);
+		assertEquals("!yshexfloat\n", new String(out.toByteArray(), "UTF-8"));
+		assertTrue(writer.isDoubleBits());
+		assertTrue(gateway.isCallbackDoubleBits());
+
+		// Callbacks go back to the default encoding once the connection that
+		// negotiated the feature is closed.
+		gateway.closeConnection(connection);
+		assertFalse(gateway.isCallbackDoubleBits());
+	}
+
+	@Test
+	public void testExactTypes() throws Exception {
+		ProtocolReader reader = new ProtocolReader(new ByteArrayInputStream("sexact\ne\n".getBytes("UTF-8")));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ProtocolWriter writer = new ProtocolWriter(out);
+		assertFalse(writer.isExactTypes());
+		command.execute("N", reader, writer);
+		assertEquals("!ysexact\n", new String(out.toByteArray(), "UTF-8"));
+		assertTrue(writer.isExactTypes());
+	}
+}
@@ -33,6 +33,8 @@ import javax.net.SocketFactory;
 
 import py4j.CallbackClient;
 import py4j.GatewayServer;
+import py4j.MultiplexedCallbackClient;
+import py4j.SharedMemoryTransport;
 
 public class ExampleApplication {
 
@@ -107,4 +109,31 @@ public class ExampleApplication {
 		}
 	}
 
+	public static class ExampleMultiplexedCallbackApplication {
+		public static void main(String[] args) {
+			GatewayServer.turnLoggingOff();
+			// A single channel: concurrent callbacks are multiplexed on it. A
+			// lost response fails the callback after 5 seconds.
+			MultiplexedCallbackClient callbackClient = new MultiplexedCallbackClient(GatewayServer.DEFAULT_PYTHON_PORT,
+					GatewayServer.defaultAddress(), null, CallbackClient.DEFAULT_MIN_CONNECTION_TIME,
+					CallbackClient.DEFAULT_MIN_CONNECTION_TIME_UNIT, SocketFactory.getDefault(), true, 5000, 1);
+			GatewayServer server = new GatewayServer.GatewayServerBuilder().entryPoint(new ExampleEntryPoint())
+					.callbackClient(callbackClient).build();
+			server.start();
+		}
+	}
+
+	public static class ExampleSharedMemoryApplication {
+		public static void main(String[] args) {
+			String directory = SharedMemoryTransport.DEFAULT_DIRECTORY;
+			if (args.length > 0) {
+				directory = args[0];
+			}
+			GatewayServer.turnLoggingOff();
+			GatewayServer server = new GatewayServer.GatewayServerBuilder().entryPoint(new ExampleEntryPoint())
+					.sharedMemoryDirectory(directory).build();
+			server.start();
+		}
+	}
+
 }
@@ -32,6 +32,7 @@ package py4j.reflection;
 import static org.junit.Assert.*;
 
 import java.lang.reflect.Method;
+import java.math.BigInteger;
 
 import org.junit.Test;
 
@@ -99,6 +100,28 @@ public class MethodInvokerTest {
 		}
 	}
 
+	@Test
+	public void testBuildInvokerBigInteger() throws Exception {
+		Method m = BigInteger.class.getMethod("add", BigInteger.class);
+		MethodInvoker invoker = MethodInvoker.buildInvoker(m, new Class[] { BigInteger.class });
+		assertEquals(0, invoker.getCost());
+
+		// Python sends BigIntegers back as ints or longs.
+		invoker = MethodInvoker.buildInvoker(m, new Class[] { Long.class });
+		assertEquals(1, invoker.getCost());
+		assertEquals(BigInteger.valueOf(6), invoker.invoke(BigInteger.ONE, new Object[] { 5L }));
+		invoker = MethodInvoker.buildInvoker(m, new Class[] { Integer.class });
+		assertEquals(2, invoker.getCost());
+		assertEquals(BigInteger.valueOf(6), invoker.invoke(BigInteger.ONE, new Object[] { 5 }));
+		invoker = MethodInvoker.buildInvoker(m, new Class[] { Short.class });
+		assertEquals(BigInteger.valueOf(6), invoker.invoke(BigInteger.ONE, new Object[] { (short) 5 }));
+		invoker = MethodInvoker.buildInvoker(m, new Class[] { Byte.class });
+		assertEquals(BigInteger.valueOf(6), invoker.invoke(BigInteger.ONE, new Object[] { (byte) 5 }));
+
+		invoker = MethodInvoker.buildInvoker(m, new Class[] { Double.class });
+		assertEquals(-1, invoker.getCost());
+	}
+
 	@Test
 	public void testBuildInvokerAll() {
 		try {
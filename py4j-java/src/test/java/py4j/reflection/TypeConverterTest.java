@@ -32,6 +32,8 @@ package py4j.reflection;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.math.BigInteger;
+
 import org.junit.Test;
 
 public class TypeConverterTest {
@@ -61,6 +63,14 @@ public class TypeConverterTest {
 		assertTrue(converter.convert(102) instanceof Byte);
 	}
 
+	@Test
+	public void testBigIntegerConversion() {
+		TypeConverter converter = new TypeConverter(TypeConverter.NUM_TO_BIG_INTEGER);
+		assertEquals(BigInteger.valueOf(5), converter.convert(5));
+		assertEquals(BigInteger.valueOf(Long.MIN_VALUE), converter.convert(Long.MIN_VALUE));
+		assertTrue(converter.convert((byte) 1) instanceof BigInteger);
+	}
+
 	@Test
 	public void testStringConversion() {
 		TypeConverter converter = new TypeConverter(TypeConverter.STRING_TO_CHAR);
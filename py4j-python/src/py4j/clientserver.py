@@ -67,7 +67,7 @@ class JavaParameters(GatewayParameters):
             auto_close=True, auto_convert=False, eager_load=False,
             ssl_context=None, enable_memory_management=True, auto_gc=False,
             read_timeout=None, daemonize_memory_management=True,
-            auth_token=None):
+            auth_token=None, unix_socket_path=None):
         """
 
         :param address: the address to which the client will request a
@@ -121,10 +121,15 @@ class JavaParameters(GatewayParameters):
 
         :param auth_token: if provided, an authentication that token clients
             must provide to the server when connecting.
+
+        :param unix_socket_path: if provided, connect to the Java side through
+            the Unix domain socket at this path instead of the address and the
+            port. The Java side must listen on the same path (Java 16+).
         """
         super(JavaParameters, self).__init__(
             address, port, auto_field, auto_close, auto_convert, eager_load,
-            ssl_context, enable_memory_management, read_timeout, auth_token)
+            ssl_context, enable_memory_management, read_timeout, auth_token,
+            unix_socket_path)
         self.auto_gc = auto_gc
         self.daemonize_memory_management = daemonize_memory_management
 
@@ -140,7 +145,7 @@ class PythonParameters(CallbackServerParameters):
             ssl_context=None, auto_gc=False,
             accept_timeout=DEFAULT_ACCEPT_TIMEOUT_PLACEHOLDER,
             read_timeout=None, propagate_java_exceptions=False,
-            auth_token=None):
+            auth_token=None, unix_socket_path=None):
         """
         :param address: the address to which the client will request a
             connection
@@ -188,11 +193,16 @@ class PythonParameters(CallbackServerParameters):
 
         :param auth_token: if provided, an authentication token that clients
             must provide to the server when connecting.
+
+        :param unix_socket_path: if provided, listen on a Unix domain socket
+            at this path instead of the address and the port. The socket file
+            is removed when the server shuts down. Access can be restricted
+            with the permissions of its directory.
         """
         super(PythonParameters, self).__init__(
             address, port, daemonize, daemonize_connections, eager_load,
             ssl_context, accept_timeout, read_timeout,
-            propagate_java_exceptions, auth_token)
+            propagate_java_exceptions, auth_token, unix_socket_path)
         self.auto_gc = auto_gc
 
 
@@ -429,13 +439,22 @@ class ClientServerConnection(object):
 
     def connect_to_java_server(self):
         try:
-            self.socket = socket.socket(socket.AF_INET, socket.SOCK_STREAM)
+            unix_socket_path = self.java_parameters.unix_socket_path
+            if unix_socket_path:
+                self.socket = socket.socket(
+                    socket.AF_UNIX, socket.SOCK_STREAM)
+            else:
+                self.socket = socket.socket(
+                    socket.AF_INET, socket.SOCK_STREAM)
             if self.java_parameters.read_timeout:
                 self.socket.settimeout(self.java_parameters.read_timeout)
             if self.ssl_context:
                 self.socket = self.ssl_context.wrap_socket(
                     self.socket, server_hostname=self.java_address)
-            self.socket.connect((self.java_address, self.java_port))
+            if unix_socket_path:
+                self.socket.connect(unix_socket_path)
+            else:
+                self.socket.connect((self.java_address, self.java_port))
             self.stream = self.socket.makefile("rb")
             self.is_connected = True
             self.initiated_from_client = True
@@ -521,8 +540,40 @@ class ClientServerConnection(object):
         self.wait_for_commands()
 
     def send_command(self, command):
-        # TODO At some point extract common code from wait_for_commands
         logger.debug("Command to send: {0}".format(command))
+        self._send(command)
+        return self._read_answer()
+
+    def send_commands(self, commands):
+        """Sends several commands to the JVM, one at a time. The commands are
+           not pipelined because the JVM reads the answers of the callbacks
+           made by a command on this connection: it would read the next
+           command instead.
+
+        :param commands: the list of `string` commands to send to the JVM.
+
+        :rtype: the list of `string` answers received from the JVM, in the
+         same order as the commands.
+        """
+        return [self.send_command(command) for command in commands]
+
+    def send_batch(self, command, count):
+        """Sends a batch command to the JVM and reads one answer per call
+           in the batch. Callbacks made by the calls are executed while the
+           answers are read.
+
+        :param command: the `string` batch command to send to the JVM.
+
+        :param count: the number of calls in the batch.
+
+        :rtype: the list of `string` answers received from the JVM, in the
+         same order as the calls.
+        """
+        logger.debug("Batch to send: {0}".format(command))
+        self._send(command)
+        return [self._read_answer() for _ in range(count)]
+
+    def _send(self, command):
         try:
             self.socket.sendall(command.encode("utf-8"))
         except Exception as e:
@@ -530,6 +581,8 @@ class ClientServerConnection(object):
             raise Py4JNetworkError(
                 "Error while sending", e, proto.ERROR_ON_SEND)
 
+    def _read_answer(self):
+        # TODO At some point extract common code from wait_for_commands
         try:
             while True:
                 answer = smart_decode(self.stream.readline()[:-1])
@@ -491,15 +491,86 @@ class JavaList(JavaObject, MutableSequence):
         return "[{0}]".format(", ".join(items))
 
 
+def convert_literal_elements(elements, gateway_client):
+    """Converts the elements of a collection literal with the converters of
+    the gateway client. Nested collections become nested literals.
+    """
+    converters = gateway_client.converters or []
+    converted = []
+    for element in elements:
+        if not isinstance(element, JavaObject):
+            for converter in converters:
+                if converter.can_convert(element):
+                    convert_literal = getattr(
+                        converter, "convert_literal", None)
+                    if convert_literal is not None:
+                        element = convert_literal(element, gateway_client)
+                    else:
+                        element = converter.convert(element, gateway_client)
+                    break
+        converted.append(element)
+    return converted
+
+
+MAX_PIPELINED_CALLS = 1000
+"""Maximum number of calls sent by :func:`call_pipelined` before reading
+their answers."""
+
+
+def call_pipelined(member, args_list, gateway_client):
+    """Calls a Java method once per tuple of arguments, in order, without
+    waiting for the answer of a call before sending the next one (see
+    :meth:`GatewayClient.send_commands
+    <py4j.java_gateway.GatewayClient.send_commands>`). The calls are sent in
+    chunks of :data:`MAX_PIPELINED_CALLS` so that the answers never fill the
+    socket buffers.
+
+    :param member: the :class:`JavaMember <py4j.java_gateway.JavaMember>` to
+        call.
+
+    :param args_list: a list of tuples of arguments.
+
+    :param gateway_client: the gateway client used to send the calls.
+
+    :rtype: the list of return values. Raises the error of the first call
+        that failed once all the calls of its chunk were made.
+    """
+    results = []
+    for start in range(0, len(args_list), MAX_PIPELINED_CALLS):
+        commands = []
+        temp_args = []
+        for args in args_list[start:start + MAX_PIPELINED_CALLS]:
+            args_command, call_temp_args = member._build_args(*args)
+            commands.append(
+                proto.CALL_COMMAND_NAME + member.command_header +
+                args_command + proto.END_COMMAND_PART)
+            temp_args.extend(call_temp_args)
+        try:
+            answers = gateway_client.send_commands(commands)
+            for answer in answers:
+                results.append(get_return_value(
+                    answer, gateway_client, member.target_id, member.name))
+        finally:
+            for temp_arg in temp_args:
+                if hasattr(temp_arg, "_detach"):
+                    temp_arg._detach()
+    return results
+
+
 class SetConverter(object):
     def can_convert(self, object):
         return isinstance(object, Set)
 
+    def convert_literal(self, object, gateway_client):
+        return proto.CollectionLiteral(
+            proto.SET_TYPE, convert_literal_elements(object, gateway_client))
+
     def convert(self, object, gateway_client):
         JavaSet = JavaClass("java.util.HashSet", gateway_client)
         java_set = JavaSet()
-        for element in object:
-            java_set.add(element)
+        call_pipelined(
+            get_method(java_set, "add"),
+            [(element,) for element in object], gateway_client)
         return java_set
 
 
@@ -510,11 +581,16 @@ class ListConverter(object):
         return hasattr2(object, "__iter__") and not isbytearray(object) and\
             not ispython3bytestr(object) and not isinstance(object, basestring)
 
+    def convert_literal(self, object, gateway_client):
+        return proto.CollectionLiteral(
+            proto.LIST_TYPE, convert_literal_elements(object, gateway_client))
+
     def convert(self, object, gateway_client):
         ArrayList = JavaClass("java.util.ArrayList", gateway_client)
         java_list = ArrayList()
-        for element in object:
-            java_list.add(element)
+        call_pipelined(
+            get_method(java_list, "add"),
+            [(element,) for element in object], gateway_client)
         return java_list
 
 
@@ -522,11 +598,20 @@ class MapConverter(object):
     def can_convert(self, object):
         return hasattr2(object, "keys") and hasattr2(object, "__getitem__")
 
+    def convert_literal(self, object, gateway_client):
+        elements = []
+        for key in object.keys():
+            elements.append(key)
+            elements.append(object[key])
+        return proto.CollectionLiteral(
+            proto.MAP_TYPE, convert_literal_elements(elements, gateway_client))
+
     def convert(self, object, gateway_client):
         HashMap = JavaClass("java.util.HashMap", gateway_client)
         java_map = HashMap()
-        for key in object.keys():
-            java_map[key] = object[key]
+        call_pipelined(
+            get_method(java_map, "put"),
+            [(key, object[key]) for key in object.keys()], gateway_client)
         return java_map
 
 
@@ -13,6 +13,7 @@ Created on Dec 3, 2009
 from __future__ import unicode_literals, absolute_import
 
 from collections import deque
+from io import BytesIO
 import logging
 import os
 from pydoc import pager
@@ -23,7 +24,7 @@ from subprocess import Popen, PIPE
 import subprocess
 import sys
 import traceback
-from threading import Thread, RLock
+from threading import Event, Thread, RLock
 import weakref
 
 from py4j.compat import (
@@ -37,6 +38,8 @@ from py4j.protocol import (
     register_output_converter, smart_decode, escape_new_line,
     is_fatal_error, is_error, unescape_new_line,
     get_error_message, compute_exception_message)
+from py4j.shared_memory import (
+    DEFAULT_SHARED_MEMORY_DIRECTORY, SharedMemorySocket, create_shared_memory)
 from py4j.signals import Signal
 from py4j.version import __version__
 
@@ -56,6 +59,8 @@ DEFAULT_PORT = 25333
 DEFAULT_PYTHON_PROXY_PORT = 25334
 DEFAULT_ACCEPT_TIMEOUT_PLACEHOLDER = "DEFAULT"
 DEFAULT_CALLBACK_SERVER_ACCEPT_TIMEOUT = 5
+DEFAULT_MULTIPLEXED_CONNECTION_COUNT = 2
+DEFAULT_MULTIPLEXED_WORKER_COUNT = 16
 PY4J_SKIP_COLLECTIONS = "PY4J_SKIP_COLLECTIONS"
 PY4J_TRUE = {"yes", "y", "t", "true"}
 
@@ -756,7 +761,9 @@ class GatewayParameters(object):
             self, address=DEFAULT_ADDRESS, port=DEFAULT_PORT, auto_field=False,
             auto_close=True, auto_convert=False, eager_load=False,
             ssl_context=None, enable_memory_management=True,
-            read_timeout=None, auth_token=None):
+            read_timeout=None, auth_token=None, unix_socket_path=None,
+            shared_memory_size=None,
+            shared_memory_directory=DEFAULT_SHARED_MEMORY_DIRECTORY):
         """
         :param address: the address to which the client will request a
             connection. If you're assing a `SSLContext` with
@@ -797,9 +804,25 @@ class GatewayParameters(object):
 
         :param auth_token: if provided, an authentication that token clients
             must provide to the server when connecting.
+
+        :param unix_socket_path: if provided, connect to the Java side through
+            the Unix domain socket at this path instead of the address and the
+            port. The Java side must listen on the same path (Java 16+).
+
+        :param shared_memory_size: if provided, the commands and the responses
+            are exchanged through two ring buffers of this size (in bytes, a
+            power of two) in shared memory instead of the socket. The Java
+            side must be built with `sharedMemoryDirectory`.
+
+        :param shared_memory_directory: the directory where the shared memory
+            files are created. Must be the directory given to the Java side.
+            Default is /dev/shm.
         """
         self.address = address
         self.port = port
+        self.unix_socket_path = unix_socket_path
+        self.shared_memory_size = shared_memory_size
+        self.shared_memory_directory = shared_memory_directory
         self.auto_field = auto_field
         self.auto_close = auto_close
         self.auto_convert = auto_convert
@@ -821,7 +844,8 @@ class CallbackServerParameters(object):
             ssl_context=None,
             accept_timeout=DEFAULT_ACCEPT_TIMEOUT_PLACEHOLDER,
             read_timeout=None, propagate_java_exceptions=False,
-            auth_token=None):
+            auth_token=None, unix_socket_path=None,
+            multiplexed_worker_count=DEFAULT_MULTIPLEXED_WORKER_COUNT):
         """
         :param address: the address to which the client will request a
             connection
@@ -863,9 +887,20 @@ class CallbackServerParameters(object):
 
         :param auth_token: if provided, an authentication token that clients
             must provide to the server when connecting.
+
+        :param unix_socket_path: if provided, listen on a Unix domain socket
+            at this path instead of the address and the port. The socket file
+            is removed when the server shuts down. Access can be restricted
+            with the permissions of its directory.
+
+        :param multiplexed_worker_count: the maximum number of multiplexed
+            callbacks executed concurrently for each connection. Multiplexed
+            callbacks are sent by the MultiplexedCallbackClient on the Java
+            side: many callbacks share a single connection.
         """
         self.address = address
         self.port = port
+        self.unix_socket_path = unix_socket_path
         self.daemonize = daemonize
         self.daemonize_connections = daemonize_connections
         self.eager_load = eager_load
@@ -879,6 +914,7 @@ class CallbackServerParameters(object):
         self.read_timeout = read_timeout
         self.propagate_java_exceptions = propagate_java_exceptions
         self.auth_token = escape_new_line(auth_token)
+        self.multiplexed_worker_count = multiplexed_worker_count
 
 
 class DummyRLock(object):
@@ -1107,6 +1143,61 @@ class GatewayClient(object):
 
         return response
 
+    def send_commands(self, commands):
+        """Sends several commands to the JVM on the same connection without
+           waiting for the answers in between. This is not intended to be
+           called directly by Py4J users: it is usually called by
+           :func:`py4j.java_collections.call_pipelined`, e.g., when the
+           collection converters fill a Java collection.
+
+           Pipelined commands are never retried because some of them may
+           already have been executed when an error occurs. The answers are
+           only read once all the commands are sent, so very large batches
+           should be split to avoid filling the socket buffers.
+
+        :param commands: the list of `string` commands to send to the JVM.
+
+        :rtype: the list of `string` answers received from the JVM, in the
+         same order as the commands.
+        """
+        connection = self._get_connection()
+        try:
+            responses = connection.send_commands(commands)
+            if any(is_fatal_error(response) for response in responses):
+                connection.close(False)
+            else:
+                self._give_back_connection(connection)
+        except Py4JNetworkError as pne:
+            reset = isinstance(pne.cause, socket.timeout)
+            connection.close(reset)
+            raise
+        return responses
+
+    def send_batch(self, command, count):
+        """Sends a batch command to the JVM. This is not intended to be
+           called directly by Py4J users: it is usually called by
+           :meth:`JavaGateway.batch`. A batch is never retried.
+
+        :param command: the `string` batch command to send to the JVM.
+
+        :param count: the number of calls in the batch.
+
+        :rtype: the list of `string` answers received from the JVM, in the
+         same order as the calls.
+        """
+        connection = self._get_connection()
+        try:
+            responses = connection.send_batch(command, count)
+            if any(is_fatal_error(response) for response in responses):
+                connection.close(False)
+            else:
+                self._give_back_connection(connection)
+        except Py4JNetworkError as pne:
+            reset = isinstance(pne.cause, socket.timeout)
+            connection.close(reset)
+            raise
+        return responses
+
     def _create_connection_guard(self, connection):
         return GatewayConnectionGuard(self, connection)
 
@@ -1147,7 +1238,11 @@ class GatewayConnection(object):
         self.gateway_parameters = gateway_parameters
         self.address = gateway_parameters.address
         self.port = gateway_parameters.port
-        af_type = socket.getaddrinfo(self.address, self.port)[0][0]
+        self.unix_socket_path = gateway_parameters.unix_socket_path
+        if self.unix_socket_path:
+            af_type = socket.AF_UNIX
+        else:
+            af_type = socket.getaddrinfo(self.address, self.port)[0][0]
         self.socket = socket.socket(af_type, socket.SOCK_STREAM)
         if gateway_parameters.read_timeout:
             self.socket.settimeout(gateway_parameters.read_timeout)
@@ -1167,10 +1262,15 @@ class GatewayConnection(object):
         """Starts the connection by connecting to the `address` and the `port`
         """
         try:
-            self.socket.connect((self.address, self.port))
+            if self.unix_socket_path:
+                self.socket.connect(self.unix_socket_path)
+            else:
+                self.socket.connect((self.address, self.port))
             self.stream = self.socket.makefile("rb")
             self.is_connected = True
 
+            if self.gateway_parameters.shared_memory_size:
+                self._start_shared_memory()
             self._authenticate_connection()
         except Py4JAuthenticationError:
             logger.exception("Cannot authenticate with gateway server.")
@@ -1181,6 +1281,26 @@ class GatewayConnection(object):
             logger.exception(msg)
             raise Py4JNetworkError(msg, e)
 
+    def _start_shared_memory(self):
+        capacity = self.gateway_parameters.shared_memory_size
+        path, memory = create_shared_memory(
+            self.gateway_parameters.shared_memory_directory, capacity)
+        try:
+            self.socket.sendall("{0}\n".format(path).encode("utf-8"))
+            answer = smart_decode(self.stream.readline()[:-1])
+        finally:
+            # Both sides mapped the file (or failed to): it is not needed
+            # anymore.
+            os.remove(path)
+        if answer != proto.RETURN_MESSAGE + proto.SUCCESS + proto.VOID_TYPE:
+            memory.close()
+            raise Py4JNetworkError(
+                "The Java side refused the shared memory transport: "
+                "{0}".format(answer))
+        quiet_close(self.stream)
+        self.socket = SharedMemorySocket(self.socket, memory, capacity)
+        self.stream = self.socket.makefile("rb")
+
     def _authenticate_connection(self):
         if self.gateway_parameters.auth_token:
             cmd = "{0}\n{1}\n".format(
@@ -1251,6 +1371,50 @@ class GatewayConnection(object):
             raise Py4JNetworkError(
                 "Error while sending", e, proto.ERROR_ON_SEND)
 
+        return self._read_answer()
+
+    def send_commands(self, commands):
+        """Sends several commands to the JVM without waiting for the
+           answers in between (pipelining). The JVM executes the commands in
+           order and sends back the answers together.
+
+        :param commands: the list of `string` commands to send to the JVM.
+
+        :rtype: the list of `string` answers received from the JVM, in the
+         same order as the commands.
+        """
+        logger.debug("Commands to send: {0}".format(commands))
+        try:
+            self.socket.sendall("".join(commands).encode("utf-8"))
+        except Exception as e:
+            logger.info("Error while sending.", exc_info=True)
+            raise Py4JNetworkError(
+                "Error while sending", e, proto.ERROR_ON_SEND)
+
+        return [self._read_answer() for _ in commands]
+
+    def send_batch(self, command, count):
+        """Sends a batch command to the JVM and reads one answer per call
+           in the batch.
+
+        :param command: the `string` batch command to send to the JVM.
+
+        :param count: the number of calls in the batch.
+
+        :rtype: the list of `string` answers received from the JVM, in the
+         same order as the calls.
+        """
+        logger.debug("Batch to send: {0}".format(command))
+        try:
+            self.socket.sendall(command.encode("utf-8"))
+        except Exception as e:
+            logger.info("Error while sending.", exc_info=True)
+            raise Py4JNetworkError(
+                "Error while sending", e, proto.ERROR_ON_SEND)
+
+        return [self._read_answer() for _ in range(count)]
+
+    def _read_answer(self):
         try:
             answer = smart_decode(self.stream.readline()[:-1])
             logger.debug("Answer received: {0}".format(answer))
@@ -1269,6 +1433,260 @@ class GatewayConnection(object):
                 "Error while receiving", e, proto.ERROR_ON_RECEIVE)
 
 
+class MultiplexedGatewayClient(GatewayClient):
+    """A :class:`GatewayClient` that shares a few multiplexed connections
+       between all the threads instead of opening one connection (and one
+       Java thread) per concurrent thread.
+
+       Commands sent by concurrent threads are executed concurrently by a pool
+       of workers on the Java side. Streaming commands are not supported.
+    """
+
+    def __init__(
+            self, gateway_parameters=None, gateway_property=None,
+            connection_count=DEFAULT_MULTIPLEXED_CONNECTION_COUNT):
+        """
+        :param gateway_parameters: the set of parameters used to configure the
+            GatewayClient.
+
+        :param gateway_property: used to keep gateway preferences without a
+            cycle with the gateway
+
+        :param connection_count: the maximum number of connections shared by
+            the threads.
+        """
+        super(MultiplexedGatewayClient, self).__init__(
+            gateway_parameters=gateway_parameters,
+            gateway_property=gateway_property)
+        self.connection_count = connection_count
+        self.connections = []
+        self.connections_lock = RLock()
+        self.next_connection = 0
+
+    def garbage_collect_object(self, target_id):
+        # Releasing an object does not open a connection: starting the reader
+        # thread would block if the interpreter is exiting.
+        with self.connections_lock:
+            if not any(
+                    connection.is_connected
+                    for connection in self.connections):
+                return
+        super(MultiplexedGatewayClient, self).garbage_collect_object(
+            target_id)
+
+    def _get_connection(self):
+        if not self.is_connected:
+            raise Py4JNetworkError("Gateway is not connected.")
+        with self.connections_lock:
+            self.connections = [
+                connection for connection in self.connections
+                if connection.is_connected]
+            if len(self.connections) < self.connection_count:
+                connection = self._create_connection()
+                self.connections.append(connection)
+                return connection
+            self.next_connection = \
+                (self.next_connection + 1) % len(self.connections)
+            return self.connections[self.next_connection]
+
+    def _create_connection(self):
+        connection = MultiplexedGatewayConnection(
+            self.gateway_parameters, self.gateway_property)
+        connection.start()
+        return connection
+
+    def _give_back_connection(self, connection):
+        # Connections are shared: they are never given back.
+        pass
+
+    def send_command(self, command, retry=True, binary=False):
+        if binary:
+            raise Py4JError(
+                "Streaming is not supported by multiplexed connections.")
+        return super(MultiplexedGatewayClient, self).send_command(
+            command, retry)
+
+    def close(self):
+        """Closes all the shared connections."""
+        with self.connections_lock:
+            connections = self.connections
+            self.connections = []
+        for connection in connections:
+            quiet_close(connection)
+
+
+class _PendingAnswer(object):
+
+    def __init__(self, correlation_id):
+        self.correlation_id = correlation_id
+        self.event = Event()
+        self.answer = None
+        self.error = None
+
+
+class MultiplexedGatewayConnection(GatewayConnection):
+    """Gateway connection that can be used by several threads at the same
+       time. Each command is sent with a correlation id and a dedicated thread
+       reads the answers, which can be received in any order.
+    """
+
+    def __init__(self, gateway_parameters, gateway_property=None):
+        super(MultiplexedGatewayConnection, self).__init__(
+            gateway_parameters, gateway_property)
+        self.send_lock = RLock()
+        self.pending_lock = RLock()
+        self.pending = {}
+        self.next_id = 0
+        self.error = None
+        self.reader = None
+
+    def start(self):
+        """Starts the connection and the thread that reads the answers."""
+        super(MultiplexedGatewayConnection, self).start()
+        # The reader thread waits for answers even when no command is
+        # pending: the read timeout is applied to each command instead.
+        self.socket.settimeout(None)
+        self.reader = Thread(target=self._read_answers)
+        self.reader.daemon = True
+        self.reader.start()
+
+    def close(self, reset=False):
+        super(MultiplexedGatewayConnection, self).close(reset)
+        self._fail_pending(Py4JNetworkError(
+            "Connection was closed", when=proto.ERROR_ON_RECEIVE))
+
+    def shutdown_gateway(self):
+        """Sends a shutdown command to the gateway. The reader thread is
+           blocked on the stream: the socket is shut down before the stream
+           is closed.
+        """
+        if not self.is_connected:
+            raise Py4JError("Gateway must be connected to send shutdown cmd.")
+
+        try:
+            with self.send_lock:
+                self.socket.sendall(
+                    proto.SHUTDOWN_GATEWAY_COMMAND_NAME.encode("utf-8"))
+            quiet_shutdown(self.socket)
+            quiet_close(self.stream)
+            quiet_close(self.socket)
+            self.is_connected = False
+        except Exception:
+            # Do nothing! Exceptions might occur anyway.
+            logger.debug("Exception occurred while shutting down gateway",
+                         exc_info=True)
+        self._fail_pending(Py4JNetworkError(
+            "Connection was closed", when=proto.ERROR_ON_RECEIVE))
+
+    def send_command(self, command):
+        if self.reader is None:
+            # Authentication happens before multiplexing starts.
+            return super(MultiplexedGatewayConnection, self).send_command(
+                command)
+        return self._to_answer(self._wait(self._submit(command)))
+
+    def send_commands(self, commands):
+        # Multiplexed commands are executed concurrently by the JVM: wait for
+        # each answer so that the commands are executed in order.
+        return [self.send_command(command) for command in commands]
+
+    def send_batch(self, command, count):
+        answers = self._wait(self._submit(command)).split("\n")
+        if len(answers) != count:
+            # The batch failed as a whole (e.g., protocol error).
+            return [self._to_answer(answers[0])] * count
+        return [self._to_answer(answer) for answer in answers]
+
+    def _submit(self, command):
+        payload = command.encode("utf-8")
+        with self.pending_lock:
+            if self.error:
+                raise self.error
+            correlation_id = self.next_id
+            self.next_id += 1
+            pending = _PendingAnswer(correlation_id)
+            self.pending[correlation_id] = pending
+        header = "{0}{1}{2}{3}\n".format(
+            proto.MULTIPLEX_COMMAND_NAME, correlation_id,
+            proto.MULTIPLEXED_LENGTH_SEPARATOR, len(payload))
+        try:
+            with self.send_lock:
+                self.socket.sendall(header.encode("utf-8") + payload)
+        except Exception as e:
+            logger.info("Error while sending.", exc_info=True)
+            with self.pending_lock:
+                self.pending.pop(correlation_id, None)
+            raise Py4JNetworkError(
+                "Error while sending", e, proto.ERROR_ON_SEND)
+        return pending
+
+    def _wait(self, pending):
+        try:
+            if not pending.event.wait(self.gateway_parameters.read_timeout):
+                raise Py4JNetworkError(
+                    "Timeout while waiting for an answer",
+                    when=proto.ERROR_ON_RECEIVE)
+        finally:
+            # The answer may never come: do not keep waiting for it.
+            with self.pending_lock:
+                self.pending.pop(pending.correlation_id, None)
+        if pending.error:
+            raise pending.error
+        return pending.answer
+
+    def _to_answer(self, answer):
+        if answer.startswith(proto.RETURN_MESSAGE):
+            answer = answer[1:]
+        if answer.strip() == "":
+            raise Py4JNetworkError(
+                "Answer from Java side is empty", when=proto.EMPTY_RESPONSE)
+        return answer
+
+    def _read_answers(self):
+        try:
+            while True:
+                header = smart_decode(self.stream.readline()).strip()
+                if not header:
+                    raise Py4JNetworkError(
+                        "Answer from Java side is empty",
+                        when=proto.EMPTY_RESPONSE)
+                if not header.startswith(proto.MULTIPLEXED_RETURN_MESSAGE):
+                    raise Py4JNetworkError(
+                        "Unexpected answer from Java side: {0}".format(
+                            header), when=proto.ERROR_ON_RECEIVE)
+                correlation_id, length = header[1:].split(
+                    proto.MULTIPLEXED_LENGTH_SEPARATOR)
+                length = int(length)
+                answer = self.stream.read(length)
+                if len(answer) != length:
+                    raise Py4JNetworkError(
+                        "Answer from Java side is truncated",
+                        when=proto.ERROR_ON_RECEIVE)
+                answer = smart_decode(answer)
+                with self.pending_lock:
+                    pending = self.pending.pop(int(correlation_id), None)
+                if pending:
+                    pending.answer = answer[:-1]
+                    pending.event.set()
+        except Exception as e:
+            if not isinstance(e, Py4JNetworkError):
+                e = Py4JNetworkError(
+                    "Error while receiving", e, proto.ERROR_ON_RECEIVE)
+            logger.debug("Multiplexed connection stopped.", exc_info=True)
+            self.is_connected = False
+            self._fail_pending(e)
+
+    def _fail_pending(self, error):
+        with self.pending_lock:
+            if not self.error:
+                self.error = error
+            pending = list(self.pending.values())
+            self.pending.clear()
+        for answer in pending:
+            answer.error = error
+            answer.event.set()
+
+
 class JavaMember(object):
     """Represents a member (i.e., method) of a :class:`JavaObject`. For now,
        only methods are supported. Fields are retrieved directly and are not
@@ -1301,6 +1719,13 @@ class JavaMember(object):
             if not isinstance(arg, JavaObject):
                 for converter in self.gateway_client.converters:
                     if converter.can_convert(arg):
+                        convert_literal = getattr(
+                            converter, "convert_literal", None)
+                        if convert_literal is not None:
+                            # Sent by value: nothing to detach.
+                            new_args.append(
+                                convert_literal(arg, self.gateway_client))
+                            break
                         temp_arg = converter.convert(arg, self.gateway_client)
                         temp_args.append(temp_arg)
                         new_args.append(temp_arg)
@@ -1596,6 +2021,13 @@ class JavaClass(object):
             if not isinstance(arg, JavaObject):
                 for converter in self._converters:
                     if converter.can_convert(arg):
+                        convert_literal = getattr(
+                            converter, "convert_literal", None)
+                        if convert_literal is not None:
+                            # Sent by value: nothing to detach.
+                            new_args.append(
+                                convert_literal(arg, self._gateway_client))
+                            break
                         temp_arg = converter.convert(arg, self._gateway_client)
                         temp_args.append(temp_arg)
                         new_args.append(temp_arg)
@@ -2015,6 +2447,55 @@ class JavaGateway(object):
         answer = self._gateway_client.send_command(command)
         return get_return_value(answer, self._gateway_client)
 
+    def batch(self, calls):
+        """Calls several Java methods in a single round trip. The methods
+           are called in order and independently: if one call fails, the
+           following calls are still made.
+
+        Example::
+
+            config = gateway.jvm.java.util.Properties()
+            gateway.batch([
+                (config.setProperty, ("a", "1")),
+                (config.setProperty, ("b", "2")),
+                (config.size, ())])
+
+        :param calls: a list of `(member, args)` tuples where `member` is a
+            method of a :class:`JavaObject` or :class:`JavaClass` and `args`
+            is a tuple of arguments.
+
+        :rtype: the list of return values, in the same order as the calls.
+            A call that failed is represented by the :class:`Py4JError`
+            (e.g., :class:`Py4JJavaError`) it would have raised.
+        """
+        command_parts = [proto.BATCH_COMMAND_NAME]
+        all_temp_args = []
+        for member, args in calls:
+            args_command, temp_args = member._build_args(*args)
+            command_parts.append(member.command_header)
+            command_parts.append(args_command)
+            command_parts.append(proto.END_COMMAND_PART)
+            all_temp_args.extend(temp_args)
+        command_parts.append(proto.END_COMMAND_PART)
+
+        answers = self._gateway_client.send_batch(
+            "".join(command_parts), len(calls))
+
+        results = []
+        for (member, _), answer in zip(calls, answers):
+            try:
+                results.append(get_return_value(
+                    answer, self._gateway_client, member.target_id,
+                    member.name))
+            except Py4JError as e:
+                results.append(e)
+
+        for temp_arg in all_temp_args:
+            if hasattr(temp_arg, "_detach"):
+                temp_arg._detach()
+
+        return results
+
     def shutdown(self, raise_exception=False):
         """Shuts down the :class:`GatewayClient` and the
            :class:`CallbackServer <py4j.java_callback.CallbackServer>`.
@@ -2264,15 +2745,25 @@ class CallbackServer(object):
     def start(self):
         """Starts the CallbackServer. This method should be called by the
         client instead of run()."""
-        af_type = socket.getaddrinfo(self.address, self.port)[0][0]
-        self.server_socket = socket.socket(af_type, socket.SOCK_STREAM)
-        set_reuse_address(self.server_socket)
+        unix_socket_path = self.callback_server_parameters.unix_socket_path
+        if unix_socket_path:
+            self.server_socket = socket.socket(
+                socket.AF_UNIX, socket.SOCK_STREAM)
+        else:
+            af_type = socket.getaddrinfo(self.address, self.port)[0][0]
+            self.server_socket = socket.socket(af_type, socket.SOCK_STREAM)
+            set_reuse_address(self.server_socket)
         try:
-            self.server_socket.bind((self.address, self.port))
-            # 4-tuple for ipv6, 2-tuple for ipv4
-            info = self.server_socket.getsockname()
-            self._listening_address = info[0]
-            self._listening_port = info[1]
+            if unix_socket_path:
+                self.server_socket.bind(unix_socket_path)
+                self._listening_address = unix_socket_path
+                self._listening_port = None
+            else:
+                self.server_socket.bind((self.address, self.port))
+                # 4-tuple for ipv6, 2-tuple for ipv4
+                info = self.server_socket.getsockname()
+                self._listening_address = info[0]
+                self._listening_port = info[1]
         except Exception as e:
             msg = "An error occurred while trying to start the callback "\
                   "server ({0}:{1})".format(self.address, self.port)
@@ -2393,6 +2884,13 @@ class CallbackServer(object):
                 quiet_shutdown(self.server_socket)
                 quiet_close(self.server_socket)
                 self.server_socket = None
+                unix_socket_path = \
+                    self.callback_server_parameters.unix_socket_path
+                if unix_socket_path:
+                    try:
+                        os.remove(unix_socket_path)
+                    except OSError:
+                        pass
                 temp_connections = list(self.connections)
 
                 for connection in temp_connections:
@@ -2409,6 +2907,10 @@ class CallbackServer(object):
 class CallbackConnection(Thread):
     """A `CallbackConnection` receives callbacks and garbage collection
        requests from the Java side.
+
+       Multiplexed callbacks are executed concurrently by a pool of worker
+       threads, created on the first multiplexed callback, and each response
+       is sent with the correlation id of its callback as soon as it is ready.
     """
     def __init__(
             self, pool, input, socket_instance, gateway_client,
@@ -2430,6 +2932,11 @@ class CallbackConnection(Thread):
 
         self.daemon = self.callback_server_parameters.daemonize_connections
 
+        # Responses to multiplexed callbacks are sent concurrently.
+        self.send_lock = RLock()
+        self.work_queue = None
+        self.workers = []
+
     def run(self):
         logger.info("Callback Connection ready to receive messages")
         reset = False
@@ -2445,25 +2952,18 @@ class CallbackConnection(Thread):
                     continue
 
                 obj_id = smart_decode(self.input.readline())[:-1]
+                if command == proto.MULTIPLEX_COMMAND_NAME[:-1]:
+                    # The second line is the header of the wrapped command.
+                    self._submit_multiplexed(obj_id)
+                    continue
                 logger.info(
                     "Received command {0} on object id {1}".
                     format(command, obj_id))
                 if obj_id is None or len(obj_id.strip()) == 0:
                     break
-                if command == proto.CALL_PROXY_COMMAND_NAME:
-                    return_message = self._call_proxy(obj_id, self.input)
+                return_message = self._execute(command, obj_id, self.input)
+                with self.send_lock:
                     self.socket.sendall(return_message.encode("utf-8"))
-                elif command == proto.GARBAGE_COLLECT_PROXY_COMMAND_NAME:
-                    self.input.readline()
-                    _garbage_collect_proxy(self.pool, obj_id)
-                    self.socket.sendall(
-                        proto.SUCCESS_RETURN_MESSAGE.encode("utf-8"))
-                else:
-                    logger.error("Unknown command {0}".format(command))
-                    # We're sending something to prevent blokincg, but at this
-                    # point, the protocol is broken.
-                    self.socket.sendall(
-                        proto.ERROR_RETURN_MESSAGE.encode("utf-8"))
         except Py4JAuthenticationError:
             reset = True
             logger.exception("Could not authenticate connection.")
@@ -2479,8 +2979,74 @@ class CallbackConnection(Thread):
                 "a message", exc_info=True)
         self.close(reset)
 
+    def _execute(self, command, obj_id, input):
+        if command == proto.CALL_PROXY_COMMAND_NAME:
+            return self._call_proxy(obj_id, input)
+        elif command == proto.GARBAGE_COLLECT_PROXY_COMMAND_NAME:
+            input.readline()
+            _garbage_collect_proxy(self.pool, obj_id)
+            return proto.SUCCESS_RETURN_MESSAGE
+        else:
+            logger.error("Unknown command {0}".format(command))
+            # We're sending something to prevent blokincg, but at this
+            # point, the protocol is broken.
+            return proto.ERROR_RETURN_MESSAGE
+
+    def _submit_multiplexed(self, header):
+        correlation_id, length = header.split(
+            proto.MULTIPLEXED_LENGTH_SEPARATOR)
+        length = int(length)
+        payload = self.input.read(length)
+        if len(payload) != length:
+            raise Py4JNetworkError(
+                "Multiplexed command from Java side is truncated",
+                when=proto.ERROR_ON_RECEIVE)
+        if self.work_queue is None:
+            self.work_queue = Queue()
+            for _ in range(
+                    self.callback_server_parameters.multiplexed_worker_count):
+                worker = Thread(target=self._run_multiplexed)
+                worker.daemon = self.daemon
+                worker.start()
+                self.workers.append(worker)
+        self.work_queue.put((correlation_id, payload))
+
+    def _run_multiplexed(self):
+        while True:
+            work = self.work_queue.get()
+            if work is None:
+                return
+            correlation_id, payload = work
+            try:
+                input = BytesIO(payload)
+                command = smart_decode(input.readline())[:-1]
+                obj_id = smart_decode(input.readline())[:-1]
+                logger.info(
+                    "Received multiplexed command {0} on object id {1}".
+                    format(command, obj_id))
+                return_message = self._execute(command, obj_id, input)
+            except Exception:
+                logger.exception(
+                    "Error while executing multiplexed command {0}".
+                    format(correlation_id))
+                return_message = proto.ERROR_RETURN_MESSAGE
+            response = return_message.encode("utf-8")
+            header = "{0}{1}{2}{3}\n".format(
+                proto.MULTIPLEXED_RETURN_MESSAGE, correlation_id,
+                proto.MULTIPLEXED_LENGTH_SEPARATOR, len(response))
+            try:
+                with self.send_lock:
+                    self.socket.sendall(header.encode("utf-8") + response)
+            except Exception:
+                logger.info(
+                    "Error while sending the response to multiplexed "
+                    "command {0}".format(correlation_id), exc_info=True)
+
     def close(self, reset=False):
         logger.info("Closing down callback connection")
+        if self.work_queue is not None:
+            for _ in self.workers:
+                self.work_queue.put(None)
         if reset:
             set_linger(self.socket)
         else:
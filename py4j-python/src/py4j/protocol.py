@@ -22,6 +22,8 @@ from base64 import standard_b64encode, standard_b64decode
 
 from decimal import Decimal
 
+from struct import pack, unpack
+
 from py4j.compat import (
     long, basestring, unicode, bytearray2,
     bytestr, isbytestr, isbytearray, ispython3bytestr,
@@ -30,6 +32,8 @@ from py4j.compat import (
 
 JAVA_MAX_INT = 2147483647
 JAVA_MIN_INT = -2147483648
+JAVA_MAX_LONG = 9223372036854775807
+JAVA_MIN_LONG = -9223372036854775808
 
 JAVA_INFINITY = "Infinity"
 JAVA_NEGATIVE_INFINITY = "-Infinity"
@@ -52,6 +56,13 @@ DEFAULT_JVM_NAME = "default"
 BYTES_TYPE = "j"
 INTEGER_TYPE = "i"
 LONG_TYPE = "L"
+BIG_INTEGER_TYPE = "B"
+SHORT_TYPE = "S"
+BYTE_TYPE = "Y"
+FLOAT_TYPE = "F"
+CHAR_TYPE = "C"
+DOUBLE_BITS_TYPE = "q"
+FLOAT_BITS_TYPE = "Q"
 BOOLEAN_TYPE = "b"
 DOUBLE_TYPE = "d"
 DECIMAL_TYPE = "D"
@@ -69,6 +80,8 @@ NO_MEMBER = "o"
 VOID_TYPE = "v"
 ITERATOR_TYPE = "g"
 PYTHON_PROXY_TYPE = "f"
+COLLECTION_LITERAL_TYPE = "U"
+LITERAL_LENGTH_SEPARATOR = ":"
 
 # Protocol
 END = "e"
@@ -76,6 +89,8 @@ ERROR = "x"
 FATAL_ERROR = "z"
 SUCCESS = "y"
 RETURN_MESSAGE = "!"
+MULTIPLEXED_RETURN_MESSAGE = "#"
+MULTIPLEXED_LENGTH_SEPARATOR = ":"
 
 
 # Shortcuts
@@ -99,6 +114,8 @@ JVMVIEW_COMMAND_NAME = "j\n"
 EXCEPTION_COMMAND_NAME = "p\n"
 DIR_COMMAND_NAME = "d\n"
 STREAM_COMMAND_NAME = "S\n"
+BATCH_COMMAND_NAME = "b\n"
+MULTIPLEX_COMMAND_NAME = "#\n"
 
 # Array subcommands
 ARRAY_GET_SUB_COMMAND_NAME = "g\n"
@@ -162,9 +179,16 @@ OUTPUT_CONVERTER = {
     LONG_TYPE: (lambda value, y: long(value)),
     DECIMAL_TYPE: (lambda value, y: Decimal(value)),
     INTEGER_TYPE: (lambda value, y: int(value)),
+    BIG_INTEGER_TYPE: (lambda value, y: long(value)),
+    SHORT_TYPE: (lambda value, y: int(value)),
+    BYTE_TYPE: (lambda value, y: int(value)),
     BYTES_TYPE: (lambda value, y: decode_bytearray(value)),
     DOUBLE_TYPE: (lambda value, y: float(value)),
+    FLOAT_TYPE: (lambda value, y: float(value)),
+    DOUBLE_BITS_TYPE: (lambda value, y: decode_double_bits(value)),
+    FLOAT_BITS_TYPE: (lambda value, y: decode_float_bits(value)),
     STRING_TYPE: (lambda value, y: unescape_new_line(value)),
+    CHAR_TYPE: (lambda value, y: unescape_new_line(value)),
 }
 
 INPUT_CONVERTER = []
@@ -202,7 +226,7 @@ def unescape_new_line(escaped):
 
     :rtype: the original string
     """
-    if escaped:
+    if escaped and ESCAPE_CHAR in escaped:
         return ESCAPE_CHAR.join(
             "\n".join(
                 ("\r".join(p.split(ESCAPE_CHAR + "r")))
@@ -233,6 +257,14 @@ def encode_float(float_value):
     return float_str
 
 
+def decode_double_bits(encoded):
+    return unpack(">d", pack(">Q", int(encoded, 16)))[0]
+
+
+def decode_float_bits(encoded):
+    return unpack(">f", pack(">I", int(encoded, 16)))[0]
+
+
 def encode_bytearray(barray):
     if isbytestr(barray):
         return bytetostr(standard_b64encode(barray))
@@ -246,6 +278,40 @@ def decode_bytearray(encoded):
     return bytearray2([bytetoint(b) for b in standard_b64decode(new_bytes)])
 
 
+class CollectionLiteral(object):
+    """A list, set or map that is sent by value to the JVM, where it is
+    decoded into a new ArrayList, HashSet or HashMap.
+
+    :param collection_type: LIST_TYPE, SET_TYPE or MAP_TYPE
+    :param elements: the elements of the collection. For a map, each key is
+        followed by its value.
+    """
+    def __init__(self, collection_type, elements):
+        self.collection_type = collection_type
+        self.elements = elements
+
+
+def get_utf16_length(s):
+    """Returns the length of a string in UTF-16 code units, which is how
+    the JVM measures strings.
+    """
+    length = len(s)
+    if length > 0 and max(s) > "\uffff":
+        length += sum(1 for c in s if c > "\uffff")
+    return length
+
+
+def encode_collection_literal(literal, python_proxy_pool=None):
+    parts = [COLLECTION_LITERAL_TYPE, literal.collection_type]
+    for element in literal.elements:
+        # Remove the trailing new line.
+        element_part = get_command_part(element, python_proxy_pool)[:-1]
+        parts.append(smart_decode(get_utf16_length(element_part)))
+        parts.append(LITERAL_LENGTH_SEPARATOR)
+        parts.append(element_part)
+    return "".join(parts)
+
+
 def is_python_proxy(parameter):
     """Determines whether parameter is a Python Proxy, i.e., it has a Java
     internal class with an `implements` member.
@@ -281,8 +347,11 @@ def get_command_part(parameter, python_proxy_pool=None):
     elif isinstance(parameter, int) and parameter <= JAVA_MAX_INT\
             and parameter >= JAVA_MIN_INT:
         command_part = INTEGER_TYPE + smart_decode(parameter)
-    elif isinstance(parameter, long) or isinstance(parameter, int):
+    elif (isinstance(parameter, long) or isinstance(parameter, int)) and\
+            parameter <= JAVA_MAX_LONG and parameter >= JAVA_MIN_LONG:
         command_part = LONG_TYPE + smart_decode(parameter)
+    elif isinstance(parameter, long) or isinstance(parameter, int):
+        command_part = BIG_INTEGER_TYPE + smart_decode(parameter)
     elif isinstance(parameter, float):
         command_part = DOUBLE_TYPE + encode_float(parameter)
     elif isbytearray(parameter):
@@ -291,6 +360,8 @@ def get_command_part(parameter, python_proxy_pool=None):
         command_part = BYTES_TYPE + encode_bytearray(parameter)
     elif isinstance(parameter, basestring):
         command_part = STRING_TYPE + escape_new_line(parameter)
+    elif isinstance(parameter, CollectionLiteral):
+        command_part = encode_collection_literal(parameter, python_proxy_pool)
     elif is_python_proxy(parameter):
         command_part = PYTHON_PROXY_TYPE + python_proxy_pool.put(parameter)
         for interface in parameter.Java.implements:
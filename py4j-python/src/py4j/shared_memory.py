@@ -0,0 +1,290 @@
+# -*- coding: UTF-8 -*-
+"""Module that provides a transport exchanging the commands and the
+responses through a pair of ring buffers in shared memory.
+
+The Python side creates a file (typically in /dev/shm), maps it, and sends its
+path to the JVM through the socket. Once the JVM mapped the file, the file is
+deleted and the commands go through the shared memory. The socket is only
+kept to detect that the other side died.
+
+The layout must match py4j.SharedMemoryTransport and py4j.SharedMemoryRing on
+the Java side.
+"""
+from __future__ import unicode_literals, absolute_import
+
+import mmap
+import os
+import select
+import socket
+import struct
+import time
+import uuid
+
+DEFAULT_SHARED_MEMORY_DIRECTORY = "/dev/shm"
+
+FILE_PREFIX = "py4j-"
+
+MAGIC = b"PY4JSHM1"
+
+FILE_HEADER_SIZE = 64
+
+RING_HEADER_SIZE = 128
+
+WRITE_POSITION = 0
+
+READ_POSITION = 64
+
+CLOSED = 96
+
+SPIN_COUNT = 1000
+
+MAX_PARK_SECONDS = 0.001
+
+LIVENESS_CHECK_SECONDS = 0.1
+
+LONG_FORMAT = str("<q")
+
+INT_FORMAT = str("<i")
+
+
+def get_file_size(capacity):
+    return FILE_HEADER_SIZE + 2 * (RING_HEADER_SIZE + capacity)
+
+
+def create_shared_memory(directory, capacity):
+    """Creates and maps a shared memory file.
+
+    :param directory: the directory of the file, e.g., /dev/shm
+
+    :param capacity: the capacity of each ring in bytes. Must be a power of
+        two.
+
+    :rtype: a tuple (path, mmap)
+    """
+    if capacity <= 0 or capacity & (capacity - 1) != 0:
+        raise ValueError(
+            "The capacity must be a power of two: {0}".format(capacity))
+    path = os.path.join(
+        directory, "{0}{1}-{2}".format(
+            FILE_PREFIX, os.getpid(), uuid.uuid4().hex))
+    size = get_file_size(capacity)
+    fd = os.open(path, os.O_RDWR | os.O_CREAT | os.O_EXCL, 0o600)
+    try:
+        os.ftruncate(fd, size)
+        memory = mmap.mmap(fd, size)
+    except Exception:
+        os.close(fd)
+        os.remove(path)
+        raise
+    os.close(fd)
+    memory[0:len(MAGIC)] = MAGIC
+    struct.pack_into(INT_FORMAT, memory, 8, capacity)
+    return path, memory
+
+
+def is_peer_closed(a_socket):
+    """Returns True if the other side closed the socket. No data is sent on
+    the socket once the transport is set up.
+    """
+    if a_socket is None:
+        return False
+    try:
+        readable, _, _ = select.select([a_socket], [], [], 0)
+        return bool(readable) and \
+            a_socket.recv(1, socket.MSG_PEEK) == b""
+    except Exception:
+        return True
+
+
+class SharedMemoryRing(object):
+    """Single-producer single-consumer ring buffer in shared memory.
+
+    A side that waits for the other side first spins and then sleeps for
+    increasing durations (up to `MAX_PARK_SECONDS`).
+    """
+
+    def __init__(self, memory, offset, capacity):
+        self.memory = memory
+        self.offset = offset
+        self.capacity = capacity
+        self.mask = capacity - 1
+        self.data = offset + RING_HEADER_SIZE
+
+    def _get_position(self, position):
+        return struct.unpack_from(
+            LONG_FORMAT, self.memory, self.offset + position)[0]
+
+    def _set_position(self, position, value):
+        struct.pack_into(
+            LONG_FORMAT, self.memory, self.offset + position, value)
+
+    def is_closed(self):
+        return struct.unpack_from(
+            INT_FORMAT, self.memory, self.offset + CLOSED)[0] != 0
+
+    def close(self):
+        struct.pack_into(INT_FORMAT, self.memory, self.offset + CLOSED, 1)
+
+    def _idle(self, iteration, start, timeout, a_socket, last_check):
+        if iteration < SPIN_COUNT:
+            return iteration + 1
+        now = time.time()
+        if timeout and now - start >= timeout:
+            raise socket.timeout("Timeout while waiting for shared memory")
+        elif now - last_check[0] >= LIVENESS_CHECK_SECONDS:
+            last_check[0] = now
+            if is_peer_closed(a_socket):
+                self.close()
+        time.sleep(min(
+            MAX_PARK_SECONDS,
+            0.000001 * (1 << min(iteration - SPIN_COUNT, 20))))
+        return iteration + 1
+
+    def read(self, size, timeout=None, a_socket=None):
+        """Reads at most size bytes. Waits until at least one byte is
+        available. Returns an empty string once the ring is closed and
+        empty.
+        """
+        read = self._get_position(READ_POSITION)
+        write = self._get_position(WRITE_POSITION)
+        iteration = 0
+        start = time.time()
+        last_check = [start]
+        while write == read:
+            if self.is_closed():
+                # Read the bytes written before the ring was closed.
+                write = self._get_position(WRITE_POSITION)
+                if write == read:
+                    return b""
+                break
+            iteration = self._idle(
+                iteration, start, timeout, a_socket, last_check)
+            write = self._get_position(WRITE_POSITION)
+
+        count = min(size, write - read)
+        index = read & self.mask
+        first = min(count, self.capacity - index)
+        data = self.memory[self.data + index:self.data + index + first]
+        if count > first:
+            data += self.memory[self.data:self.data + count - first]
+        self._set_position(READ_POSITION, read + count)
+        return data
+
+    def write(self, data, timeout=None, a_socket=None):
+        """Writes all the bytes, waiting for free space if necessary."""
+        write = self._get_position(WRITE_POSITION)
+        offset = 0
+        length = len(data)
+        while offset < length:
+            read = self._get_position(READ_POSITION)
+            iteration = 0
+            start = time.time()
+            last_check = [start]
+            while write - read == self.capacity:
+                if self.is_closed():
+                    raise IOError("The shared memory ring is closed.")
+                iteration = self._idle(
+                    iteration, start, timeout, a_socket, last_check)
+                read = self._get_position(READ_POSITION)
+            if self.is_closed():
+                raise IOError("The shared memory ring is closed.")
+
+            count = min(length - offset, self.capacity - (write - read))
+            index = write & self.mask
+            first = min(count, self.capacity - index)
+            start_data = self.data + index
+            self.memory[start_data:start_data + first] = \
+                data[offset:offset + first]
+            if count > first:
+                self.memory[self.data:self.data + count - first] = \
+                    data[offset + first:offset + count]
+            write += count
+            self._set_position(WRITE_POSITION, write)
+            offset += count
+
+
+class SharedMemorySocket(object):
+    """Socket-like object sending the commands through the shared memory.
+    Other socket operations are delegated to the socket used to set up the
+    transport.
+    """
+
+    def __init__(self, a_socket, memory, capacity):
+        self.socket = a_socket
+        self.memory = memory
+        self.timeout = a_socket.gettimeout()
+        ring_size = RING_HEADER_SIZE + capacity
+        self.requests = SharedMemoryRing(memory, FILE_HEADER_SIZE, capacity)
+        self.responses = SharedMemoryRing(
+            memory, FILE_HEADER_SIZE + ring_size, capacity)
+
+    def sendall(self, data):
+        self.requests.write(data, self.timeout, self.socket)
+
+    def recv(self, size):
+        return self.responses.read(size, self.timeout, self.socket)
+
+    def settimeout(self, timeout):
+        self.timeout = timeout
+        self.socket.settimeout(timeout)
+
+    def gettimeout(self):
+        return self.timeout
+
+    def makefile(self, mode="rb"):
+        return SharedMemoryStream(self)
+
+    def shutdown(self, how):
+        self.requests.close()
+        self.responses.close()
+        self.socket.shutdown(how)
+
+    def close(self):
+        self.requests.close()
+        self.responses.close()
+        self.socket.close()
+
+    def __getattr__(self, name):
+        return getattr(self.socket, name)
+
+
+class SharedMemoryStream(object):
+    """File-like object reading the responses from the shared memory."""
+
+    def __init__(self, shared_memory_socket, buffer_size=8192):
+        self.socket = shared_memory_socket
+        self.buffer_size = buffer_size
+        self.buffer = b""
+
+    def readline(self):
+        while True:
+            index = self.buffer.find(b"\n")
+            if index >= 0:
+                line = self.buffer[:index + 1]
+                self.buffer = self.buffer[index + 1:]
+                return line
+            data = self.socket.recv(self.buffer_size)
+            if not data:
+                line = self.buffer
+                self.buffer = b""
+                return line
+            self.buffer += data
+
+    def read(self, size):
+        chunks = []
+        remaining = size
+        if self.buffer:
+            chunk = self.buffer[:remaining]
+            self.buffer = self.buffer[remaining:]
+            chunks.append(chunk)
+            remaining -= len(chunk)
+        while remaining > 0:
+            data = self.socket.recv(min(remaining, self.buffer_size))
+            if not data:
+                break
+            chunks.append(data)
+            remaining -= len(data)
+        return b"".join(chunks)
+
+    def close(self):
+        self.buffer = b""
@@ -8,6 +8,7 @@ import unittest
 
 from py4j.clientserver import (
     ClientServer, JavaParameters, PythonParameters)
+from py4j.java_collections import ListConverter
 from py4j.java_gateway import GatewayConnectionGuard, is_instance_of, \
     GatewayParameters, DEFAULT_PORT, DEFAULT_PYTHON_PROXY_PORT
 from py4j.protocol import Py4JError, Py4JJavaError, smart_decode
@@ -427,6 +428,35 @@ class IntegrationTest(unittest.TestCase):
 
             client_server.shutdown()
 
+    def testBatch(self):
+        with clientserver_example_app_process():
+            client_server = ClientServer(
+                JavaParameters(), PythonParameters())
+            example = client_server.entry_point.getNewExample()
+            results = client_server.batch([
+                (example.callHello, (IHelloImpl(),)),
+                (client_server.jvm.java.lang.Math.abs,
+                 (3000000000000000000000000000000000000,)),
+                (example.callHello2, (IHelloImpl(),)),
+                (example.method7, (2,))])
+            self.assertEqual("This is Hello!", results[0])
+            self.assertTrue(isinstance(results[1], Py4JError))
+            self.assertEqual("This is Hello;\n10MyMy!\n;", results[2])
+            self.assertEqual(1, results[3])
+            # Check that the connection is not broken
+            self.assertEqual(4, client_server.jvm.java.lang.Math.abs(-4))
+            client_server.shutdown()
+
+    def testConverter(self):
+        with clientserver_example_app_process():
+            client_server = ClientServer(
+                JavaParameters(), PythonParameters())
+            python_list = list(range(100))
+            java_list = ListConverter().convert(
+                python_list, client_server._gateway_client)
+            self.assertEqual(python_list, list(java_list))
+            client_server.shutdown()
+
     def testStream(self):
         with clientserver_example_app_process():
             client_server = ClientServer(
@@ -8,7 +8,7 @@ from __future__ import unicode_literals, absolute_import
 from contextlib import contextmanager
 from multiprocessing import Process
 import subprocess
-from threading import Thread
+from threading import Lock, Thread
 from traceback import print_exc
 import unittest
 
@@ -43,6 +43,13 @@ def start_python_entry_point_server(*args):
     subprocess.call(java_args + list(args))
 
 
+def start_multiplexed_example_server():
+    subprocess.call([
+        "java", "-cp", PY4J_JAVA_PATH,
+        "py4j.examples.ExampleApplication$"
+        "ExampleMultiplexedCallbackApplication"])
+
+
 def start_example_server2():
     subprocess.call([
         "java", "-cp", PY4J_JAVA_PATH,
@@ -63,6 +70,8 @@ def start_example_app_process(app=None, args=()):
         target = start_no_mem_example_server
     elif app == "pythonentrypoint":
         target = start_python_entry_point_server
+    elif app == "multiplexed":
+        target = start_multiplexed_example_server
     p = Process(target=target, args=args)
     p.start()
     sleep()
@@ -162,6 +171,30 @@ class CustomBytesOperator(object):
         implements = ["py4j.examples.BytesOperator"]
 
 
+class ConcurrentOperator(object):
+    """Operator that records how many callbacks run at the same time. The
+    callbacks do not answer in the order they were received.
+    """
+    def __init__(self):
+        self.lock = Lock()
+        self.running = 0
+        self.max_running = 0
+
+    def doOperation(self, i, j, k=None):
+        with self.lock:
+            self.running += 1
+            self.max_running = max(self.max_running, self.running)
+        try:
+            sleep(0.001 * (i % 50))
+            return i + j if k is None else i + j + k
+        finally:
+            with self.lock:
+                self.running -= 1
+
+    class Java:
+        implements = ["py4j.examples.Operator"]
+
+
 class Runner(Thread):
     def __init__(self, runner_range, pool):
         Thread.__init__(self)
@@ -283,6 +316,48 @@ class NoMemManagementTest(unittest.TestCase):
             gateway.shutdown()
 
 
+class MultiplexedCallbackTest(unittest.TestCase):
+    def setUp(self):
+        self.p = start_example_app_process("multiplexed")
+        self.gateway = JavaGateway(
+            callback_server_parameters=CallbackServerParameters())
+        sleep()
+
+    def tearDown(self):
+        safe_shutdown(self)
+        self.p.join()
+        sleep()
+
+    def testOverlappingCallbacks(self):
+        operator = ConcurrentOperator()
+        results = []
+        errors = []
+
+        def run():
+            try:
+                example = self.gateway.jvm.py4j.examples.OperatorExample()
+                for _ in range(5):
+                    results.append(list(example.randomBinaryOperator(
+                        operator)))
+            except Exception as e:
+                errors.append(e)
+
+        threads = [Thread(target=run) for _ in range(8)]
+        for thread in threads:
+            thread.start()
+        for thread in threads:
+            thread.join()
+
+        self.assertEqual([], errors)
+        self.assertEqual(40, len(results))
+        for (i, j, result) in results:
+            self.assertEqual(i + j, result)
+        # The callbacks overlapped on the single multiplexed channel.
+        self.assertGreater(operator.max_running, 1)
+        self.assertEqual(
+            1, len(self.gateway.get_callback_server().connections))
+
+
 class IntegrationTest(unittest.TestCase):
     def setUp(self):
         self.p = start_example_app_process()
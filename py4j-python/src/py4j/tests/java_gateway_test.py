@@ -26,15 +26,18 @@ from py4j.compat import (
     range, isbytearray, ispython3bytestr, bytearray2, long,
     Queue)
 from py4j.finalizer import ThreadSafeFinalizer
+from py4j.java_collections import ListConverter
 from py4j.java_gateway import (
     JavaGateway, JavaMember, get_field, get_method,
-    GatewayClient, set_field, java_import, JavaObject, is_instance_of,
+    GatewayClient, MultiplexedGatewayClient, set_field, java_import,
+    JavaObject, is_instance_of,
     GatewayParameters, CallbackServerParameters, quiet_close, DEFAULT_PORT,
     set_default_callback_accept_timeout, GatewayConnectionGuard,
     get_java_class)
 from py4j.protocol import (
     Py4JError, Py4JJavaError, Py4JNetworkError, decode_bytearray,
     encode_bytearray, escape_new_line, unescape_new_line, smart_decode)
+from py4j.shared_memory import SharedMemorySocket
 
 
 SERVER_PORT = 25333
@@ -111,6 +114,13 @@ def start_ipv6_example_server():
         "py4j.examples.ExampleApplication$ExampleIPv6Application"])
 
 
+def start_shared_memory_example_server(directory):
+    subprocess.call([
+        "java", "-Xmx512m", "-cp", PY4J_JAVA_PATH,
+        "py4j.examples.ExampleApplication$ExampleSharedMemoryApplication",
+        directory])
+
+
 def start_example_app_process():
     # XXX DO NOT FORGET TO KILL THE PROCESS IF THE TEST DOES NOT SUCCEED
     p = Process(target=start_example_server)
@@ -980,6 +990,33 @@ class Runner(Thread):
                 break
 
 
+class BatchTest(unittest.TestCase):
+    def setUp(self):
+        self.p = start_example_app_process()
+        self.gateway = JavaGateway()
+
+    def tearDown(self):
+        safe_shutdown(self)
+        self.p.join()
+
+    def testBatch(self):
+        a_list = self.gateway.jvm.java.util.ArrayList()
+        results = self.gateway.batch([
+            (a_list.add, ("a",)),
+            (a_list.get, (5,)),
+            (a_list.add, ("b",)),
+            (a_list.size, ())])
+        self.assertEqual(True, results[0])
+        self.assertTrue(isinstance(results[1], Py4JJavaError))
+        self.assertEqual(True, results[2])
+        self.assertEqual(2, results[3])
+        self.assertEqual(["a", "b"], list(a_list))
+
+    def testEmptyBatch(self):
+        self.assertEqual([], self.gateway.batch([]))
+        self.assertEqual(2, self.gateway.jvm.java.lang.Math.abs(-2))
+
+
 class ThreadTest(unittest.TestCase):
     def setUp(self):
         self.p = start_example_app_process()
@@ -1011,6 +1048,53 @@ class ThreadTest(unittest.TestCase):
         self.assertTrue(runner3.ok)
 
 
+class MultiplexedThreadTest(unittest.TestCase):
+    def setUp(self):
+        self.p = start_example_app_process()
+        self.gateway = JavaGateway()
+        self.gateway.set_gateway_client(MultiplexedGatewayClient())
+
+    def tearDown(self):
+        safe_shutdown(self)
+        self.p.join()
+
+    def testStress(self):
+        runners = [
+            Runner(range(1, 10000, 1000), self.gateway),
+            Runner(range(1000, 1000000, 100000), self.gateway),
+            Runner(range(1000, 1000000, 100000), self.gateway)]
+        for runner in runners:
+            runner.start()
+        for runner in runners:
+            runner.join()
+            self.assertTrue(runner.ok)
+
+    def testShutdown(self):
+        self.assertEqual(2, self.gateway.jvm.java.lang.Math.abs(-2))
+        self.gateway.shutdown()
+        self.p.join(5)
+        self.assertFalse(self.p.is_alive())
+
+    def testTimeoutReleasesPendingAnswer(self):
+        self.gateway.set_gateway_client(MultiplexedGatewayClient(
+            gateway_parameters=GatewayParameters(read_timeout=0.5)))
+        self.assertRaises(
+            Py4JError, self.gateway.jvm.java.lang.Thread.sleep, 1000)
+        connection = self.gateway._gateway_client.connections[0]
+        self.assertEqual(0, len(connection.pending))
+        # The late answer is ignored.
+        sleep(1)
+        self.assertEqual(2, self.gateway.jvm.java.lang.Math.abs(-2))
+
+    def testConverter(self):
+        # Multiplexed commands run concurrently: the calls made by the
+        # converter must still be executed in order.
+        python_list = list(range(500))
+        java_list = ListConverter().convert(
+            python_list, self.gateway._gateway_client)
+        self.assertEqual(python_list, list(java_list))
+
+
 class GatewayLauncherTest(unittest.TestCase):
     def tearDown(self):
         safe_shutdown(self)
@@ -1238,6 +1322,42 @@ class IPv6Test(unittest.TestCase):
             self.p.join()
 
 
+class SharedMemoryTest(unittest.TestCase):
+    def setUp(self):
+        self.directory = tempfile.mkdtemp()
+        self.p = Process(
+            target=start_shared_memory_example_server, args=(self.directory,))
+        self.p.start()
+        sleep()
+        # Rings smaller than the payloads: the data wraps around.
+        self.gateway = JavaGateway(gateway_parameters=GatewayParameters(
+            shared_memory_size=4096,
+            shared_memory_directory=self.directory))
+        try:
+            self.gateway.jvm.System.currentTimeMillis()
+        except Py4JNetworkError:
+            # The JVM was not ready yet.
+            sleep(2)
+
+    def tearDown(self):
+        safe_shutdown(self)
+        self.p.join()
+        os.rmdir(self.directory)
+        sleep()
+
+    def testPayload(self):
+        payload = "\u00e9\U0001F600 payload\n" * 2000
+        self.assertEqual(payload, self.gateway.jvm.java.lang.String(payload))
+        data = bytearray(range(256)) * 64
+        copy = self.gateway.jvm.java.util.Arrays.copyOf(data, len(data))
+        self.assertEqual(data, copy)
+
+        connection = self.gateway._gateway_client.deque[0]
+        self.assertTrue(isinstance(connection.socket, SharedMemorySocket))
+        # The file is removed once both sides mapped it.
+        self.assertEqual([], os.listdir(self.directory))
+
+
 class RetryTest(unittest.TestCase):
 
     def testBadRetry(self):
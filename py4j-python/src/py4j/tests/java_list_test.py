@@ -8,8 +8,10 @@ from __future__ import unicode_literals, absolute_import
 import unittest
 
 from py4j.compat import unicode
-from py4j.java_gateway import JavaGateway, GatewayParameters
-from py4j.protocol import Py4JJavaError, Py4JError
+from py4j.java_collections import (
+    ListConverter, MAX_PIPELINED_CALLS, call_pipelined)
+from py4j.java_gateway import JavaGateway, GatewayParameters, get_method
+from py4j.protocol import Py4JJavaError, Py4JError, get_utf16_length
 from py4j.tests.java_gateway_test import (
     start_example_app_process, safe_shutdown, sleep)
 
@@ -43,6 +45,40 @@ class AutoConvertTest(unittest.TestCase):
     def testAutoConvertNotByteArray(self):
         self.gateway.jvm.java.nio.ByteBuffer.wrap(bytearray(range(255)))
 
+    def testAutoConvertLiteral(self):
+        # Lists and tuples are sent by value as list literals whose elements
+        # are measured in UTF-16 code units.
+        self.assertEqual(4, get_utf16_length("a\U0001F600b"))
+        python_list = [
+            "a\U0001F600b", "\U0001F600", 1, None, 2.5, True,
+            ("x", "\u00e9\U0001D11E")]
+        java_list = self.gateway.jvm.java.util.Collections.unmodifiableList(
+            python_list)
+        self.assertEqual(7, java_list.size())
+        self.assertEqual(python_list[:6], list(java_list)[:6])
+        self.assertEqual(["x", "\u00e9\U0001D11E"], list(java_list[6]))
+        self.assertEqual(
+            "[a\U0001F600b, \U0001F600, 1, null, 2.5, true, "
+            "[x, \u00e9\U0001D11E]]",
+            java_list.toString())
+
+    def testConverter(self):
+        # The converter fills the Java list with pipelined calls, in several
+        # chunks for a large list.
+        python_list = list(range(2 * MAX_PIPELINED_CALLS + 10))
+        java_list = ListConverter().convert(
+            python_list, self.gateway._gateway_client)
+        self.assertEqual(len(python_list), java_list.size())
+        self.assertEqual(python_list, list(java_list))
+
+    def testCallPipelinedError(self):
+        java_list = self.gateway.jvm.java.util.ArrayList()
+        self.assertRaises(
+            Py4JJavaError, call_pipelined, get_method(java_list, "add"),
+            [(0, "a"), (5, "b"), (1, "c")], self.gateway._gateway_client)
+        # The calls after the failed call were still made.
+        self.assertEqual(["a", "c"], list(java_list))
+
 
 class ListTest(unittest.TestCase):
     def setUp(self):
@@ -7,6 +7,7 @@ from __future__ import unicode_literals, absolute_import
 
 import unittest
 
+from py4j.java_collections import MapConverter
 from py4j.java_gateway import JavaGateway, GatewayParameters
 from py4j.tests.java_gateway_test import (
     start_example_app_process, safe_shutdown, sleep)
@@ -34,6 +35,28 @@ class AutoConvertTest(unittest.TestCase):
         dp = {"a": 1, "b": 2}
         self.assertTrue(dj.equals(dp))
 
+    def testAutoConvertLiteral(self):
+        # Maps are sent by value as map literals whose elements alternate
+        # between keys and values.
+        python_map = {
+            "\U0001F600": [1, "\U0001D11E"], "k": {"n": None},
+            "\u00e9": ("\U0001F600\U0001F600",)}
+        java_map = self.gateway.jvm.java.util.Collections.unmodifiableMap(
+            python_map)
+        self.assertEqual(3, java_map.size())
+        self.assertEqual([1, "\U0001D11E"], list(java_map["\U0001F600"]))
+        self.assertTrue(java_map["k"].containsKey("n"))
+        self.assertIsNone(java_map["k"]["n"])
+        self.assertEqual(
+            ["\U0001F600\U0001F600"], list(java_map["\u00e9"]))
+
+    def testConverter(self):
+        python_map = get_map()
+        java_map = MapConverter().convert(
+            python_map, self.gateway._gateway_client)
+        self.assertEqual(3, java_map.size())
+        self.assertEqual(python_map, dict(java_map))
+
 
 class MapTest(unittest.TestCase):
     def setUp(self):
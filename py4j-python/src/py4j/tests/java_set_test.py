@@ -7,6 +7,7 @@ from __future__ import unicode_literals, absolute_import
 
 import unittest
 
+from py4j.java_collections import SetConverter
 from py4j.java_gateway import JavaGateway, GatewayParameters
 from py4j.tests.java_gateway_test import (
     start_example_app_process, safe_shutdown, sleep)
@@ -30,6 +31,26 @@ class AutoConvertTest(unittest.TestCase):
         sp = {1, "b"}
         self.assertTrue(sj.equals(sp))
 
+    def testAutoConvertLiteral(self):
+        # Sets are sent by value as set literals, and so are nested sets.
+        python_set = {
+            "\U0001F600", "a\U0001D11Eb", 3, frozenset(["\U0001F600", 4])}
+        java_set = self.gateway.jvm.java.util.Collections.unmodifiableSet(
+            python_set)
+        self.assertEqual(4, java_set.size())
+        self.assertTrue("\U0001F600" in java_set)
+        self.assertTrue("a\U0001D11Eb" in java_set)
+        self.assertTrue(3 in java_set)
+        self.assertTrue(java_set.contains(frozenset([4, "\U0001F600"])))
+        self.assertFalse("a" in java_set)
+
+    def testConverter(self):
+        python_set = {"\U0001F600", 1, 2.5}
+        java_set = SetConverter().convert(
+            python_set, self.gateway._gateway_client)
+        self.assertEqual(3, java_set.size())
+        self.assertEqual(python_set, set(java_set))
+
 
 class SetTest(unittest.TestCase):
     def setUp(self):